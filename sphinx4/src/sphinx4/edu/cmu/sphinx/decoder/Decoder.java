@@ -12,15 +12,29 @@
  */
 package edu.cmu.sphinx.decoder;
 
-import edu.cmu.sphinx.result.Result;
-import edu.cmu.sphinx.util.props.PropertyException;
-import edu.cmu.sphinx.util.props.PropertySheet;
-import edu.cmu.sphinx.util.props.S4Integer;
+import edu.cmu.sphinx.decoder.scorer.SimpleAcousticScorer;
+import edu.cmu.sphinx.decoder.search.ActiveListFactory;
 import edu.cmu.sphinx.decoder.search.SearchManager;
+import edu.cmu.sphinx.decoder.search.TokenSearchManager;
+import edu.cmu.sphinx.result.Result;
+import edu.cmu.sphinx.util.props.*;
 
+import java.util.Collections;
 import java.util.List;
 
-/** The primary decoder class */
+/**
+ * The primary decoder class.
+ * <p/>
+ * An utterance can be decoded within a {@link DecodingBudget}. The decoder then processes the frames in blocks of
+ * <code>budgetCheckInterval</code> frames and compares the real time factor of its search with the target real time
+ * factor after each block. The time of the search excludes the time spent in the front end as measured by the
+ * scorer, so a decoder that waits for live audio is not behind. Whenever it is behind, it trades accuracy for speed by
+ * one more step: first the beams of the
+ * active list factories are narrowed, then building the word lattice is disabled, and finally the scorer skips frames.
+ * When the deadline of the budget is reached, the decoder discards the remaining frames of the utterance and returns
+ * the best result found so far as a final result. Results of degraded searches are flagged by {@link
+ * Result#isDegraded()}. The beams, the lattice and the frame skip are restored after every utterance.
+ */
 public class Decoder extends AbstractDecoder {
 
     /** The property for the number of features to recognize at once. */
@@ -28,6 +42,55 @@ public class Decoder extends AbstractDecoder {
     public final static String PROP_FEATURE_BLOCK_SIZE = "featureBlockSize";
     private int featureBlockSize;
 
+    /** The property that defines the active list factories whose beams are narrowed when decoding falls behind */
+    @S4ComponentList(type = ActiveListFactory.class)
+    public final static String PROP_ACTIVE_LIST_FACTORIES = "activeListFactories";
+    private List<ActiveListFactory> activeListFactories;
+
+    /**
+     * The property that defines the scorer of the search manager. It measures the time spent in the front end, skips
+     * frames when decoding falls behind, and discards the rest of the utterance when the deadline is reached. Without
+     * it the decoder cannot tell the search from waiting for input, so it only enforces the deadline, and the remaining
+     * frames of an utterance that was stopped at its deadline are left in the front end.
+     */
+    @S4Component(type = SimpleAcousticScorer.class, mandatory = false)
+    public final static String PROP_SCORER = "scorer";
+    private SimpleAcousticScorer scorer;
+
+    /** The property that defines the real time factor above which decoding within a budget is behind */
+    @S4Double(defaultValue = 1.0)
+    public final static String PROP_TARGET_REAL_TIME_FACTOR = "targetRealTimeFactor";
+    private double targetRealTimeFactor;
+
+    /** The property that defines after how many frames the decoding within a budget is checked */
+    @S4Integer(defaultValue = 10)
+    public final static String PROP_BUDGET_CHECK_INTERVAL = "budgetCheckInterval";
+    private int budgetCheckInterval;
+
+    /** The property that defines the frame shift in milliseconds, used to compute the real time factor */
+    @S4Integer(defaultValue = 10)
+    public final static String PROP_FRAME_SHIFT_MS = "frameShiftInMs";
+    private int frameShiftInMs;
+
+    /** The property that defines the factor by which the absolute and the log relative beams are narrowed */
+    @S4Double(defaultValue = 0.5)
+    public final static String PROP_BEAM_REDUCTION = "beamReduction";
+    private double beamReduction;
+
+    /** The property that defines the frame skip of the scorer when decoding falls behind */
+    @S4Integer(defaultValue = 2)
+    public final static String PROP_DEGRADED_FRAME_SKIP = "degradedFrameSkip";
+    private int degradedFrameSkip;
+
+    /** The number of steps by which the decoder trades accuracy for speed */
+    private final static int MAX_DEGRADATION_LEVEL = 3;
+
+    private int[] absoluteBeamWidths;
+    private float[] logRelativeBeamWidths;
+    private boolean buildWordLattice;
+    private int frameSkip;
+
+
     public Decoder() {
 
     }
@@ -36,6 +99,13 @@ public class Decoder extends AbstractDecoder {
     public void newProperties(PropertySheet ps) throws PropertyException {
         super.newProperties(ps);
         featureBlockSize = ps.getInt(PROP_FEATURE_BLOCK_SIZE);
+        activeListFactories = ps.getComponentList(PROP_ACTIVE_LIST_FACTORIES, ActiveListFactory.class);
+        scorer = (SimpleAcousticScorer) ps.getComponent(PROP_SCORER);
+        targetRealTimeFactor = ps.getDouble(PROP_TARGET_REAL_TIME_FACTOR);
+        budgetCheckInterval = ps.getInt(PROP_BUDGET_CHECK_INTERVAL);
+        frameShiftInMs = ps.getInt(PROP_FRAME_SHIFT_MS);
+        beamReduction = ps.getDouble(PROP_BEAM_REDUCTION);
+        degradedFrameSkip = ps.getInt(PROP_DEGRADED_FRAME_SKIP);
     }
 
     /**
@@ -47,8 +117,39 @@ public class Decoder extends AbstractDecoder {
      * @param featureBlockSize
      */
     public Decoder( SearchManager searchManager, boolean fireNonFinalResults, boolean autoAllocate, List<ResultListener> resultListeners, int featureBlockSize) {
+        this(searchManager, fireNonFinalResults, autoAllocate, resultListeners, featureBlockSize,
+                Collections.<ActiveListFactory>emptyList(), null, 1.0, 10, 10, 0.5, 2);
+    }
+
+    /**
+     * @param searchManager
+     * @param fireNonFinalResults
+     * @param autoAllocate
+     * @param resultListeners
+     * @param featureBlockSize
+     * @param activeListFactories  the factories whose beams are narrowed when decoding within a budget falls behind
+     * @param scorer               the scorer of the search manager, which measures the time spent in the front end and
+     *                             skips frames when decoding falls behind, or null to enforce only the deadline
+     * @param targetRealTimeFactor the real time factor above which decoding within a budget is behind
+     * @param budgetCheckInterval  the number of frames after which decoding within a budget is checked
+     * @param frameShiftInMs       the frame shift in milliseconds
+     * @param beamReduction        the factor by which the absolute and the log relative beams are narrowed
+     * @param degradedFrameSkip    the frame skip of the scorer when decoding falls behind
+     */
+    public Decoder(SearchManager searchManager, boolean fireNonFinalResults, boolean autoAllocate,
+                   List<ResultListener> resultListeners, int featureBlockSize,
+                   List<ActiveListFactory> activeListFactories, SimpleAcousticScorer scorer,
+                   double targetRealTimeFactor, int budgetCheckInterval, int frameShiftInMs, double beamReduction,
+                   int degradedFrameSkip) {
         super( searchManager, fireNonFinalResults, autoAllocate, resultListeners);
         this.featureBlockSize = featureBlockSize;
+        this.activeListFactories = activeListFactories;
+        this.scorer = scorer;
+        this.targetRealTimeFactor = targetRealTimeFactor;
+        this.budgetCheckInterval = budgetCheckInterval;
+        this.frameShiftInMs = frameShiftInMs;
+        this.beamReduction = beamReduction;
+        this.degradedFrameSkip = degradedFrameSkip;
     }
     
     /**
@@ -71,4 +172,101 @@ public class Decoder extends AbstractDecoder {
         searchManager.stopRecognition();
         return result;
     }
+
+    /**
+     * Decode frames until recognition is complete or the deadline of the budget is reached, trading accuracy for
+     * speed whenever the decoding falls behind the target real time factor.
+     *
+     * @param referenceText the reference text (or null)
+     * @param budget        the time budget of the utterance
+     * @return a result, flagged as degraded if accuracy was traded for speed or the deadline was reached
+     */
+    public Result decode(String referenceText, DecodingBudget budget) {
+        saveSettings();
+        try {
+            searchManager.startRecognition();
+            long startTime = System.nanoTime();
+            long startFrontEndTime = scorer != null ? scorer.getFrontEndTime() : 0;
+            int level = 0;
+            Result result;
+            do {
+                result = searchManager.recognize(budgetCheckInterval);
+                if (result != null) {
+                    long time = System.currentTimeMillis();
+                    if (!result.isFinal() && budget.isExpired(time)) {
+                        logger.info("deadline reached after " + result.getFrameNumber() + " frames");
+                        result.setFinal(true);
+                        if (scorer != null)
+                            scorer.skipUtterance();
+                        level = MAX_DEGRADATION_LEVEL;
+                    } else if (!result.isFinal() && level < MAX_DEGRADATION_LEVEL && scorer != null) {
+                        // the time of the search and the scoring, without the front end and its input
+                        long searchTime = System.nanoTime() - startTime
+                                - (scorer.getFrontEndTime() - startFrontEndTime);
+                        if (searchTime > result.getFrameNumber() * frameShiftInMs * 1e6 * targetRealTimeFactor)
+                            degrade(++level);
+                    }
+                    result.setDegraded(level > 0);
+                    result.setReferenceText(referenceText);
+                    fireResultListeners(result);
+                }
+            } while (result != null && !result.isFinal());
+            searchManager.stopRecognition();
+            return result;
+        } finally {
+            restoreSettings();
+        }
+    }
+
+    /** Remembers the settings that are changed to trade accuracy for speed */
+    private void saveSettings() {
+        absoluteBeamWidths = new int[activeListFactories.size()];
+        logRelativeBeamWidths = new float[activeListFactories.size()];
+        for (int i = 0; i < activeListFactories.size(); i++) {
+            absoluteBeamWidths[i] = activeListFactories.get(i).getAbsoluteBeamWidth();
+            logRelativeBeamWidths[i] = activeListFactories.get(i).getLogRelativeBeamWidth();
+        }
+        if (searchManager instanceof TokenSearchManager)
+            buildWordLattice = ((TokenSearchManager) searchManager).getBuildWordLattice();
+        if (scorer != null)
+            frameSkip = scorer.getFrameSkip();
+    }
+
+    /** Restores the settings that were changed to trade accuracy for speed */
+    private void restoreSettings() {
+        for (int i = 0; i < activeListFactories.size(); i++) {
+            activeListFactories.get(i).setAbsoluteBeamWidth(absoluteBeamWidths[i]);
+            activeListFactories.get(i).setLogRelativeBeamWidth(logRelativeBeamWidths[i]);
+        }
+        if (searchManager instanceof TokenSearchManager)
+            ((TokenSearchManager) searchManager).setBuildWordLattice(buildWordLattice);
+        if (scorer != null && scorer.getFrameSkip() != frameSkip)
+            scorer.setFrameSkip(frameSkip);
+    }
+
+    /**
+     * Trades accuracy for speed by one more step
+     *
+     * @param level the number of the step
+     */
+    private void degrade(int level) {
+        logger.fine("behind real time, degrading the search to level " + level);
+        switch (level) {
+            case 1:
+                for (ActiveListFactory factory : activeListFactories) {
+                    if (factory.getAbsoluteBeamWidth() > 0)
+                        factory.setAbsoluteBeamWidth(
+                                Math.max(1, (int) Math.round(factory.getAbsoluteBeamWidth() * beamReduction)));
+                    factory.setLogRelativeBeamWidth((float) (factory.getLogRelativeBeamWidth() * beamReduction));
+                }
+                break;
+            case 2:
+                if (searchManager instanceof TokenSearchManager)
+                    ((TokenSearchManager) searchManager).setBuildWordLattice(false);
+                break;
+            default:
+                if (scorer != null && scorer.canSkipFrames() && scorer.getFrameSkip() < degradedFrameSkip)
+                    scorer.setFrameSkip(degradedFrameSkip);
+        }
+    }
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.decoder;
+
+/**
+ * The time budget of the decoding of one utterance. The budget has a deadline by which the decoder has to return a
+ * final result. The deadline may be set before the decoding starts, or later by another thread, for example when an
+ * endpointer detects the end of speech in live audio. A budget without a deadline only lets the decoder trade accuracy
+ * for speed when it falls behind real time.
+ *
+ * @see Decoder#decode(String, DecodingBudget)
+ */
+public class DecodingBudget {
+
+    /** The deadline of a budget that has no deadline */
+    public final static long NO_DEADLINE = Long.MAX_VALUE;
+
+    private volatile long deadline;
+
+
+    /** Creates a budget without a deadline */
+    public DecodingBudget() {
+        this(NO_DEADLINE);
+    }
+
+
+    /**
+     * Creates a budget
+     *
+     * @param deadline the time by which the result is due, in milliseconds as returned by
+     *                 <code>System.currentTimeMillis()</code>
+     */
+    public DecodingBudget(long deadline) {
+        this.deadline = deadline;
+    }
+
+
+    /**
+     * Creates a budget with a deadline relative to now
+     *
+     * @param timeout the time from now by which the result is due, in milliseconds
+     * @return the budget
+     */
+    public static DecodingBudget withTimeout(long timeout) {
+        DecodingBudget budget = new DecodingBudget();
+        budget.setTimeout(timeout);
+        return budget;
+    }
+
+
+    /**
+     * Sets the deadline
+     *
+     * @param deadline the time by which the result is due, in milliseconds as returned by
+     *                 <code>System.currentTimeMillis()</code>
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+
+    /**
+     * Sets the deadline relative to now
+     *
+     * @param timeout the time from now by which the result is due, in milliseconds
+     */
+    public void setTimeout(long timeout) {
+        deadline = System.currentTimeMillis() + timeout;
+    }
+
+
+    /** @return the time by which the result is due, or <code>NO_DEADLINE</code> */
+    public long getDeadline() {
+        return deadline;
+    }
+
+
+    /**
+     * Determines if the deadline has been reached
+     *
+     * @param time the current time in milliseconds
+     * @return true if the deadline has been reached
+     */
+    public boolean isExpired(long time) {
+        return time >= deadline;
+    }
+
+
+    @Override
+    public String toString() {
+        return deadline == NO_DEADLINE ? "no deadline"
+                : "deadline in " + (deadline - System.currentTimeMillis()) + " ms";
+    }
+}
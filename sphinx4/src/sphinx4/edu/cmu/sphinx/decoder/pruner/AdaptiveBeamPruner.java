@@ -0,0 +1,350 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.decoder.pruner;
+
+import edu.cmu.sphinx.decoder.scorer.SimpleAcousticScorer;
+import edu.cmu.sphinx.decoder.search.ActiveList;
+import edu.cmu.sphinx.decoder.search.ActiveListFactory;
+import edu.cmu.sphinx.decoder.search.Token;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.props.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A pruner that adapts the beams of the active list factories of a search manager from frame to frame. Like the
+ * {@link SimplePruner} it purges the active lists, but it also compares every emitting active list against a target:
+ * the number of active tokens before the purge, or the real time factor of the last frames, or both. If the load is
+ * above the target by more than the hysteresis, the absolute and relative beams of all factories are narrowed by the
+ * beam step, if it is below by more than the hysteresis they are widened. The beams stay between the configured
+ * limits, and an absolute beam that is not positive stays unlimited. Every utterance starts with the configured beams
+ * again, so easy utterances are decoded with narrow beams while hard ones get wider beams as long as the target
+ * allows.
+ * <p/>
+ * The beams of every frame of the last utterance are kept as its trajectory, which the {@link
+ * edu.cmu.sphinx.instrumentation.BeamTrajectoryTracker BeamTrajectoryTracker} reports.
+ */
+public class AdaptiveBeamPruner implements Pruner {
+
+    /** The property that defines the active list factories whose beams are adapted. */
+    @S4ComponentList(type = ActiveListFactory.class)
+    public final static String PROP_ACTIVE_LIST_FACTORIES = "activeListFactories";
+
+    /** The property that defines the number of active tokens per frame to aim at, zero to ignore the tokens. */
+    @S4Integer(defaultValue = 0)
+    public final static String PROP_TARGET_ACTIVE_TOKENS = "targetActiveTokens";
+
+    /**
+     * The property that defines the real time factor to aim at, zero to ignore the time. The real time factor of a
+     * frame is the time between the purges of two emitting lists without the time the scorer waited for the front end,
+     * divided by the frame shift and smoothed over the last frames. Waiting for live audio is thus not counted as load.
+     */
+    @S4Double(defaultValue = 0)
+    public final static String PROP_TARGET_REAL_TIME_FACTOR = "targetRealTimeFactor";
+
+    /**
+     * The property that defines the scorer of the search manager, which measures the time spent in the front end. It
+     * is required if a target real time factor is set.
+     */
+    @S4Component(type = SimpleAcousticScorer.class, mandatory = false)
+    public final static String PROP_SCORER = "scorer";
+
+    /** The property that defines the duration of a frame in milliseconds for the real time factor. */
+    @S4Integer(defaultValue = 10)
+    public final static String PROP_FRAME_SHIFT_MS = "frameShiftInMs";
+
+    /** The property that defines the relative deviation from the target within which the beams are kept. */
+    @S4Double(defaultValue = 0.2)
+    public final static String PROP_HYSTERESIS = "hysteresis";
+
+    /** The property that defines the factor by which the beams are narrowed or widened in a frame. */
+    @S4Double(defaultValue = 1.2)
+    public final static String PROP_BEAM_STEP = "beamStep";
+
+    /** The property that defines the narrowest absolute beam. */
+    @S4Integer(defaultValue = 100)
+    public final static String PROP_MIN_ABSOLUTE_BEAM_WIDTH = "minAbsoluteBeamWidth";
+
+    /** The property that defines the widest absolute beam. */
+    @S4Integer(defaultValue = 100000)
+    public final static String PROP_MAX_ABSOLUTE_BEAM_WIDTH = "maxAbsoluteBeamWidth";
+
+    /** The property that defines the narrowest relative beam, the largest one. */
+    @S4Double(defaultValue = 1E-30)
+    public final static String PROP_NARROWEST_RELATIVE_BEAM_WIDTH = "narrowestRelativeBeamWidth";
+
+    /** The property that defines the widest relative beam, the smallest one. */
+    @S4Double(defaultValue = 1E-200)
+    public final static String PROP_WIDEST_RELATIVE_BEAM_WIDTH = "widestRelativeBeamWidth";
+
+    /** The property that defines the log math of the relative beams. */
+    @S4Component(type = LogMath.class)
+    public final static String PROP_LOG_MATH = "logMath";
+
+    /** The weight of the real time factor of a frame in the smoothed real time factor. */
+    private final static double SMOOTHING = 0.2;
+
+    private String name;
+    private List<ActiveListFactory> activeListFactories;
+    private int targetActiveTokens;
+    private double targetRealTimeFactor;
+    private SimpleAcousticScorer scorer;
+    private int frameShiftMs;
+    private double hysteresis;
+    private double beamStep;
+    private int minAbsoluteBeamWidth;
+    private int maxAbsoluteBeamWidth;
+    private float logNarrowestRelativeBeamWidth;
+    private float logWidestRelativeBeamWidth;
+
+    private int[] initialAbsoluteBeamWidths;
+    private float[] initialLogRelativeBeamWidths;
+    private long lastFrameTime;
+    private long lastFrontEndTime;
+    private double realTimeFactor;
+    private final List<BeamWidths> trajectory = new ArrayList<BeamWidths>();
+
+
+    /**
+     * @param activeListFactories          the active list factories whose beams are adapted
+     * @param targetActiveTokens           the number of active tokens per frame to aim at, zero to ignore the tokens
+     * @param targetRealTimeFactor         the real time factor to aim at, zero to ignore the time
+     * @param scorer                       the scorer of the search manager, required for a target real time factor
+     * @param frameShiftMs                 the duration of a frame in milliseconds
+     * @param hysteresis                   the relative deviation from the target within which the beams are kept
+     * @param beamStep                     the factor by which the beams are narrowed or widened in a frame
+     * @param minAbsoluteBeamWidth         the narrowest absolute beam
+     * @param maxAbsoluteBeamWidth         the widest absolute beam
+     * @param narrowestRelativeBeamWidth   the narrowest relative beam
+     * @param widestRelativeBeamWidth      the widest relative beam
+     * @param logMath                      the log math of the relative beams
+     */
+    public AdaptiveBeamPruner(List<ActiveListFactory> activeListFactories, int targetActiveTokens,
+                              double targetRealTimeFactor, SimpleAcousticScorer scorer, int frameShiftMs,
+                              double hysteresis, double beamStep, int minAbsoluteBeamWidth, int maxAbsoluteBeamWidth,
+                              double narrowestRelativeBeamWidth, double widestRelativeBeamWidth, LogMath logMath) {
+        if (targetRealTimeFactor > 0 && scorer == null)
+            throw new IllegalArgumentException("a target real time factor requires the scorer");
+        this.activeListFactories = activeListFactories;
+        this.targetActiveTokens = targetActiveTokens;
+        this.targetRealTimeFactor = targetRealTimeFactor;
+        this.scorer = scorer;
+        this.frameShiftMs = frameShiftMs;
+        this.hysteresis = hysteresis;
+        this.beamStep = beamStep;
+        this.minAbsoluteBeamWidth = minAbsoluteBeamWidth;
+        this.maxAbsoluteBeamWidth = maxAbsoluteBeamWidth;
+        this.logNarrowestRelativeBeamWidth = logMath.linearToLog(narrowestRelativeBeamWidth);
+        this.logWidestRelativeBeamWidth = logMath.linearToLog(widestRelativeBeamWidth);
+    }
+
+
+    public AdaptiveBeamPruner() {
+    }
+
+
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        name = ps.getInstanceName();
+        activeListFactories = ps.getComponentList(PROP_ACTIVE_LIST_FACTORIES, ActiveListFactory.class);
+        targetActiveTokens = ps.getInt(PROP_TARGET_ACTIVE_TOKENS);
+        targetRealTimeFactor = ps.getDouble(PROP_TARGET_REAL_TIME_FACTOR);
+        scorer = (SimpleAcousticScorer) ps.getComponent(PROP_SCORER);
+        if (targetRealTimeFactor > 0 && scorer == null)
+            throw new PropertyException(name, PROP_SCORER, "a target real time factor requires the scorer");
+        frameShiftMs = ps.getInt(PROP_FRAME_SHIFT_MS);
+        hysteresis = ps.getDouble(PROP_HYSTERESIS);
+        beamStep = ps.getDouble(PROP_BEAM_STEP);
+        minAbsoluteBeamWidth = ps.getInt(PROP_MIN_ABSOLUTE_BEAM_WIDTH);
+        maxAbsoluteBeamWidth = ps.getInt(PROP_MAX_ABSOLUTE_BEAM_WIDTH);
+        LogMath logMath = (LogMath) ps.getComponent(PROP_LOG_MATH);
+        logNarrowestRelativeBeamWidth = logMath.linearToLog(ps.getDouble(PROP_NARROWEST_RELATIVE_BEAM_WIDTH));
+        logWidestRelativeBeamWidth = logMath.linearToLog(ps.getDouble(PROP_WIDEST_RELATIVE_BEAM_WIDTH));
+        initialAbsoluteBeamWidths = null;
+    }
+
+
+    public String getName() {
+        return name;
+    }
+
+
+    /** Starts the pruner with the configured beams. */
+    @Override
+    public void startRecognition() {
+        if (initialAbsoluteBeamWidths == null) {
+            initialAbsoluteBeamWidths = new int[activeListFactories.size()];
+            initialLogRelativeBeamWidths = new float[activeListFactories.size()];
+            for (int i = 0; i < activeListFactories.size(); i++) {
+                initialAbsoluteBeamWidths[i] = activeListFactories.get(i).getAbsoluteBeamWidth();
+                initialLogRelativeBeamWidths[i] = activeListFactories.get(i).getLogRelativeBeamWidth();
+            }
+        }
+        for (int i = 0; i < activeListFactories.size(); i++) {
+            activeListFactories.get(i).setAbsoluteBeamWidth(initialAbsoluteBeamWidths[i]);
+            activeListFactories.get(i).setLogRelativeBeamWidth(initialLogRelativeBeamWidths[i]);
+        }
+        lastFrameTime = 0;
+        realTimeFactor = -1;
+        trajectory.clear();
+    }
+
+
+    /**
+     * Purges the given active list and adapts the beams of the lists that are created next.
+     *
+     * @param activeList the active list to prune
+     * @return the pruned list
+     */
+    @Override
+    public ActiveList prune(ActiveList activeList) {
+        int activeTokens = activeList.size();
+        Token bestToken = activeList.getBestToken();
+        ActiveList prunedList = activeList.purge();
+        if (bestToken != null && bestToken.isEmitting())
+            adapt(activeTokens);
+        return prunedList;
+    }
+
+
+    /**
+     * Narrows or widens the beams for the load of a frame.
+     *
+     * @param activeTokens the number of active tokens of the frame
+     */
+    private void adapt(int activeTokens) {
+        double load = 0;
+        if (targetActiveTokens > 0)
+            load = (double) activeTokens / targetActiveTokens;
+        if (targetRealTimeFactor > 0) {
+            long now = System.nanoTime();
+            long frontEndTime = scorer.getFrontEndTime();
+            if (lastFrameTime != 0) {
+                // only the search and the scoring of the frame, not the wait for its feature
+                long frameTime = (now - lastFrameTime) - (frontEndTime - lastFrontEndTime);
+                double frameRealTimeFactor = frameTime / (frameShiftMs * 1e6);
+                realTimeFactor = realTimeFactor < 0 ? frameRealTimeFactor
+                        : realTimeFactor + (frameRealTimeFactor - realTimeFactor) * SMOOTHING;
+                load = Math.max(load, realTimeFactor / targetRealTimeFactor);
+            }
+            lastFrameTime = now;
+            lastFrontEndTime = frontEndTime;
+        }
+
+        if (load > 1 + hysteresis)
+            scaleBeams(1 / beamStep);
+        else if (load > 0 && load < 1 - hysteresis)
+            scaleBeams(beamStep);
+
+        int[] absoluteBeamWidths = new int[activeListFactories.size()];
+        float[] logRelativeBeamWidths = new float[activeListFactories.size()];
+        for (int i = 0; i < absoluteBeamWidths.length; i++) {
+            absoluteBeamWidths[i] = activeListFactories.get(i).getAbsoluteBeamWidth();
+            logRelativeBeamWidths[i] = activeListFactories.get(i).getLogRelativeBeamWidth();
+        }
+        trajectory.add(new BeamWidths(activeTokens, absoluteBeamWidths, logRelativeBeamWidths));
+    }
+
+
+    /**
+     * Scales the beams of all factories within the limits.
+     *
+     * @param factor the factor, above one to widen the beams
+     */
+    private void scaleBeams(double factor) {
+        for (ActiveListFactory factory : activeListFactories) {
+            int absoluteBeamWidth = factory.getAbsoluteBeamWidth();
+            if (absoluteBeamWidth > 0) {
+                long scaled = Math.round(absoluteBeamWidth * factor);
+                // a narrow beam must be able to grow by at least one token
+                if (factor > 1 && scaled == absoluteBeamWidth)
+                    scaled++;
+                factory.setAbsoluteBeamWidth((int) Math.max(minAbsoluteBeamWidth,
+                        Math.min(maxAbsoluteBeamWidth, scaled)));
+            }
+            // the relative beams are negative, a larger magnitude is a wider beam
+            double logRelativeBeamWidth = factory.getLogRelativeBeamWidth() * factor;
+            factory.setLogRelativeBeamWidth((float) Math.max(logWidestRelativeBeamWidth,
+                    Math.min(logNarrowestRelativeBeamWidth, logRelativeBeamWidth)));
+        }
+    }
+
+
+    /** @return the beams of every emitting frame of the current or last utterance */
+    public List<BeamWidths> getTrajectory() {
+        return Collections.unmodifiableList(trajectory);
+    }
+
+
+    /** Performs post-recognition cleanup. */
+    @Override
+    public void stopRecognition() {
+    }
+
+
+    @Override
+    public void allocate() {
+    }
+
+
+    @Override
+    public void deallocate() {
+    }
+
+
+    /** The beams of the factories after a frame. */
+    public static class BeamWidths {
+
+        private final int activeTokens;
+        private final int[] absoluteBeamWidths;
+        private final float[] logRelativeBeamWidths;
+
+
+        BeamWidths(int activeTokens, int[] absoluteBeamWidths, float[] logRelativeBeamWidths) {
+            this.activeTokens = activeTokens;
+            this.absoluteBeamWidths = absoluteBeamWidths;
+            this.logRelativeBeamWidths = logRelativeBeamWidths;
+        }
+
+
+        /** @return the number of active list factories */
+        public int getFactoryCount() {
+            return absoluteBeamWidths.length;
+        }
+
+
+        /** @return the number of active tokens of the frame before the purge */
+        public int getActiveTokens() {
+            return activeTokens;
+        }
+
+
+        /**
+         * @param factory the index of the active list factory
+         * @return the absolute beam width of the factory for the next frame
+         */
+        public int getAbsoluteBeamWidth(int factory) {
+            return absoluteBeamWidths[factory];
+        }
+
+
+        /**
+         * @param factory the index of the active list factory
+         * @return the relative beam width in the LogMath log base of the factory for the next frame
+         */
+        public float getLogRelativeBeamWidth(int factory) {
+            return logRelativeBeamWidths[factory];
+        }
+    }
+}
@@ -5,12 +5,21 @@ import edu.cmu.sphinx.frontend.*;
 import edu.cmu.sphinx.frontend.endpoint.SpeechEndSignal;
 import edu.cmu.sphinx.frontend.endpoint.SpeechStartSignal;
 import edu.cmu.sphinx.frontend.util.DataUtil;
+import edu.cmu.sphinx.linguist.HMMSearchState;
+import edu.cmu.sphinx.linguist.acoustic.HMMState;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Loader;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.SenoneHMMState;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.SenoneScoringContext;
 import edu.cmu.sphinx.util.props.ConfigurableAdapter;
 import edu.cmu.sphinx.util.props.PropertyException;
 import edu.cmu.sphinx.util.props.PropertySheet;
+import edu.cmu.sphinx.util.props.S4Boolean;
 import edu.cmu.sphinx.util.props.S4Component;
+import edu.cmu.sphinx.util.props.S4Integer;
 
+import java.io.IOException;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -38,6 +47,57 @@ public class SimpleAcousticScorer extends ConfigurableAdapter implements Acousti
     public final static String SCORE_NORMALIZER = "scoreNormalizer";
     private ScoreNormalizer scoreNormalizer;
 
+    /**
+     * The property that makes the scorer keep the senone scores of its decoder in a private {@link
+     * SenoneScoringContext} instead of in the senones. Use this when several recognizers share an acoustic model, see
+     * {@link edu.cmu.sphinx.linguist.acoustic.tiedstate.SharedLoader SharedLoader}.
+     */
+    @S4Boolean(defaultValue = false)
+    public final static String PROP_SCORING_CONTEXT = "scoringContext";
+    private boolean useScoringContext;
+    private SenoneScoringContext scoringContext;
+
+    /**
+     * The loader of the acoustic model that is scored. A private scoring context keeps one score per senone of the
+     * senone pool of this loader, so the loader is required whenever the scorer uses a scoring context.
+     */
+    @S4Component(type = Loader.class, mandatory = false)
+    public final static String PROP_LOADER = "loader";
+    private Loader loader;
+
+    /**
+     * The property that makes the scorer collect the distinct senones of all active states before a frame is scored
+     * and score each of them once into a table indexed by senone id. The tokens then only read the table. This implies
+     * a private scoring context.
+     */
+    @S4Boolean(defaultValue = false)
+    public final static String PROP_SENONE_SCORE_TABLE = "senoneScoreTable";
+    private boolean senoneScoreTable;
+
+    /**
+     * The property that makes the scorer score the senones only on every n-th frame of an utterance. The frames in
+     * between get the senone scores of the last scored frame, or scores interpolated between the scored frames around
+     * them, see {@link #PROP_INTERPOLATE_SKIPPED_FRAMES}. Unlike dropping frames in the front end this keeps the time
+     * base, so the HMMs still take one transition per frame. This trades some accuracy for speed and implies a private
+     * scoring context. The default of one scores every frame.
+     */
+    @S4Integer(defaultValue = 1, range = {1, Integer.MAX_VALUE})
+    public final static String PROP_FRAME_SKIP = "frameSkip";
+    private int frameSkip = 1;
+
+    /**
+     * The property that makes the scorer interpolate the senone scores of skipped frames between the scored frames
+     * around them instead of reusing the scores of the last scored frame. The next scored frame is read ahead from the
+     * front end, which delays the decoder by the skipped frames.
+     */
+    @S4Boolean(defaultValue = false)
+    public final static String PROP_INTERPOLATE_SKIPPED_FRAMES = "interpolateSkippedFrames";
+    private boolean interpolateSkippedFrames;
+
+    private int frameNumber;
+    private long frontEndTime;
+    private final LinkedList<Data> lookahead = new LinkedList<Data>();
+
     private Boolean useSpeechSignals;
 
     @Override
@@ -45,6 +105,14 @@ public class SimpleAcousticScorer extends ConfigurableAdapter implements Acousti
         super.newProperties(ps);
         this.frontEnd = (BaseDataProcessor) ps.getComponent(FEATURE_FRONTEND);
         this.scoreNormalizer = (ScoreNormalizer) ps.getComponent(SCORE_NORMALIZER);
+        this.senoneScoreTable = ps.getBoolean(PROP_SENONE_SCORE_TABLE);
+        this.frameSkip = ps.getInt(PROP_FRAME_SKIP);
+        this.interpolateSkippedFrames = ps.getBoolean(PROP_INTERPOLATE_SKIPPED_FRAMES);
+        this.useScoringContext = ps.getBoolean(PROP_SCORING_CONTEXT) || senoneScoreTable || frameSkip > 1;
+        this.loader = (Loader) ps.getComponent(PROP_LOADER);
+        if (useScoringContext && loader == null)
+            throw new PropertyException(ps.getInstanceName(), PROP_LOADER,
+                    "the loader of the acoustic model is required to size the senone scoring context");
     }
 
     /**
@@ -58,6 +126,58 @@ public class SimpleAcousticScorer extends ConfigurableAdapter implements Acousti
         this.scoreNormalizer = scoreNormalizer;
     }
 
+    /**
+     * @param frontEnd the frontend to retrieve features from for scoring
+     * @param scoreNormalizer optional post-processor for computed scores that will normalize scores. If not set, no normalization will
+     * applied and the token scores will be returned unchanged.
+     * @param loader the loader of the acoustic model, if not null the senone scores are kept in a scoring context
+     * private to this scorer
+     */
+    public SimpleAcousticScorer(BaseDataProcessor frontEnd, ScoreNormalizer scoreNormalizer, Loader loader) {
+        this(frontEnd, scoreNormalizer);
+        this.loader = loader;
+        this.useScoringContext = loader != null;
+    }
+
+    /**
+     * @param frontEnd the frontend to retrieve features from for scoring
+     * @param scoreNormalizer optional post-processor for computed scores that will normalize scores. If not set, no normalization will
+     * applied and the token scores will be returned unchanged.
+     * @param loader the loader of the acoustic model, if not null the senone scores are kept in a scoring context
+     * private to this scorer
+     * @param senoneScoreTable if true, the distinct active senones are scored into a table before the tokens are
+     * scored, which requires the loader
+     */
+    public SimpleAcousticScorer(BaseDataProcessor frontEnd, ScoreNormalizer scoreNormalizer, Loader loader,
+                                boolean senoneScoreTable) {
+        this(frontEnd, scoreNormalizer, loader);
+        if (senoneScoreTable && loader == null)
+            throw new IllegalArgumentException("the senone score table requires the loader of the acoustic model");
+        this.senoneScoreTable = senoneScoreTable;
+    }
+
+    /**
+     * @param frontEnd the frontend to retrieve features from for scoring
+     * @param scoreNormalizer optional post-processor for computed scores that will normalize scores. If not set, no normalization will
+     * applied and the token scores will be returned unchanged.
+     * @param loader the loader of the acoustic model, if not null the senone scores are kept in a scoring context
+     * private to this scorer
+     * @param senoneScoreTable if true, the distinct active senones are scored into a table before the tokens are
+     * scored, which requires the loader
+     * @param frameSkip the senones are scored on every frameSkip-th frame only, more than one requires the loader
+     * @param interpolateSkippedFrames if true, the scores of skipped frames are interpolated instead of reused
+     */
+    public SimpleAcousticScorer(BaseDataProcessor frontEnd, ScoreNormalizer scoreNormalizer, Loader loader,
+                                boolean senoneScoreTable, int frameSkip, boolean interpolateSkippedFrames) {
+        this(frontEnd, scoreNormalizer, loader, senoneScoreTable);
+        if (frameSkip < 1)
+            throw new IllegalArgumentException("frame skip must be at least 1: " + frameSkip);
+        if (frameSkip > 1 && loader == null)
+            throw new IllegalArgumentException("skipping frames requires the loader of the acoustic model");
+        this.frameSkip = frameSkip;
+        this.interpolateSkippedFrames = interpolateSkippedFrames;
+    }
+
     public SimpleAcousticScorer() {
     }
 
@@ -80,9 +200,16 @@ public class SimpleAcousticScorer extends ConfigurableAdapter implements Acousti
             if (data == null || scoreableList.isEmpty())
             	return null;
             
-            // convert the data to FloatData if not yet done
-            if (data instanceof DoubleData)
-                data = DataUtil.DoubleData2FloatData((DoubleData) data);
+            int offset = frameNumber++ % frameSkip;
+            if (offset != 0) {
+                // score from the last scored frame, or interpolate to the next one
+                Data next = interpolateSkippedFrames ? peekData(frameSkip - offset) : null;
+                scoringContext.beginSkippedFrame(data, next, (float) offset / frameSkip);
+            } else if (senoneScoreTable) {
+                fillSenoneScoreTable(scoreableList, data);
+            } else if (frameSkip > 1) {
+                scoringContext.beginFrame(data);
+            }
 
             Scoreable bestToken = doScoring(scoreableList, data);
 
@@ -97,18 +224,104 @@ public class SimpleAcousticScorer extends ConfigurableAdapter implements Acousti
         }
     }
 
+    /** @return the senones are scored on every frameSkip-th frame only */
+    public int getFrameSkip() {
+        return frameSkip;
+    }
+
+    /** @return true if the scorer can skip frames, which requires the loader of the acoustic model */
+    public boolean canSkipFrames() {
+        return loader != null;
+    }
+
+    /**
+     * Changes the frame skip, for example to trade accuracy for speed in the middle of an utterance. The next frame is
+     * always scored.
+     *
+     * @param frameSkip the senones are scored on every frameSkip-th frame only
+     * @throws IllegalArgumentException if the frame skip is less than one
+     * @throws IllegalStateException if frames are skipped without the loader of the acoustic model
+     */
+    public void setFrameSkip(int frameSkip) {
+        if (frameSkip < 1)
+            throw new IllegalArgumentException("frame skip must be at least 1: " + frameSkip);
+        if (frameSkip > 1 && scoringContext == null) {
+            if (!canSkipFrames())
+                throw new IllegalStateException("skipping frames requires the loader of the acoustic model");
+            useScoringContext = true;
+            scoringContext = new SenoneScoringContext(loader.getSenonePool());
+        }
+        this.frameSkip = frameSkip;
+        frameNumber = 0;
+    }
+
+    /**
+     * Discards the features up to the end of the current utterance, so that the next recognition starts with the next
+     * utterance although the search of this one stopped early.
+     */
+    public void skipUtterance() {
+        Data data;
+        do {
+            data = getNextData();
+        } while (data != null && !(data instanceof SpeechEndSignal || data instanceof DataEndSignal));
+    }
+
     private Data getNextData() {
-        Data data = frontEnd.getData();
+        Data data = lookahead.isEmpty() ? readData() : lookahead.removeFirst();
 
         // reconfigure the scorer for the coming data stream
         if (data instanceof DataStartSignal)
             handleDataStartSignal((DataStartSignal)data);
         if (data instanceof DataEndSignal)
             handleDataEndSignal((DataEndSignal)data);
+        // the first frame of an utterance is always scored
+        if (data instanceof DataStartSignal || data instanceof SpeechStartSignal)
+            frameNumber = 0;
 
         return data;
     }
 
+    /**
+     * Returns the time the scorer has spent waiting for the data of the front end. This is the time of the feature
+     * extraction and the time the front end blocks on its input, such as live audio, so subtracting it from the time
+     * of the decoding leaves the time of the search and the scoring.
+     *
+     * @return the total time in nanoseconds
+     */
+    public long getFrontEndTime() {
+        return frontEndTime;
+    }
+
+    /** @return the next data of the front end, with features converted to FloatData */
+    private Data readData() {
+        long start = System.nanoTime();
+        Data data = frontEnd.getData();
+        frontEndTime += System.nanoTime() - start;
+        if (data instanceof DoubleData)
+            data = DataUtil.DoubleData2FloatData((DoubleData) data);
+        return data;
+    }
+
+    /**
+     * Reads ahead to a coming feature without consuming it.
+     *
+     * @param distance the number of frames from the current frame to the feature
+     * @return the feature, or <code>null</code> if the front end has a signal or no data before it
+     */
+    private Data peekData(int distance) {
+        for (int i = 0; i < distance; i++) {
+            if (i == lookahead.size()) {
+                Data data = readData();
+                if (data == null)
+                    return null;
+                lookahead.add(data);
+            }
+            if (lookahead.get(i) instanceof Signal)
+                return null;
+        }
+        return lookahead.get(distance - 1);
+    }
+
     /** Handles the first element in a feature-stream.
      * @param dataStartSignal*/
     protected void handleDataStartSignal(DataStartSignal dataStartSignal) {
@@ -159,15 +372,53 @@ public class SimpleAcousticScorer extends ConfigurableAdapter implements Acousti
      * @throws Exception 
      */
     protected <T extends Scoreable> T doScoring(List<T> scoreableList, Data data) throws Exception {
-        Iterator<T> i = scoreableList.iterator();
-        T best = i.next();
-        best.calculateScore(data);
-        while (i.hasNext()) {
-            T scoreable = i.next();
-            if (scoreable.calculateScore(data) > best.getScore())
-                best = scoreable;
+        SenoneScoringContext previousContext = null;
+        if (scoringContext != null)
+            previousContext = SenoneScoringContext.setCurrent(scoringContext);
+        try {
+            Iterator<T> i = scoreableList.iterator();
+            T best = i.next();
+            best.calculateScore(data);
+            while (i.hasNext()) {
+                T scoreable = i.next();
+                if (scoreable.calculateScore(data) > best.getScore())
+                    best = scoreable;
+            }
+            return best;
+        } finally {
+            if (scoringContext != null)
+                SenoneScoringContext.setCurrent(previousContext);
         }
-        return best;
+    }
+
+    /**
+     * Collects the distinct senones of the active states and scores each of them once into the scoring context.
+     *
+     * @param scoreableList the scoreables of the frame
+     * @param data          the feature of the frame
+     * @throws Exception
+     */
+    private void fillSenoneScoreTable(List<? extends Scoreable> scoreableList, Data data) throws Exception {
+        scoringContext.beginFrame(data);
+        for (Scoreable scoreable : scoreableList) {
+            if (scoreable instanceof Token && ((Token) scoreable).getSearchState() instanceof HMMSearchState) {
+                HMMState state = ((HMMSearchState) ((Token) scoreable).getSearchState()).getHMMState();
+                if (state instanceof SenoneHMMState)
+                    scoringContext.addActive(((SenoneHMMState) state).getSenone());
+            }
+        }
+        scoreSenones(scoringContext, scoringContext.getActiveCount());
+    }
+
+    /**
+     * Scores the active senones collected in the scoring context, which can be changed by overriding this method.
+     *
+     * @param context     the scoring context that holds the active senones
+     * @param numSenones  the number of active senones
+     * @throws Exception
+     */
+    protected void scoreSenones(SenoneScoringContext context, int numSenones) throws Exception {
+        context.scoreActive(0, numSenones);
     }
 
     // Even if we don't do any meaningful allocation here, we implement the methods because
@@ -175,6 +426,15 @@ public class SimpleAcousticScorer extends ConfigurableAdapter implements Acousti
     
     @Override
     public void allocate() {
+        // the acoustic model has been loaded by the linguist, so the size of its senone pool is known
+        if (useScoringContext && scoringContext == null) {
+            try {
+                loader.load();
+            } catch (IOException e) {
+                throw new RuntimeException("loading the acoustic model of the scoring context failed", e);
+            }
+            scoringContext = new SenoneScoringContext(loader.getSenonePool());
+        }
     }
 
     @Override
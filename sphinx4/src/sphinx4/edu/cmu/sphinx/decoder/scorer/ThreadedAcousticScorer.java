@@ -14,6 +14,7 @@ package edu.cmu.sphinx.decoder.scorer;
 import edu.cmu.sphinx.frontend.Data;
 import edu.cmu.sphinx.frontend.BaseDataProcessor;
 import edu.cmu.sphinx.frontend.DataProcessingException;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.SenoneScoringContext;
 import edu.cmu.sphinx.util.CustomThreadFactory;
 import edu.cmu.sphinx.util.props.PropertyException;
 import edu.cmu.sphinx.util.props.PropertySheet;
@@ -198,4 +199,31 @@ public class ThreadedAcousticScorer extends SimpleAcousticScorer {
         return super.doScoring(scoreableList, data);
     }
 
+    @Override
+    protected void scoreSenones(final SenoneScoringContext context, int numSenones) throws Exception {
+        if (numThreads > 1) {
+            int jobSize = Math.max(numSenones / numThreads, minScoreablesPerThread);
+
+            if (jobSize < numSenones) {
+                List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+                for (int from = 0, to = jobSize; from < numSenones; from = to, to += jobSize) {
+                    final int jobFrom = from;
+                    final int jobTo = Math.min(to, numSenones);
+                    tasks.add(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            context.scoreActive(jobFrom, jobTo);
+                            return null;
+                        }
+                    });
+                }
+
+                for (Future<Void> result : executorService.invokeAll(tasks))
+                    result.get();
+                return;
+            }
+        }
+        super.scoreSenones(context, numSenones);
+    }
+
 }
@@ -74,6 +74,38 @@ public abstract class ActiveListFactory implements Configurable {
     }
 
 
+    /** @return the absolute beam width of the active lists that are created next, not positive for no limit */
+    public int getAbsoluteBeamWidth() {
+        return absoluteBeamWidth;
+    }
+
+
+    /**
+     * Sets the absolute beam width of the active lists that are created next. The lists that exist keep their beam.
+     *
+     * @param absoluteBeamWidth the absolute beam width, not positive for no limit
+     */
+    public void setAbsoluteBeamWidth(int absoluteBeamWidth) {
+        this.absoluteBeamWidth = absoluteBeamWidth;
+    }
+
+
+    /** @return the relative beam width in the LogMath log base of the active lists that are created next */
+    public float getLogRelativeBeamWidth() {
+        return logRelativeBeamWidth;
+    }
+
+
+    /**
+     * Sets the relative beam width of the active lists that are created next. The lists that exist keep their beam.
+     *
+     * @param logRelativeBeamWidth the relative beam width in the LogMath log base
+     */
+    public void setLogRelativeBeamWidth(float logRelativeBeamWidth) {
+        this.logRelativeBeamWidth = logRelativeBeamWidth;
+    }
+
+
     /**
      * Creates a new active list of a particular type
      *
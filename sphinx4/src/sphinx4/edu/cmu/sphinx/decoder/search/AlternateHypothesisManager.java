@@ -97,5 +97,32 @@ public class AlternateHypothesisManager {
 	public boolean hasAlternatePredecessors(Token token) {
 		return viterbiLoserMap.containsKey(token);
 	}
+
+
+    /**
+     * Forgets all alternate hypotheses that lie before the given frame. Both the losers recorded for tokens before
+     * the frame and the alternate predecessors from before the frame are dropped, so that history that has been
+     * committed by the search manager is no longer reachable from this manager.
+     *
+     * @param frameNumber the first frame for which alternate hypotheses are kept
+     */
+    public void removeBefore(int frameNumber) {
+        for (Iterator<Map.Entry<Token, List<Token>>> i = viterbiLoserMap.entrySet().iterator(); i.hasNext();) {
+            Map.Entry<Token, List<Token>> entry = i.next();
+            if (entry.getKey().getFrameNumber() < frameNumber) {
+                i.remove();
+                continue;
+            }
+            List<Token> list = entry.getValue();
+            if (list == null)
+                continue;
+            for (Iterator<Token> j = list.iterator(); j.hasNext();) {
+                if (j.next().getFrameNumber() < frameNumber)
+                    j.remove();
+            }
+            if (list.isEmpty())
+                i.remove();
+        }
+    }
 }
 
@@ -39,7 +39,7 @@ public class Token implements Scoreable {
     private static final DecimalFormat scoreFmt = new DecimalFormat("0.0000000E00");
     private static final DecimalFormat numFmt = new DecimalFormat("0000");
 
-    private final Token predecessor;
+    private Token predecessor;
 
     private final float logLanguageScore;
     private float logTotalScore;
@@ -123,6 +123,17 @@ public class Token implements Scoreable {
     }
 
 
+    /**
+     * Replaces the predecessor of this token. Search managers that decode unbounded streams use this to cut off
+     * history that has already been committed, so that it can be garbage collected.
+     *
+     * @param predecessor the new predecessor, or null to drop all of the history of this token
+     */
+    void setPredecessor(Token predecessor) {
+        this.predecessor = predecessor;
+    }
+
+
     /**
      * Returns the frame number for this token. Note that for tokens that are associated with non-emitting states, the
      * frame number represents the next frame number.  For emitting states, the frame number represents the current
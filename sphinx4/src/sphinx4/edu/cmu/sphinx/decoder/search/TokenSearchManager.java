@@ -34,6 +34,21 @@ abstract public class TokenSearchManager implements SearchManager {
         keepAllTokens = ps.getBoolean(PROP_KEEP_ALL_TOKENS);
     }
 
+    /** @return true if a word lattice is built */
+    public boolean getBuildWordLattice() {
+        return buildWordLattice;
+    }
+
+    /**
+     * Enables or disables building the word lattice. Disabling it in the middle of an utterance saves the bookkeeping
+     * of the alternate hypotheses from then on, the lattice of the utterance is incomplete.
+     *
+     * @param buildWordLattice if true, a word lattice is built
+     */
+    public void setBuildWordLattice(boolean buildWordLattice) {
+        this.buildWordLattice = buildWordLattice;
+    }
+
     /**
      * Find the token to use as a predecessor in resultList given a candidate
      * predecessor. There are three cases here:
@@ -99,6 +99,23 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
     // TODO: this should be a more meaningful default e.g. the common 1E-80
     public final static String PROP_RELATIVE_BEAM_WIDTH = "relativeBeamWidth";
 
+    /**
+     * The property that controls how often, in frames, the history shared by all active tokens is committed.
+     * Committing finds the common ancestor of all active tokens, keeps only the word tokens before it and drops
+     * the rest of the trellis and the lattice losers behind it. This keeps memory bounded when decoding
+     * continuous audio without endpoints. Setting this property to zero (the default) disables committing.
+     */
+    @S4Integer(defaultValue = 0)
+    public final static String PROP_COMMIT_INTERVAL = "commitInterval";
+
+    /**
+     * The property that limits the number of committed words that are kept in the token history. When the limit
+     * is exceeded the oldest committed words are dropped from the result. A negative value (the default) keeps all
+     * committed words.
+     */
+    @S4Integer(defaultValue = -1)
+    public final static String PROP_MAX_COMMITTED_WORDS = "maxCommittedWords";
+
     // -----------------------------------
     // Configured Subcomponents
     // -----------------------------------
@@ -118,6 +135,8 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
     private float relativeBeamWidth;
     private float acousticLookaheadFrames;
     private int maxLatticeEdges = 100;
+    private int commitInterval;
+    private int maxCommittedWords = -1;
 
     // -----------------------------------
     // Instrumentation
@@ -143,6 +162,9 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
     // private TokenTracker tokenTracker;
     // private TokenTypeTracker tokenTypeTracker;
     private boolean streamEnd;
+    private Token lastAncestor;
+    private Deque<Token> committedTokens;
+    private int committedWordCount;
 
     /**
      * 
@@ -213,6 +235,9 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
         acousticLookaheadFrames = ps.getFloat(PROP_ACOUSTIC_LOOKAHEAD_FRAMES);
 
         relativeBeamWidth = logMath.linearToLog(ps.getDouble(PROP_RELATIVE_BEAM_WIDTH));
+
+        commitInterval = ps.getInt(PROP_COMMIT_INTERVAL);
+        maxCommittedWords = ps.getInt(PROP_MAX_COMMITTED_WORDS);
     }
 
 
@@ -298,6 +323,10 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
     private boolean recognize() {
 
         activeList = activeListManager.getEmittingList();
+        if (commitInterval > 0 && currentFrameNumber > 0
+                && (currentFrameNumber % commitInterval) == 0) {
+            commitHistory();
+        }
         boolean more = scoreTokens();
 
         if (more) {
@@ -354,6 +383,9 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
         if (buildWordLattice) {
             loserManager = new AlternateHypothesisManager(maxLatticeEdges);
         }
+        lastAncestor = null;
+        committedTokens = new ArrayDeque<Token>();
+        committedWordCount = 0;
 
         SearchState state = searchGraph.getInitialState();
 
@@ -528,6 +560,101 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
     }
 
 
+    /**
+     * Commits the history shared by all live tokens. The common ancestor of the active and result tokens is
+     * located, the word tokens before it are relinked into a compact chain that carries the committed words and
+     * everything else behind the ancestor, including lattice losers, is released. Note that the committed part of
+     * the history carries no feature data, so word timings are not available for committed words.
+     */
+    private void commitHistory() {
+        Token ancestor = findCommonAncestor();
+        if (ancestor == null || ancestor == lastAncestor) {
+            return;
+        }
+
+        Token tail = committedTokens.peekLast();
+        List<Token> committed = new ArrayList<Token>();
+        for (Token t = ancestor.getPredecessor(); t != null && t != tail; t = t.getPredecessor()) {
+            if (t.isWord() || t.getSearchState() == null) {
+                committed.add(t);
+            }
+        }
+
+        for (int i = committed.size() - 1; i >= 0; i--) {
+            Token t = committed.get(i);
+            t.setPredecessor(tail);
+            committedTokens.addLast(t);
+            if (t.isWord()) {
+                committedWordCount++;
+            }
+            tail = t;
+        }
+
+        if (maxCommittedWords >= 0 && committedWordCount > maxCommittedWords) {
+            while (committedWordCount > maxCommittedWords) {
+                if (committedTokens.removeFirst().isWord()) {
+                    committedWordCount--;
+                }
+            }
+            if (!committedTokens.isEmpty()) {
+                committedTokens.peekFirst().setPredecessor(null);
+            }
+        }
+
+        ancestor.setPredecessor(committedTokens.peekLast());
+        if (loserManager != null) {
+            loserManager.removeBefore(ancestor.getFrameNumber());
+        }
+        lastAncestor = ancestor;
+    }
+
+
+    /**
+     * Finds the most recent token that is shared by the histories of all active and result tokens. Since every live
+     * token descends from the previously committed ancestor, no history walk goes further back than that.
+     *
+     * @return the common ancestor or null if there are no live tokens
+     */
+    private Token findCommonAncestor() {
+        List<Token> path = new ArrayList<Token>();
+        Map<Token, Integer> pathIndex = new HashMap<Token, Integer>();
+        Set<Token> visited = new HashSet<Token>();
+        int ancestorIndex = 0;
+
+        List<Token> liveTokens = new ArrayList<Token>(activeList.getTokens());
+        if (resultList != null) {
+            liveTokens.addAll(resultList);
+        }
+
+        for (Token token : liveTokens) {
+            if (path.isEmpty()) {
+                for (Token t = token; t != null; t = t.getPredecessor()) {
+                    pathIndex.put(t, path.size());
+                    path.add(t);
+                    if (t == lastAncestor) {
+                        break;
+                    }
+                }
+                continue;
+            }
+            for (Token t = token; t != null; t = t.getPredecessor()) {
+                Integer index = pathIndex.get(t);
+                if (index != null) {
+                    ancestorIndex = Math.max(ancestorIndex, index);
+                    break;
+                }
+                if (!visited.add(t)) {
+                    break;
+                }
+                if (t.getPredecessor() == null) {
+                    return null;
+                }
+            }
+        }
+        return path.isEmpty() ? null : path.get(ancestorIndex);
+    }
+
+
     /** Removes unpromising branches from the active list */
     protected void pruneBranches() {
         pruneTimer.start();
@@ -0,0 +1,608 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.frontend;
+
+import edu.cmu.sphinx.frontend.endpoint.SpeechEndSignal;
+import edu.cmu.sphinx.frontend.endpoint.SpeechStartSignal;
+import edu.cmu.sphinx.frontend.feature.LiveCMN;
+import edu.cmu.sphinx.frontend.filter.Preemphasizer;
+import edu.cmu.sphinx.frontend.util.DataUtil;
+import edu.cmu.sphinx.frontend.window.RaisedCosineWindower;
+import edu.cmu.sphinx.util.CustomThreadFactory;
+import edu.cmu.sphinx.util.props.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A front end that computes the cepstra of many audio streams at once, like the calls of a telephony server. Every
+ * stream is fed into a {@link Channel} and read from it, the channel is a {@link DataProcessor} that can be the data
+ * source of the front end of its own decoder, which then only holds the feature extraction.
+ * <p/>
+ * The audio of a channel is processed like by a front end with the pipeline
+ * <pre>
+ * preemphasizer, windower, transforms..., liveCMN
+ * </pre>
+ * and gives the same cepstra. The state of the preemphasis, of the windowing and of the cepstral mean normalization
+ * of all channels is kept in arrays of this front end, and a small pool of threads processes the channels that
+ * received audio. A thread takes up to {@link #PROP_BATCH_SIZE} waiting channels at once, windows their audio, runs
+ * the windows of all of them through the transforms, and normalizes the cepstra, so the transforms stay in the cache
+ * for a whole batch of channels.
+ * <p/>
+ * The transforms, usually the FFT, the filter bank and the DCT, must turn every window into one frame without any state
+ * from frame to frame. Every thread works with copies of the configured transforms, which may therefore not refer to
+ * other components.
+ */
+public class MultiChannelFrontEnd extends ConfigurableAdapter {
+
+    /** The property that defines the number of channels. */
+    @S4Integer(defaultValue = 16)
+    public final static String PROP_CHANNELS = "channels";
+
+    /** The property that defines the number of threads that process the channels. */
+    @S4Integer(defaultValue = 2)
+    public final static String PROP_THREADS = "threads";
+
+    /** The property that defines the maximum number of channels that a thread processes at once. */
+    @S4Integer(defaultValue = 16)
+    public final static String PROP_BATCH_SIZE = "batchSize";
+
+    /** The property that defines the transforms of the windows into cepstra. */
+    @S4ComponentList(type = DataProcessor.class)
+    public final static String PROP_TRANSFORMS = "transforms";
+
+    /** The property that defines the preemphasis factor, see {@link Preemphasizer}. */
+    @S4Double(defaultValue = 0.97)
+    public final static String PROP_PREEMPHASIS_FACTOR = Preemphasizer.PROP_PREEMPHASIS_FACTOR;
+
+    /** The property that defines the window size, see {@link RaisedCosineWindower}. */
+    @S4Double(defaultValue = 25.625)
+    public final static String PROP_WINDOW_SIZE_MS = RaisedCosineWindower.PROP_WINDOW_SIZE_MS;
+
+    /** The property that defines the window shift, see {@link RaisedCosineWindower}. */
+    @S4Double(defaultValue = 10.0)
+    public final static String PROP_WINDOW_SHIFT_MS = RaisedCosineWindower.PROP_WINDOW_SHIFT_MS;
+
+    /** The property that defines the alpha of the raised cosine window, see {@link RaisedCosineWindower}. */
+    @S4Double(defaultValue = 0.46)
+    public final static String PROP_ALPHA = RaisedCosineWindower.PROP_ALPHA;
+
+    /** The property that defines the initial cepstral mean, see {@link LiveCMN}. */
+    @S4Double(defaultValue = 12.0)
+    public final static String PROP_INITIAL_MEAN = LiveCMN.PROP_INITIAL_MEAN;
+
+    /** The property that defines the window of the cepstral mean, see {@link LiveCMN}. */
+    @S4Integer(defaultValue = 100)
+    public final static String PROP_CMN_WINDOW = LiveCMN.PROP_CMN_WINDOW;
+
+    /** The property that defines the shift of the cepstral mean, see {@link LiveCMN}. */
+    @S4Integer(defaultValue = 160)
+    public final static String PROP_CMN_SHIFT_WINDOW = LiveCMN.PROP_CMN_SHIFT_WINDOW;
+
+    private int batchSize;
+    private double preemphasisFactor;
+    private float windowSizeInMs;
+    private float windowShiftInMs;
+    private double alpha;
+    private double initialMean;
+    private int cmnWindow;
+    private int cmnShiftWindow;
+
+    private Channel[] channels;
+    private BlockingQueue<DataProcessor[]> transformChains;
+    private ExecutorService executor;
+    private final Queue<Channel> readyChannels = new ConcurrentLinkedQueue<Channel>();
+    private final Runnable batchProcessor = new Runnable() {
+        public void run() {
+            processBatch();
+        }
+    };
+
+    // the window, which is shared by all channels
+    private int sampleRate;
+    private double[] cosineWindow;
+    private int windowShift;
+
+    // the state of the channels
+    private double[] prior;
+    private double[][] overflow;
+    private int[] occupancy;
+    private boolean[] lastBlockWindowed;
+    private long[] firstSampleNumber;
+    private long[] nextSampleNumber;
+    private long[] collectTime;
+    private double[][] cmnMean;
+    private double[][] cmnSum;
+    private int[] cmnFrames;
+
+
+    /**
+     * Creates a multi-channel front end.
+     *
+     * @param channels          the number of channels
+     * @param transformChains   the transforms of every thread, one thread is started for every list
+     * @param batchSize         the maximum number of channels that a thread processes at once
+     * @param preemphasisFactor the preemphasis factor
+     * @param alpha             the alpha of the raised cosine window
+     * @param windowSizeInMs    the window size
+     * @param windowShiftInMs   the window shift
+     * @param initialMean       the initial cepstral mean
+     * @param cmnWindow         the window of the cepstral mean
+     * @param cmnShiftWindow    the number of cepstra after which the cepstral mean is updated
+     */
+    public MultiChannelFrontEnd(int channels, List<List<DataProcessor>> transformChains, int batchSize,
+                                double preemphasisFactor, double alpha, float windowSizeInMs, float windowShiftInMs,
+                                double initialMean, int cmnWindow, int cmnShiftWindow) {
+        initLogger();
+        this.batchSize = batchSize;
+        this.preemphasisFactor = preemphasisFactor;
+        this.alpha = alpha;
+        this.windowSizeInMs = windowSizeInMs;
+        this.windowShiftInMs = windowShiftInMs;
+        this.initialMean = initialMean;
+        this.cmnWindow = cmnWindow;
+        this.cmnShiftWindow = cmnShiftWindow;
+        init(channels, transformChains);
+    }
+
+
+    public MultiChannelFrontEnd() {
+    }
+
+
+    /*
+    * (non-Javadoc)
+    *
+    * @see edu.cmu.sphinx.util.props.Configurable#newProperties(edu.cmu.sphinx.util.props.PropertySheet)
+    */
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        super.newProperties(ps);
+        batchSize = ps.getInt(PROP_BATCH_SIZE);
+        preemphasisFactor = ps.getDouble(PROP_PREEMPHASIS_FACTOR);
+        alpha = ps.getDouble(PROP_ALPHA);
+        windowSizeInMs = ps.getFloat(PROP_WINDOW_SIZE_MS);
+        windowShiftInMs = ps.getFloat(PROP_WINDOW_SHIFT_MS);
+        initialMean = ps.getDouble(PROP_INITIAL_MEAN);
+        cmnWindow = ps.getInt(PROP_CMN_WINDOW);
+        cmnShiftWindow = ps.getInt(PROP_CMN_SHIFT_WINDOW);
+
+        // the configured transforms are used by the first thread, the others use copies
+        List<DataProcessor> transforms = ps.getComponentList(PROP_TRANSFORMS, DataProcessor.class);
+        List<List<DataProcessor>> chains = new ArrayList<List<DataProcessor>>();
+        chains.add(transforms);
+        for (int i = 1; i < ps.getInt(PROP_THREADS); i++) {
+            List<DataProcessor> copies = new ArrayList<DataProcessor>();
+            for (DataProcessor transform : transforms) {
+                copies.add(copy(ConfigurationManagerUtils.getPropertyManager(ps), transform));
+            }
+            chains.add(copies);
+        }
+        init(ps.getInt(PROP_CHANNELS), chains);
+    }
+
+
+    /**
+     * Creates a new instance of a configured data processor with the same properties.
+     *
+     * @param cm        the configuration manager
+     * @param processor the data processor
+     * @return the copy
+     */
+    private static DataProcessor copy(ConfigurationManager cm, DataProcessor processor) {
+        PropertySheet sheet = null;
+        for (String name : cm.getComponentNames()) {
+            PropertySheet candidate = cm.getPropertySheet(name);
+            if (candidate.isInstanciated() && candidate.getOwner() == processor)
+                sheet = candidate;
+        }
+        if (sheet == null)
+            throw new Error("Can't copy the transform " + processor);
+
+        Map<String, Object> props = new HashMap<String, Object>();
+        for (String propName : sheet.getRegisteredProperties()) {
+            Object value = sheet.getRaw(propName);
+            if (value != null)
+                props.put(propName, value);
+        }
+        return ConfigurationManager.getInstance(sheet.getConfigurableClass().asSubclass(DataProcessor.class), props,
+                sheet.getInstanceName());
+    }
+
+
+    private void init(int numberOfChannels, List<List<DataProcessor>> chains) {
+        channels = new Channel[numberOfChannels];
+        for (int i = 0; i < channels.length; i++)
+            channels[i] = new Channel(i);
+
+        prior = new double[numberOfChannels];
+        overflow = new double[numberOfChannels][];
+        occupancy = new int[numberOfChannels];
+        lastBlockWindowed = new boolean[numberOfChannels];
+        firstSampleNumber = new long[numberOfChannels];
+        nextSampleNumber = new long[numberOfChannels];
+        collectTime = new long[numberOfChannels];
+        Arrays.fill(firstSampleNumber, -1);
+        Arrays.fill(nextSampleNumber, -1);
+        cmnMean = new double[numberOfChannels][];
+        cmnSum = new double[numberOfChannels][];
+        cmnFrames = new int[numberOfChannels];
+
+        transformChains = new LinkedBlockingQueue<DataProcessor[]>();
+        for (List<DataProcessor> chain : chains) {
+            DataProcessor[] processors = new DataProcessor[chain.size() + 1];
+            processors[0] = new FrameSource();
+            for (int i = 0; i < chain.size(); i++) {
+                processors[i + 1] = chain.get(i);
+                processors[i + 1].setPredecessor(processors[i]);
+                processors[i + 1].initialize();
+            }
+            transformChains.add(processors);
+        }
+        executor = Executors.newFixedThreadPool(chains.size(),
+                new CustomThreadFactory(getClass().getSimpleName(), true, Thread.NORM_PRIORITY));
+    }
+
+
+    /** @return the number of channels */
+    public int getChannelCount() {
+        return channels.length;
+    }
+
+
+    /**
+     * Returns a channel of this front end.
+     *
+     * @param index the index of the channel
+     * @return the channel
+     */
+    public Channel getChannel(int index) {
+        return channels[index];
+    }
+
+
+    /** Stops the threads of this front end, the data that is not processed yet is dropped. */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+
+    /** Processes a batch of the channels that are waiting to be processed. */
+    private void processBatch() {
+        List<Channel> batch = new ArrayList<Channel>(batchSize);
+        Channel channel;
+        while (batch.size() < batchSize && (channel = readyChannels.poll()) != null)
+            batch.add(channel);
+        if (batch.isEmpty())
+            return;
+
+        // the windows and signals of every channel in the order of the input
+        List<List<Data>> outputs = new ArrayList<List<Data>>(batch.size());
+        for (Channel c : batch) {
+            List<Data> output = new ArrayList<Data>();
+            Data input;
+            while ((input = c.input.poll()) != null)
+                window(c.index, input, output);
+            outputs.add(output);
+        }
+
+        DataProcessor[] chain;
+        try {
+            chain = transformChains.take();
+        } catch (InterruptedException e) {
+            return;
+        }
+        try {
+            FrameSource source = (FrameSource) chain[0];
+            DataProcessor last = chain[chain.length - 1];
+            for (List<Data> output : outputs) {
+                for (int i = 0; i < output.size(); i++) {
+                    if (output.get(i) instanceof DoubleData) {
+                        source.data = output.get(i);
+                        output.set(i, last.getData());
+                    }
+                }
+            }
+        } finally {
+            transformChains.add(chain);
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            Channel c = batch.get(i);
+            for (Data data : outputs.get(i)) {
+                normalize(c.index, data);
+                c.output.add(data);
+            }
+            c.scheduled.set(false);
+            // the channel may have received data after it was polled
+            if (!c.input.isEmpty())
+                c.schedule();
+        }
+    }
+
+
+    /**
+     * Applies the preemphasis and the window to the input of a channel, like a {@link Preemphasizer} and a {@link
+     * RaisedCosineWindower}.
+     *
+     * @param channel the index of the channel
+     * @param input   the input
+     * @param output  the list that receives the windows and signals
+     */
+    private void window(int channel, Data input, List<Data> output) {
+        if (input instanceof DoubleData) {
+            DoubleData data = (DoubleData) input;
+            double[] samples = data.getValues();
+            createWindow(data.getSampleRate());
+
+            // a gap in the sample numbers ends the samples before it
+            if (nextSampleNumber[channel] != -1 && data.getFirstSampleNumber() > nextSampleNumber[channel]) {
+                endWindows(channel, output);
+                prior[channel] = 0;
+            }
+            nextSampleNumber[channel] = data.getFirstSampleNumber() + samples.length;
+            if (firstSampleNumber[channel] == -1)
+                firstSampleNumber[channel] = data.getFirstSampleNumber();
+            collectTime[channel] = data.getCollectTime();
+
+            applyPreemphasis(channel, samples);
+
+            double[] buffer = overflow[channel];
+            int start = 0;
+            lastBlockWindowed[channel] = false;
+            while (start < samples.length) {
+                int length = Math.min(samples.length - start, buffer.length - occupancy[channel]);
+                System.arraycopy(samples, start, buffer, occupancy[channel], length);
+                occupancy[channel] += length;
+                start += length;
+                if (occupancy[channel] == buffer.length) {
+                    output.add(applyWindow(channel, buffer, 0, buffer.length));
+                    System.arraycopy(buffer, windowShift, buffer, 0, buffer.length - windowShift);
+                    occupancy[channel] -= windowShift;
+                    lastBlockWindowed[channel] = true;
+                }
+            }
+        } else {
+            if (input instanceof DataStartSignal) {
+                DataStartSignal startSignal = (DataStartSignal) input;
+                createWindow(startSignal.getSampleRate());
+                startSignal.getProps().put(RaisedCosineWindower.WINDOW_SHIFT_SAMPLES, windowShift);
+                startSignal.getProps().put(RaisedCosineWindower.WINDOW_SIZE_SAMPLES, cosineWindow.length);
+                prior[channel] = 0;
+                occupancy[channel] = 0;
+                firstSampleNumber[channel] = -1;
+                nextSampleNumber[channel] = -1;
+            } else if (input instanceof SpeechStartSignal) {
+                firstSampleNumber[channel] = -1;
+                nextSampleNumber[channel] = -1;
+            } else if (input instanceof DataEndSignal || input instanceof SpeechEndSignal) {
+                endWindows(channel, output);
+                prior[channel] = 0;
+                nextSampleNumber[channel] = -1;
+            }
+            output.add(input);
+        }
+    }
+
+
+    /**
+     * Windows the samples that are left at the end of the audio of a channel, padded with zeros.
+     *
+     * @param channel the index of the channel
+     * @param output  the list that receives the windows
+     */
+    private void endWindows(int channel, List<Data> output) {
+        int length = occupancy[channel];
+        if (length > 0) {
+            double[] buffer = overflow[channel];
+            output.add(applyWindow(channel, buffer, 0, length));
+            // like the RaisedCosineWindower, which windows the samples of a last block that completes no window
+            // before it windows the rest
+            if (!lastBlockWindowed[channel] && length > windowShift)
+                output.add(applyWindow(channel, buffer, windowShift, length - windowShift));
+        }
+        occupancy[channel] = 0;
+        lastBlockWindowed[channel] = true;
+        firstSampleNumber[channel] = -1;
+    }
+
+
+    private void applyPreemphasis(int channel, double[] in) {
+        double nextPrior = prior[channel];
+        if (in.length > 0) {
+            nextPrior = in[in.length - 1];
+        }
+        if (in.length > 1 && preemphasisFactor != 0.0) {
+            double current;
+            double previous = in[0];
+            in[0] = previous - preemphasisFactor * prior[channel];
+            for (int i = 1; i < in.length; i++) {
+                current = in[i];
+                in[i] = current - preemphasisFactor * previous;
+                previous = current;
+            }
+        }
+        prior[channel] = nextPrior;
+    }
+
+
+    private DoubleData applyWindow(int channel, double[] samples, int start, int length) {
+        double[] window = new double[cosineWindow.length];
+        for (int w = 0; w < length; w++) {
+            window[w] = samples[start + w] * cosineWindow[w];
+        }
+        DoubleData data = new DoubleData(window, sampleRate, collectTime[channel], firstSampleNumber[channel]);
+        firstSampleNumber[channel] += windowShift;
+        return data;
+    }
+
+
+    /**
+     * Creates the window of the given sample rate.
+     *
+     * @param sampleRate the sample rate of the audio
+     */
+    private synchronized void createWindow(int sampleRate) {
+        if (cosineWindow != null) {
+            if (sampleRate != this.sampleRate)
+                throw new Error("All channels must have the sample rate " + this.sampleRate + ", not " + sampleRate);
+            return;
+        }
+        this.sampleRate = sampleRate;
+        int windowSize = DataUtil.getSamplesPerWindow(sampleRate, windowSizeInMs);
+        windowShift = DataUtil.getSamplesPerShift(sampleRate, windowShiftInMs);
+        double[] window = new double[windowSize];
+        if (window.length > 1) {
+            double oneMinusAlpha = (1 - alpha);
+            for (int i = 0; i < window.length; i++) {
+                window[i] = oneMinusAlpha - alpha * Math.cos(2 * Math.PI * i / ((double) window.length - 1.0));
+            }
+        }
+        for (int i = 0; i < overflow.length; i++)
+            overflow[i] = new double[windowSize];
+        cosineWindow = window;
+    }
+
+
+    /**
+     * Subtracts the cepstral mean from the output of a channel, like a {@link LiveCMN}.
+     *
+     * @param channel the index of the channel
+     * @param data    the cepstrum or signal
+     */
+    private void normalize(int channel, Data data) {
+        if (data instanceof DoubleData) {
+            double[] cepstrum = ((DoubleData) data).getValues();
+            if (cmnSum[channel] == null) {
+                cmnMean[channel] = new double[cepstrum.length];
+                cmnMean[channel][0] = initialMean;
+                cmnSum[channel] = new double[cepstrum.length];
+            }
+            double[] sum = cmnSum[channel];
+            double[] mean = cmnMean[channel];
+            for (int j = 0; j < cepstrum.length; j++) {
+                sum[j] += cepstrum[j];
+                cepstrum[j] -= mean[j];
+            }
+            cmnFrames[channel]++;
+            if (cmnFrames[channel] > cmnShiftWindow)
+                updateMean(channel);
+        } else if (data instanceof DataStartSignal) {
+            cmnSum[channel] = null;
+            cmnFrames[channel] = 0;
+        } else if (data instanceof DataEndSignal || data instanceof SpeechEndSignal) {
+            if (cmnSum[channel] != null)
+                updateMean(channel);
+        }
+    }
+
+
+    private void updateMean(int channel) {
+        int frames = cmnFrames[channel];
+        if (frames > 0) {
+            double sf = 1.0 / frames;
+            double[] sum = cmnSum[channel];
+            double[] mean = cmnMean[channel];
+            for (int j = 0; j < sum.length; j++)
+                mean[j] = sum[j] * sf;
+            if (frames >= cmnShiftWindow) {
+                double decay = sf * cmnWindow;
+                for (int j = 0; j < sum.length; j++)
+                    sum[j] *= decay;
+                cmnFrames[channel] = cmnWindow;
+            }
+        }
+    }
+
+
+    /**
+     * A channel of the multi-channel front end. The audio of a stream is written into the channel, and its cepstra
+     * are read from the channel like from any data processor. Reading waits until the audio is processed.
+     */
+    public class Channel extends BaseDataProcessor {
+
+        private final int index;
+        private final Queue<Data> input = new ConcurrentLinkedQueue<Data>();
+        private final BlockingQueue<Data> output = new LinkedBlockingQueue<Data>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+
+        Channel(int index) {
+            this.index = index;
+        }
+
+
+        /** @return the index of this channel */
+        public int getIndex() {
+            return index;
+        }
+
+
+        /**
+         * Writes data of the stream of this channel, usually audio from a data source like a {@link
+         * edu.cmu.sphinx.frontend.util.StreamDataSource}, framed by a {@link DataStartSignal} and a {@link
+         * DataEndSignal}. The data is processed by a thread of the front end, this method does not wait.
+         *
+         * @param data the audio or signal
+         */
+        public void write(Data data) {
+            input.add(data);
+            schedule();
+        }
+
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                readyChannels.add(this);
+                executor.execute(batchProcessor);
+            }
+        }
+
+
+        /**
+         * Returns the next cepstrum or signal of this channel, and waits until it is processed if necessary.
+         *
+         * @return the next cepstrum or signal
+         * @throws DataProcessingException if the thread is interrupted while it waits
+         */
+        @Override
+        public Data getData() throws DataProcessingException {
+            try {
+                return output.take();
+            } catch (InterruptedException e) {
+                throw new DataProcessingException("Interrupted while waiting for channel " + index, e);
+            }
+        }
+
+
+        @Override
+        public String toString() {
+            return MultiChannelFrontEnd.this.getName() + '[' + index + ']';
+        }
+    }
+
+
+    /** The source of the transforms of a thread, which returns one window at a time. */
+    private static class FrameSource extends BaseDataProcessor {
+
+        private Data data;
+
+
+        @Override
+        public Data getData() throws DataProcessingException {
+            Data next = data;
+            data = null;
+            return next;
+        }
+    }
+}
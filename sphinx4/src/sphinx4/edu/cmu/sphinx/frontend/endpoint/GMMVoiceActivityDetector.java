@@ -0,0 +1,147 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.frontend.endpoint;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.util.props.*;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.logging.Level;
+
+/**
+ * Classifies audio into speech and non-speech with a small {@link VoiceActivityModel} of speech, silence and noise.
+ * Unlike the {@link SpeechClassifier}, which marks every block that is louder than the background as speech, this
+ * detector rejects loud noise like clicks, hiss and hum, so that the decoder does not spend time on it.
+ * <p/>
+ * A block is speech if the log likelihood ratio of the speech classes against the other classes is above the
+ * threshold. A higher threshold marks less audio as speech. After speech the blocks stay speech for the hangover
+ * number of blocks, so that short pauses and weak endings of words are not cut. The output can be used in place of
+ * the output of the {@link SpeechClassifier}, for example by the {@link SpeechMarker}.
+ */
+public class GMMVoiceActivityDetector extends AbstractVoiceActivityDetector {
+
+    /** The property specifying the location of the voice activity model. */
+    @S4String(mandatory = true)
+    public static final String PROP_LOCATION = "location";
+
+    /** The property specifying the log likelihood ratio above which a block is speech. */
+    @S4Double(defaultValue = 0)
+    public static final String PROP_THRESHOLD = "threshold";
+
+    /** The property specifying the number of blocks that stay speech after speech. */
+    @S4Integer(defaultValue = 10)
+    public static final String PROP_HANGOVER = "hangover";
+
+    private VoiceActivityModel model;
+    private double threshold;
+    private int hangover;
+
+    private final VoiceActivityModel.FeatureExtractor extractor = new VoiceActivityModel.FeatureExtractor();
+    private final double[] feature = new double[VoiceActivityModel.FEATURES];
+    private int hangoverLeft;
+    private boolean isSpeech;
+
+
+    public GMMVoiceActivityDetector(VoiceActivityModel model, double threshold, int hangover) {
+        initLogger();
+        this.model = model;
+        this.threshold = threshold;
+        this.hangover = hangover;
+        initialize();
+    }
+
+
+    public GMMVoiceActivityDetector() {
+    }
+
+
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        super.newProperties(ps);
+        URL location = ConfigurationManagerUtils.getResource(PROP_LOCATION, ps);
+        try {
+            model = VoiceActivityModel.load(location);
+        } catch (IOException e) {
+            throw new PropertyException(ps.getInstanceName(), PROP_LOCATION,
+                    "Can't load voice activity model " + location + ": " + e.getMessage());
+        }
+        threshold = ps.getDouble(PROP_THRESHOLD);
+        hangover = ps.getInt(PROP_HANGOVER);
+        initialize();
+    }
+
+
+    @Override
+    public void initialize() {
+        super.initialize();
+        reset();
+    }
+
+
+    /** Resets the detector to the start of a stream. */
+    protected void reset() {
+        extractor.reset();
+        hangoverLeft = 0;
+        isSpeech = false;
+    }
+
+
+    /**
+     * Classifies a block of audio.
+     *
+     * @param audio the block of audio
+     * @return the classified block
+     */
+    protected SpeechClassifiedData classify(DoubleData audio) {
+        extractor.compute(audio.getValues(), feature);
+        double ratio = model.getSpeechLogLikelihoodRatio(feature);
+        if (ratio > threshold) {
+            isSpeech = true;
+            hangoverLeft = hangover;
+        } else if (hangoverLeft > 0) {
+            isSpeech = true;
+            hangoverLeft--;
+        } else {
+            isSpeech = false;
+        }
+
+        if (logger.isLoggable(Level.FINEST))
+            logger.finest("ratio: " + ratio + (isSpeech ? " *" : ""));
+
+        return new SpeechClassifiedData(audio, isSpeech);
+    }
+
+
+    /**
+     * Returns the next Data object.
+     *
+     * @return the next Data object, or null if none available
+     * @throws DataProcessingException if a data processing error occurs
+     */
+    @Override
+    public Data getData() throws DataProcessingException {
+        Data audio = getPredecessor().getData();
+
+        if (audio instanceof DataStartSignal)
+            reset();
+
+        if (audio instanceof DoubleData)
+            audio = classify((DoubleData) audio);
+        return audio;
+    }
+
+
+    public boolean isSpeech() {
+        return isSpeech;
+    }
+}
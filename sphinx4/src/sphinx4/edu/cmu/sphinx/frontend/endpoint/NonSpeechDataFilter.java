@@ -16,6 +16,7 @@ package edu.cmu.sphinx.frontend.endpoint;
 import edu.cmu.sphinx.frontend.*;
 import edu.cmu.sphinx.util.props.PropertyException;
 import edu.cmu.sphinx.util.props.PropertySheet;
+import edu.cmu.sphinx.util.props.S4Boolean;
 
 
 /**
@@ -27,11 +28,33 @@ import edu.cmu.sphinx.util.props.PropertySheet;
  * src="doc-files/one-region.gif"> <br><i>Figure 1: A data stream with only one speech region</i>. <p>After filtering,
  * the non-speech regions are removed, and becomes: <p><img src="doc-files/one-region-filtered.gif"> <br><i>Figure 2: A
  * data stream with only on speech region after filtering.</i>
+ * <p/>
+ * If the filter is placed right after the endpointer, the non-speech regions never reach the windowing, the FFT and
+ * the filter banks, so audio that is mostly silence costs proportionally less to process:
+ * <pre>
+ * streamDataSource, dataBlocker, speechClassifier, speechMarker, nonSpeechDataFilter,
+ * preemphasizer, windower, fft, melFilterBank, dct, liveCMN, featureExtraction
+ * </pre>
+ * By default every speech region becomes an utterance of its own. If {@link #PROP_MERGE_SPEECH_SEGMENTS} is set, the
+ * speech regions of a data stream are merged into one utterance instead: the speech signals are removed, and the
+ * stream is no longer tagged as a speech tagged stream, so the decoder recognizes it as a whole like a stream without
+ * endpointing. The processors after the filter see the gaps between the regions in the sample numbers of the data,
+ * and the preemphasizer and the windower do not carry samples across them.
  */
 public class NonSpeechDataFilter extends BaseDataProcessor {
 
+    /** The property that controls whether the speech regions of a data stream are merged into one utterance. */
+    @S4Boolean(defaultValue = false)
+    public static final String PROP_MERGE_SPEECH_SEGMENTS = "mergeSpeechSegments";
+
+    private boolean mergeSpeechSegments;
     private boolean inSpeech;
 
+    public NonSpeechDataFilter(boolean mergeSpeechSegments) {
+        initLogger();
+        this.mergeSpeechSegments = mergeSpeechSegments;
+    }
+
     public NonSpeechDataFilter() {
         initLogger();
     }
@@ -39,6 +62,7 @@ public class NonSpeechDataFilter extends BaseDataProcessor {
     @Override
     public void newProperties(PropertySheet ps) throws PropertyException {
         super.newProperties(ps);
+        mergeSpeechSegments = ps.getBoolean(PROP_MERGE_SPEECH_SEGMENTS);
     }
 
 
@@ -55,6 +79,17 @@ public class NonSpeechDataFilter extends BaseDataProcessor {
     public Data getData() throws DataProcessingException {
         Data data = readData();
 
+        if (mergeSpeechSegments) {
+            // pass only the data of the speech regions, without the signals that separate them
+            while (data instanceof SpeechStartSignal || data instanceof SpeechEndSignal
+                    || (data != null && !(data instanceof Signal) && !inSpeech)) {
+                data = readData();
+            }
+            if (data instanceof DataStartSignal)
+                DataStartSignal.untagAsVadStream((DataStartSignal) data);
+            return data;
+        }
+
         while (data != null
                 && !(data instanceof DataEndSignal) && !(data instanceof DataStartSignal)
                 && !(data instanceof SpeechEndSignal) && !inSpeech) {
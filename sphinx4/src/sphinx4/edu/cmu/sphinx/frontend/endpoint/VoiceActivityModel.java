@@ -0,0 +1,533 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.frontend.endpoint;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.frontend.util.StreamDataSource;
+
+import javax.sound.sampled.AudioSystem;
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+
+/**
+ * A small model of speech and non-speech audio for the {@link GMMVoiceActivityDetector}. Every class of audio, like
+ * speech, silence and noise, is modelled by a mixture of diagonal Gaussians over a few features that are cheap to
+ * compute from the samples of a block of audio:
+ * <ol>
+ * <li>the level of the block in dB above the background level, which is tracked like by the {@link SpeechClassifier}
+ * <li>the rate of zero crossings
+ * <li>the correlation of neighbouring samples, which is high for voiced speech and low for broadband noise
+ * </ol>
+ * <p/>
+ * The model is stored in a small text file. Every class starts with a line <code>class name speech|nonspeech
+ * components</code> followed by a line <code>weight means... variances...</code> per component. The model can be
+ * trained with the {@link Trainer} or from the command line:
+ * <pre>
+ * java edu.cmu.sphinx.frontend.endpoint.VoiceActivityModel model.txt speech.wav ... -noise noise.wav ...
+ * </pre>
+ * The files are split into loud and quiet parts by the energy based {@link SpeechClassifier}. The quiet parts train
+ * the silence class, the loud parts of the speech files the speech class and those of the noise files the noise
+ * class.
+ */
+public class VoiceActivityModel {
+
+    /** The number of features of a block of audio. */
+    public static final int FEATURES = 3;
+
+    /** The smallest variance of a feature, which keeps the Gaussians from collapsing on a few blocks. */
+    private static final double VARIANCE_FLOOR = 1e-4;
+
+    private final String[] names;
+    private final boolean[] speech;
+    private final double[][] logWeights;
+    private final double[][][] means;
+    private final double[][][] precisions;
+    private final double[][] logNormalizers;
+
+
+    /**
+     * Creates a model.
+     *
+     * @param names     the names of the classes
+     * @param speech    whether each class is speech
+     * @param weights   the weights of the components of each class
+     * @param means     the means of the components of each class
+     * @param variances the variances of the components of each class
+     */
+    public VoiceActivityModel(String[] names, boolean[] speech, double[][] weights, double[][][] means,
+                              double[][][] variances) {
+        this.names = names;
+        this.speech = speech;
+        this.means = means;
+        logWeights = new double[names.length][];
+        precisions = new double[names.length][][];
+        logNormalizers = new double[names.length][];
+        for (int c = 0; c < names.length; c++) {
+            int components = weights[c].length;
+            logWeights[c] = new double[components];
+            precisions[c] = new double[components][FEATURES];
+            logNormalizers[c] = new double[components];
+            for (int k = 0; k < components; k++) {
+                logWeights[c][k] = Math.log(weights[c][k]);
+                double logDeterminant = 0;
+                for (int i = 0; i < FEATURES; i++) {
+                    precisions[c][k][i] = 1.0 / variances[c][k][i];
+                    logDeterminant += Math.log(variances[c][k][i]);
+                }
+                logNormalizers[c][k] = -0.5 * (FEATURES * Math.log(2 * Math.PI) + logDeterminant);
+            }
+        }
+    }
+
+
+    /** @return the names of the classes */
+    public String[] getClassNames() {
+        return names.clone();
+    }
+
+
+    /**
+     * Returns the log likelihood of the features under a class.
+     *
+     * @param c       the index of the class
+     * @param feature the features of a block of audio
+     * @return the natural log of the likelihood
+     */
+    public double getLogLikelihood(int c, double[] feature) {
+        // the scores are cheap, so they are computed twice rather than kept
+        double best = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < logWeights[c].length; k++)
+            best = Math.max(best, getComponentScore(c, k, feature));
+        double sum = 0;
+        for (int k = 0; k < logWeights[c].length; k++)
+            sum += Math.exp(getComponentScore(c, k, feature) - best);
+        return best + Math.log(sum);
+    }
+
+
+    /**
+     * Returns the log likelihood ratio of speech against non-speech for the features of a block of audio. Every
+     * class has the same prior probability.
+     *
+     * @param feature the features of a block of audio
+     * @return the natural log of the likelihood of the speech classes divided by that of the other classes
+     */
+    public double getSpeechLogLikelihoodRatio(double[] feature) {
+        double speechScore = Double.NEGATIVE_INFINITY;
+        double nonSpeechScore = Double.NEGATIVE_INFINITY;
+        for (int c = 0; c < names.length; c++) {
+            double score = getLogLikelihood(c, feature);
+            if (speech[c])
+                speechScore = logAdd(speechScore, score);
+            else
+                nonSpeechScore = logAdd(nonSpeechScore, score);
+        }
+        return speechScore - nonSpeechScore;
+    }
+
+
+    private double getComponentScore(int c, int k, double[] feature) {
+        double[] mean = means[c][k];
+        double[] precision = precisions[c][k];
+        double distance = 0;
+        for (int i = 0; i < FEATURES; i++) {
+            double diff = feature[i] - mean[i];
+            distance += diff * diff * precision[i];
+        }
+        return logWeights[c][k] + logNormalizers[c][k] - 0.5 * distance;
+    }
+
+
+    private static double logAdd(double a, double b) {
+        double max = Math.max(a, b);
+        if (max == Double.NEGATIVE_INFINITY)
+            return max;
+        return max + Math.log(Math.exp(a - max) + Math.exp(b - max));
+    }
+
+
+    private static double sumExp(double[] scores, double max) {
+        double sum = 0;
+        for (double score : scores)
+            sum += Math.exp(score - max);
+        return sum;
+    }
+
+
+    /**
+     * Loads a model.
+     *
+     * @param location the location of the model file
+     * @return the model
+     * @throws IOException if the file can not be read or has a wrong format
+     */
+    public static VoiceActivityModel load(URL location) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(location.openStream()));
+        List<String> names = new ArrayList<String>();
+        List<Boolean> speech = new ArrayList<Boolean>();
+        List<double[][]> components = new ArrayList<double[][]>();
+        try {
+            String line;
+            List<double[]> current = null;
+            int expected = 0;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#"))
+                    continue;
+                String[] tokens = line.split("\\s+");
+                if (tokens[0].equals("class") && tokens.length == 4) {
+                    if (current != null && current.size() != expected)
+                        throw new IOException("Class " + names.get(names.size() - 1) + " has missing components");
+                    names.add(tokens[1]);
+                    speech.add(tokens[2].equals("speech"));
+                    expected = Integer.parseInt(tokens[3]);
+                    current = new ArrayList<double[]>();
+                    components.add(null);
+                } else if (current != null && tokens.length == 1 + 2 * FEATURES) {
+                    double[] values = new double[tokens.length];
+                    for (int i = 0; i < values.length; i++)
+                        values[i] = Double.parseDouble(tokens[i]);
+                    current.add(values);
+                    if (current.size() == expected)
+                        components.set(components.size() - 1, current.toArray(new double[expected][]));
+                } else {
+                    throw new IOException("Unexpected line in " + location + ": " + line);
+                }
+            }
+            if (names.isEmpty() || components.contains(null))
+                throw new IOException("Incomplete voice activity model " + location);
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad number in " + location + ": " + e.getMessage());
+        } finally {
+            reader.close();
+        }
+
+        int classes = names.size();
+        boolean[] isSpeech = new boolean[classes];
+        double[][] weights = new double[classes][];
+        double[][][] means = new double[classes][][];
+        double[][][] variances = new double[classes][][];
+        for (int c = 0; c < classes; c++) {
+            isSpeech[c] = speech.get(c);
+            double[][] values = components.get(c);
+            weights[c] = new double[values.length];
+            means[c] = new double[values.length][];
+            variances[c] = new double[values.length][];
+            for (int k = 0; k < values.length; k++) {
+                weights[c][k] = values[k][0];
+                means[c][k] = Arrays.copyOfRange(values[k], 1, 1 + FEATURES);
+                variances[c][k] = Arrays.copyOfRange(values[k], 1 + FEATURES, 1 + 2 * FEATURES);
+            }
+        }
+        return new VoiceActivityModel(names.toArray(new String[classes]), isSpeech, weights, means, variances);
+    }
+
+
+    /**
+     * Saves this model.
+     *
+     * @param writer the writer of the model file
+     */
+    public void save(Writer writer) {
+        PrintWriter out = new PrintWriter(writer);
+        out.println("# voice activity model: level above background, zero crossing rate, neighbour correlation");
+        for (int c = 0; c < names.length; c++) {
+            out.println("class " + names[c] + ' ' + (speech[c] ? "speech" : "nonspeech") + ' '
+                    + logWeights[c].length);
+            for (int k = 0; k < logWeights[c].length; k++) {
+                StringBuilder line = new StringBuilder();
+                line.append(Math.exp(logWeights[c][k]));
+                for (int i = 0; i < FEATURES; i++)
+                    line.append(' ').append(means[c][k][i]);
+                for (int i = 0; i < FEATURES; i++)
+                    line.append(' ').append(1.0 / precisions[c][k][i]);
+                out.println(line);
+            }
+        }
+        out.flush();
+    }
+
+
+    /**
+     * Computes the features of consecutive blocks of audio. The level of the background is tracked from block to
+     * block, so one extractor is used for one stream.
+     */
+    public static class FeatureExtractor {
+
+        private static final double ADJUSTMENT = 0.003;
+
+        private double background;
+
+
+        public FeatureExtractor() {
+            reset();
+        }
+
+
+        /** Starts a new stream. */
+        public void reset() {
+            background = 300;
+        }
+
+
+        /**
+         * Computes the features of the next block of audio.
+         *
+         * @param samples the samples of the block
+         * @param feature the array that receives the features
+         */
+        public void compute(double[] samples, double[] feature) {
+            double level = SpeechClassifier.logRootMeanSquare(samples);
+            if (level < background)
+                background = level;
+            else
+                background += (level - background) * ADJUSTMENT;
+
+            double energy = 0;
+            double correlation = 0;
+            int crossings = 0;
+            for (int i = 0; i < samples.length; i++) {
+                energy += samples[i] * samples[i];
+                if (i > 0) {
+                    correlation += samples[i] * samples[i - 1];
+                    if ((samples[i] >= 0) != (samples[i - 1] >= 0))
+                        crossings++;
+                }
+            }
+            feature[0] = level - background;
+            feature[1] = (double) crossings / samples.length;
+            feature[2] = energy > 0 ? correlation / energy : 0;
+        }
+    }
+
+
+    /**
+     * Trains a voice activity model from audio of its classes. Every class is trained with the expectation
+     * maximization algorithm, starting from components that are spread over the range of its first feature.
+     */
+    public static class Trainer {
+
+        private final int components;
+        private final int iterations;
+        private final Map<String, List<double[]>> features = new LinkedHashMap<String, List<double[]>>();
+        private final Set<String> speechClasses = new HashSet<String>();
+
+
+        /**
+         * Creates a trainer.
+         *
+         * @param components the number of Gaussians of every class
+         * @param iterations the number of iterations of the training
+         */
+        public Trainer(int components, int iterations) {
+            this.components = components;
+            this.iterations = iterations;
+        }
+
+
+        /**
+         * Adds the blocks of a stream of speech. The blocks that the {@link SpeechClassifier} marks as speech train
+         * the class <code>speech</code>, the others the class <code>silence</code>.
+         *
+         * @param blocks the blocks of audio of a stream
+         */
+        public void addSpeech(List<DoubleData> blocks) {
+            add(blocks, "speech", true);
+        }
+
+
+        /**
+         * Adds the blocks of a stream of noise, like clicks, hiss or hum between quiet parts. The blocks that the
+         * {@link SpeechClassifier} marks as speech train the class <code>noise</code>, the others the class
+         * <code>silence</code>.
+         *
+         * @param blocks the blocks of audio of a stream
+         */
+        public void addNoise(List<DoubleData> blocks) {
+            add(blocks, "noise", false);
+        }
+
+
+        private void add(List<DoubleData> blocks, String loudName, boolean loudIsSpeech) {
+            SpeechClassifier classifier = new SpeechClassifier(10, 0.003, 10, 0);
+            FeatureExtractor extractor = new FeatureExtractor();
+            for (DoubleData block : blocks) {
+                double[] feature = new double[FEATURES];
+                extractor.compute(block.getValues(), feature);
+                if (classifier.classify(block).isSpeech())
+                    add(loudName, loudIsSpeech, feature);
+                else
+                    add("silence", false, feature);
+            }
+        }
+
+
+        private void add(String name, boolean isSpeech, double[] feature) {
+            List<double[]> list = features.get(name);
+            if (list == null) {
+                list = new ArrayList<double[]>();
+                features.put(name, list);
+            }
+            list.add(feature);
+            if (isSpeech)
+                speechClasses.add(name);
+        }
+
+
+        /** @return the trained model */
+        public VoiceActivityModel train() {
+            int classes = features.size();
+            String[] names = features.keySet().toArray(new String[classes]);
+            boolean[] speech = new boolean[classes];
+            double[][] weights = new double[classes][];
+            double[][][] means = new double[classes][][];
+            double[][][] variances = new double[classes][][];
+            for (int c = 0; c < classes; c++) {
+                speech[c] = speechClasses.contains(names[c]);
+                List<double[]> data = features.get(names[c]);
+                int count = Math.max(1, Math.min(components, data.size() / (10 * FEATURES)));
+                weights[c] = new double[count];
+                means[c] = new double[count][FEATURES];
+                variances[c] = new double[count][FEATURES];
+                train(data, weights[c], means[c], variances[c]);
+            }
+            return new VoiceActivityModel(names, speech, weights, means, variances);
+        }
+
+
+        private void train(List<double[]> data, double[] weights, double[][] means, double[][] variances) {
+            int count = weights.length;
+            // start from the quantiles of the level above the background
+            List<double[]> sorted = new ArrayList<double[]>(data);
+            Collections.sort(sorted, new Comparator<double[]>() {
+                public int compare(double[] a, double[] b) {
+                    return Double.compare(a[0], b[0]);
+                }
+            });
+            double[] totalMean = new double[FEATURES];
+            double[] totalVariance = new double[FEATURES];
+            accumulate(data, null, totalMean, totalVariance);
+            for (int k = 0; k < count; k++) {
+                weights[k] = 1.0 / count;
+                means[k] = sorted.get((2 * k + 1) * sorted.size() / (2 * count)).clone();
+                variances[k] = totalVariance.clone();
+            }
+
+            double[][] posteriors = new double[count][data.size()];
+            for (int iteration = 0; iteration < iterations; iteration++) {
+                VoiceActivityModel model = new VoiceActivityModel(new String[]{""}, new boolean[]{true},
+                        new double[][]{weights}, new double[][][]{means}, new double[][][]{variances});
+                double[] scores = new double[count];
+                for (int n = 0; n < data.size(); n++) {
+                    double[] feature = data.get(n);
+                    double best = Double.NEGATIVE_INFINITY;
+                    for (int k = 0; k < count; k++) {
+                        scores[k] = model.getComponentScore(0, k, feature);
+                        best = Math.max(best, scores[k]);
+                    }
+                    double sum = sumExp(scores, best);
+                    for (int k = 0; k < count; k++)
+                        posteriors[k][n] = Math.exp(scores[k] - best) / sum;
+                }
+                for (int k = 0; k < count; k++) {
+                    double occupancy = accumulate(data, posteriors[k], means[k], variances[k]);
+                    weights[k] = Math.max(occupancy / data.size(), 1e-6);
+                    if (occupancy == 0) {
+                        means[k] = totalMean.clone();
+                        variances[k] = totalVariance.clone();
+                    }
+                }
+            }
+        }
+
+
+        /**
+         * Computes the weighted mean and variance of the features.
+         *
+         * @return the sum of the weights
+         */
+        private static double accumulate(List<double[]> data, double[] posteriors, double[] mean, double[] variance) {
+            double occupancy = 0;
+            double[] sum = new double[FEATURES];
+            double[] squares = new double[FEATURES];
+            for (int n = 0; n < data.size(); n++) {
+                double weight = posteriors == null ? 1 : posteriors[n];
+                double[] feature = data.get(n);
+                occupancy += weight;
+                for (int i = 0; i < FEATURES; i++) {
+                    sum[i] += weight * feature[i];
+                    squares[i] += weight * feature[i] * feature[i];
+                }
+            }
+            if (occupancy > 0) {
+                for (int i = 0; i < FEATURES; i++) {
+                    mean[i] = sum[i] / occupancy;
+                    variance[i] = Math.max(squares[i] / occupancy - mean[i] * mean[i], VARIANCE_FLOOR);
+                }
+            }
+            return occupancy;
+        }
+    }
+
+
+    /**
+     * Reads the blocks of 10 ms of an audio file.
+     *
+     * @param file the audio file
+     * @return the blocks of audio
+     * @throws Exception if the file can not be read
+     */
+    public static List<DoubleData> readBlocks(File file) throws Exception {
+        StreamDataSource source = new StreamDataSource(16000, 3200, 16, false, true);
+        source.initialize();
+        source.setInputStream(AudioSystem.getAudioInputStream(file), file.getName());
+        DataBlocker blocker = new DataBlocker(10);
+        blocker.setPredecessor(source);
+        blocker.initialize();
+        List<DoubleData> blocks = new ArrayList<DoubleData>();
+        Data data;
+        while ((data = blocker.getData()) != null && !(data instanceof DataEndSignal)) {
+            if (data instanceof DoubleData)
+                blocks.add((DoubleData) data);
+        }
+        return blocks;
+    }
+
+
+    /**
+     * Trains a model from audio files.
+     *
+     * @param args the model file to write, the speech files, and after <code>-noise</code> the noise files
+     * @throws Exception if a file can not be read or written
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: VoiceActivityModel model.txt speech.wav ... [-noise noise.wav ...]");
+            System.exit(1);
+        }
+        Trainer trainer = new Trainer(4, 20);
+        boolean noise = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-noise")) {
+                noise = true;
+            } else if (noise) {
+                trainer.addNoise(readBlocks(new File(args[i])));
+            } else {
+                trainer.addSpeech(readBlocks(new File(args[i])));
+            }
+        }
+        Writer writer = new FileWriter(args[0]);
+        trainer.train().save(writer);
+        writer.close();
+    }
+}
@@ -14,8 +14,10 @@
 package edu.cmu.sphinx.frontend.feature;
 
 import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.frontend.endpoint.SpeechEndSignal;
 import edu.cmu.sphinx.util.props.PropertyException;
 import edu.cmu.sphinx.util.props.PropertySheet;
+import edu.cmu.sphinx.util.props.S4Boolean;
 import edu.cmu.sphinx.util.props.S4Double;
 import edu.cmu.sphinx.util.props.S4Integer;
 
@@ -35,6 +37,11 @@ import edu.cmu.sphinx.util.props.S4Integer;
  * cmnWindow/(cmnWindow + number of frames since the last recalculation)
  * </pre>
  * <p/>
+ * <p>The sums are kept over the gaps between the speech segments of a stream, which a {@link
+ * edu.cmu.sphinx.frontend.endpoint.NonSpeechDataFilter} removes, so the mean is estimated from speech only. If {@link
+ * #PROP_UPDATE_AT_SPEECH_END} is set, the mean is also recalculated at the end of every speech segment, so that every
+ * segment starts with the mean of the speech before it.
+ * <p/>
  * <p>This is a 1-to-1 processor.
  *
  * @see BatchCMN
@@ -60,6 +67,14 @@ public class LiveCMN extends BaseDataProcessor {
     public static final String PROP_CMN_SHIFT_WINDOW = "shiftWindow";
     private int cmnShiftWindow;     // # of Cepstrum to recalculate mean
 
+    /**
+     * The property that makes the mean be recalculated at every SpeechEndSignal, not only after the shifting window
+     * and at the end of the data. The default keeps the mean of the previous segments until the window is full.
+     */
+    @S4Boolean(defaultValue = false)
+    public static final String PROP_UPDATE_AT_SPEECH_END = "updateAtSpeechEnd";
+    private boolean updateAtSpeechEnd;
+
 
     private double[] currentMean;   // array of current means
     private double[] sum;           // array of current sums
@@ -67,10 +82,15 @@ public class LiveCMN extends BaseDataProcessor {
 
 
     public LiveCMN(double initialMean, int cmnWindow, int cmnShiftWindow) {
+        this(initialMean, cmnWindow, cmnShiftWindow, false);
+    }
+
+    public LiveCMN(double initialMean, int cmnWindow, int cmnShiftWindow, boolean updateAtSpeechEnd) {
         initLogger();
         this.initialMean = initialMean;
         this.cmnWindow = cmnWindow;
         this.cmnShiftWindow = cmnShiftWindow;
+        this.updateAtSpeechEnd = updateAtSpeechEnd;
     }
 
     public LiveCMN() {
@@ -83,6 +103,7 @@ public class LiveCMN extends BaseDataProcessor {
         initialMean = ps.getDouble(PROP_INITIAL_MEAN);
         cmnWindow = ps.getInt(PROP_CMN_WINDOW);
         cmnShiftWindow = ps.getInt(PROP_CMN_SHIFT_WINDOW);
+        updateAtSpeechEnd = ps.getBoolean(PROP_UPDATE_AT_SPEECH_END);
     }
 
 
@@ -134,7 +155,9 @@ public class LiveCMN extends BaseDataProcessor {
                     initMeansSums(data.getValues().length);
                 }
                 normalize(data);
-            } else if (input instanceof DataEndSignal) {
+            } else if (input instanceof DataEndSignal
+                    || input instanceof SpeechEndSignal && updateAtSpeechEnd) {
+                // the next speech segment of the stream starts with the mean of the speech so far
                 updateMeanSumBuffers();
             }
         }
@@ -46,6 +46,7 @@ public class Preemphasizer extends BaseDataProcessor {
 
     private double preemphasisFactor;
     private double prior;
+    private long nextSampleNumber = -1; // the sample number expected to follow the last input
 
     public Preemphasizer( double preemphasisFactor ) {
         initLogger();
@@ -83,9 +84,17 @@ public class Preemphasizer extends BaseDataProcessor {
         getTimer().start();
         if (input != null) {
             if (input instanceof DoubleData) {
-                applyPreemphasis(((DoubleData) input).getValues());
+                DoubleData data = (DoubleData) input;
+                // the samples before a gap in the stream, e.g. one left by a NonSpeechDataFilter that merges the
+                // speech segments, do not precede the input
+                if (nextSampleNumber != -1 && data.getFirstSampleNumber() > nextSampleNumber) {
+                    prior = 0;
+                }
+                nextSampleNumber = data.getFirstSampleNumber() + data.getValues().length;
+                applyPreemphasis(data.getValues());
             } else if (input instanceof DataEndSignal || input instanceof SpeechEndSignal) {
                 prior = 0;
+                nextSampleNumber = -1;
             }
         }
         getTimer().stop();
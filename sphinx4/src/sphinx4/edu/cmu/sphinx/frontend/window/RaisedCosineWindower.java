@@ -79,6 +79,8 @@ public class RaisedCosineWindower extends BaseDataProcessor {
     private DoubleBuffer overflowBuffer; // cache for overlapped audio regions
     private long currentCollectTime;
     private long currentFirstSampleNumber;
+    private long nextSampleNumber = -1; // the sample number expected to follow the last input
+    private DoubleData gapData; // input read after a gap, to be windowed after the samples before the gap
     private int sampleRate;
 
     public RaisedCosineWindower( double alpha, float windowSizeInMs, float windowShiftInMs ) {
@@ -152,13 +154,20 @@ public class RaisedCosineWindower extends BaseDataProcessor {
     public Data getData() throws DataProcessingException {
 
         if (outputQueue.isEmpty()) {
-            Data input = getPredecessor().getData();
+            Data input = gapData != null ? gapData : getPredecessor().getData();
+            gapData = null;
 
             getTimer().start();
 
             if (input != null) {
                 if (input instanceof DoubleData) {
                     DoubleData data = (DoubleData) input;
+                    if (followsGap(data)) {
+                        // the samples of the gap were removed, e.g. by a NonSpeechDataFilter that merges the
+                        // speech segments, so the samples before the gap end a window of their own
+                        processUtteranceEnd();
+                        currentFirstSampleNumber = -1;
+                    }
                     if (currentFirstSampleNumber == -1) {
                         currentFirstSampleNumber = data.getFirstSampleNumber();
                     }
@@ -183,9 +192,11 @@ public class RaisedCosineWindower extends BaseDataProcessor {
 
                         // reset the current first sample number
                         currentFirstSampleNumber = -1;
+                        nextSampleNumber = -1;
                     } else if (input instanceof SpeechStartSignal) {
                         // reset the current first sample number
                         currentFirstSampleNumber = -1;		    
+                        nextSampleNumber = -1;
                     } else if (input instanceof DataEndSignal || input instanceof SpeechEndSignal) {
                         // end of utterance handling
                         processUtteranceEnd();
@@ -233,6 +244,11 @@ public class RaisedCosineWindower extends BaseDataProcessor {
         while (length < cosineWindow.length) {
             Data next = getPredecessor().getData();
             if (next instanceof DoubleData) {
+                if (followsGap((DoubleData) next)) {
+                    // window the samples before the gap on their own
+                    gapData = (DoubleData) next;
+                    break;
+                }
                 dataList.add((DoubleData) next);
                 length += ((DoubleData) next).getValues().length;
             } else {
@@ -276,10 +292,27 @@ public class RaisedCosineWindower extends BaseDataProcessor {
             // end of utterance handling
             processUtteranceEnd();
             outputQueue.add(utteranceEnd);
+        } else if (gapData != null) {
+            processUtteranceEnd();
+            currentFirstSampleNumber = -1;
         }
     }
 
 
+    /**
+     * Checks whether samples are missing between the previous input and the given input, and remembers the sample
+     * number expected to follow the given input.
+     *
+     * @param data the next input
+     * @return true if the first sample of the input is later than the sample expected to follow the previous input
+     */
+    private boolean followsGap(DoubleData data) {
+        boolean gap = nextSampleNumber != -1 && data.getFirstSampleNumber() > nextSampleNumber;
+        nextSampleNumber = data.getFirstSampleNumber() + data.getValues().length;
+        return gap;
+    }
+
+
     /**
      * What happens when an DataEndSignal is received. Basically pads up to a window of the overflow buffer with zeros,
      * and then apply the Hamming window to it. Checks if buffer has data.
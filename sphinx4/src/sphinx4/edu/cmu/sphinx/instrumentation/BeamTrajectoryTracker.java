@@ -0,0 +1,237 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.instrumentation;
+
+import edu.cmu.sphinx.decoder.ResultListener;
+import edu.cmu.sphinx.decoder.pruner.AdaptiveBeamPruner;
+import edu.cmu.sphinx.recognizer.Recognizer;
+import edu.cmu.sphinx.recognizer.Recognizer.State;
+import edu.cmu.sphinx.recognizer.StateListener;
+import edu.cmu.sphinx.result.Result;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.props.PropertyException;
+import edu.cmu.sphinx.util.props.PropertySheet;
+import edu.cmu.sphinx.util.props.S4Boolean;
+import edu.cmu.sphinx.util.props.S4Component;
+
+import java.text.DecimalFormat;
+import java.util.List;
+
+/**
+ * Monitors the beams that an {@link AdaptiveBeamPruner} chose in every frame of an utterance and reports the number of
+ * active tokens and the narrowest, average and widest absolute and relative beams of every active list factory.
+ */
+public class BeamTrajectoryTracker implements ResultListener,
+        Resetable, StateListener, Monitor {
+
+    /** The property that defines which recognizer to monitor */
+    @S4Component(type = Recognizer.class)
+    public final static String PROP_RECOGNIZER = "recognizer";
+
+    /** The property that defines the pruner whose beams are monitored */
+    @S4Component(type = AdaptiveBeamPruner.class)
+    public final static String PROP_PRUNER = "pruner";
+
+    /** The property that defines the log math of the relative beams */
+    @S4Component(type = LogMath.class)
+    public final static String PROP_LOG_MATH = "logMath";
+
+    /** The property that defines whether summary beam information is displayed */
+    @S4Boolean(defaultValue = true)
+    public final static String PROP_SHOW_SUMMARY = "showSummary";
+
+    /** The property that defines whether the beams of every utterance are displayed */
+    @S4Boolean(defaultValue = true)
+    public final static String PROP_SHOW_DETAILS = "showDetails";
+
+    // ------------------------------
+    // Configuration data
+    // ------------------------------
+    private String name;
+    private Recognizer recognizer;
+    private AdaptiveBeamPruner pruner;
+    private LogMath logMath;
+    private boolean showSummary;
+    private boolean showDetails;
+
+    private long totalFrames;
+    private long totalActiveTokens;
+    private int maxActiveTokens;
+    private double[] sumAbsoluteBeam;
+    private double[] sumRelativeBeam;
+    private int totalUtterances;
+
+    private final static DecimalFormat logFormatter = new DecimalFormat("0.#E0");
+
+
+    public BeamTrajectoryTracker(Recognizer recognizer, AdaptiveBeamPruner pruner, LogMath logMath,
+                                 boolean showSummary, boolean showDetails) {
+        initRecognizer(recognizer);
+        this.pruner = pruner;
+        this.logMath = logMath;
+        this.showSummary = showSummary;
+        this.showDetails = showDetails;
+    }
+
+
+    public BeamTrajectoryTracker() {
+    }
+
+
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        name = ps.getInstanceName();
+        initRecognizer((Recognizer) ps.getComponent(PROP_RECOGNIZER));
+        pruner = (AdaptiveBeamPruner) ps.getComponent(PROP_PRUNER);
+        logMath = (LogMath) ps.getComponent(PROP_LOG_MATH);
+        showSummary = ps.getBoolean(PROP_SHOW_SUMMARY);
+        showDetails = ps.getBoolean(PROP_SHOW_DETAILS);
+    }
+
+
+    private void initRecognizer(Recognizer newRecognizer) {
+        if (recognizer == null) {
+            recognizer = newRecognizer;
+            recognizer.addResultListener(this);
+            recognizer.addStateListener(this);
+        } else if (recognizer != newRecognizer) {
+            recognizer.removeResultListener(this);
+            recognizer.removeStateListener(this);
+            recognizer = newRecognizer;
+            recognizer.addResultListener(this);
+            recognizer.addStateListener(this);
+        }
+    }
+
+
+    public String getName() {
+        return name;
+    }
+
+
+    /** Resets the beam statistics */
+    @Override
+    public void reset() {
+        totalFrames = 0;
+        totalActiveTokens = 0;
+        maxActiveTokens = 0;
+        sumAbsoluteBeam = null;
+        sumRelativeBeam = null;
+        totalUtterances = 0;
+    }
+
+
+    @Override
+    public void newResult(Result result) {
+        if (result.isFinal()) {
+            List<AdaptiveBeamPruner.BeamWidths> trajectory = pruner.getTrajectory();
+            if (!trajectory.isEmpty()) {
+                collectStatistics(trajectory);
+                if (showDetails)
+                    showTrajectory(trajectory);
+            }
+        }
+    }
+
+
+    @Override
+    public void statusChanged(Recognizer.State status) {
+        if (status == State.DEALLOCATED && showSummary)
+            showSummary();
+    }
+
+
+    /**
+     * Adds the average beams of an utterance to the summary.
+     *
+     * @param trajectory the beams of the frames of the utterance
+     */
+    private void collectStatistics(List<AdaptiveBeamPruner.BeamWidths> trajectory) {
+        int factories = getFactoryCount();
+        if (sumAbsoluteBeam == null) {
+            sumAbsoluteBeam = new double[factories];
+            sumRelativeBeam = new double[factories];
+        }
+        for (AdaptiveBeamPruner.BeamWidths beams : trajectory) {
+            totalActiveTokens += beams.getActiveTokens();
+            maxActiveTokens = Math.max(maxActiveTokens, beams.getActiveTokens());
+            for (int i = 0; i < factories; i++) {
+                sumAbsoluteBeam[i] += beams.getAbsoluteBeamWidth(i);
+                sumRelativeBeam[i] += beams.getLogRelativeBeamWidth(i);
+            }
+        }
+        totalFrames += trajectory.size();
+        totalUtterances++;
+    }
+
+
+    /** show the beams of the latest utterance */
+    public void showTrajectory(List<AdaptiveBeamPruner.BeamWidths> trajectory) {
+        long sumTokens = 0;
+        int maxTokens = 0;
+        for (AdaptiveBeamPruner.BeamWidths beams : trajectory) {
+            sumTokens += beams.getActiveTokens();
+            maxTokens = Math.max(maxTokens, beams.getActiveTokens());
+        }
+        System.out.println("   Frames: " + trajectory.size() + "  Active Avg: " + sumTokens / trajectory.size()
+                + "  Max: " + maxTokens);
+        for (int i = 0; i < getFactoryCount(); i++) {
+            int minAbsolute = Integer.MAX_VALUE;
+            int maxAbsolute = Integer.MIN_VALUE;
+            double sumAbsolute = 0;
+            float minRelative = Float.MAX_VALUE;
+            float maxRelative = -Float.MAX_VALUE;
+            double sumRelative = 0;
+            for (AdaptiveBeamPruner.BeamWidths beams : trajectory) {
+                int absolute = beams.getAbsoluteBeamWidth(i);
+                float relative = beams.getLogRelativeBeamWidth(i);
+                minAbsolute = Math.min(minAbsolute, absolute);
+                maxAbsolute = Math.max(maxAbsolute, absolute);
+                sumAbsolute += absolute;
+                minRelative = Math.min(minRelative, relative);
+                maxRelative = Math.max(maxRelative, relative);
+                sumRelative += relative;
+            }
+            System.out.print("   Beam " + i + " Abs Min: " + minAbsolute + "  Avg: "
+                    + Math.round(sumAbsolute / trajectory.size()) + "  Max: " + maxAbsolute);
+            // the widest relative beam has the smallest log value
+            System.out.println("   Rel Narrowest: " + format(maxRelative)
+                    + "  Avg: " + format(sumRelative / trajectory.size())
+                    + "  Widest: " + format(minRelative));
+        }
+    }
+
+
+    /** show the summary result */
+    public void showSummary() {
+        if (totalFrames == 0)
+            return;
+        System.out.println("   Summary Utterances: " + totalUtterances + "  Frames: " + totalFrames + "  Active Avg: " + totalActiveTokens / totalFrames
+                + "  Max: " + maxActiveTokens);
+        for (int i = 0; i < sumAbsoluteBeam.length; i++) {
+            System.out.println("   Summary Beam " + i + " Abs Avg: " + Math.round(sumAbsoluteBeam[i] / totalFrames)
+                    + "   Rel Avg: " + format(sumRelativeBeam[i] / totalFrames));
+        }
+    }
+
+
+    private int getFactoryCount() {
+        List<AdaptiveBeamPruner.BeamWidths> trajectory = pruner.getTrajectory();
+        return trajectory.isEmpty() ? 0 : trajectory.get(0).getFactoryCount();
+    }
+
+
+    private String format(double logBeam) {
+        return logFormatter.format(logMath.logToLinear((float) logBeam));
+    }
+}
@@ -205,6 +205,26 @@ public class SpeedTracker
     }
 
 
+    /**
+     * Returns the duration of the audio of the last decoding.
+     *
+     * @return the duration in seconds
+     */
+    public float getAudioTime() {
+        return audioTime;
+    }
+
+
+    /**
+     * Returns the processing time of the last decoding.
+     *
+     * @return the processing time in seconds
+     */
+    public float getProcessingTime() {
+        return processingTime;
+    }
+
+
     /** Resets the speed statistics */
     @Override
     public void reset() {
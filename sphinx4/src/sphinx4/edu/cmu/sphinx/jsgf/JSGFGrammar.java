@@ -15,9 +15,13 @@ package edu.cmu.sphinx.jsgf;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,6 +34,7 @@ import edu.cmu.sphinx.util.LogMath;
 import edu.cmu.sphinx.util.props.ConfigurationManagerUtils;
 import edu.cmu.sphinx.util.props.PropertyException;
 import edu.cmu.sphinx.util.props.PropertySheet;
+import edu.cmu.sphinx.util.props.S4Boolean;
 import edu.cmu.sphinx.util.props.S4Component;
 import edu.cmu.sphinx.util.props.S4String;
 
@@ -158,6 +163,11 @@ import edu.cmu.sphinx.util.props.S4String;
  * RuleGrammar.setRule). In order for these changes to take place,
  * JSGFGrammar.commitChanges must be called after all grammar changes have been
  * made.
+ * <li>With the {@link #PROP_INCREMENTAL_COMMIT incrementalCommit} property
+ * set, commitChanges only expands the rules again that were replaced with
+ * RuleGrammar.setRule since the last commit, and splices them into the
+ * existing grammar graph. Linguists then only need to recompile the changed
+ * part of the graph. Rules must not be modified in place in this mode.
  * </ul>
  * 
  * <h3>Implementation Notes</h3>
@@ -179,6 +189,13 @@ public class JSGFGrammar extends Grammar {
     @S4Component(type = LogMath.class)
     public final static String PROP_LOG_MATH = "logMath";
 
+    /**
+     * The property that defines whether commitChanges only expands the rules
+     * that were replaced since the last commit, instead of the whole grammar.
+     */
+    @S4Boolean(defaultValue = false)
+    public final static String PROP_INCREMENTAL_COMMIT = "incrementalCommit";
+
     // ---------------------
     // Configurable data
     // ---------------------
@@ -193,6 +210,12 @@ public class JSGFGrammar extends Grammar {
     private GrammarNode firstNode;
     private Logger logger;
 
+    // the expanded rules, for incremental commits
+    private boolean incrementalCommit;
+    private Set<RuleInstance> ruleInstances;
+    private RuleInstance currentInstance;
+    private Set<String> publicRuleNames;
+
     public JSGFGrammar(String location, LogMath logMath, String grammarName,
             boolean showGrammar, boolean optimizeGrammar,
             boolean addSilenceWords, boolean addFillerWords,
@@ -207,11 +230,30 @@ public class JSGFGrammar extends Grammar {
             boolean showGrammar, boolean optimizeGrammar,
             boolean addSilenceWords, boolean addFillerWords,
             Dictionary dictionary) {
-        super(showGrammar, optimizeGrammar, addSilenceWords, addFillerWords,
-                dictionary);
+        this(baseURL, logMath, grammarName, showGrammar, optimizeGrammar,
+                addSilenceWords, addFillerWords, dictionary, false);
+    }
+
+    public JSGFGrammar(URL baseURL, LogMath logMath, String grammarName,
+            boolean showGrammar, boolean optimizeGrammar,
+            boolean addSilenceWords, boolean addFillerWords,
+            Dictionary dictionary, boolean incrementalCommit) {
+        this(baseURL, logMath, grammarName, showGrammar, optimizeGrammar,
+                false, addSilenceWords, addFillerWords, dictionary,
+                incrementalCommit);
+    }
+
+    public JSGFGrammar(URL baseURL, LogMath logMath, String grammarName,
+            boolean showGrammar, boolean optimizeGrammar,
+            boolean determinizeGrammar, boolean addSilenceWords,
+            boolean addFillerWords, Dictionary dictionary,
+            boolean incrementalCommit) {
+        super(showGrammar, optimizeGrammar, determinizeGrammar,
+                addSilenceWords, addFillerWords, dictionary);
         this.baseURL = baseURL;
         this.logMath = logMath;
         this.grammarName = grammarName;
+        this.incrementalCommit = incrementalCommit;
         loadGrammar = true;
         logger = Logger.getLogger(getClass().getName());
     }
@@ -234,6 +276,7 @@ public class JSGFGrammar extends Grammar {
         logMath = (LogMath) ps.getComponent(PROP_LOG_MATH);
         logger = ps.getLogger();
         grammarName = ps.getString(PROP_GRAMMAR_NAME);
+        incrementalCommit = ps.getBoolean(PROP_INCREMENTAL_COMMIT);
         loadGrammar = true;
     }
 
@@ -294,6 +337,8 @@ public class JSGFGrammar extends Grammar {
      * @return the initial node of the Grammar
      */
     protected GrammarNode createGrammar() throws IOException {
+        // the grammar graph has been cleared, so expand all rules
+        ruleInstances = null;
         try {
             commitChanges();
         } catch (JSGFGrammarException e) {
@@ -387,16 +432,34 @@ public class JSGFGrammar extends Grammar {
                 throw new JSGFGrammarException("Can't resolve rule: "
                         + ruleName.getRuleName());
             }
-            GrammarGraph ruleResult = processRule(rule);
-            if (result != ruleResult) {
-                result.getStartNode().add(ruleResult.getStartNode(), 0.0f);
-                ruleResult.getEndNode().add(result.getEndNode(), 0.0f);
-            }
+            expandRuleInstance(new RuleInstance(initialRuleName.getRuleName(),
+                    result, rg, ruleName.getSimpleRuleName()));
         }
         ruleStack.pop();
         return result;
     }
 
+    /**
+     * Expands the rule of a rule instance between the start and end node of
+     * its graph.
+     * 
+     * @param instance
+     *            the rule instance to expand
+     */
+    private void expandRuleInstance(RuleInstance instance)
+            throws JSGFGrammarException {
+        GrammarGraph result = instance.graph;
+        RuleInstance parent = currentInstance;
+        currentInstance = instance;
+        instance.rule = instance.ruleGrammar.getRule(instance.ruleName);
+        GrammarGraph ruleResult = processRule(instance.rule);
+        currentInstance = parent;
+        if (result != ruleResult) {
+            result.getStartNode().add(ruleResult.getStartNode(), 0.0f);
+            ruleResult.getEndNode().add(result.getEndNode(), 0.0f);
+        }
+    }
+
     /**
      * Parses the given RuleCount into a network of GrammarNodes.
      * 
@@ -560,6 +623,7 @@ public class JSGFGrammar extends Grammar {
     private GrammarGraph processRuleToken(JSGFRuleToken ruleToken) {
 
         GrammarNode node = createGrammarNode(ruleToken.getText());
+        addToCurrentInstance(node);
         return new GrammarGraph(node, node);
     }
 
@@ -605,6 +669,7 @@ public class JSGFGrammar extends Grammar {
     public void commitChanges() throws IOException, JSGFGrammarParseException,
             JSGFGrammarException {
         try {
+            boolean reload = loadGrammar;
             if (loadGrammar) {
                 manager = new JSGFRuleGrammarManager();
                 ruleGrammar = loadNamedGrammar(grammarName);
@@ -613,8 +678,15 @@ public class JSGFGrammar extends Grammar {
             }
 
             manager.linkGrammars();
+            if (incrementalCommit && !reload && ruleInstances != null
+                    && commitChangedRules()) {
+                return;
+            }
             ruleStack = new RuleStack();
             newGrammar();
+            ruleInstances = incrementalCommit ? new LinkedHashSet<RuleInstance>()
+                    : null;
+            publicRuleNames = getPublicRuleNames();
 
             firstNode = createGrammarNode("<sil>");
             GrammarNode finalNode = createGrammarNode("<sil>");
@@ -628,18 +700,18 @@ public class JSGFGrammar extends Grammar {
                     String fullName = getFullRuleName(ruleName);
                     GrammarGraph publicRuleGraph = new GrammarGraph();
                     ruleStack.push(fullName, publicRuleGraph);
-                    JSGFRule rule = ruleGrammar.getRule(ruleName);
-                    GrammarGraph graph = processRule(rule);
+                    expandRuleInstance(new RuleInstance(fullName,
+                            publicRuleGraph, ruleGrammar, ruleName));
                     ruleStack.pop();
 
                     firstNode.add(publicRuleGraph.getStartNode(), 0.0f);
                     publicRuleGraph.getEndNode().add(finalNode, 0.0f);
-                    publicRuleGraph.getStartNode().add(graph.getStartNode(),
-                            0.0f);
-                    graph.getEndNode().add(publicRuleGraph.getEndNode(), 0.0f);
                 }
             }
+            // post processing may replace the initial node
+            initialNode = firstNode;
             postProcessGrammar();
+            firstNode = initialNode;
             if (logger.isLoggable(Level.FINEST)) {
                 dumpGrammar();
             }
@@ -648,6 +720,113 @@ public class JSGFGrammar extends Grammar {
         }
     }
 
+    /**
+     * Expands the rules again that were replaced since the last commit and
+     * splices them into the grammar graph in place of their old expansions.
+     * A replaced rule inside another replaced rule is expanded with the outer
+     * rule.
+     * 
+     * @return <code>false</code> if the whole grammar has to be expanded,
+     *         because public rules were added or removed, or rules were
+     *         removed
+     * @throws JSGFGrammarException
+     */
+    private boolean commitChangedRules() throws JSGFGrammarException {
+        if (!getPublicRuleNames().equals(publicRuleNames)) {
+            return false;
+        }
+        List<RuleInstance> changedInstances = new ArrayList<RuleInstance>();
+        for (RuleInstance instance : ruleInstances) {
+            JSGFRule rule = instance.ruleGrammar.getRule(instance.ruleName);
+            if (rule == null) {
+                return false;
+            }
+            if (rule != instance.rule) {
+                changedInstances.add(instance);
+            }
+        }
+        if (changedInstances.isEmpty()) {
+            return true;
+        }
+
+        beginChange();
+        List<GrammarNode> removedNodes = new ArrayList<GrammarNode>();
+        for (RuleInstance instance : changedInstances) {
+            if (!instance.isDiscarded && !instance.hasChangedAncestor()) {
+                removedNodes.addAll(instance.discardExpansion());
+                expandRuleInstanceAgain(instance);
+            }
+        }
+        endChange(removedNodes);
+        logger.fine("Expanded " + changedInstances.size()
+                + " changed rule instances");
+        if (logger.isLoggable(Level.FINEST)) {
+            dumpGrammar();
+        }
+        return true;
+    }
+
+    /**
+     * Expands a rule instance again, with the rule instances it is expanded
+     * in on the rule stack like in the first expansion.
+     * 
+     * @param instance
+     *            the rule instance with a discarded expansion
+     */
+    private void expandRuleInstanceAgain(RuleInstance instance)
+            throws JSGFGrammarException {
+        LinkedList<RuleInstance> ancestors = new LinkedList<RuleInstance>();
+        for (RuleInstance i = instance.parent; i != null; i = i.parent) {
+            ancestors.addFirst(i);
+        }
+        int[] successorCounts = new int[ancestors.size()];
+        ruleStack = new RuleStack();
+        for (int i = 0; i < successorCounts.length; i++) {
+            RuleInstance ancestor = ancestors.get(i);
+            ruleStack.push(ancestor.stackName, ancestor.graph);
+            successorCounts[i] = ancestor.graph.getEndNode().getSuccessors().length;
+        }
+        ruleStack.push(instance.stackName, instance.graph);
+
+        removeSuccessors(instance.graph.getStartNode());
+        currentInstance = instance.parent;
+        expandRuleInstance(instance);
+        currentInstance = null;
+
+        // a recursive reference links the expansion to the end of an
+        // enclosing rule instance
+        for (int i = 0; i < successorCounts.length; i++) {
+            GrammarNode endNode = ancestors.get(i).graph.getEndNode();
+            if (endNode.getSuccessors().length != successorCounts[i]) {
+                markChanged(endNode);
+            }
+        }
+    }
+
+    /**
+     * Adds a node to the expansion of the current rule instance, so that it is
+     * removed when the rule is expanded again.
+     * 
+     * @param node
+     *            the node
+     */
+    private void addToCurrentInstance(GrammarNode node) {
+        if (ruleInstances != null && currentInstance != null) {
+            currentInstance.nodes.add(node);
+        }
+    }
+
+    /** Returns the names of the public rules of the rule grammar. */
+    private Set<String> getPublicRuleNames() {
+        Set<String> names = new HashSet<String>();
+        for (String ruleName : ruleGrammar.getRuleNames()) {
+            if (ruleGrammar.isRulePublic(ruleName)) {
+                names.add(ruleName);
+            }
+        }
+        return names;
+    }
+
     /**
      * Load grammars imported by the specified RuleGrammar if they are not
      * already loaded.
@@ -797,6 +976,8 @@ public class JSGFGrammar extends Grammar {
         GrammarGraph() {
             startNode = createGrammarNode(false);
             endNode = createGrammarNode(false);
+            addToCurrentInstance(startNode);
+            addToCurrentInstance(endNode);
         }
 
         /**
@@ -818,6 +999,85 @@ public class JSGFGrammar extends Grammar {
         }
     }
 
+    /**
+     * An expansion of a rule into the grammar graph. A rule that is referenced
+     * several times is expanded once per reference. The rule instances form a
+     * tree, the instances of public rules are the roots.
+     */
+    class RuleInstance {
+
+        private final String stackName;
+        private final GrammarGraph graph;
+        private final JSGFRuleGrammar ruleGrammar;
+        private final String ruleName;
+        private final RuleInstance parent;
+        private final List<RuleInstance> children = new ArrayList<RuleInstance>();
+        private final List<GrammarNode> nodes = new ArrayList<GrammarNode>();
+        private JSGFRule rule;
+        private boolean isDiscarded;
+
+        /**
+         * Creates a rule instance in the current rule instance.
+         * 
+         * @param stackName
+         *            the name of the rule on the rule stack
+         * @param graph
+         *            the graph between whose start and end node the rule is
+         *            expanded
+         * @param ruleGrammar
+         *            the grammar of the rule
+         * @param ruleName
+         *            the name of the rule in its grammar
+         */
+        RuleInstance(String stackName, GrammarGraph graph,
+                JSGFRuleGrammar ruleGrammar, String ruleName) {
+            this.stackName = stackName;
+            this.graph = graph;
+            this.ruleGrammar = ruleGrammar;
+            this.ruleName = ruleName;
+            this.parent = currentInstance;
+            if (ruleInstances != null) {
+                if (parent != null) {
+                    parent.children.add(this);
+                }
+                ruleInstances.add(this);
+                markSplicePoint(graph.getStartNode());
+                markSplicePoint(graph.getEndNode());
+            }
+        }
+
+        /**
+         * Checks whether a rule instance this instance is expanded in has been
+         * replaced.
+         */
+        boolean hasChangedAncestor() {
+            for (RuleInstance i = parent; i != null; i = i.parent) {
+                if (i.ruleGrammar.getRule(i.ruleName) != i.rule) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Discards the expansion of this rule instance, with the rule
+         * instances in it.
+         * 
+         * @return the nodes of the expansion
+         */
+        List<GrammarNode> discardExpansion() {
+            List<GrammarNode> discardedNodes = new ArrayList<GrammarNode>(nodes);
+            nodes.clear();
+            for (RuleInstance child : children) {
+                child.isDiscarded = true;
+                ruleInstances.remove(child);
+                discardedNodes.addAll(child.discardExpansion());
+            }
+            children.clear();
+            return discardedNodes;
+        }
+    }
+
     /** Manages a stack of grammar graphs that can be accessed by grammar name */
     class RuleStack {
 
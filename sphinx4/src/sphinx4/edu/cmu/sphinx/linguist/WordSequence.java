@@ -21,24 +21,54 @@ import java.util.List;
 /**
  * This class can be used to keep track of a word sequence.  This class is an immutable class. It can never be modified
  * once it is created (except, perhaps for transient, cached things such as a precalculated hashcode).
+ * <p/>
+ * Sequences of up to three words pack the ids of their words (see {@link Word#getId}) into a single long key, so that
+ * they are hashed and compared without looking at the words. The sequences that are derived from other sequences, by
+ * {@link #addWord}, {@link #trim}, {@link #getOldest} and {@link #getNewest}, are looked up by their key in a shared
+ * history table first, so that the histories that the linguists and language models create again and again for every
+ * frame are reused instead of allocated. The table is small and overwrites older entries, so the same history may
+ * still exist in several instances; they are equal but not identical.
  */
 
 public final class WordSequence {
 
+    /** The number of bits of a word id in a packed key. */
+    private final static int ID_BITS = 21;
+
+    /** The maximum number of words whose ids are packed into a key. */
+    private final static int MAX_PACKED_SIZE = 63 / ID_BITS;
+
+    /** The key of a sequence whose words can't be packed. */
+    private final static long NOT_PACKED = -1;
+
+    /** The number of entries of the history table, a power of two. */
+    private final static int HISTORY_TABLE_SIZE = 1 << 16;
+
+    /**
+     * The table of recently derived sequences by the hash of their keys. Concurrent threads may overwrite each
+     * other's entries, which only costs a new instance, and the final fields of a sequence make it safe to read from
+     * another thread.
+     */
+    private final static WordSequence[] historyTable = new WordSequence[HISTORY_TABLE_SIZE];
+
     private final Word[] words;
-    private transient int hashCode = -1;
+    private final long key;
+    private final int hashCode;
 
     /** an empty word sequence, that is, it has no words. */
-    public final static WordSequence EMPTY = new WordSequence(0);
+    public final static WordSequence EMPTY = new WordSequence(new Word[0], 0);
 
 
     /**
-     * Constructs a word sequence with the given depth.
+     * Constructs a word sequence of the given words without copying them.
      *
-     * @param size the maximum depth of the word history
+     * @param words the words of the sequence
+     * @param key   the packed key of the words, or NOT_PACKED
      */
-    private WordSequence(int size) {
-        words = new Word[size];
+    private WordSequence(Word[] words, long key) {
+        this.words = words;
+        this.key = key;
+        this.hashCode = hash(words, key);
     }
 
 
@@ -50,6 +80,8 @@ public final class WordSequence {
     public WordSequence(Word[] words) {
         this.words = words.clone();
         check();
+        this.key = pack(this.words);
+        this.hashCode = hash(this.words, key);
     }
 
 
@@ -61,6 +93,8 @@ public final class WordSequence {
     public WordSequence(List<Word> list) {
         this.words = list.toArray(new Word[list.size()]);
         check();
+        this.key = pack(words);
+        this.hashCode = hash(words, key);
     }
 
 
@@ -71,6 +105,89 @@ public final class WordSequence {
     }
 
 
+    /**
+     * Packs the ids of the given words into a key.
+     *
+     * @param words the words
+     * @return the key of the words, or NOT_PACKED if there are too many words or an id is too large
+     */
+    private static long pack(Word[] words) {
+        if (words.length > MAX_PACKED_SIZE)
+            return NOT_PACKED;
+        long key = 0;
+        for (Word word : words) {
+            long id = word.getId();
+            if (id >= 1L << ID_BITS)
+                return NOT_PACKED;
+            key = key << ID_BITS | id;
+        }
+        return key;
+    }
+
+
+    /**
+     * Returns a mask of the ids of the newest words in a key.
+     *
+     * @param size the number of the newest words
+     * @return the mask
+     */
+    private static long mask(int size) {
+        return (1L << ID_BITS * size) - 1;
+    }
+
+
+    private static int hash(Word[] words, long key) {
+        if (key == NOT_PACKED) {
+            key = 0;
+            for (Word word : words)
+                key = key * 0x9E3779B97F4A7C15L + word.getId();
+        }
+        long code = (key + words.length) * 0x9E3779B97F4A7C15L;
+        return (int) (code ^ code >>> 32);
+    }
+
+
+    /**
+     * Returns the sequence of the given key from the history table, if it holds the same word instances as the given
+     * words. Different instances of equal words may differ in their pronunciations.
+     *
+     * @param key   the packed key of the sequence
+     * @param words the words of the sequence
+     * @param from  the index of the first word of the sequence in <code>words</code>
+     * @param size  the size of the sequence
+     * @param last  the last word of the sequence, or null if it is in <code>words</code> too
+     * @return the sequence, or null if the table has no such sequence
+     */
+    private static WordSequence lookup(long key, Word[] words, int from, int size, Word last) {
+        long code = (key + size) * 0x9E3779B97F4A7C15L;
+        WordSequence sequence = historyTable[(int) (code ^ code >>> 32) & (HISTORY_TABLE_SIZE - 1)];
+        if (sequence == null || sequence.key != key || sequence.words.length != size)
+            return null;
+        int count = last == null ? size : size - 1;
+        for (int i = 0; i < count; i++)
+            if (sequence.words[i] != words[from + i])
+                return null;
+        if (last != null && sequence.words[size - 1] != last)
+            return null;
+        return sequence;
+    }
+
+
+    /**
+     * Creates a sequence of words derived from another sequence and enters it into the history table.
+     *
+     * @param words the words of the sequence, which are not copied
+     * @param key   the packed key of the words, or NOT_PACKED
+     * @return the new sequence
+     */
+    private static WordSequence create(Word[] words, long key) {
+        WordSequence sequence = new WordSequence(words, key);
+        if (key != NOT_PACKED)
+            historyTable[sequence.hashCode & (HISTORY_TABLE_SIZE - 1)] = sequence;
+        return sequence;
+    }
+
+
     /**
      * Returns a new word sequence with the given word added to the sequence
      *
@@ -82,18 +199,30 @@ public final class WordSequence {
         if (maxSize <= 0) {
             return EMPTY;
         }
+        if (word == null) {
+            throw new Error("WordSequence should not have null Words.");
+        }
         int nextSize = ((size() + 1) > maxSize) ? maxSize : (size() + 1);
-        WordSequence next = new WordSequence(nextSize);
+        long nextKey = NOT_PACKED;
+        if (key != NOT_PACKED && nextSize <= MAX_PACKED_SIZE && word.getId() < 1L << ID_BITS) {
+            nextKey = (key << ID_BITS | word.getId()) & mask(nextSize);
+            WordSequence next = lookup(nextKey, words, size() - nextSize + 1, nextSize, word);
+            if (next != null)
+                return next;
+        }
+
+        Word[] nextWords = new Word[nextSize];
         int nextIndex = nextSize - 1;
         int thisIndex = size() - 1;
-        next.words[nextIndex--] = word;
+        nextWords[nextIndex--] = word;
 
         while (nextIndex >= 0 && thisIndex >= 0) {
-            next.words[nextIndex--] = this.words[thisIndex--];
+            nextWords[nextIndex--] = this.words[thisIndex--];
         }
-        next.check();
+        if (nextKey == NOT_PACKED)
+            nextKey = pack(nextWords);
 
-        return next;
+        return create(nextWords, nextKey);
     }
 
 
@@ -103,13 +232,18 @@ public final class WordSequence {
      * @return the oldest words in the sequence, with the newest word omitted
      */
     public WordSequence getOldest() {
-        WordSequence next = EMPTY;
-
-        if (size() >= 1) {
-            next = new WordSequence(words.length - 1);
-            System.arraycopy(this.words, 0, next.words, 0, next.words.length);
+        if (size() <= 1) {
+            return EMPTY;
+        }
+        int nextSize = words.length - 1;
+        if (key != NOT_PACKED) {
+            WordSequence next = lookup(key >>> ID_BITS, words, 0, nextSize, null);
+            if (next != null)
+                return next;
         }
-        return next;
+        Word[] nextWords = new Word[nextSize];
+        System.arraycopy(this.words, 0, nextWords, 0, nextSize);
+        return create(nextWords, pack(nextWords));
     }
 
 
@@ -119,13 +253,10 @@ public final class WordSequence {
      * @return the newest words in the sequence with the oldest word omitted
      */
     public WordSequence getNewest() {
-        WordSequence next = EMPTY;
-
-        if (size() >= 1) {
-            next = new WordSequence(words.length - 1);
-            System.arraycopy(this.words, 1, next.words, 0, next.words.length);
+        if (size() <= 1) {
+            return EMPTY;
         }
-        return next;
+        return trim(size() - 1);
     }
 
 
@@ -139,20 +270,17 @@ public final class WordSequence {
     public WordSequence trim(int maxSize) {
         if (maxSize <= 0 || size() == 0) {
             return EMPTY;
-        } else if (maxSize == size()) {
+        } else if (maxSize >= size()) {
             return this;
         } else {
-            if (maxSize > size()) {
-                maxSize = size();
-            }
-            WordSequence next = new WordSequence(maxSize);
-            int thisIndex = words.length - 1;
-            int nextIndex = next.words.length - 1;
-
-            for (int i = 0; i < maxSize; i++) {
-                next.words[nextIndex--] = this.words[thisIndex--];
+            if (key != NOT_PACKED) {
+                WordSequence next = lookup(key & mask(maxSize), words, words.length - maxSize, maxSize, null);
+                if (next != null)
+                    return next;
             }
-            return next;
+            Word[] nextWords = new Word[maxSize];
+            System.arraycopy(this.words, words.length - maxSize, nextWords, 0, maxSize);
+            return create(nextWords, pack(nextWords));
         }
     }
 
@@ -202,13 +330,6 @@ public final class WordSequence {
      */
     @Override
     public int hashCode() {
-        if (hashCode == -1) {
-            int code = 123;
-            for (int i = 0; i < words.length; i++) {
-                code += words[i].hashCode() * (2 * i + 1);
-            }
-            hashCode = code;
-        }
         return hashCode;
     }
 
@@ -225,9 +346,12 @@ public final class WordSequence {
             return true;
         } else if (o instanceof WordSequence) {
             WordSequence other = (WordSequence) o;
-            if (words.length == other.words.length) {
+            if (words.length == other.words.length && hashCode == other.hashCode) {
+                if (key != NOT_PACKED) {
+                    return key == other.key;
+                }
                 for (int i = 0; i < words.length; i++) {
-                    if (!words[i].equals(other.words[i])) {
+                    if (words[i].getId() != other.words[i].getId()) {
                         return false;
                     }
                 }
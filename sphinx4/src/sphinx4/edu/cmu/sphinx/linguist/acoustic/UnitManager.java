@@ -71,6 +71,28 @@ public class UnitManager implements Configurable {
         return unit;
     }
 
+    /**
+     * Adds a context independent unit that was created by another unit manager, for instance by the one of another
+     * recognizer that shares its acoustic model with this one. The unit keeps its id, so that the units of this
+     * manager and of the shared model are interchangeable.
+     *
+     * @param unit the context independent unit
+     * @throws IllegalStateException if this manager already has a unit with the same name and another id
+     */
+    public void addUnit(Unit unit) {
+        assert !unit.isContextDependent();
+        Unit existing = ciMap.get(unit.getName());
+        if (existing != null) {
+            if (existing.getBaseID() != unit.getBaseID()) {
+                throw new IllegalStateException("Unit " + unit.getName() + " already exists with id "
+                        + existing.getBaseID() + " instead of " + unit.getBaseID());
+            }
+            return;
+        }
+        ciMap.put(unit.getName(), unit);
+        nextID = Math.max(nextID, unit.getBaseID() + 1);
+    }
+
     /**
      * Gets or creates a unit from the unit pool
      *
@@ -0,0 +1,337 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.linguist.acoustic.tiedstate;
+
+import edu.cmu.sphinx.util.LogMath;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The codebook of a quantized acoustic model. It maps the codes of {@link QuantizedMixtureComponent
+ * QuantizedMixtureComponents} back to means and precisions.
+ * <p/>
+ * With 8 bits every feature dimension has its own codebook of 256 means and 256 precisions, trained by a few
+ * iterations of k-means over the components of the model. The precisions are clustered in the log domain since they
+ * span several orders of magnitude. With 16 bits the values are stored as half precision floats, which keeps a
+ * relative error below 0.05% and needs no training. In both cases a code is turned into its value by a table lookup,
+ * so the scoring kernel does no more arithmetic than the one of the {@link MixtureComponent}.
+ */
+public class GaussianCodebook {
+
+    /** The number of k-means iterations used to train an 8 bit codebook. */
+    private final static int TRAINING_ITERATIONS = 10;
+
+    /** The largest finite half precision float. */
+    final static float MAX_HALF = 65504f;
+
+    private final static float[] halfFloats = new float[1 << 16];
+
+    static {
+        for (int i = 0; i < halfFloats.length; i++) {
+            halfFloats[i] = halfToFloat(i);
+        }
+    }
+
+    private final int bits;
+    private final int dimension;
+    private final float[] meanTable;
+    private final float[] precisionTable;
+
+
+    private GaussianCodebook(int bits, int dimension, float[] meanTable, float[] precisionTable) {
+        this.bits = bits;
+        this.dimension = dimension;
+        this.meanTable = meanTable;
+        this.precisionTable = precisionTable;
+    }
+
+
+    /**
+     * Creates a codebook for the given mixture components.
+     *
+     * @param components the components to quantize, all of the same dimension
+     * @param bits       the bits per parameter, 8 or 16
+     * @return the codebook
+     */
+    public static GaussianCodebook create(Collection<MixtureComponent> components, int bits) {
+        if (components.isEmpty()) {
+            throw new IllegalArgumentException("No mixture components to quantize");
+        }
+        int dimension = components.iterator().next().getMeanTransformed().length;
+        if (bits == 16) {
+            return new GaussianCodebook(bits, dimension, halfFloats, halfFloats);
+        }
+        if (bits != 8) {
+            throw new IllegalArgumentException("Unsupported number of bits: " + bits);
+        }
+
+        float[] meanTable = new float[dimension << 8];
+        float[] precisionTable = new float[dimension << 8];
+        float[] means = new float[components.size()];
+        float[] precisions = new float[components.size()];
+        for (int d = 0; d < dimension; d++) {
+            int i = 0;
+            for (MixtureComponent component : components) {
+                means[i] = component.getMeanTransformed()[d];
+                precisions[i] = (float) Math.log(-component.getPrecisionTransformed()[d]);
+                i++;
+            }
+            float[] centroids = train(means);
+            System.arraycopy(centroids, 0, meanTable, d << 8, 256);
+            centroids = train(precisions);
+            for (int k = 0; k < 256; k++) {
+                precisionTable[(d << 8) + k] = (float) -Math.exp(centroids[k]);
+            }
+        }
+        return new GaussianCodebook(bits, dimension, meanTable, precisionTable);
+    }
+
+
+    /**
+     * Trains 256 sorted centroids for the given values with k-means, starting from a uniform grid.
+     *
+     * @param values the values, which are sorted
+     * @return the centroids
+     */
+    private static float[] train(float[] values) {
+        Arrays.sort(values);
+        float min = values[0];
+        float step = (values[values.length - 1] - min) / 255;
+        float[] centroids = new float[256];
+        for (int k = 0; k < 256; k++) {
+            centroids[k] = min + k * step;
+        }
+        double[] sums = new double[256];
+        int[] counts = new int[256];
+        for (int iteration = 0; iteration < TRAINING_ITERATIONS; iteration++) {
+            Arrays.fill(sums, 0);
+            Arrays.fill(counts, 0);
+            for (float value : values) {
+                int k = nearest(centroids, 0, value);
+                sums[k] += value;
+                counts[k]++;
+            }
+            for (int k = 0; k < 256; k++) {
+                if (counts[k] > 0) {
+                    centroids[k] = (float) (sums[k] / counts[k]);
+                }
+            }
+            Arrays.sort(centroids);
+        }
+        return centroids;
+    }
+
+
+    /**
+     * Finds the nearest of 256 sorted values.
+     *
+     * @param table  the table holding the values
+     * @param offset the offset of the values in the table
+     * @param value  the value to look up
+     * @return the index of the nearest value, relative to the offset
+     */
+    private static int nearest(float[] table, int offset, float value) {
+        int low = 0;
+        int high = 255;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (value - table[offset + middle] > table[offset + middle + 1] - value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+
+    /** @return the bits per parameter, 8 or 16 */
+    public int getBits() {
+        return bits;
+    }
+
+
+    /** @return the dimension of the components */
+    public int getDimension() {
+        return dimension;
+    }
+
+
+    /**
+     * Quantizes a mixture component with this codebook.
+     *
+     * @param component the component to quantize
+     * @param logMath   the log math to use
+     * @return the quantized component
+     */
+    public QuantizedMixtureComponent quantize(MixtureComponent component, LogMath logMath) {
+        float[] mean = component.getMeanTransformed();
+        float[] precision = component.getPrecisionTransformed();
+        if (mean.length != dimension) {
+            throw new IllegalArgumentException("Component has dimension " + mean.length + " instead of "
+                    + dimension);
+        }
+        byte[] codes = null;
+        short[] halfCodes = null;
+        if (bits == 8) {
+            codes = new byte[2 * dimension];
+            for (int d = 0; d < dimension; d++) {
+                codes[2 * d] = (byte) nearest(meanTable, d << 8, mean[d]);
+                codes[2 * d + 1] = (byte) nearestPrecision(d, precision[d]);
+            }
+        } else {
+            halfCodes = new short[2 * dimension];
+            for (int d = 0; d < dimension; d++) {
+                if (Math.abs(mean[d]) > MAX_HALF) {
+                    throw new IllegalArgumentException("Mean " + mean[d] + " is out of the half precision range");
+                }
+                halfCodes[2 * d] = floatToHalf(mean[d]);
+                // a tiny variance gives a precision beyond the half precision range, clamp it instead of storing
+                // an infinite precision
+                halfCodes[2 * d + 1] = floatToHalf(Math.max(precision[d], -MAX_HALF));
+            }
+        }
+        return new QuantizedMixtureComponent(logMath, this, codes, halfCodes, component.getLogDistFloor(),
+                component.getVarianceFloor());
+    }
+
+
+    /** Finds the nearest precision in the log domain, in which the codebook was trained. */
+    private int nearestPrecision(int d, float precision) {
+        // the precision table is sorted descending, its logs of the negated values ascending
+        double log = Math.log(-precision);
+        int low = 0;
+        int high = 255;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            double lower = Math.log(-precisionTable[(d << 8) + middle]);
+            double upper = Math.log(-precisionTable[(d << 8) + middle + 1]);
+            if (log - lower > upper - log) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+
+    /** @return the table of means, indexed by dimension times 256 plus code for 8 bits, by code for 16 bits */
+    float[] getMeanTable() {
+        return meanTable;
+    }
+
+
+    /** @return the table of precisions, indexed like the table of means */
+    float[] getPrecisionTable() {
+        return precisionTable;
+    }
+
+
+    /**
+     * Writes this codebook.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the codebook can not be written
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(bits);
+        out.writeInt(dimension);
+        if (bits == 8) {
+            for (float value : meanTable) {
+                out.writeFloat(value);
+            }
+            for (float value : precisionTable) {
+                out.writeFloat(value);
+            }
+        }
+    }
+
+
+    /**
+     * Reads a codebook written by {@link #write}.
+     *
+     * @param buffer the buffer to read from
+     * @return the codebook
+     */
+    static GaussianCodebook read(ByteBuffer buffer) {
+        int bits = buffer.getInt();
+        int dimension = buffer.getInt();
+        if (bits == 16) {
+            return new GaussianCodebook(bits, dimension, halfFloats, halfFloats);
+        }
+        float[] meanTable = new float[dimension << 8];
+        float[] precisionTable = new float[dimension << 8];
+        buffer.asFloatBuffer().get(meanTable);
+        buffer.position(buffer.position() + 4 * meanTable.length);
+        buffer.asFloatBuffer().get(precisionTable);
+        buffer.position(buffer.position() + 4 * precisionTable.length);
+        return new GaussianCodebook(bits, dimension, meanTable, precisionTable);
+    }
+
+
+    /**
+     * Converts a float to a half precision float, rounding to the nearest value.
+     *
+     * @param value the value to convert
+     * @return the bits of the half precision float
+     */
+    static short floatToHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        float abs = Math.abs(value);
+        if (Float.isNaN(value)) {
+            return (short) (sign | 0x7e00);
+        }
+        if (abs >= 65520f) {
+            return (short) (sign | 0x7c00);
+        }
+        if (abs < 6.103515625e-5f) {
+            // subnormal, in units of 2^-24
+            return (short) (sign | Math.round(abs * (1 << 24)));
+        }
+        int mantissa = bits & 0x7fffff;
+        int half = ((((bits >>> 23) & 0xff) - 127 + 15) << 10) | (mantissa >>> 13);
+        int rest = mantissa & 0x1fff;
+        if (rest > 0x1000 || rest == 0x1000 && (half & 1) != 0) {
+            // a carry into the exponent is still the right value
+            half++;
+        }
+        return (short) (sign | half);
+    }
+
+
+    /**
+     * Converts a half precision float to a float.
+     *
+     * @param half the bits of the half precision float
+     * @return the value
+     */
+    static float halfToFloat(int half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1f;
+        int mantissa = half & 0x3ff;
+        if (exponent == 0) {
+            float value = mantissa / (float) (1 << 24);
+            return sign != 0 ? -value : value;
+        }
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+}
@@ -198,6 +198,12 @@ public class GaussianMixture extends ScoreCachingSenone {
 
 
 
+    /** @return the (log-scaled) mixture weights of the component densities, shared with the mixture weight pool */
+    float[] getLogMixtureWeights() {
+        return logMixtureWeights;
+    }
+
+
     /** @return the (log-scaled) mixture weight of the component density <code>index</code> */
     public float getLogComponentWeight(int index) {
         return logMixtureWeights[index];
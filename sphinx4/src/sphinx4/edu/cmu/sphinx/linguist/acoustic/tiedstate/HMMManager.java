@@ -17,21 +17,26 @@ import edu.cmu.sphinx.linguist.acoustic.HMMPosition;
 import edu.cmu.sphinx.linguist.acoustic.Unit;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Logger;
 
 
 /**
  * Manages HMMs. This HMMManager groups {@link edu.cmu.sphinx.linguist.acoustic.HMM HMMs} together by their {@link
  * edu.cmu.sphinx.linguist.acoustic.HMMPosition position} with the word.
+ * <p/>
+ * The HMMs are kept in concurrent collections, because the acoustic models of recognizers that share a loaded model
+ * add their composite HMMs to the same manager. Lookups never lock.
  */
 public class HMMManager implements Iterable<HMM> {
 
-    private final List<HMM> allHMMs = new ArrayList<HMM>();
+    private final Collection<HMM> allHMMs = new ConcurrentLinkedQueue<HMM>();
     private final Map<HMMPosition, Map<Unit, HMM>> hmmsPerPosition = new EnumMap<HMMPosition, Map<Unit, HMM>>(HMMPosition.class);
 
     public HMMManager () {
         for (HMMPosition pos : HMMPosition.values())
-            hmmsPerPosition.put(pos, new HashMap<Unit, HMM>());
+            hmmsPerPosition.put(pos, new ConcurrentHashMap<Unit, HMM>());
     }
 
     /**
@@ -58,7 +63,8 @@ public class HMMManager implements Iterable<HMM> {
 
 
     /**
-     * Gets an iterator that iterates through all HMMs
+     * Gets an iterator that iterates through all HMMs. HMMs may be added while it is in use, for instance by another
+     * recognizer sharing the acoustic model, the iterator may or may not return them.
      *
      * @return an iterator that iterates through all HMMs
      */
@@ -132,6 +132,60 @@ public class MixtureComponent implements Cloneable, Serializable {
     }
 
 
+    /**
+     * Creates a MixtureComponent from already transformed and precomputed parameters, as restored by the {@link
+     * SnapshotLoader}. Neither the transformations nor the precomputation are run again.
+     *
+     * @param logMath                      the log math to use
+     * @param mean                         the mean vector for this PDF
+     * @param meanTransformed              the transformed mean vector
+     * @param variance                     the variance for this PDF
+     * @param precisionTransformed         the transformed and floored precision
+     * @param logPreComputedGaussianFactor the precomputed gaussian factor, in log
+     * @param logDistFloor                 the lowest score value, in log
+     * @param varianceFloor                the lowest value for the variance
+     */
+    MixtureComponent(
+            LogMath logMath,
+            float[] mean,
+            float[] meanTransformed,
+            float[] variance,
+            float[] precisionTransformed,
+            float logPreComputedGaussianFactor,
+            float logDistFloor,
+            float varianceFloor) {
+
+        assert variance.length == mean.length;
+
+        this.logMath = logMath;
+        this.mean = mean;
+        this.meanTransformed = meanTransformed;
+        this.variance = variance;
+        this.precisionTransformed = precisionTransformed;
+        this.logPreComputedGaussianFactor = logPreComputedGaussianFactor;
+        this.distFloor = logDistFloor;
+        this.varianceFloor = varianceFloor;
+    }
+
+
+    /**
+     * Creates a MixtureComponent that keeps its parameters in a representation of its own, such as the {@link
+     * QuantizedMixtureComponent}. Such a subclass must override all methods that use the parameter vectors.
+     *
+     * @param logMath                      the log math to use
+     * @param logPreComputedGaussianFactor the precomputed gaussian factor, in log
+     * @param logDistFloor                 the lowest score value, in log
+     * @param varianceFloor                the lowest value for the variance
+     */
+    protected MixtureComponent(LogMath logMath, float logPreComputedGaussianFactor, float logDistFloor,
+                               float varianceFloor) {
+        this.logMath = logMath;
+        this.logPreComputedGaussianFactor = logPreComputedGaussianFactor;
+        this.distFloor = logDistFloor;
+        this.varianceFloor = varianceFloor;
+    }
+
+
     /**
      * Returns the mean for this component.
      *
@@ -201,7 +255,8 @@ public class MixtureComponent implements Cloneable, Serializable {
         // the argument of the exponential in the javadoc comment.
 
         // Convert to the appropriate base.
-        logDval = logMath.lnToLog(logDval);
+        if (!logMath.isNaturalBase())
+            logDval = logMath.lnToLog(logDval);
 
         // Add the precomputed factor, with the appropriate sign.
         logDval -= logPreComputedGaussianFactor;
@@ -312,6 +367,41 @@ public class MixtureComponent implements Cloneable, Serializable {
         }
     }
 
+    /** @return the mean after the adaptation transformations */
+    float[] getMeanTransformed() {
+        return meanTransformed;
+    }
+
+
+    /** @return the precision after the adaptation transformations and the variance floor */
+    float[] getPrecisionTransformed() {
+        return precisionTransformed;
+    }
+
+
+    /** @return the precomputed gaussian factor, in log */
+    protected float getLogPreComputedGaussianFactor() {
+        return logPreComputedGaussianFactor;
+    }
+
+
+    /** @return the lowest score value, in log */
+    protected float getLogDistFloor() {
+        return distFloor;
+    }
+
+
+    /** @return the log math used for scoring */
+    protected LogMath getLogMath() {
+        return logMath;
+    }
+
+
+    /** @return the lowest value for the variance */
+    float getVarianceFloor() {
+        return varianceFloor;
+    }
+
     @Override
     public MixtureComponent clone() throws CloneNotSupportedException {
         MixtureComponent mixComp = (MixtureComponent)super.clone();
@@ -0,0 +1,224 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.linguist.acoustic.tiedstate;
+
+import edu.cmu.sphinx.util.LogMath;
+
+import java.util.Arrays;
+
+/**
+ * A mixture component whose transformed mean and precision are stored as codes of a {@link GaussianCodebook}, one
+ * byte or one short per parameter instead of a float. The mean and precision of a dimension are stored next to each
+ * other, so that scoring walks a single array.
+ * <p/>
+ * The untransformed mean and variance are not kept. {@link #getMean} and {@link #getVariance} reconstruct them from
+ * the codes, so a quantized component can not be adapted or trained.
+ */
+public class QuantizedMixtureComponent extends MixtureComponent {
+
+    private static final long serialVersionUID = 1L;
+
+    private final GaussianCodebook codebook;
+    private final byte[] codes;
+    private final short[] halfCodes;
+    private final float[] meanTable;
+    private final float[] precisionTable;
+
+
+    /**
+     * Creates a quantized mixture component.
+     *
+     * @param logMath       the log math to use
+     * @param codebook      the codebook of the codes
+     * @param codes         the interleaved mean and precision codes of an 8 bit codebook, or <code>null</code>
+     * @param halfCodes     the interleaved mean and precision codes of a 16 bit codebook, or <code>null</code>
+     * @param logDistFloor  the lowest score value, in log
+     * @param varianceFloor the lowest value for the variance
+     */
+    QuantizedMixtureComponent(LogMath logMath, GaussianCodebook codebook, byte[] codes, short[] halfCodes,
+                              float logDistFloor, float varianceFloor) {
+        this(logMath, codebook, codes, halfCodes,
+                precomputeDistance(logMath, decode(codebook, codes, halfCodes, false)), logDistFloor, varianceFloor);
+    }
+
+
+    /**
+     * Creates a quantized mixture component with an already precomputed gaussian factor, as restored by the {@link
+     * SnapshotLoader}.
+     *
+     * @param logMath                      the log math to use
+     * @param codebook                     the codebook of the codes
+     * @param codes                        the interleaved mean and precision codes of an 8 bit codebook, or
+     *                                     <code>null</code>
+     * @param halfCodes                    the interleaved mean and precision codes of a 16 bit codebook, or
+     *                                     <code>null</code>
+     * @param logPreComputedGaussianFactor the gaussian factor of the quantized precisions, in log
+     * @param logDistFloor                 the lowest score value, in log
+     * @param varianceFloor                the lowest value for the variance
+     */
+    QuantizedMixtureComponent(LogMath logMath, GaussianCodebook codebook, byte[] codes, short[] halfCodes,
+                              float logPreComputedGaussianFactor, float logDistFloor, float varianceFloor) {
+        super(logMath, logPreComputedGaussianFactor, logDistFloor, varianceFloor);
+        this.codebook = codebook;
+        this.codes = codes;
+        this.halfCodes = halfCodes;
+        this.meanTable = codebook.getMeanTable();
+        this.precisionTable = codebook.getPrecisionTable();
+    }
+
+
+    /**
+     * Calculate the score for this mixture against the given feature, like {@link MixtureComponent#getScore(float[])}
+     * but with the parameters looked up in the codebook.
+     *
+     * @param feature the feature to score
+     * @return the score, in log, for the given feature
+     */
+    @Override
+    public float getScore(float[] feature) {
+        float logDval = 0.0f;
+        if (codes != null) {
+            byte[] codes = this.codes;
+            for (int i = 0, j = 0, offset = 0; i < feature.length; i++, j += 2, offset += 256) {
+                float logDiff = feature[i] - meanTable[offset | (codes[j] & 0xff)];
+                logDval += logDiff * logDiff * precisionTable[offset | (codes[j + 1] & 0xff)];
+            }
+        } else {
+            short[] halfCodes = this.halfCodes;
+            for (int i = 0, j = 0; i < feature.length; i++, j += 2) {
+                float logDiff = feature[i] - meanTable[halfCodes[j] & 0xffff];
+                logDval += logDiff * logDiff * precisionTable[halfCodes[j + 1] & 0xffff];
+            }
+        }
+
+        LogMath logMath = getLogMath();
+        if (!logMath.isNaturalBase())
+            logDval = logMath.lnToLog(logDval);
+        logDval -= getLogPreComputedGaussianFactor();
+
+        if (Float.isNaN(logDval)) {
+            logDval = LogMath.getLogZero();
+        }
+        float logDistFloor = getLogDistFloor();
+        if (logDval < logDistFloor) {
+            logDval = logDistFloor;
+        }
+        return logDval;
+    }
+
+
+    /**
+     * Decodes the means or the precisions of a component.
+     *
+     * @param codebook  the codebook of the codes
+     * @param codes     the codes of an 8 bit codebook, or <code>null</code>
+     * @param halfCodes the codes of a 16 bit codebook, or <code>null</code>
+     * @param means     true to decode the means, false to decode the precisions
+     * @return the decoded values
+     */
+    private static float[] decode(GaussianCodebook codebook, byte[] codes, short[] halfCodes, boolean means) {
+        float[] table = means ? codebook.getMeanTable() : codebook.getPrecisionTable();
+        int first = means ? 0 : 1;
+        float[] values = new float[codebook.getDimension()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = codes != null ? table[(i << 8) + (codes[2 * i + first] & 0xff)]
+                    : table[halfCodes[2 * i + first] & 0xffff];
+        }
+        return values;
+    }
+
+
+    /** Computes the gaussian factor for the quantized precisions, see {@link MixtureComponent#precomputeDistance}. */
+    private static float precomputeDistance(LogMath logMath, float[] precision) {
+        float logPreComputedGaussianFactor = 0.0f;
+        for (float value : precision) {
+            logPreComputedGaussianFactor += logMath.linearToLog(value * -2);
+        }
+        logPreComputedGaussianFactor = logMath.linearToLog(2.0 * Math.PI) * precision.length
+                - logPreComputedGaussianFactor;
+        return logPreComputedGaussianFactor * 0.5f;
+    }
+
+
+    @Override
+    public float precomputeDistance() {
+        return getLogPreComputedGaussianFactor();
+    }
+
+
+    /** Does nothing, the codes hold the parameters after the transformations. */
+    @Override
+    public void transformStats() {
+    }
+
+
+    /** @return the mean reconstructed from the codes */
+    @Override
+    public float[] getMean() {
+        return getMeanTransformed();
+    }
+
+
+    /** @return the floored variance reconstructed from the codes */
+    @Override
+    public float[] getVariance() {
+        float[] variance = getPrecisionTransformed();
+        for (int i = 0; i < variance.length; i++) {
+            variance[i] = 1.0f / (-2.0f * variance[i]);
+        }
+        return variance;
+    }
+
+
+    @Override
+    float[] getMeanTransformed() {
+        return decode(codebook, codes, halfCodes, true);
+    }
+
+
+    @Override
+    float[] getPrecisionTransformed() {
+        return decode(codebook, codes, halfCodes, false);
+    }
+
+
+    /** @return the codebook of this component */
+    public GaussianCodebook getCodebook() {
+        return codebook;
+    }
+
+
+    /** @return the interleaved mean and precision codes of an 8 bit codebook, or <code>null</code> */
+    byte[] getCodes() {
+        return codes;
+    }
+
+
+    /** @return the interleaved mean and precision codes of a 16 bit codebook, or <code>null</code> */
+    short[] getHalfCodes() {
+        return halfCodes;
+    }
+
+
+    @Override
+    public QuantizedMixtureComponent clone() throws CloneNotSupportedException {
+        return (QuantizedMixtureComponent) super.clone();
+    }
+
+
+    @Override
+    public String toString() {
+        return "mu=" + Arrays.toString(getMean()) + " cov=" + Arrays.toString(getVariance()) + " ("
+                + codebook.getBits() + " bit)";
+    }
+}
@@ -32,9 +32,15 @@ public abstract class ScoreCachingSenone implements Senone {
      * Gets the cached score for this senone based upon the given feature.
      * If the score was not cached, it is calculated using {@link #calculateScore},
      * cached, and then returned.  
+     * If the current thread has a {@link SenoneScoringContext}, the score is
+     * cached there instead of in this senone.
      */
     @Override
     public float getScore(Data feature) {
+        SenoneScoringContext context = SenoneScoringContext.getCurrent();
+        if (context != null) {
+            return context.getScore(this, feature);
+        }
         ScoreCache cached = scoreCache;
         if (feature != cached.feature) {
             cached = new ScoreCache(feature, calculateScore(feature));
@@ -0,0 +1,276 @@
+package edu.cmu.sphinx.linguist.acoustic.tiedstate;
+
+import edu.cmu.sphinx.frontend.Data;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Holds the senone scores of the current frame for one decoder. A {@link ScoreCachingSenone} caches only the score of
+ * the last feature it has seen, so recognizers that share an acoustic model replace each other's cached scores on
+ * every frame. A scorer that installs its own context with {@link #setCurrent} keeps the scores of its decoder here
+ * instead, indexed by senone id, while the model itself stays untouched.
+ * <p/>
+ * Each entry packs the frame stamp and the score into one long, so the context can be shared by the threads of a
+ * threaded scorer without locking. The table has one entry per senone of the senone pool of the acoustic model, whose
+ * ids are the indices into the pool. Composite senones, whose ids are not pool indices and may even equal the id of
+ * another senone, and senones with ids beyond the pool are not cached. A composite senone is scored from the cached
+ * scores of its senones.
+ * <p/>
+ * A scorer can also fill the table for a whole frame before the tokens are scored: it starts the frame with {@link
+ * #beginFrame}, adds the senones of all active states with {@link #addActive}, which keeps each senone once, and
+ * scores the distinct senones with {@link #scoreActive}, possibly in ranges on several threads. The tokens then only
+ * read the table, and the cost of a frame is proportional to the number of distinct senones.
+ * <p/>
+ * To skip the scoring of frames, a scorer starts a skipped frame with {@link #beginSkippedFrame}. The senones are then
+ * scored against the feature of the last frame that was started with {@link #beginFrame}, or interpolated between
+ * that frame and the next one that will be scored. The scores of the next frame are kept in a second table, which
+ * becomes the table of the frame once it is started, so every senone is still scored at most once per scored frame.
+ */
+public class SenoneScoringContext {
+
+    private final static ThreadLocal<SenoneScoringContext> current = new ThreadLocal<SenoneScoringContext>();
+
+    /** Set once any context is installed, so that senones skip the thread local lookup otherwise. */
+    private static volatile boolean used;
+
+    private final int numSenones;
+    private volatile AtomicLongArray entries;
+    private volatile Data feature;
+    private volatile int stamp;
+
+    // the scores of the next scored frame and the skipped frame that is scored from them
+    private volatile AtomicLongArray nextEntries;
+    private volatile Data nextFeature;
+    private volatile int nextStamp;
+    private volatile Data skippedFeature;
+    private volatile float weight;
+    private int lastStamp;
+
+    // the distinct active senones of the frame, only used by the thread that collects them
+    private ScoreCachingSenone[] active = new ScoreCachingSenone[256];
+    private int numActive;
+    private final int[] activeStamps;
+    private int activeStamp;
+
+
+    /**
+     * Creates a scoring context.
+     *
+     * @param numSenones the number of senones in the senone pool of the acoustic model
+     */
+    public SenoneScoringContext(int numSenones) {
+        this.numSenones = numSenones;
+        entries = new AtomicLongArray(numSenones);
+        activeStamps = new int[numSenones];
+    }
+
+
+    /**
+     * Creates a scoring context for the senones of an acoustic model.
+     *
+     * @param senonePool the senone pool of the acoustic model
+     */
+    public SenoneScoringContext(Pool<Senone> senonePool) {
+        this(senonePool.size());
+    }
+
+
+    /**
+     * Installs a scoring context for the current thread.
+     *
+     * @param context the context, or <code>null</code> to use the caches of the senones
+     * @return the context that was installed before
+     */
+    public static SenoneScoringContext setCurrent(SenoneScoringContext context) {
+        SenoneScoringContext previous = current.get();
+        if (context != null) {
+            used = true;
+        }
+        current.set(context);
+        return previous;
+    }
+
+
+    /** @return the scoring context of the current thread, or <code>null</code> if there is none */
+    public static SenoneScoringContext getCurrent() {
+        return used ? current.get() : null;
+    }
+
+
+    /**
+     * Returns the score of the senone for the given feature, calculating it if it has not been scored against this
+     * feature yet.
+     *
+     * @param senone  the senone to score
+     * @param feature the feature to score against
+     * @return the score for the senone in LogMath log base
+     */
+    public float getScore(ScoreCachingSenone senone, Data feature) {
+        if (skippedFeature != null) {
+            if (feature == skippedFeature) {
+                return getSkippedScore(senone);
+            }
+            if (feature == nextFeature) {
+                return getScore(senone, feature, true);
+            }
+        }
+        if (feature != this.feature) {
+            nextFrame(feature);
+        }
+        return getScore(senone, feature, false);
+    }
+
+
+    /** Returns the score of the skipped frame, which is the score of the frame or interpolated from the next one. */
+    private float getSkippedScore(ScoreCachingSenone senone) {
+        float score = getScore(senone, feature);
+        Data next = nextFeature;
+        if (next == null) {
+            return score;
+        }
+        return score + (getScore(senone, next) - score) * weight;
+    }
+
+
+    /** Returns the score of a senone from the table of the frame or of the next frame. */
+    private float getScore(ScoreCachingSenone senone, Data feature, boolean next) {
+        if (!isCached(senone)) {
+            return senone.calculateScore(feature);
+        }
+        int index = (int) senone.getID();
+        AtomicLongArray entries = next ? nextEntries : this.entries;
+        int stamp = next ? nextStamp : this.stamp;
+        long entry = entries.get(index);
+        if ((int) (entry >>> 32) == stamp) {
+            return Float.intBitsToFloat((int) entry);
+        }
+        float score = senone.calculateScore(feature);
+        entries.lazySet(index, ((long) stamp << 32) | (Float.floatToRawIntBits(score) & 0xffffffffL));
+        return score;
+    }
+
+
+    /**
+     * Starts scoring a new frame with a table of the active senones.
+     *
+     * @param feature the feature of the frame
+     */
+    public void beginFrame(Data feature) {
+        if (feature != this.feature) {
+            nextFrame(feature);
+        }
+        numActive = 0;
+        // zero marks senones that were never active
+        activeStamp = activeStamp == -1 ? 1 : activeStamp + 1;
+    }
+
+
+    /**
+     * Starts a frame that is not scored. Its senones get the scores of the frame that was started last with {@link
+     * #beginFrame}, or scores interpolated between that frame and the next frame that will be scored.
+     *
+     * @param feature     the feature of the skipped frame
+     * @param nextFeature the feature of the next frame that will be scored, or <code>null</code> to reuse the scores
+     *                    of the last scored frame
+     * @param weight      the weight of the scores of the next frame, between 0 and 1
+     */
+    public synchronized void beginSkippedFrame(Data feature, Data nextFeature, float weight) {
+        if (nextFeature != this.nextFeature) {
+            if (nextFeature != null) {
+                if (nextEntries == null) {
+                    nextEntries = new AtomicLongArray(numSenones);
+                }
+                nextStamp = newStamp();
+            }
+            this.nextFeature = nextFeature;
+        }
+        this.weight = weight;
+        skippedFeature = feature;
+    }
+
+
+    /**
+     * Adds a senone to the active senones of the frame, unless it is already there. The senones of a composite senone
+     * are added instead of the composite, which is not cached.
+     *
+     * @param senone the senone of an active state
+     */
+    public void addActive(Senone senone) {
+        if (senone instanceof CompositeSenone) {
+            for (Senone part : ((CompositeSenone) senone).getSenones()) {
+                addActive(part);
+            }
+            return;
+        }
+        if (!(senone instanceof ScoreCachingSenone) || !isCached((ScoreCachingSenone) senone)) {
+            return;
+        }
+        int index = (int) senone.getID();
+        if (activeStamps[index] != activeStamp) {
+            activeStamps[index] = activeStamp;
+            if (numActive == active.length) {
+                active = Arrays.copyOf(active, numActive * 2);
+            }
+            active[numActive++] = (ScoreCachingSenone) senone;
+        }
+    }
+
+
+    /** @return the number of distinct active senones of the frame */
+    public int getActiveCount() {
+        return numActive;
+    }
+
+
+    /**
+     * Scores a range of the active senones against the feature of the frame. Ranges may be scored concurrently.
+     *
+     * @param from the first active senone to score
+     * @param to   the end of the range, exclusive
+     */
+    public void scoreActive(int from, int to) {
+        Data feature = this.feature;
+        int stamp = this.stamp;
+        AtomicLongArray entries = this.entries;
+        for (int i = from; i < to; i++) {
+            ScoreCachingSenone senone = active[i];
+            int index = (int) senone.getID();
+            float score = senone.calculateScore(feature);
+            entries.lazySet(index, ((long) stamp << 32) | (Float.floatToRawIntBits(score) & 0xffffffffL));
+        }
+    }
+
+
+    /** @return true if the score of the senone is kept in the table, which holds the senones of the pool only */
+    private boolean isCached(ScoreCachingSenone senone) {
+        long id = senone.getID();
+        return id >= 0 && id < numSenones && !(senone instanceof CompositeSenone);
+    }
+
+
+    private synchronized void nextFrame(Data feature) {
+        if (feature != this.feature) {
+            if (feature == nextFeature) {
+                // the next frame was partly scored for the skipped frames already
+                AtomicLongArray entries = this.entries;
+                this.entries = nextEntries;
+                nextEntries = entries;
+                stamp = nextStamp;
+            } else {
+                stamp = newStamp();
+            }
+            nextFeature = null;
+            skippedFeature = null;
+            this.feature = feature;
+        }
+    }
+
+
+    /** @return a stamp that no frame of the tables has */
+    private int newStamp() {
+        // stamp zero is never used, it marks empty entries
+        lastStamp = lastStamp == -1 ? 1 : lastStamp + 1;
+        return lastStamp;
+    }
+}
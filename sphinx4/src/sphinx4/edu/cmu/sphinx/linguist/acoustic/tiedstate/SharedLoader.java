@@ -0,0 +1,239 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.linguist.acoustic.tiedstate;
+
+import edu.cmu.sphinx.linguist.acoustic.Unit;
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.props.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * A loader that shares one loaded acoustic model among all recognizers of the JVM that use the same key, even when
+ * they are created by different configuration managers. The first recognizer to load the model uses its configured
+ * loader, the others reuse the model it has loaded, and their own loaders never load anything.
+ * <p/>
+ * The model parameters are not modified while decoding, but the senones cache the score of the last frame they have
+ * scored. Recognizers that share a model on different threads should therefore give their scorers a private {@link
+ * SenoneScoringContext}, see the <code>scoringContext</code> property of the {@link
+ * edu.cmu.sphinx.decoder.scorer.SimpleAcousticScorer SimpleAcousticScorer}.
+ * <p/>
+ * The context independent units of the shared model are added to the unit manager of every recognizer, so that the
+ * units of its dictionary have the same ids as the units of the model. All recognizers must use the same log base.
+ */
+public class SharedLoader implements Loader {
+
+    /** The property for the loader that loads the model if it is not shared yet. */
+    @S4Component(type = Loader.class)
+    public final static String PROP_LOADER = "loader";
+
+    /**
+     * The property for the key the model is shared under. Loaders of different models must have different keys, or
+     * the recognizers silently share whichever model was loaded first, so the key has no default. The location of
+     * the model is a good key.
+     */
+    @S4String
+    public final static String PROP_KEY = "key";
+
+    /** The log math component for the system. */
+    @S4Component(type = LogMath.class)
+    public final static String PROP_LOG_MATH = "logMath";
+
+    /** The unit manager */
+    @S4Component(type = UnitManager.class)
+    public final static String PROP_UNIT_MANAGER = "unitManager";
+
+    private final static Map<String, SharedModel> models = new HashMap<String, SharedModel>();
+
+    private Logger logger;
+    private Loader loader;
+    private String key;
+    private LogMath logMath;
+    private UnitManager unitManager;
+    private Loader shared;
+
+
+    public SharedLoader(Loader loader, String key, LogMath logMath, UnitManager unitManager) {
+        this.logger = Logger.getLogger(getClass().getName());
+        this.loader = loader;
+        this.key = key;
+        this.logMath = logMath;
+        this.unitManager = unitManager;
+    }
+
+
+    public SharedLoader() {
+
+    }
+
+
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        logger = ps.getLogger();
+        loader = (Loader) ps.getComponent(PROP_LOADER);
+        key = ps.getString(PROP_KEY);
+        logMath = (LogMath) ps.getComponent(PROP_LOG_MATH);
+        unitManager = (UnitManager) ps.getComponent(PROP_UNIT_MANAGER);
+    }
+
+
+    @Override
+    public void load() throws IOException {
+        if (shared != null) {
+            return;
+        }
+        SharedModel model;
+        synchronized (models) {
+            model = models.get(key);
+            if (model == null) {
+                model = new SharedModel(loader, logMath.getLogBase());
+                models.put(key, model);
+            }
+        }
+        if (model.logBase != logMath.getLogBase()) {
+            throw new IOException("Model " + key + " is shared with log base " + model.logBase
+                    + " but this recognizer uses " + logMath.getLogBase());
+        }
+        synchronized (model) {
+            if (!model.loaded) {
+                logger.info("Loading shared acoustic model " + key);
+                model.loader.load();
+                model.loaded = true;
+            } else {
+                logger.info("Reusing shared acoustic model " + key);
+            }
+        }
+        for (Unit unit : model.loader.getContextIndependentUnits().values()) {
+            unitManager.addUnit(unit);
+        }
+        shared = model.loader;
+    }
+
+
+    /** Forgets all shared models, so that they are loaded again by the next recognizer. */
+    public static void clear() {
+        synchronized (models) {
+            models.clear();
+        }
+    }
+
+
+    @Override
+    public Pool<float[]> getMeansPool() {
+        return shared.getMeansPool();
+    }
+
+
+    @Override
+    public Pool<float[][]> getMeansTransformationMatrixPool() {
+        return shared.getMeansTransformationMatrixPool();
+    }
+
+
+    @Override
+    public Pool<float[]> getMeansTransformationVectorPool() {
+        return shared.getMeansTransformationVectorPool();
+    }
+
+
+    @Override
+    public Pool<float[]> getVariancePool() {
+        return shared.getVariancePool();
+    }
+
+
+    @Override
+    public Pool<float[][]> getVarianceTransformationMatrixPool() {
+        return shared.getVarianceTransformationMatrixPool();
+    }
+
+
+    @Override
+    public Pool<float[]> getVarianceTransformationVectorPool() {
+        return shared.getVarianceTransformationVectorPool();
+    }
+
+
+    @Override
+    public Pool<float[]> getMixtureWeightPool() {
+        return shared.getMixtureWeightPool();
+    }
+
+
+    @Override
+    public Pool<float[][]> getTransitionMatrixPool() {
+        return shared.getTransitionMatrixPool();
+    }
+
+
+    @Override
+    public float[][] getTransformMatrix() {
+        return shared.getTransformMatrix();
+    }
+
+
+    @Override
+    public Pool<Senone> getSenonePool() {
+        return shared.getSenonePool();
+    }
+
+
+    @Override
+    public HMMManager getHMMManager() {
+        return shared.getHMMManager();
+    }
+
+
+    @Override
+    public Map<String, Unit> getContextIndependentUnits() {
+        return shared.getContextIndependentUnits();
+    }
+
+
+    @Override
+    public void logInfo() {
+        logger.info("SharedLoader " + key);
+        shared.logInfo();
+    }
+
+
+    @Override
+    public int getLeftContextSize() {
+        return shared.getLeftContextSize();
+    }
+
+
+    @Override
+    public int getRightContextSize() {
+        return shared.getRightContextSize();
+    }
+
+
+    /** A model shared under a key, with the loader that loads it. */
+    private static class SharedModel {
+
+        private final Loader loader;
+        private final float logBase;
+        private boolean loaded;
+
+
+        SharedModel(Loader loader, float logBase) {
+            this.loader = loader;
+            this.logBase = logBase;
+        }
+    }
+}
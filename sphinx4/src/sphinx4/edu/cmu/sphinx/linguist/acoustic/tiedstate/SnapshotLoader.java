@@ -0,0 +1,737 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.linguist.acoustic.tiedstate;
+
+import edu.cmu.sphinx.linguist.acoustic.*;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.TimerPool;
+import edu.cmu.sphinx.util.props.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Loads an acoustic model from a single snapshot file that holds the model in the state the {@link Sphinx3Loader}
+ * leaves it after loading: the pools, the transformed means and precisions, the precomputed gaussian factors, the log
+ * mixture weights and transition matrices, the senones and the HMMs with their units. Restoring a snapshot only copies
+ * arrays out of the memory mapped file, nothing is parsed or recomputed.
+ * <p/>
+ * A snapshot is written with {@link #save save}. If the snapshot file does not exist and a source loader is
+ * configured, the model is loaded by the source loader and the snapshot is written for the next start. The snapshot
+ * is not checked against the source model, it must be deleted when the model changes. The log base of the snapshot
+ * must match the log base of the configured LogMath.
+ * <p/>
+ * Only models made of {@link GaussianMixture} senones and {@link SenoneHMM} HMMs can be saved. Adaptation
+ * transformations are applied before the snapshot is written, so the transformation pools are not part of it.
+ * <p/>
+ * A snapshot can hold a quantized model, see {@link GaussianCodebook}. Its mixture components are {@link
+ * QuantizedMixtureComponent QuantizedMixtureComponents} and its means and variance pools are empty, which makes it
+ * about a quarter (8 bits) or a half (16 bits) of the size in memory. A quantized snapshot of a Sphinx-3 model
+ * directory is written by the {@link #main main} method, or on the first start when the
+ * <code>quantizationBits</code> property is set.
+ */
+public class SnapshotLoader implements Loader {
+
+    /** The property for the location of the snapshot file. */
+    @S4String(mandatory = true)
+    public final static String PROP_LOCATION = "location";
+
+    /** The property for the loader that creates the model when there is no snapshot yet. */
+    @S4Component(type = Loader.class, mandatory = false)
+    public final static String PROP_SOURCE_LOADER = "sourceLoader";
+
+    /**
+     * The property for the bits per mean and precision of a snapshot that is written from the source loader, 8 or 16.
+     * Zero keeps the parameters as floats.
+     */
+    @S4Integer(defaultValue = 0)
+    public final static String PROP_QUANTIZATION_BITS = "quantizationBits";
+
+    /** The log math component for the system. */
+    @S4Component(type = LogMath.class)
+    public final static String PROP_LOG_MATH = "logMath";
+
+    /** The unit manager */
+    @S4Component(type = UnitManager.class)
+    public final static String PROP_UNIT_MANAGER = "unitManager";
+
+    /** The magic number at the start of a snapshot. */
+    public final static int MAGIC = 0x5334414d;
+
+    /** The version of the snapshot format. */
+    public final static int VERSION = 2;
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    private Logger logger;
+    private File location;
+    private Loader sourceLoader;
+    private int quantizationBits;
+    private LogMath logMath;
+    private UnitManager unitManager;
+
+    private boolean loaded;
+    private Pool<float[]> meansPool;
+    private Pool<float[]> variancePool;
+    private Pool<float[]> mixtureWeightsPool;
+    private Pool<float[][]> transitionsPool;
+    private float[][] transformMatrix;
+    private Pool<Senone> senonePool;
+    private HMMManager hmmManager;
+    private Map<String, Unit> contextIndependentUnits;
+    private int leftContextSize;
+    private int rightContextSize;
+
+
+    public SnapshotLoader(File location, Loader sourceLoader, LogMath logMath, UnitManager unitManager) {
+        this(location, sourceLoader, 0, logMath, unitManager);
+    }
+
+
+    public SnapshotLoader(File location, Loader sourceLoader, int quantizationBits, LogMath logMath,
+                          UnitManager unitManager) {
+        this.logger = Logger.getLogger(getClass().getName());
+        this.location = location;
+        this.sourceLoader = sourceLoader;
+        this.quantizationBits = quantizationBits;
+        this.logMath = logMath;
+        this.unitManager = unitManager;
+    }
+
+
+    public SnapshotLoader() {
+
+    }
+
+
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        logger = ps.getLogger();
+        location = new File(ps.getString(PROP_LOCATION));
+        sourceLoader = (Loader) ps.getComponent(PROP_SOURCE_LOADER);
+        quantizationBits = ps.getInt(PROP_QUANTIZATION_BITS);
+        logMath = (LogMath) ps.getComponent(PROP_LOG_MATH);
+        unitManager = (UnitManager) ps.getComponent(PROP_UNIT_MANAGER);
+    }
+
+
+    @Override
+    public void load() throws IOException {
+        if (loaded) {
+            return;
+        }
+        TimerPool.getTimer(this, "Load AM").start();
+        if (location.exists()) {
+            logger.info("Restoring acoustic model snapshot from " + location);
+            restore(location);
+        } else if (sourceLoader != null) {
+            sourceLoader.load();
+            meansPool = sourceLoader.getMeansPool();
+            variancePool = sourceLoader.getVariancePool();
+            mixtureWeightsPool = sourceLoader.getMixtureWeightPool();
+            transitionsPool = sourceLoader.getTransitionMatrixPool();
+            transformMatrix = sourceLoader.getTransformMatrix();
+            senonePool = sourceLoader.getSenonePool();
+            hmmManager = sourceLoader.getHMMManager();
+            contextIndependentUnits = sourceLoader.getContextIndependentUnits();
+            leftContextSize = sourceLoader.getLeftContextSize();
+            rightContextSize = sourceLoader.getRightContextSize();
+            logger.info("Writing acoustic model snapshot to " + location);
+            save(sourceLoader, logMath, location, quantizationBits);
+            if (quantizationBits != 0) {
+                // decode with the quantized model from the start, and let the float parameters go
+                restore(location);
+            }
+        } else {
+            throw new FileNotFoundException("No snapshot at " + location + " and no source loader");
+        }
+        loaded = true;
+        TimerPool.getTimer(this, "Load AM").stop();
+    }
+
+
+    /**
+     * Restores a snapshot from its memory mapped file.
+     *
+     * @param file the snapshot file
+     * @throws IOException if the snapshot can not be read or does not match the configuration
+     */
+    private void restore(File file) throws IOException {
+        ByteBuffer buffer;
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            input.close();
+        }
+
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException(file + " is not an acoustic model snapshot");
+        }
+        int version = buffer.getInt();
+        if (version != 1 && version != VERSION) {
+            throw new IOException(file + " has unsupported version " + version);
+        }
+        float logBase = buffer.getFloat();
+        if (logBase != logMath.getLogBase()) {
+            throw new IOException(file + " was written with log base " + logBase + " instead of "
+                    + logMath.getLogBase());
+        }
+        leftContextSize = buffer.getInt();
+        rightContextSize = buffer.getInt();
+        int bits = version > 1 ? buffer.getInt() : 0;
+
+        meansPool = readVectorPool(buffer);
+        variancePool = readVectorPool(buffer);
+        mixtureWeightsPool = readVectorPool(buffer);
+        transitionsPool = new Pool<float[][]>(readString(buffer));
+        int numMatrices = buffer.getInt();
+        for (int i = 0; i < numMatrices; i++) {
+            transitionsPool.put(i, readMatrix(buffer));
+        }
+        transformMatrix = buffer.get() != 0 ? readMatrix(buffer) : null;
+        GaussianCodebook codebook = bits != 0 ? GaussianCodebook.read(buffer) : null;
+
+        MixtureComponent[] components = new MixtureComponent[buffer.getInt()];
+        for (int i = 0; i < components.length; i++) {
+            if (codebook != null) {
+                components[i] = readQuantizedComponent(buffer, codebook);
+                continue;
+            }
+            float[] mean = meansPool.get(buffer.getInt());
+            float[] variance = variancePool.get(buffer.getInt());
+            float[] meanTransformed = buffer.get() != 0 ? readFloats(buffer) : mean;
+            float[] precisionTransformed = readFloats(buffer);
+            components[i] = new MixtureComponent(logMath, mean, meanTransformed, variance, precisionTransformed,
+                    buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+        }
+
+        senonePool = new Pool<Senone>("senones");
+        int numSenones = buffer.getInt();
+        for (int i = 0; i < numSenones; i++) {
+            long id = buffer.getLong();
+            float[] logMixtureWeights = mixtureWeightsPool.get(buffer.getInt());
+            MixtureComponent[] mixtureComponents = new MixtureComponent[buffer.getInt()];
+            for (int j = 0; j < mixtureComponents.length; j++) {
+                int component = buffer.getInt();
+                mixtureComponents[j] = component < 0 ? null : components[component];
+            }
+            senonePool.put(i, new GaussianMixture(logMath, logMixtureWeights, mixtureComponents, id));
+        }
+
+        contextIndependentUnits = new LinkedHashMap<String, Unit>();
+        Unit[] units = new Unit[buffer.getInt()];
+        for (int i = 0; i < units.length; i++) {
+            String name = readString(buffer);
+            units[i] = unitManager.getUnit(name, buffer.get() != 0);
+            contextIndependentUnits.put(units[i].getName(), units[i]);
+        }
+
+        hmmManager = new HMMManager();
+        Map<List<Integer>, SenoneSequence> senoneSequences = new HashMap<List<Integer>, SenoneSequence>();
+        Map<List<Integer>, Context> contexts = new HashMap<List<Integer>, Context>();
+        HMMPosition[] positions = HMMPosition.values();
+        int numHMMs = buffer.getInt();
+        for (int i = 0; i < numHMMs; i++) {
+            Unit unit = units[buffer.getInt()];
+            boolean filler = buffer.get() != 0;
+            if (buffer.get() != 0) {
+                unit = unitManager.getUnit(unit.getName(), filler, readContext(buffer, units, contexts));
+            }
+            HMMPosition position = positions[buffer.get()];
+            float[][] transitionMatrix = transitionsPool.get(buffer.getInt());
+
+            Integer[] ids = new Integer[buffer.getInt()];
+            for (int j = 0; j < ids.length; j++) {
+                ids[j] = buffer.getInt();
+            }
+            List<Integer> key = Arrays.asList(ids);
+            SenoneSequence senoneSequence = senoneSequences.get(key);
+            if (senoneSequence == null) {
+                Senone[] senones = new Senone[ids.length];
+                for (int j = 0; j < ids.length; j++) {
+                    senones[j] = senonePool.get(ids[j]);
+                }
+                senoneSequence = new SenoneSequence(senones);
+                senoneSequences.put(key, senoneSequence);
+            }
+            hmmManager.put(new SenoneHMM(unit, senoneSequence, transitionMatrix, position));
+        }
+    }
+
+
+    private QuantizedMixtureComponent readQuantizedComponent(ByteBuffer buffer, GaussianCodebook codebook) {
+        byte[] codes = null;
+        short[] halfCodes = null;
+        if (codebook.getBits() == 8) {
+            codes = new byte[2 * codebook.getDimension()];
+            buffer.get(codes);
+        } else {
+            halfCodes = new short[2 * codebook.getDimension()];
+            buffer.asShortBuffer().get(halfCodes);
+            buffer.position(buffer.position() + 2 * halfCodes.length);
+        }
+        return new QuantizedMixtureComponent(logMath, codebook, codes, halfCodes, buffer.getFloat(),
+                buffer.getFloat(), buffer.getFloat());
+    }
+
+
+    /**
+     * Reads a left right context given by unit indices. The contexts are cached by their indices, which saves building
+     * their names for every HMM.
+     */
+    private static Context readContext(ByteBuffer buffer, Unit[] units, Map<List<Integer>, Context> contexts) {
+        List<Integer> key = new ArrayList<Integer>();
+        for (int side = 0; side < 2; side++) {
+            int size = buffer.getInt();
+            key.add(size);
+            for (int i = 0; i < size; i++) {
+                key.add(buffer.getInt());
+            }
+        }
+        Context context = contexts.get(key);
+        if (context == null) {
+            Unit[][] sides = new Unit[2][];
+            int position = 0;
+            for (int side = 0; side < 2; side++) {
+                int size = key.get(position++);
+                if (size >= 0) {
+                    sides[side] = new Unit[size];
+                    for (int i = 0; i < size; i++) {
+                        sides[side][i] = units[key.get(position++)];
+                    }
+                }
+            }
+            context = LeftRightContext.get(sides[0], sides[1]);
+            contexts.put(key, context);
+        }
+        return context;
+    }
+
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+
+    private static float[] readFloats(ByteBuffer buffer) {
+        float[] values = new float[buffer.getInt()];
+        buffer.asFloatBuffer().get(values);
+        buffer.position(buffer.position() + 4 * values.length);
+        return values;
+    }
+
+
+    private static float[][] readMatrix(ByteBuffer buffer) {
+        float[][] matrix = new float[buffer.getInt()][];
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = readFloats(buffer);
+        }
+        return matrix;
+    }
+
+
+    private static Pool<float[]> readVectorPool(ByteBuffer buffer) {
+        Pool<float[]> pool = new Pool<float[]>(readString(buffer));
+        for (Pool.Feature feature : Pool.Feature.values()) {
+            int value = buffer.getInt();
+            if (value >= 0) {
+                pool.setFeature(feature, value);
+            }
+        }
+        int size = buffer.getInt();
+        for (int i = 0; i < size; i++) {
+            pool.put(i, readFloats(buffer));
+        }
+        return pool;
+    }
+
+
+    /**
+     * Writes a snapshot of a loaded acoustic model.
+     *
+     * @param loader  the loader that has loaded the model
+     * @param logMath the log math the model was loaded with
+     * @param file    the snapshot file to write
+     * @throws IOException if the snapshot can not be written, or if the model contains senones or HMMs that can not
+     *                     be saved
+     */
+    public static void save(Loader loader, LogMath logMath, File file) throws IOException {
+        save(loader, logMath, file, 0);
+    }
+
+
+    /**
+     * Writes a snapshot of a loaded acoustic model, optionally quantizing its means and precisions.
+     *
+     * @param loader  the loader that has loaded the model
+     * @param logMath the log math the model was loaded with
+     * @param file    the snapshot file to write
+     * @param bits    the bits per mean and precision, 8 or 16, or zero to keep them as floats
+     * @throws IOException if the snapshot can not be written, or if the model contains senones or HMMs that can not
+     *                     be saved
+     */
+    public static void save(Loader loader, LogMath logMath, File file, int bits) throws IOException {
+        Map<Object, Integer> meanIndex = indexOf(loader.getMeansPool());
+        Map<Object, Integer> varianceIndex = indexOf(loader.getVariancePool());
+        Map<Object, Integer> mixtureWeightIndex = indexOf(loader.getMixtureWeightPool());
+        Map<Object, Integer> transitionIndex = indexOf(loader.getTransitionMatrixPool());
+
+        Pool<Senone> senonePool = loader.getSenonePool();
+        Map<Object, Integer> componentIndex = new IdentityHashMap<Object, Integer>();
+        List<MixtureComponent> components = new ArrayList<MixtureComponent>();
+        for (int i = 0; i < senonePool.size(); i++) {
+            if (!(senonePool.get(i) instanceof GaussianMixture)) {
+                throw new IOException("Can not save senone " + senonePool.get(i));
+            }
+            for (MixtureComponent component : ((GaussianMixture) senonePool.get(i)).getMixtureComponents()) {
+                if (component != null && !componentIndex.containsKey(component)) {
+                    componentIndex.put(component, components.size());
+                    components.add(component);
+                }
+            }
+        }
+        GaussianCodebook codebook = null;
+        if (bits != 0) {
+            codebook = GaussianCodebook.create(components, bits);
+        } else if (!components.isEmpty() && components.get(0) instanceof QuantizedMixtureComponent) {
+            throw new IOException("Can not save a quantized model without quantization");
+        }
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeFloat(logMath.getLogBase());
+            out.writeInt(loader.getLeftContextSize());
+            out.writeInt(loader.getRightContextSize());
+            out.writeInt(bits);
+
+            writeVectorPool(out, loader.getMeansPool(), codebook == null);
+            writeVectorPool(out, loader.getVariancePool(), codebook == null);
+            writeVectorPool(out, loader.getMixtureWeightPool(), true);
+            Pool<float[][]> transitionsPool = loader.getTransitionMatrixPool();
+            writeString(out, transitionsPool.getName());
+            out.writeInt(transitionsPool.size());
+            for (int i = 0; i < transitionsPool.size(); i++) {
+                writeMatrix(out, transitionsPool.get(i));
+            }
+            out.writeBoolean(loader.getTransformMatrix() != null);
+            if (loader.getTransformMatrix() != null) {
+                writeMatrix(out, loader.getTransformMatrix());
+            }
+            if (codebook != null) {
+                codebook.write(out);
+            }
+
+            out.writeInt(components.size());
+            for (MixtureComponent component : components) {
+                if (codebook != null) {
+                    writeQuantizedComponent(out, codebook.quantize(component, logMath));
+                    continue;
+                }
+                out.writeInt(index(meanIndex, component.getMean()));
+                out.writeInt(index(varianceIndex, component.getVariance()));
+                boolean transformed = component.getMeanTransformed() != component.getMean();
+                out.writeBoolean(transformed);
+                if (transformed) {
+                    writeFloats(out, component.getMeanTransformed());
+                }
+                writeFloats(out, component.getPrecisionTransformed());
+                out.writeFloat(component.getLogPreComputedGaussianFactor());
+                out.writeFloat(component.getLogDistFloor());
+                out.writeFloat(component.getVarianceFloor());
+            }
+
+            out.writeInt(senonePool.size());
+            for (int i = 0; i < senonePool.size(); i++) {
+                GaussianMixture senone = (GaussianMixture) senonePool.get(i);
+                out.writeLong(senone.getID());
+                out.writeInt(index(mixtureWeightIndex, senone.getLogMixtureWeights()));
+                MixtureComponent[] mixtureComponents = senone.getMixtureComponents();
+                out.writeInt(mixtureComponents.length);
+                for (MixtureComponent component : mixtureComponents) {
+                    out.writeInt(component == null ? -1 : componentIndex.get(component));
+                }
+            }
+
+            Map<String, Unit> units = loader.getContextIndependentUnits();
+            Map<String, Integer> unitIndex = new HashMap<String, Integer>();
+            out.writeInt(units.size());
+            for (Unit unit : units.values()) {
+                unitIndex.put(unit.getName(), unitIndex.size());
+                writeString(out, unit.getName());
+                out.writeBoolean(unit.isFiller());
+            }
+
+            Map<Object, Integer> senoneIndex = indexOf(senonePool);
+            List<HMM> hmms = new ArrayList<HMM>();
+            for (HMM hmm : loader.getHMMManager()) {
+                hmms.add(hmm);
+            }
+            out.writeInt(hmms.size());
+            for (HMM hmm : hmms) {
+                if (!(hmm instanceof SenoneHMM)) {
+                    throw new IOException("Can not save HMM " + hmm);
+                }
+                SenoneHMM senoneHMM = (SenoneHMM) hmm;
+                Unit unit = hmm.getUnit();
+                out.writeInt(unitIndex(unitIndex, unit));
+                out.writeBoolean(unit.isFiller());
+                Context context = unit.getContext();
+                if (context instanceof LeftRightContext) {
+                    out.writeBoolean(true);
+                    writeContext(out, ((LeftRightContext) context).getLeftContext(), unitIndex);
+                    writeContext(out, ((LeftRightContext) context).getRightContext(), unitIndex);
+                } else if (context == null || context == Context.EMPTY_CONTEXT) {
+                    out.writeBoolean(false);
+                } else {
+                    throw new IOException("Can not save context of " + unit);
+                }
+                out.writeByte(hmm.getPosition().ordinal());
+                out.writeInt(index(transitionIndex, senoneHMM.getTransitionMatrix()));
+                Senone[] senones = senoneHMM.getSenoneSequence().getSenones();
+                out.writeInt(senones.length);
+                for (Senone senone : senones) {
+                    out.writeInt(index(senoneIndex, senone));
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (file.exists() && !file.delete() || !tmpFile.renameTo(file)) {
+            throw new IOException("Can not replace " + file);
+        }
+    }
+
+
+    private static void writeQuantizedComponent(DataOutputStream out, QuantizedMixtureComponent component)
+            throws IOException {
+        if (component.getCodes() != null) {
+            out.write(component.getCodes());
+        } else {
+            for (short code : component.getHalfCodes()) {
+                out.writeShort(code);
+            }
+        }
+        out.writeFloat(component.getLogPreComputedGaussianFactor());
+        out.writeFloat(component.getLogDistFloor());
+        out.writeFloat(component.getVarianceFloor());
+    }
+
+
+    private static <T> Map<Object, Integer> indexOf(Pool<T> pool) {
+        Map<Object, Integer> index = new IdentityHashMap<Object, Integer>();
+        for (int i = 0; i < pool.size(); i++) {
+            index.put(pool.get(i), i);
+        }
+        return index;
+    }
+
+
+    private static int index(Map<Object, Integer> index, Object object) throws IOException {
+        Integer i = index.get(object);
+        if (i == null) {
+            throw new IOException("Model parameter is not part of its pool");
+        }
+        return i;
+    }
+
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+
+    private static void writeFloats(DataOutputStream out, float[] values) throws IOException {
+        out.writeInt(values.length);
+        for (float value : values) {
+            out.writeFloat(value);
+        }
+    }
+
+
+    private static void writeMatrix(DataOutputStream out, float[][] matrix) throws IOException {
+        out.writeInt(matrix.length);
+        for (float[] row : matrix) {
+            writeFloats(out, row);
+        }
+    }
+
+
+    private static int unitIndex(Map<String, Integer> unitIndex, Unit unit) throws IOException {
+        Integer i = unitIndex.get(unit.getName());
+        if (i == null) {
+            throw new IOException("Unit " + unit + " is not a context independent unit of the model");
+        }
+        return i;
+    }
+
+
+    private static void writeContext(DataOutputStream out, Unit[] context, Map<String, Integer> unitIndex)
+            throws IOException {
+        if (context == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(context.length);
+        for (Unit unit : context) {
+            out.writeInt(unitIndex(unitIndex, unit));
+        }
+    }
+
+
+    /** Writes a pool of vectors, or only its name and features if its vectors are not needed. */
+    private static void writeVectorPool(DataOutputStream out, Pool<float[]> pool, boolean withVectors)
+            throws IOException {
+        writeString(out, pool.getName());
+        for (Pool.Feature feature : Pool.Feature.values()) {
+            out.writeInt(pool.getFeature(feature, -1));
+        }
+        int size = withVectors ? pool.size() : 0;
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            writeFloats(out, pool.get(i));
+        }
+    }
+
+
+    /**
+     * Converts a Sphinx-3 model directory into a snapshot, quantized if a number of bits is given.
+     *
+     * @param args the model location, the model definition and the data location as understood by the {@link
+     *             Sphinx3Loader}, the snapshot file, and optionally the bits per parameter and the log base
+     * @throws Exception if the model can not be loaded or the snapshot can not be written
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.out.println("Usage: SnapshotLoader location modelDefinition dataLocation snapshot [bits [logBase]]");
+            return;
+        }
+        int bits = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+        float logBase = args.length > 5 ? Float.parseFloat(args[5]) : 1.0001f;
+        LogMath logMath = new LogMath(logBase, false);
+        Loader loader = new Sphinx3Loader(new File(args[0]).toURI().toURL(), args[1], args[2], logMath,
+                new UnitManager(), MixtureComponent.DEFAULT_DIST_FLOOR, 1e-7f, MixtureComponent.DEFAULT_VAR_FLOOR,
+                true);
+        loader.load();
+        save(loader, logMath, new File(args[3]), bits);
+    }
+
+
+    @Override
+    public Pool<float[]> getMeansPool() {
+        return meansPool;
+    }
+
+
+    @Override
+    public Pool<float[][]> getMeansTransformationMatrixPool() {
+        return null;
+    }
+
+
+    @Override
+    public Pool<float[]> getMeansTransformationVectorPool() {
+        return null;
+    }
+
+
+    @Override
+    public Pool<float[]> getVariancePool() {
+        return variancePool;
+    }
+
+
+    @Override
+    public Pool<float[][]> getVarianceTransformationMatrixPool() {
+        return null;
+    }
+
+
+    @Override
+    public Pool<float[]> getVarianceTransformationVectorPool() {
+        return null;
+    }
+
+
+    @Override
+    public Pool<float[]> getMixtureWeightPool() {
+        return mixtureWeightsPool;
+    }
+
+
+    @Override
+    public Pool<float[][]> getTransitionMatrixPool() {
+        return transitionsPool;
+    }
+
+
+    @Override
+    public float[][] getTransformMatrix() {
+        return transformMatrix;
+    }
+
+
+    @Override
+    public Pool<Senone> getSenonePool() {
+        return senonePool;
+    }
+
+
+    @Override
+    public HMMManager getHMMManager() {
+        return hmmManager;
+    }
+
+
+    @Override
+    public Map<String, Unit> getContextIndependentUnits() {
+        return contextIndependentUnits;
+    }
+
+
+    @Override
+    public int getLeftContextSize() {
+        return leftContextSize;
+    }
+
+
+    @Override
+    public int getRightContextSize() {
+        return rightContextSize;
+    }
+
+
+    @Override
+    public void logInfo() {
+        logger.info("SnapshotLoader");
+        meansPool.logInfo(logger);
+        variancePool.logInfo(logger);
+        transitionsPool.logInfo(logger);
+        mixtureWeightsPool.logInfo(logger);
+        senonePool.logInfo(logger);
+        logger.info("Context Independent Unit Entries: " + contextIndependentUnits.size());
+        hmmManager.logInfo(logger);
+    }
+}
@@ -23,6 +23,9 @@ import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
@@ -517,7 +520,7 @@ public class Sphinx3Loader implements Loader {
             throw new IOException("Can't open " + path);
         }
         DataInputStream dis = new DataInputStream(new BufferedInputStream(
-                inputStream));
+                inputStream, READ_BATCH_SIZE * 4));
         String id = readWord(dis);
         if (!id.equals("s3")) {
             throw new IOException("Not proper s3 binary file " + path);
@@ -583,6 +586,12 @@ public class Sphinx3Loader implements Loader {
 
     /* Stores checksum during loading */
     private long calculatedCheckSum = 0;
+
+    /* The number of floats converted per bulk read */
+    private final static int READ_BATCH_SIZE = 8192;
+
+    /* Reused by the bulk reads */
+    private ByteBuffer readBuffer;
     
     /**
      * Resets the checksum before loading a new chunk of data
@@ -653,7 +662,9 @@ public class Sphinx3Loader implements Loader {
 
     /**
      * Reads the given number of floats from the stream and returns them in an
-     * array of floats.
+     * array of floats. The data is read in bulk through a byte buffer with
+     * the byte order of the file, and the checksum is updated for the whole
+     * batch, instead of going through {@link #readFloat} for every value.
      * 
      * @param dis
      *            the stream to read data from
@@ -666,9 +677,22 @@ public class Sphinx3Loader implements Loader {
     protected float[] readFloatArray(DataInputStream dis, int size)
             throws IOException {
         float[] data = new float[size];
-        for (int i = 0; i < size; i++) {
-            data[i] = readFloat(dis);
+        if (readBuffer == null) {
+            readBuffer = ByteBuffer.allocate(READ_BATCH_SIZE * 4);
+        }
+        IntBuffer values = readBuffer.order(
+                swap ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN).asIntBuffer();
+        long checkSum = calculatedCheckSum;
+        for (int start = 0; start < size; start += READ_BATCH_SIZE) {
+            int count = Math.min(READ_BATCH_SIZE, size - start);
+            dis.readFully(readBuffer.array(), 0, count * 4);
+            for (int i = 0; i < count; i++) {
+                int val = values.get(i);
+                checkSum = ((checkSum << 20 | checkSum >> 12) + val) & 0xFFFFFFFFL;
+                data[start + i] = Float.intBitsToFloat(val);
+            }
         }
+        calculatedCheckSum = checkSum;
         return data;
     }
 
@@ -20,6 +20,8 @@ import edu.cmu.sphinx.linguist.dictionary.Word;
 import edu.cmu.sphinx.linguist.language.grammar.Grammar;
 import edu.cmu.sphinx.linguist.language.grammar.GrammarArc;
 import edu.cmu.sphinx.linguist.language.grammar.GrammarNode;
+import edu.cmu.sphinx.linguist.util.LRUCache;
+import edu.cmu.sphinx.linguist.util.SearchGraphCache;
 import edu.cmu.sphinx.util.LogMath;
 import edu.cmu.sphinx.util.Timer;
 import edu.cmu.sphinx.util.TimerPool;
@@ -74,6 +76,19 @@ public class DynamicFlatLinguist implements Linguist, Configurable {
     /** The property that defines the name of the logmath to be used by this search manager. */
     @S4Component(type = LogMath.class)
     public final static String PROP_LOG_MATH = "logMath";
+
+    /**
+     * The property for an optional cache of compiled grammars. With a cache, switching back to a grammar whose content
+     * has been compiled before reuses its unit maps and successor cache. The cached grammars of a linguist are only
+     * used by the same linguist.
+     */
+    @S4Component(type = SearchGraphCache.class, mandatory = false)
+    public final static String PROP_SEARCH_GRAPH_CACHE = "searchGraphCache";
+
+    /** The property for the maximum number of states in the successor cache of a grammar, zero for no limit. */
+    @S4Integer(defaultValue = 0)
+    public final static String PROP_SUCCESSOR_CACHE_SIZE = "successorCacheSize";
+
     private final static float logOne = LogMath.getLogOne();
 
     // ----------------------------------
@@ -97,6 +112,8 @@ public class DynamicFlatLinguist implements Linguist, Configurable {
     private float logOutOfGrammarBranchProbability;
     private float logPhoneInsertionProbability;
     private boolean addOutOfGrammarBranch;
+    private SearchGraphCache searchGraphCache;
+    private int successorCacheSize;
 
     // ------------------------------------
     // Data used for building and maintaining
@@ -119,6 +136,14 @@ public class DynamicFlatLinguist implements Linguist, Configurable {
 
     private Map<GrammarNode, Set<Unit>> nodeToUnitSetMap;
 
+    // the initial node of the grammar when it was compiled, and the
+    // initial node of the search graph, which may come from an
+    // earlier grammar with the same content
+
+    private GrammarNode initialGrammarNode;
+    private GrammarNode initialNode;
+    private int grammarChangeCount;
+
     // an empty arc (just waiting for Noah, I guess)
     private final SearchStateArc[] EMPTY_ARCS = new SearchStateArc[0];
 
@@ -179,6 +204,8 @@ public class DynamicFlatLinguist implements Linguist, Configurable {
         if (addOutOfGrammarBranch) {
             phoneLoopAcousticModel = (AcousticModel) ps.getComponent(PHONE_LOOP_ACOUSTIC_MODEL);
         }
+        searchGraphCache = (SearchGraphCache) ps.getComponent(PROP_SEARCH_GRAPH_CACHE);
+        successorCacheSize = ps.getInt(PROP_SUCCESSOR_CACHE_SIZE);
     }
 
 
@@ -211,8 +238,6 @@ public class DynamicFlatLinguist implements Linguist, Configurable {
         allocateAcousticModel();
         grammar.allocate();
         hmmPool = new HMMPool(acousticModel, logger, unitManager);
-        nodeToNextUnitArrayMap = new HashMap<GrammarNode, int[]>();
-        nodeToUnitSetMap = new HashMap<GrammarNode, Set<Unit>>();
         Timer timer = TimerPool.getTimer(this, "compileGrammar");
         timer.start();
         compileGrammar();
@@ -248,6 +273,85 @@ public class DynamicFlatLinguist implements Linguist, Configurable {
     /** Called before a recognition */
     @Override
     public void startRecognition() {
+        if (initialGrammarNode != grammar.getInitialNode()) {
+            Timer timer = TimerPool.getTimer(this, "compileGrammar");
+            timer.start();
+            compileGrammar();
+            timer.stop();
+        } else if (grammar.getChangeCount() != grammarChangeCount) {
+            // the grammar has been changed in place
+            if (grammar.getChangeCount() != grammarChangeCount + 1 || !recompileChangedNodes()) {
+                Timer timer = TimerPool.getTimer(this, "compileGrammar");
+                timer.start();
+                compileGrammar();
+                timer.stop();
+            }
+        }
+    }
+
+
+    /**
+     * Recompiles the unit maps of the nodes affected by the last change of the grammar in place, see {@link
+     * Grammar#beginChange}. These are the added and the changed nodes, and the nodes whose next units are collected
+     * through a changed node. The successor cache is cleared, it fills again during the search. Cached grammars are
+     * never changed, so nothing is recompiled with a search graph cache.
+     *
+     * @return <code>true</code> if the nodes are recompiled, <code>false</code> if the whole grammar has to be
+     *         compiled
+     */
+    private boolean recompileChangedNodes() {
+        if (searchGraphCache != null) {
+            return false;
+        }
+        Timer timer = TimerPool.getTimer(this, "recompileChangedNodes");
+        timer.start();
+
+        // the next units are collected through empty nodes, so the
+        // predecessors of a changed node are affected up to the first word
+        Map<GrammarNode, List<GrammarNode>> predecessors = new HashMap<GrammarNode, List<GrammarNode>>();
+        for (GrammarNode node : grammar.getGrammarNodes()) {
+            for (GrammarArc arc : node.getSuccessors()) {
+                List<GrammarNode> list = predecessors.get(arc.getGrammarNode());
+                if (list == null) {
+                    list = new ArrayList<GrammarNode>();
+                    predecessors.put(arc.getGrammarNode(), list);
+                }
+                list.add(node);
+            }
+        }
+        Set<GrammarNode> affectedNodes = new HashSet<GrammarNode>(grammar.getChangedNodes());
+        List<GrammarNode> queue = new ArrayList<GrammarNode>(affectedNodes);
+        for (int i = 0; i < queue.size(); i++) {
+            GrammarNode node = queue.get(i);
+            if (node.isEmpty() && !node.isFinalNode()) {
+                List<GrammarNode> list = predecessors.get(node);
+                if (list != null) {
+                    for (GrammarNode predecessor : list) {
+                        if (affectedNodes.add(predecessor)) {
+                            queue.add(predecessor);
+                        }
+                    }
+                }
+            }
+        }
+        affectedNodes.addAll(grammar.getAddedNodes());
+
+        for (GrammarNode node : grammar.getRemovedNodes()) {
+            nodeToNextUnitArrayMap.remove(node);
+            nodeToUnitSetMap.remove(node);
+        }
+        for (GrammarNode node : affectedNodes) {
+            nodeToNextUnitArrayMap.remove(node);
+            nodeToUnitSetMap.remove(node);
+        }
+        for (GrammarNode node : affectedNodes) {
+            initUnitMaps(node);
+        }
+        successorCache.clear();
+        grammarChangeCount = grammar.getChangeCount();
+        timer.stop();
+        logger.fine("Recompiled " + affectedNodes.size() + " grammar nodes");
+        return true;
     }
 
 
@@ -277,8 +381,34 @@ public class DynamicFlatLinguist implements Linguist, Configurable {
     }
 
 
-    /** Compiles the grammar */
+    /** Compiles the grammar, or reuses a compiled grammar with the same content from the search graph cache */
     private void compileGrammar() {
+        initialGrammarNode = grammar.getInitialNode();
+        grammarChangeCount = grammar.getChangeCount();
+        String checksum = null;
+        if (searchGraphCache != null) {
+            // the states refer to the maps of this linguist, so only this linguist can reuse them
+            checksum = SearchGraphCache.getChecksum(grammar);
+            CompiledGrammar compiled = (CompiledGrammar) searchGraphCache.get(checksum, acousticModel, this);
+            if (compiled != null) {
+                initialNode = compiled.initialNode;
+                nodeToNextUnitArrayMap = compiled.nodeToNextUnitArrayMap;
+                nodeToUnitSetMap = compiled.nodeToUnitSetMap;
+                successorCache = compiled.successorCache;
+                searchGraph = compiled.searchGraph;
+                return;
+            }
+        }
+
+        initialNode = initialGrammarNode;
+        nodeToNextUnitArrayMap = new HashMap<GrammarNode, int[]>();
+        nodeToUnitSetMap = new HashMap<GrammarNode, Set<Unit>>();
+        if (successorCacheSize > 0) {
+            successorCache = new LRUCache<SearchState, SearchStateArc[]>(successorCacheSize);
+        } else {
+            successorCache = new HashMap<SearchState, SearchStateArc[]>();
+        }
+
         // iterate through the grammar nodes
 
         Set<GrammarNode> nodeSet = grammar.getGrammarNodes();
@@ -287,6 +417,11 @@ public class DynamicFlatLinguist implements Linguist, Configurable {
             initUnitMaps(node);
         }
         searchGraph = new DynamicFlatSearchGraph();
+
+        if (checksum != null) {
+            searchGraphCache.put(checksum, acousticModel, this, new CompiledGrammar(initialNode, nodeToNextUnitArrayMap,
+                    nodeToUnitSetMap, successorCache, searchGraph));
+        }
     }
 
 
@@ -364,7 +499,7 @@ public class DynamicFlatLinguist implements Linguist, Configurable {
     }
 
 
-    final Map<SearchState, SearchStateArc[]> successorCache = new HashMap<SearchState, SearchStateArc[]>();
+    Map<SearchState, SearchStateArc[]> successorCache;
 
     /** The base search state for this dynamic flat linguist. */
     abstract class FlatSearchState implements SearchState, SearchStateArc {
@@ -1497,7 +1632,7 @@ public class DynamicFlatLinguist implements Linguist, Configurable {
         @Override
         public SearchState getInitialState() {
             InitialState initialState = new InitialState();
-            initialState.addArc(new GrammarState(grammar.getInitialNode()));
+            initialState.addArc(new GrammarState(initialNode));
             // add an out-of-grammar branch if configured to do so
             if (addOutOfGrammarBranch) {
                 OutOfGrammarGraph oogg = new OutOfGrammarGraph
@@ -1521,4 +1656,26 @@ public class DynamicFlatLinguist implements Linguist, Configurable {
             return 5;
         }
     }
+
+
+    /** A compiled grammar as kept in the search graph cache. */
+    private static class CompiledGrammar {
+
+        private final GrammarNode initialNode;
+        private final Map<GrammarNode, int[]> nodeToNextUnitArrayMap;
+        private final Map<GrammarNode, Set<Unit>> nodeToUnitSetMap;
+        private final Map<SearchState, SearchStateArc[]> successorCache;
+        private final SearchGraph searchGraph;
+
+
+        CompiledGrammar(GrammarNode initialNode, Map<GrammarNode, int[]> nodeToNextUnitArrayMap,
+                        Map<GrammarNode, Set<Unit>> nodeToUnitSetMap,
+                        Map<SearchState, SearchStateArc[]> successorCache, SearchGraph searchGraph) {
+            this.initialNode = initialNode;
+            this.nodeToNextUnitArrayMap = nodeToNextUnitArrayMap;
+            this.nodeToUnitSetMap = nodeToUnitSetMap;
+            this.successorCache = successorCache;
+            this.searchGraph = searchGraph;
+        }
+    }
 }
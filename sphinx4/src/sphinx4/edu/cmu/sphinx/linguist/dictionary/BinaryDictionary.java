@@ -0,0 +1,376 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.linguist.dictionary;
+
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.util.Timer;
+import edu.cmu.sphinx.util.TimerPool;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * A dictionary that reads its main word list from a precompiled binary file instead of the ASCII Sphinx-3 format. The
+ * file is memory mapped when it is a local file, so loading costs neither parsing time nor heap for the dictionary
+ * entries. The pronunciations of a word are only decoded when the word is first used, the resulting {@link Word} is
+ * then cached as in the {@link FastDictionary}.
+ * <p/>
+ * The filler dictionary and any addenda are still read from their ASCII form, they are usually small. Entries in the
+ * addenda override entries of the compiled dictionary, just as they override the main dictionary of the
+ * FastDictionary. The compiled dictionary is created from ASCII dictionaries with {@link #compile compile}, which can
+ * also be run from the command line:
+ * <pre>
+ *  java edu.cmu.sphinx.linguist.dictionary.BinaryDictionary cmudict.0.6d cmudict.bin [addendum ...]
+ * </pre>
+ * <p/>
+ * The binary format is big endian and consists of
+ * <ul>
+ * <li>the magic number and the format version, as two ints
+ * <li>the unit table: the number of units, followed by the UTF-8 name of every unit prefixed with its length as a
+ * short
+ * <li>the number of entries, followed by an int offset for every entry into the entry section. The offsets are sorted
+ * by the UTF-8 bytes of the entry spellings, so that an entry can be found by binary search
+ * <li>the entry section: for every entry its UTF-8 spelling prefixed with its length as a short, the number of units
+ * as a byte and the unit table index of every unit as a short
+ * </ul>
+ * Every pronunciation variant is an entry of its own, with its numbered spelling such as <code>zero(2)</code>, so the
+ * variants are resolved exactly as in the ASCII dictionary.
+ */
+public class BinaryDictionary extends FastDictionary {
+
+    /** The magic number at the start of a compiled dictionary. */
+    public final static int MAGIC = 0x53344443;
+
+    /** The version of the compiled dictionary format. */
+    public final static int VERSION = 1;
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    private ByteBuffer buffer;
+    private String[] unitNames;
+    private int entryCount;
+    private int offsetTable;
+    private int entrySection;
+
+
+    public BinaryDictionary(
+            URL wordDictionaryFile,
+            URL fillerDictionaryFile,
+            List<URL> addendaUrlList,
+            boolean addSilEndingPronunciation,
+            String wordReplacement,
+            boolean allowMissingWords,
+            boolean createMissingWords,
+            UnitManager unitManager
+    ) {
+        super(wordDictionaryFile, fillerDictionaryFile, addendaUrlList, addSilEndingPronunciation, wordReplacement,
+                allowMissingWords, createMissingWords, unitManager);
+    }
+
+
+    public BinaryDictionary() {
+
+    }
+
+
+    /*
+    * (non-Javadoc)
+    *
+    * @see edu.cmu.sphinx.linguist.dictionary.Dictionary#allocate()
+    */
+
+    @Override
+    public void allocate() throws IOException {
+        if (!allocated) {
+            dictionary = new HashMap<String, String>();
+            wordDictionary = new HashMap<String, Word>();
+            fillerWords = new HashSet<String>();
+
+            Timer loadTimer = TimerPool.getTimer(this, "Load Dictionary");
+            loadTimer.start();
+
+            logger.info("Mapping compiled dictionary from: " + wordDictionaryFile);
+            mapDictionary(wordDictionaryFile);
+
+            loadCustomDictionaries(addendaUrlList);
+
+            logger.info("Loading filler dictionary from: " + fillerDictionaryFile);
+            loadDictionary(fillerDictionaryFile.openStream(), true);
+
+            loadTimer.stop();
+            allocated = true;
+        }
+    }
+
+
+    /*
+    * (non-Javadoc)
+    *
+    * @see edu.cmu.sphinx.linguist.dictionary.Dictionary#deallocate()
+    */
+
+    @Override
+    public void deallocate() {
+        if (allocated) {
+            buffer = null;
+            unitNames = null;
+        }
+        super.deallocate();
+    }
+
+
+    /**
+     * Maps the compiled dictionary and reads its unit table.
+     *
+     * @param url the location of the compiled dictionary
+     * @throws IOException if the dictionary can not be read or is not a compiled dictionary
+     */
+    private void mapDictionary(URL url) throws IOException {
+        if (url.getProtocol().equals("file")) {
+            RandomAccessFile file = new RandomAccessFile(new File(url.getFile()), "r");
+            try {
+                FileChannel channel = file.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                file.close();
+            }
+        } else {
+            buffer = ByteBuffer.wrap(readFully(url.openStream()));
+        }
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException(url + " is not a compiled dictionary");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException(url + " has unsupported version " + buffer.getInt(4));
+        }
+
+        int position = 8;
+        unitNames = new String[buffer.getInt(position)];
+        position += 4;
+        for (int i = 0; i < unitNames.length; i++) {
+            int length = buffer.getShort(position) & 0xffff;
+            unitNames[i] = decode(position + 2, length).intern();
+            position += 2 + length;
+        }
+        entryCount = buffer.getInt(position);
+        offsetTable = position + 4;
+        entrySection = offsetTable + 4 * entryCount;
+    }
+
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int count;
+        while ((count = inputStream.read(chunk)) != -1) {
+            bytes.write(chunk, 0, count);
+        }
+        inputStream.close();
+        return bytes.toByteArray();
+    }
+
+
+    private String decode(int position, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(position + i);
+        }
+        return new String(bytes, UTF8);
+    }
+
+
+    /**
+     * Looks up an entry in the addenda and filler dictionary first and then in the compiled dictionary, in which case
+     * the line is rebuilt from the unit table.
+     */
+    @Override
+    protected String lookupEntry(String spelling) {
+        String line = dictionary.get(spelling);
+        if (line == null) {
+            int entry = findEntry(spelling.getBytes(UTF8));
+            if (entry >= 0) {
+                line = decodeEntry(entry);
+            }
+        }
+        return line;
+    }
+
+
+    /**
+     * Finds an entry by binary search over the sorted offset table.
+     *
+     * @param key the UTF-8 bytes of the spelling
+     * @return the position of the entry in the buffer, or -1 if there is no such entry
+     */
+    private int findEntry(byte[] key) {
+        int low = 0;
+        int high = entryCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = entrySection + buffer.getInt(offsetTable + 4 * middle);
+            int cmp = compareKey(entry, key);
+            if (cmp < 0) {
+                low = middle + 1;
+            } else if (cmp > 0) {
+                high = middle - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+
+    /** Compares the spelling of the entry at the given position with the key, bytes taken as unsigned. */
+    private int compareKey(int entry, byte[] key) {
+        int length = buffer.getShort(entry) & 0xffff;
+        int position = entry + 2;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int diff = (buffer.get(position + i) & 0xff) - (key[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - key.length;
+    }
+
+
+    /** Rebuilds the dictionary line of the entry at the given position. */
+    private String decodeEntry(int entry) {
+        int length = buffer.getShort(entry) & 0xffff;
+        StringBuilder line = new StringBuilder(decode(entry + 2, length));
+        int position = entry + 2 + length;
+        int unitCount = buffer.get(position++) & 0xff;
+        for (int i = 0; i < unitCount; i++) {
+            line.append(' ').append(unitNames[buffer.getShort(position) & 0xffff]);
+            position += 2;
+        }
+        return line.toString();
+    }
+
+
+    /**
+     * Compiles ASCII dictionaries into the binary format. The addenda are applied in order on top of the dictionary,
+     * with the same override rules as the FastDictionary.
+     *
+     * @param dictionaryFile the ASCII dictionary
+     * @param addenda        the ASCII addenda, possibly empty
+     * @param outputFile     the compiled dictionary to write
+     * @throws IOException if a dictionary can not be read or the output can not be written
+     */
+    public static void compile(URL dictionaryFile, List<URL> addenda, File outputFile) throws IOException {
+        BinaryDictionary source = new BinaryDictionary();
+        source.dictionary = new HashMap<String, String>();
+        source.fillerWords = new HashSet<String>();
+        source.loadDictionary(dictionaryFile.openStream(), false);
+        source.loadCustomDictionaries(addenda);
+
+        Map<String, Integer> unitIds = new LinkedHashMap<String, Integer>();
+        List<byte[]> keys = new ArrayList<byte[]>(source.dictionary.size());
+        Map<byte[], int[]> units = new IdentityHashMap<byte[], int[]>();
+        for (Map.Entry<String, String> entry : source.dictionary.entrySet()) {
+            byte[] key = entry.getKey().getBytes(UTF8);
+            if (key.length > 0xffff) {
+                throw new IOException("Spelling too long: " + entry.getKey());
+            }
+            StringTokenizer st = new StringTokenizer(entry.getValue());
+            st.nextToken();
+            int[] ids = new int[st.countTokens()];
+            if (ids.length > 0xff) {
+                throw new IOException("Pronunciation too long: " + entry.getKey());
+            }
+            for (int i = 0; i < ids.length; i++) {
+                String unitName = st.nextToken();
+                Integer id = unitIds.get(unitName);
+                if (id == null) {
+                    id = unitIds.size();
+                    if (id > 0xffff) {
+                        throw new IOException("Too many units in " + dictionaryFile);
+                    }
+                    unitIds.put(unitName, id);
+                }
+                ids[i] = id;
+            }
+            keys.add(key);
+            units.put(key, ids);
+        }
+
+        Collections.sort(keys, new Comparator<byte[]>() {
+            public int compare(byte[] a, byte[] b) {
+                int common = Math.min(a.length, b.length);
+                for (int i = 0; i < common; i++) {
+                    int diff = (a[i] & 0xff) - (b[i] & 0xff);
+                    if (diff != 0) {
+                        return diff;
+                    }
+                }
+                return a.length - b.length;
+            }
+        });
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(unitIds.size());
+            for (String unitName : unitIds.keySet()) {
+                byte[] bytes = unitName.getBytes(UTF8);
+                out.writeShort(bytes.length);
+                out.write(bytes);
+            }
+
+            out.writeInt(keys.size());
+            int offset = 0;
+            for (byte[] key : keys) {
+                out.writeInt(offset);
+                offset += 2 + key.length + 1 + 2 * units.get(key).length;
+            }
+            for (byte[] key : keys) {
+                int[] ids = units.get(key);
+                out.writeShort(key.length);
+                out.write(key);
+                out.writeByte(ids.length);
+                for (int id : ids) {
+                    out.writeShort(id);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+
+    /**
+     * Compiles an ASCII dictionary from the command line.
+     *
+     * @param args the ASCII dictionary, the output file and optionally any number of addenda
+     * @throws IOException if a dictionary can not be read or the output can not be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: BinaryDictionary dictionary output [addendum ...]");
+            return;
+        }
+        List<URL> addenda = new ArrayList<URL>();
+        for (int i = 2; i < args.length; i++) {
+            addenda.add(new File(args[i]).toURI().toURL());
+        }
+        compile(new File(args[0]).toURI().toURL(), addenda, new File(args[1]));
+    }
+}
@@ -356,7 +356,7 @@ public class FastDictionary implements Dictionary {
             return wordObject;
         }
 
-        String word = dictionary.get(text);
+        String word = lookupEntry(text);
         if (word == null) { // deal with 'not found' case
             logger.warning("Missing word: " + text);
             if (wordReplacement != null) {
@@ -390,6 +390,18 @@ public class FastDictionary implements Dictionary {
     }
 
 
+    /**
+     * Looks up the raw dictionary line for a spelling. Pronunciation variants are looked up by their numbered spelling,
+     * for instance <code>zero(2)</code>. Filler lines are prefixed with the filler tag.
+     *
+     * @param spelling the lower case spelling
+     * @return the dictionary line, or <code>null</code> if there is no entry for the spelling
+     */
+    protected String lookupEntry(String spelling) {
+        return dictionary.get(spelling);
+    }
+
+
     /**
      * Processes a dictionary entry. When loaded the dictionary just loads each line of the dictionary into the hash
      * table, assuming that most words are not going to be used. Only when a word is actually used is its pronunciations
@@ -407,7 +419,7 @@ public class FastDictionary implements Dictionary {
             if (count > 1) {
                 lookupWord = lookupWord + '(' + count + ')';
             }
-            line = (String) dictionary.get(lookupWord);
+            line = lookupEntry(lookupWord);
             if (line != null) {
                 StringTokenizer st = new StringTokenizer(line);
 
@@ -532,7 +544,7 @@ public class FastDictionary implements Dictionary {
      * @param addenda the list of custom dictionary URLs to be loaded
      * @throws IOException if there is an error reading the resource URL
      */
-    private void loadCustomDictionaries(List<URL> addenda) throws IOException {
+    protected void loadCustomDictionaries(List<URL> addenda) throws IOException {
         if (addenda != null) {
             for (URL addendumUrl : addenda) {
                 loadDictionary(addendumUrl.openStream(), false);
@@ -12,10 +12,16 @@
 
 package edu.cmu.sphinx.linguist.dictionary;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 
 /** Represents a word, its spelling and its pronunciation. */
 public class Word {
 
+    /** The ids of the spellings, every spelling gets its own id the first time a word of it is created. */
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
     /** The Word representing the unknown word. */
     public static final Word UNKNOWN;
 
@@ -30,6 +36,7 @@ public class Word {
     private final String spelling;               // the spelling of the word
     private final Pronunciation[] pronunciations; // pronunciations of this word
     private final boolean isFiller;
+    private final int id;
 
 
     /**
@@ -44,6 +51,34 @@ public class Word {
         this.spelling = spelling;
         this.pronunciations = pronunciations;
         this.isFiller = isFiller;
+        this.id = getId(spelling);
+    }
+
+
+    private static int getId(String spelling) {
+        Integer id = ids.get(spelling);
+        if (id == null) {
+            synchronized (ids) {
+                id = ids.get(spelling);
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(spelling, id);
+                }
+            }
+        }
+        return id;
+    }
+
+
+    /**
+     * Returns the id of the spelling of this word. Words with equal spellings have the same id, and the ids are small
+     * numbers counted from zero in the order the spellings are first seen, so that they can be packed into longer keys
+     * like the keys of a {@link edu.cmu.sphinx.linguist.WordSequence}.
+     *
+     * @return the id of the spelling
+     */
+    public int getId() {
+        return id;
     }
 
 
@@ -137,7 +172,7 @@ public class Word {
 
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof Word && spelling.equals(((Word) obj).spelling);
+        return obj instanceof Word && id == ((Word) obj).id;
 
     }
 
@@ -22,6 +22,7 @@ import edu.cmu.sphinx.linguist.dictionary.Word;
 import edu.cmu.sphinx.linguist.language.grammar.Grammar;
 import edu.cmu.sphinx.linguist.language.grammar.GrammarArc;
 import edu.cmu.sphinx.linguist.language.grammar.GrammarNode;
+import edu.cmu.sphinx.linguist.util.SearchGraphCache;
 import edu.cmu.sphinx.util.Cache;
 import edu.cmu.sphinx.util.LogMath;
 import edu.cmu.sphinx.util.StatisticsVariable;
@@ -118,6 +119,21 @@ public class FlatLinguist implements Linguist, Configurable {
     public final static String PROP_SPREAD_WORD_PROBABILITIES_ACROSS_PRONUNCIATIONS =
             "spreadWordProbabilitiesAcrossPronunciations";
 
+    /**
+     * The property for an optional cache of compiled search graphs. With a cache, a grammar whose content has been
+     * compiled before reuses its search graph instead of being compiled again.
+     */
+    @S4Component(type = SearchGraphCache.class, mandatory = false)
+    public final static String PROP_SEARCH_GRAPH_CACHE = "searchGraphCache";
+
+    /**
+     * The property that controls whether the states of the grammar nodes are kept after compilation, so that a change
+     * of the grammar in place only recompiles the changed nodes, see {@link #recompileChangedNodes}. Keeping the states
+     * needs more memory.
+     */
+    @S4Boolean(defaultValue = false)
+    public final static String PROP_INCREMENTAL_COMPILATION = "incrementalCompilation";
+
     protected final static float logOne = LogMath.getLogOne();
 
     // note: some fields are protected to allow to override FlatLinguist.compileGrammar()
@@ -151,6 +167,8 @@ public class FlatLinguist implements Linguist, Configurable {
     private boolean spreadWordProbabilitiesAcrossPronunciations;
     private boolean dumpGStates;
     private float languageWeight;
+    private SearchGraphCache searchGraphCache;
+    private boolean incrementalCompilation;
 
     // -----------------------------------
     // Data for monitoring performance
@@ -170,6 +188,8 @@ public class FlatLinguist implements Linguist, Configurable {
     protected Map<GrammarNode, GState> nodeStateMap;
     protected Cache<SentenceHMMStateArc> arcPool;
     protected GrammarNode initialGrammarState;
+    private int grammarChangeCount;
+    private boolean keptContextsChanged;
 
     protected SearchGraph searchGraph;
 
@@ -229,6 +249,60 @@ public class FlatLinguist implements Linguist, Configurable {
         this.name = null;
     }
 
+    public FlatLinguist(
+            AcousticModel acousticModel,
+            LogMath logMath,
+            Grammar grammar,
+            UnitManager unitManager,
+            double wordInsertionProbability,
+            double silenceInsertionProbability,
+            double fillerInsertionProbability,
+            double unitInsertionProbability,
+            float languageWeight,
+            boolean dumpGStates,
+            boolean showCompilationProgress,
+            boolean spreadWordProbabilitiesAcrossPronunciations,
+            boolean addOutOfGrammarBranch,
+            double outOfGrammarBranchProbability,
+            double phoneInsertionProbability,
+            AcousticModel phoneLoopAcousticModel,
+            SearchGraphCache searchGraphCache
+    ) {
+        this(acousticModel, logMath, grammar, unitManager, wordInsertionProbability, silenceInsertionProbability,
+                fillerInsertionProbability, unitInsertionProbability, languageWeight, dumpGStates,
+                showCompilationProgress, spreadWordProbabilitiesAcrossPronunciations, addOutOfGrammarBranch,
+                outOfGrammarBranchProbability, phoneInsertionProbability, phoneLoopAcousticModel, searchGraphCache,
+                false);
+    }
+
+    public FlatLinguist(
+            AcousticModel acousticModel,
+            LogMath logMath,
+            Grammar grammar,
+            UnitManager unitManager,
+            double wordInsertionProbability,
+            double silenceInsertionProbability,
+            double fillerInsertionProbability,
+            double unitInsertionProbability,
+            float languageWeight,
+            boolean dumpGStates,
+            boolean showCompilationProgress,
+            boolean spreadWordProbabilitiesAcrossPronunciations,
+            boolean addOutOfGrammarBranch,
+            double outOfGrammarBranchProbability,
+            double phoneInsertionProbability,
+            AcousticModel phoneLoopAcousticModel,
+            SearchGraphCache searchGraphCache,
+            boolean incrementalCompilation
+    ) {
+        this(acousticModel, logMath, grammar, unitManager, wordInsertionProbability, silenceInsertionProbability,
+                fillerInsertionProbability, unitInsertionProbability, languageWeight, dumpGStates,
+                showCompilationProgress, spreadWordProbabilitiesAcrossPronunciations, addOutOfGrammarBranch,
+                outOfGrammarBranchProbability, phoneInsertionProbability, phoneLoopAcousticModel);
+        this.searchGraphCache = searchGraphCache;
+        this.incrementalCompilation = incrementalCompilation;
+    }
+
     public FlatLinguist() {
 
     }
@@ -263,6 +337,8 @@ public class FlatLinguist implements Linguist, Configurable {
             logPhoneInsertionProbability = logMath.linearToLog(ps.getDouble(PROP_PHONE_INSERTION_PROBABILITY));
             phoneLoopAcousticModel = (AcousticModel)ps.getComponent(PROP_PHONE_LOOP_ACOUSTIC_MODEL);
         }
+        searchGraphCache = (SearchGraphCache) ps.getComponent(PROP_SEARCH_GRAPH_CACHE);
+        incrementalCompilation = ps.getBoolean(PROP_INCREMENTAL_COMPILATION);
 
         name = ps.getInstanceName();
     }
@@ -301,7 +377,7 @@ public class FlatLinguist implements Linguist, Configurable {
         totalStates = StatisticsVariable.getStatisticsVariable(getName(), "totalStates");
         totalArcs = StatisticsVariable.getStatisticsVariable(getName(), "totalArcs");
         actualArcs = StatisticsVariable.getStatisticsVariable(getName(), "actualArcs");
-        stateSet = compileGrammar();
+        stateSet = compileOrReuseGrammar();
         totalStates.value = stateSet.size();
     }
 
@@ -338,7 +414,13 @@ public class FlatLinguist implements Linguist, Configurable {
     @Override
     public void startRecognition() {
         if (grammarHasChanged()) {
-            stateSet = compileGrammar();
+            stateSet = compileOrReuseGrammar();
+            totalStates.value = stateSet.size();
+        } else if (grammar.getChangeCount() != grammarChangeCount) {
+            // the grammar has been changed in place
+            if (grammar.getChangeCount() != grammarChangeCount + 1 || !recompileChangedNodes()) {
+                stateSet = compileOrReuseGrammar();
+            }
             totalStates.value = stateSet.size();
         }
     }
@@ -447,12 +529,136 @@ public class FlatLinguist implements Linguist, Configurable {
                 gstate.dumpInfo();
             }
         }
-        nodeStateMap = null;
-        arcPool = null;
+        if (!incrementalCompilation) {
+            nodeStateMap = null;
+            arcPool = null;
+        }
         return SentenceHMMState.collectStates(initialState);
     }
 
 
+    /**
+     * Compiles the grammar, or reuses the search graph of a grammar with the same content from the search graph cache.
+     *
+     * @return the states of the search graph
+     */
+    private Collection<SentenceHMMState> compileOrReuseGrammar() {
+        grammarChangeCount = grammar.getChangeCount();
+        if (searchGraphCache == null) {
+            return compileGrammar();
+        }
+        String checksum = getSearchGraphChecksum();
+        CompiledGraph compiled = (CompiledGraph) searchGraphCache.get(checksum, acousticModel,
+                phoneLoopAcousticModel);
+        if (compiled != null) {
+            initialGrammarState = grammar.getInitialNode();
+            searchGraph = compiled.searchGraph;
+            return compiled.states;
+        }
+        Collection<SentenceHMMState> states = compileGrammar();
+        searchGraphCache.put(checksum, acousticModel, phoneLoopAcousticModel, new CompiledGraph(searchGraph, states));
+        return states;
+    }
+
+
+    /**
+     * Recompiles the nodes affected by the last change of the grammar in place, see {@link Grammar#beginChange}. The
+     * states of the added nodes are created, expanded and connected, the changed nodes are connected to their new
+     * successors, and the states of the removed nodes are dropped. The other states are kept, which is only possible
+     * if their contexts stay the same: the changed nodes must be empty nodes whose starting contexts do not change, and
+     * the added nodes must not add left contexts to the kept nodes. Otherwise the whole grammar has to be compiled.
+     * <p/>
+     * This needs the states of the grammar nodes of the last compilation, which are kept if the {@link
+     * #PROP_INCREMENTAL_COMPILATION} property is set. Cached search graphs are never changed, so nothing is recompiled
+     * with a search graph cache.
+     *
+     * @return <code>true</code> if the nodes are recompiled, <code>false</code> if the whole grammar has to be
+     *         compiled
+     */
+    protected boolean recompileChangedNodes() {
+        if (nodeStateMap == null || searchGraphCache != null) {
+            return false;
+        }
+        Collection<GState> changedStates = new ArrayList<GState>();
+        for (GrammarNode grammarNode : grammar.getChangedNodes()) {
+            GState gstate = getGState(grammarNode);
+            if (gstate == null || !grammarNode.isEmpty()) {
+                return false;
+            }
+            changedStates.add(gstate);
+        }
+
+        TimerPool.getTimer(this, "Recompile").start();
+        try {
+            for (GrammarNode grammarNode : grammar.getRemovedNodes()) {
+                nodeStateMap.remove(grammarNode);
+            }
+            List<GState> gstateList = new ArrayList<GState>();
+            for (GrammarNode grammarNode : grammar.getAddedNodes()) {
+                gstateList.add(createGState(grammarNode));
+            }
+
+            // the entry points of the changed states are kept, so their
+            // starting contexts must stay the same
+            for (GState gstate : changedStates) {
+                Set<UnitContext> startingContexts = gstate.startingContexts;
+                gstate.startingContexts = null;
+                if (!gstate.getStartingContexts().equals(startingContexts)) {
+                    return false;
+                }
+            }
+
+            // the left contexts that reached a changed state reach its new
+            // successors
+            keptContextsChanged = false;
+            for (GState gstate : changedStates) {
+                gstate.pullRightContexts();
+                gstate.pushLeftContexts(new HashSet<GrammarNode>(), gstate.leftContexts);
+            }
+            for (GState gstate : gstateList) {
+                gstate.collectContexts();
+            }
+            if (keptContextsChanged) {
+                return false;
+            }
+
+            for (GState gstate : gstateList) {
+                gstate.expand();
+            }
+            for (GState gstate : changedStates) {
+                gstate.disconnect();
+                gstate.connect();
+            }
+            for (GState gstate : gstateList) {
+                gstate.connect();
+            }
+        } finally {
+            TimerPool.getTimer(this, "Recompile").stop();
+        }
+
+        grammarChangeCount = grammar.getChangeCount();
+        stateSet = SentenceHMMState.collectStates((SentenceHMMState) searchGraph.getInitialState());
+        return true;
+    }
+
+
+    /**
+     * Returns the checksum under which the search graph of the current grammar is cached. It covers the content of
+     * the grammar and the configuration of this linguist. Subclasses with a configuration of their own that changes
+     * the search graph must add it.
+     *
+     * @return the checksum of the search graph
+     */
+    protected String getSearchGraphChecksum() {
+        return SearchGraphCache.getChecksum(grammar) + ' ' + getClass().getName()
+                + ' ' + logWordInsertionProbability + ' ' + logSilenceInsertionProbability
+                + ' ' + logFillerInsertionProbability + ' ' + logUnitInsertionProbability
+                + ' ' + languageWeight + ' ' + spreadWordProbabilitiesAcrossPronunciations
+                + ' ' + addOutOfGrammarBranch + ' ' + logOutOfGrammarBranchProbability
+                + ' ' + logPhoneInsertionProbability;
+    }
+
+
     /**
      * Returns a new GState for the given GrammarNode.
      *
@@ -600,6 +806,7 @@ public class FlatLinguist implements Linguist, Configurable {
         private Set<UnitContext> startingContexts;
 
         private int exitConnections;
+        private boolean isExpanded;
 //        private GrammarArc[] successors = null;
 
 
@@ -751,7 +958,9 @@ public class FlatLinguist implements Linguist, Configurable {
          * @param context the set of contexts to add
          */
         private void addLeftContext(Collection<UnitContext> context) {
-            leftContexts.addAll(context);
+            if (leftContexts.addAll(context) && isExpanded) {
+                keptContextsChanged = true;
+            }
         }
 
 
@@ -761,7 +970,9 @@ public class FlatLinguist implements Linguist, Configurable {
          * @param context the context to add
          */
         private void addLeftContext(UnitContext context) {
-            leftContexts.add(context);
+            if (leftContexts.add(context) && isExpanded) {
+                keptContextsChanged = true;
+            }
         }
 
 
@@ -847,6 +1058,7 @@ public class FlatLinguist implements Linguist, Configurable {
                 }
             }
             addEmptyEntryPoints();
+            isExpanded = true;
         }
 
 
@@ -1304,6 +1516,18 @@ public class FlatLinguist implements Linguist, Configurable {
         }
 
 
+        /**
+         * Removes the connections from the exit points of this state to its successors
+         */
+        void disconnect() {
+            for (List<SearchState> exitList : exitPoints.values()) {
+                for (SearchState exitPoint : exitList) {
+                    ((SentenceHMMState) exitPoint).deleteSuccessors();
+                }
+            }
+        }
+
+
         /**
          * connect all the states in the source list to the states in the destination list
          *
@@ -1487,6 +1711,20 @@ public class FlatLinguist implements Linguist, Configurable {
             System.out.println(s);
         }
     }
+
+
+    /** A compiled search graph as kept in the search graph cache. */
+    private static class CompiledGraph {
+
+        private final SearchGraph searchGraph;
+        private final Collection<SentenceHMMState> states;
+
+
+        CompiledGraph(SearchGraph searchGraph, Collection<SentenceHMMState> states) {
+            this.searchGraph = searchGraph;
+            this.states = states;
+        }
+    }
 }
 
 /**
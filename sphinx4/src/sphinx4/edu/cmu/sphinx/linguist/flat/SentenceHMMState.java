@@ -277,6 +277,13 @@ public abstract class SentenceHMMState implements Serializable, SearchState {
     }
 
 
+    /** remove all successors */
+    void deleteSuccessors() {
+        arcs.clear();
+        successorArray = null;
+    }
+
+
     /**
      * Connects the arc to this sentence hmm.  If the node at the end of the arc is already pointing to some other node
      * as its predecessor, don't change that relationship, since its probably a result of the nodes being reused'
@@ -626,16 +633,18 @@ public abstract class SentenceHMMState implements Serializable, SearchState {
         Set<SentenceHMMState> visitedStates = new HashSet<SentenceHMMState>();
         List<SentenceHMMState> queue = new LinkedList<SentenceHMMState>();
 
+        // states are marked as visited when they are queued, so that
+        // checking the queue does not take linear time
+        visitedStates.add(start);
         queue.add(start);
 
         while (!queue.isEmpty()) {
             SentenceHMMState state = queue.remove(0);
 
-            visitedStates.add(state);
             SearchStateArc[] successors = state.getSuccessors();
             for (SearchStateArc arc : successors) {
                 SentenceHMMState nextState = (SentenceHMMState)arc.getState();
-                if (!visitedStates.contains(nextState) && !queue.contains(nextState)) {
+                if (visitedStates.add(nextState)) {
                     queue.add(nextState);
                 }
             }
@@ -141,7 +141,13 @@ public class FSTGrammar extends Grammar {
 
 
     public FSTGrammar(String path, LogMath logMath, boolean showGrammar, boolean optimizeGrammar, boolean addSilenceWords, boolean addFillerWords, Dictionary dictionary) {
-        super(showGrammar,optimizeGrammar,addSilenceWords,addFillerWords,dictionary);
+        this(path, logMath, showGrammar, optimizeGrammar, false, addSilenceWords, addFillerWords, dictionary);
+    }
+
+    public FSTGrammar(String path, LogMath logMath, boolean showGrammar, boolean optimizeGrammar,
+                      boolean determinizeGrammar, boolean addSilenceWords, boolean addFillerWords,
+                      Dictionary dictionary) {
+        super(showGrammar, optimizeGrammar, determinizeGrammar, addSilenceWords, addFillerWords, dictionary);
         this.path = path;
         this.logMath = logMath;
     }
@@ -44,6 +44,13 @@ public abstract class Grammar implements Configurable, GrammarInterface {
     @S4Boolean(defaultValue = true)
     public final static String PROP_OPTIMIZE_GRAMMAR = "optimizeGrammar";
 
+    /**
+     * Property to control whether the grammar graph is replaced by a deterministic and minimal graph that accepts the
+     * same word sequences with the same scores, see {@link GrammarOptimizer}.
+     */
+    @S4Boolean(defaultValue = false)
+    public final static String PROP_DETERMINIZE_GRAMMAR = "determinizeGrammar";
+
     /** Property to control whether silence words are inserted into the graph */
     @S4Boolean(defaultValue = false)
     public final static String PROP_ADD_SIL_WORDS = "addSilenceWords";
@@ -63,6 +70,7 @@ public abstract class Grammar implements Configurable, GrammarInterface {
 
     private boolean showGrammar;
     private boolean optimizeGrammar = true;
+    private boolean determinizeGrammar;
     private boolean addSilenceWords;
     private boolean addFillerWords;
     protected Dictionary dictionary;
@@ -75,10 +83,23 @@ public abstract class Grammar implements Configurable, GrammarInterface {
     private boolean postProcessed;
     private boolean idCheck;
 
+    // the last change of the grammar graph in place
+    private int changeCount;
+    private Set<GrammarNode> addedNodes = Collections.emptySet();
+    private Set<GrammarNode> changedNodes = Collections.emptySet();
+    private Set<GrammarNode> removedNodes = Collections.emptySet();
+    private boolean changing;
+
     public Grammar(boolean showGrammar,boolean optimizeGrammar,boolean addSilenceWords, boolean addFillerWords, Dictionary dictionary ) {
+        this(showGrammar, optimizeGrammar, false, addSilenceWords, addFillerWords, dictionary);
+    }
+
+    public Grammar(boolean showGrammar, boolean optimizeGrammar, boolean determinizeGrammar, boolean addSilenceWords,
+                   boolean addFillerWords, Dictionary dictionary) {
         this.logger = Logger.getLogger(getClass().getName());
         this.showGrammar = showGrammar;
         this.optimizeGrammar = optimizeGrammar;
+        this.determinizeGrammar = determinizeGrammar;
         this.addSilenceWords = addSilenceWords;
         this.addFillerWords = addFillerWords;
         this.dictionary = dictionary;
@@ -98,6 +119,7 @@ public abstract class Grammar implements Configurable, GrammarInterface {
         logger = ps.getLogger();
         showGrammar = ps.getBoolean(PROP_SHOW_GRAMMAR);
         optimizeGrammar = ps.getBoolean(PROP_OPTIMIZE_GRAMMAR);
+        determinizeGrammar = ps.getBoolean(PROP_DETERMINIZE_GRAMMAR);
 
         addSilenceWords = ps.getBoolean(PROP_ADD_SIL_WORDS);
         addFillerWords = ps.getBoolean(PROP_ADD_FILLER_WORDS);
@@ -139,11 +161,14 @@ public abstract class Grammar implements Configurable, GrammarInterface {
 
 
     /**
-     * Perform the standard set of grammar post processing. This can include inserting silence nodes and optimizing out
-     * empty nodes
+     * Perform the standard set of grammar post processing. This can include determinizing the grammar, inserting
+     * silence nodes and optimizing out empty nodes. Determinizing replaces the initial node.
      */
     protected void postProcessGrammar() {
         if (!postProcessed) {
+            if (determinizeGrammar) {
+                determinizeGrammar();
+            }
             if (addFillerWords) {
                 addFillerWords();
             } else if (addSilenceWords) {
@@ -475,7 +500,169 @@ public abstract class Grammar implements Configurable, GrammarInterface {
         }
 
         grammarNodes.add(node);
+        if (changing) {
+            addedNodes.add(node);
+        }
+    }
+
+
+    /**
+     * Marks a node at which the grammar graph is changed in place later, see {@link #beginChange}. Optimizing the
+     * grammar does not bypass such a node.
+     *
+     * @param node the node
+     */
+    protected void markSplicePoint(GrammarNode node) {
+        node.setSplicePoint();
+    }
+
+
+    /**
+     * Starts a change of the grammar graph in place. Instead of building a new graph, a grammar can replace the
+     * successors of some nodes with new nodes. The nodes created until {@link #endChange} are post processed like the
+     * nodes of a new grammar. The initial node stays the same, so a linguist finds out about the change with {@link
+     * #getChangeCount}.
+     */
+    protected void beginChange() {
+        addedNodes = new HashSet<GrammarNode>();
+        changedNodes = new HashSet<GrammarNode>();
+        removedNodes = new HashSet<GrammarNode>();
+        changing = true;
+    }
+
+
+    /**
+     * Removes all successors of a node during a change in place. New successors are added with {@link
+     * GrammarNode#add}.
+     *
+     * @param node the node
+     */
+    protected void removeSuccessors(GrammarNode node) {
+        node.removeSuccessors();
+        changedNodes.add(node);
+    }
+
+
+    /**
+     * Marks a node whose successors are changed in place during a change, other than by {@link #removeSuccessors}.
+     *
+     * @param node the node
+     */
+    protected void markChanged(GrammarNode node) {
+        changedNodes.add(node);
+    }
+
+
+    /**
+     * Ends a change of the grammar graph in place. The given nodes, the transitions to them and all nodes that can no
+     * longer be reached from the initial node are removed from the grammar.
+     *
+     * @param nodes the nodes to remove
+     */
+    protected void endChange(Collection<GrammarNode> nodes) {
+        removedNodes.addAll(nodes);
+        grammarNodes.removeAll(removedNodes);
+        for (GrammarNode node : grammarNodes) {
+            if (node.removeSuccessors(removedNodes)) {
+                changedNodes.add(node);
+            }
+        }
 
+        List<GrammarNode> newNodes = new ArrayList<GrammarNode>(addedNodes);
+        newNodes.removeAll(removedNodes);
+        if (addFillerWords) {
+            addFillerWords(newNodes);
+        } else if (addSilenceWords) {
+            addSilenceWords(newNodes);
+        }
+        if (optimizeGrammar) {
+            optimizeGrammar(addedNodes);
+            optimizeGrammar(changedNodes);
+        }
+
+        Set<GrammarNode> reachable = new HashSet<GrammarNode>();
+        List<GrammarNode> queue = new ArrayList<GrammarNode>();
+        reachable.add(initialNode);
+        queue.add(initialNode);
+        for (int i = 0; i < queue.size(); i++) {
+            for (GrammarArc arc : queue.get(i).getSuccessors()) {
+                if (reachable.add(arc.getGrammarNode())) {
+                    queue.add(arc.getGrammarNode());
+                }
+            }
+        }
+        for (GrammarNode node : grammarNodes) {
+            if (!reachable.contains(node)) {
+                removedNodes.add(node);
+            }
+        }
+        grammarNodes.retainAll(reachable);
+        addedNodes.removeAll(removedNodes);
+        changedNodes.removeAll(removedNodes);
+        changedNodes.removeAll(addedNodes);
+
+        changing = false;
+        changeCount++;
+        logger.fine("Changed grammar in place: " + addedNodes.size() + " nodes added, " + changedNodes.size()
+                + " changed, " + removedNodes.size() + " removed");
+    }
+
+
+    /**
+     * Returns the number of changes of the grammar graph in place. Compare the initial node to find out about a new
+     * grammar graph.
+     *
+     * @return the number of changes in place
+     */
+    public int getChangeCount() {
+        return changeCount;
+    }
+
+
+    /** @return the nodes added by the last change in place */
+    public Set<GrammarNode> getAddedNodes() {
+        return addedNodes;
+    }
+
+
+    /** @return the nodes that were kept but got other successors in the last change in place */
+    public Set<GrammarNode> getChangedNodes() {
+        return changedNodes;
+    }
+
+
+    /** @return the nodes removed by the last change in place */
+    public Set<GrammarNode> getRemovedNodes() {
+        return removedNodes;
+    }
+
+
+    /**
+     * Replaces the grammar graph by a deterministic and minimal graph that accepts the same word sequences with the same
+     * scores. A grammar that is changed in place keeps its graph, since the changes are spliced into its nodes.
+     */
+    private void determinizeGrammar() {
+        for (GrammarNode node : grammarNodes) {
+            if (node.isSplicePoint()) {
+                logger.warning("Not determinizing a grammar that is changed in place");
+                return;
+            }
+        }
+        GrammarOptimizer optimizer = new GrammarOptimizer();
+        List<GrammarNode> nodes = optimizer.optimize(initialNode, maxIdentity + 1);
+        if (nodes == null) {
+            logger.info("Grammar with " + optimizer.getNumOriginalNodes() + " nodes and "
+                    + optimizer.getNumOriginalArcs() + " arcs can not be made smaller by determinizing");
+            return;
+        }
+        logger.info("Determinized grammar from " + optimizer.getNumOriginalNodes() + " nodes and "
+                + optimizer.getNumOriginalArcs() + " arcs to " + optimizer.getNumNodes() + " nodes and "
+                + optimizer.getNumArcs() + " arcs");
+        grammarNodes = new HashSet<GrammarNode>();
+        for (GrammarNode node : nodes) {
+            add(node);
+        }
+        initialNode = nodes.get(0);
     }
 
 
@@ -484,7 +671,12 @@ public abstract class Grammar implements Configurable, GrammarInterface {
      * nodes that have no words and have only a single exit and bypasses these nodes.
      */
     private void optimizeGrammar() {
-        Set<GrammarNode> nodes = getGrammarNodes();
+        optimizeGrammar(getGrammarNodes());
+    }
+
+
+    /** Eliminate unnecessary nodes after the given nodes. */
+    private void optimizeGrammar(Collection<GrammarNode> nodes) {
         for (GrammarNode node : nodes)
             node.optimize();
     }
@@ -492,7 +684,12 @@ public abstract class Grammar implements Configurable, GrammarInterface {
 
     /** Adds an optional silence word after every non-filler word in the grammar */
     private void addSilenceWords() {
-        HashSet<GrammarNode> nodes = new HashSet<GrammarNode>(getGrammarNodes());
+        addSilenceWords(new HashSet<GrammarNode>(getGrammarNodes()));
+    }
+
+
+    /** Adds an optional silence word after every non-filler word of the given nodes */
+    private void addSilenceWords(Collection<GrammarNode> nodes) {
         for (GrammarNode g : nodes) {
             if (!g.isEmpty() && !g.getWord().isFiller()) {
                 GrammarNode silNode = createGrammarNode(maxIdentity + 1,
@@ -511,8 +708,12 @@ public abstract class Grammar implements Configurable, GrammarInterface {
 
     /** Adds an optional filler word loop after every non-filler word in the grammar */
     private void addFillerWords() {
-        Set<GrammarNode> nodes = new HashSet<GrammarNode>(getGrammarNodes());
+        addFillerWords(new HashSet<GrammarNode>(getGrammarNodes()));
+    }
+
 
+    /** Adds an optional filler word loop after every non-filler word of the given nodes */
+    private void addFillerWords(Collection<GrammarNode> nodes) {
         Word[] fillers = getInterWordFillers();
 
         if (fillers.length == 0) {
@@ -36,6 +36,7 @@ public class GrammarNode {
 
     private Word[][] alternatives;              // ordered words at this node
     private List<GrammarArc> arcList = new ArrayList<GrammarArc>();      // arcs to successors
+    private boolean isSplicePoint;      // is the grammar changed in place at this node?
 
 
     /**
@@ -116,7 +117,7 @@ public class GrammarNode {
      */
     GrammarArc optimizeArc(GrammarArc arc) {
         GrammarNode nextNode = arc.getGrammarNode();
-        while (nextNode.isEmpty() && nextNode.arcList.size() == 1) {
+        while (nextNode.isEmpty() && nextNode.arcList.size() == 1 && !nextNode.isSplicePoint) {
             GrammarArc nextArc = nextNode.arcList.get(0);
             arc = new GrammarArc(nextArc.getGrammarNode(),
                     arc.getProbability() + nextArc.getProbability());
@@ -177,6 +178,42 @@ public class GrammarNode {
     }
 
 
+    /** Marks this node as a node where the grammar is changed in place, so that optimizing does not bypass it. */
+    void setSplicePoint() {
+        isSplicePoint = true;
+    }
+
+
+    /** @return <code>true</code> if the grammar is changed in place at this node */
+    boolean isSplicePoint() {
+        return isSplicePoint;
+    }
+
+
+    /** Removes all transitions out of this node */
+    void removeSuccessors() {
+        arcList.clear();
+    }
+
+
+    /**
+     * Removes the transitions to the given nodes
+     *
+     * @param nodes the nodes to remove the transitions to
+     * @return <code>true</code> if a transition was removed
+     */
+    boolean removeSuccessors(Set<GrammarNode> nodes) {
+        boolean removed = false;
+        for (Iterator<GrammarArc> i = arcList.iterator(); i.hasNext();) {
+            if (nodes.contains(i.next().getGrammarNode())) {
+                i.remove();
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+
     /**
      * Determines if this grammar node is a final node in the grammar
      *
@@ -0,0 +1,662 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.linguist.language.grammar;
+
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.util.LogMath;
+
+import java.util.*;
+
+/**
+ * Rebuilds a grammar graph as the smallest deterministic graph that accepts the same word sequences with the same
+ * scores. Grammars built from rules or from a list of sentences often repeat a word at the start of many alternatives
+ * ("call john | call mary") or share endings. Each repetition becomes a separate path of search states, so the same
+ * word is scored several times per frame. The optimizer works in three steps:
+ * <ul>
+ * <li>Epsilon removal. The empty nodes are bypassed, so every transition leads to a word.
+ * <li>Determinization. The nodes that are reached with the same word from the same node are merged, so every node has
+ * at most one successor per word. The weights are kept as the residual of each merged path.
+ * <li>Minimization. The weights are pushed towards the initial node and the nodes with the same word and the same
+ * future are merged.
+ * </ul>
+ * The weights are combined in the max-plus semiring of the Viterbi search: of several paths for the same word
+ * sequence only the best one counts, as in the search. The log semiring would add up the paths instead, which inflates
+ * the scores of grammars whose alternatives all have the weight one, and it does not converge on the empty loops of
+ * repeated rules.
+ * <p/>
+ * Removing the empty nodes can multiply the transitions, for example between two lists of words that follow each
+ * other. Nodes with the same transitions therefore share an empty node holding them. Not every weighted graph can be
+ * determinized either. If the graph grows beyond a limit, if a loop has a positive weight, or if the optimized graph
+ * has more transitions than the original one, the optimizer gives up and the grammar is left as it is.
+ */
+class GrammarOptimizer {
+
+    /** The label of the initial state, which is not reached by a word. */
+    private final static int NO_LABEL = -1;
+
+    /** The factor by which the intermediate graphs may grow beyond the size of the original graph. */
+    private final static int MAX_GROWTH = 8;
+
+    private int numOriginalNodes;
+    private int numOriginalArcs;
+    private int maxStates;
+    private int maxArcs;
+
+    // the epsilon free graph, state 0 is the initial node, the others are the word nodes
+    private final List<GrammarNode> wordNodes = new ArrayList<GrammarNode>();
+    private final List<Word[][]> labels = new ArrayList<Word[][]>();
+    private int[] stateLabels;
+    private int[][] targets;
+    private double[][] weights;
+    private double[] finalWeights;
+
+    // the deterministic graph
+    private final List<Subset> subsets = new ArrayList<Subset>();
+    private final List<int[]> dfaLabels = new ArrayList<int[]>();
+    private final List<int[]> dfaTargets = new ArrayList<int[]>();
+    private final List<double[]> dfaWeights = new ArrayList<double[]>();
+    private final List<Double> dfaFinalWeights = new ArrayList<Double>();
+    private final List<Integer> dfaStateLabels = new ArrayList<Integer>();
+
+    private int numNodes;
+    private int numArcs;
+
+
+    /**
+     * Optimizes the graph reachable from the given node. The given graph is not changed.
+     *
+     * @param initialNode the initial node of the graph
+     * @param firstId     the identity of the first new node
+     * @return the nodes of the new graph, the first one is the initial node, or <code>null</code> if the graph can not
+     *         be optimized
+     */
+    List<GrammarNode> optimize(GrammarNode initialNode, int firstId) {
+        Set<GrammarNode> reachable = new HashSet<GrammarNode>();
+        List<GrammarNode> queue = new ArrayList<GrammarNode>();
+        reachable.add(initialNode);
+        queue.add(initialNode);
+        for (int i = 0; i < queue.size(); i++) {
+            for (GrammarArc arc : queue.get(i).getSuccessors()) {
+                numOriginalArcs++;
+                if (reachable.add(arc.getGrammarNode())) {
+                    queue.add(arc.getGrammarNode());
+                }
+            }
+        }
+        numOriginalNodes = queue.size();
+        maxStates = MAX_GROWTH * numOriginalNodes + 1000;
+        maxArcs = MAX_GROWTH * numOriginalArcs + 10000;
+
+        if (!removeEpsilons(initialNode) || !determinize()) {
+            return null;
+        }
+        double[] potentials = pushWeights();
+        if (potentials == null || potentials[0] == LogMath.getLogZero()) {
+            return null;
+        }
+        List<GrammarNode> nodes = build(minimize(potentials), potentials, firstId);
+        return numArcs <= numOriginalArcs ? nodes : null;
+    }
+
+
+    /** @return the number of nodes of the original graph */
+    int getNumOriginalNodes() {
+        return numOriginalNodes;
+    }
+
+
+    /** @return the number of arcs of the original graph */
+    int getNumOriginalArcs() {
+        return numOriginalArcs;
+    }
+
+
+    /** @return the number of nodes of the last optimized graph */
+    int getNumNodes() {
+        return numNodes;
+    }
+
+
+    /** @return the number of arcs of the last optimized graph */
+    int getNumArcs() {
+        return numArcs;
+    }
+
+
+    /**
+     * Builds the epsilon free graph. Its states are the initial node and the word nodes. A transition to a word node
+     * has the best weight of all paths through empty nodes to it, a final weight the best weight of all paths through
+     * empty nodes to a final node.
+     *
+     * @param initialNode the initial node of the grammar
+     * @return false if there is an empty loop with a positive weight or the graph grows beyond the limit
+     */
+    private boolean removeEpsilons(GrammarNode initialNode) {
+        Map<GrammarNode, Integer> states = new HashMap<GrammarNode, Integer>();
+        Map<List<List<Word>>, Integer> labelIds = new HashMap<List<List<Word>>, Integer>();
+        List<Integer> labelList = new ArrayList<Integer>();
+        wordNodes.add(initialNode);
+        labelList.add(NO_LABEL);
+
+        List<int[]> targetList = new ArrayList<int[]>();
+        List<double[]> weightList = new ArrayList<double[]>();
+        List<Double> finalList = new ArrayList<Double>();
+        int numArcs = 0;
+        for (int state = 0; state < wordNodes.size(); state++) {
+            Map<GrammarNode, Double> closure = new LinkedHashMap<GrammarNode, Double>();
+            double finalWeight = LogMath.getLogZero();
+            if (state == 0) {
+                if (!closure(initialNode, 0.0, closure)) {
+                    return false;
+                }
+            } else {
+                GrammarNode node = wordNodes.get(state);
+                if (node.isFinalNode()) {
+                    finalWeight = 0.0;
+                }
+                for (GrammarArc arc : node.getSuccessors()) {
+                    if (!closure(arc.getGrammarNode(), arc.getProbability(), closure)) {
+                        return false;
+                    }
+                }
+            }
+
+            List<Integer> stateTargets = new ArrayList<Integer>();
+            List<Double> stateWeights = new ArrayList<Double>();
+            for (Map.Entry<GrammarNode, Double> entry : closure.entrySet()) {
+                GrammarNode node = entry.getKey();
+                if (node.isEmpty()) {
+                    if (node.isFinalNode()) {
+                        finalWeight = Math.max(finalWeight, entry.getValue());
+                    }
+                    continue;
+                }
+                Integer target = states.get(node);
+                if (target == null) {
+                    target = wordNodes.size();
+                    states.put(node, target);
+                    wordNodes.add(node);
+                    labelList.add(getLabel(node, labelIds));
+                }
+                stateTargets.add(target);
+                stateWeights.add(entry.getValue());
+            }
+            numArcs += stateTargets.size();
+            if (numArcs > maxArcs) {
+                return false;
+            }
+            targetList.add(toIntArray(stateTargets));
+            weightList.add(toDoubleArray(stateWeights));
+            finalList.add(finalWeight);
+        }
+
+        stateLabels = toIntArray(labelList);
+        targets = targetList.toArray(new int[targetList.size()][]);
+        weights = weightList.toArray(new double[weightList.size()][]);
+        finalWeights = toDoubleArray(finalList);
+        return true;
+    }
+
+
+    /**
+     * Collects the best weights of the nodes reached from a node through empty nodes. Word nodes end a path.
+     *
+     * @param node    the first node
+     * @param weight  the weight of reaching the first node
+     * @param closure receives the best weight of every node reached
+     * @return false if there is an empty loop with a positive weight
+     */
+    private boolean closure(GrammarNode node, double weight, Map<GrammarNode, Double> closure) {
+        Set<GrammarNode> queue = new LinkedHashSet<GrammarNode>();
+        Map<GrammarNode, Integer> updates = new HashMap<GrammarNode, Integer>();
+        if (relax(node, weight, closure, queue, updates)) {
+            return false;
+        }
+        while (!queue.isEmpty()) {
+            Iterator<GrammarNode> first = queue.iterator();
+            GrammarNode empty = first.next();
+            first.remove();
+            double base = closure.get(empty);
+            for (GrammarArc arc : empty.getSuccessors()) {
+                if (relax(arc.getGrammarNode(), base + arc.getProbability(), closure, queue, updates)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Improves the weight of a node in a closure.
+     *
+     * @return true if the node was improved more often than possible without a positive loop
+     */
+    private boolean relax(GrammarNode node, double weight, Map<GrammarNode, Double> closure,
+                          Set<GrammarNode> queue, Map<GrammarNode, Integer> updates) {
+        Double best = closure.get(node);
+        if (best != null && best >= weight) {
+            return false;
+        }
+        closure.put(node, weight);
+        if (node.isEmpty() && queue.add(node)) {
+            Integer count = updates.get(node);
+            count = count == null ? 1 : count + 1;
+            if (count > numOriginalNodes) {
+                return true;
+            }
+            updates.put(node, count);
+        }
+        return false;
+    }
+
+
+    /** Returns the number of the words of a node, equal words get the same number. */
+    private int getLabel(GrammarNode node, Map<List<List<Word>>, Integer> labelIds) {
+        List<List<Word>> key = new ArrayList<List<Word>>();
+        for (Word[] alternative : node.getAlternatives()) {
+            key.add(Arrays.asList(alternative));
+        }
+        Integer label = labelIds.get(key);
+        if (label == null) {
+            label = labels.size();
+            labelIds.put(key, label);
+            labels.add(node.getAlternatives());
+        }
+        return label;
+    }
+
+
+    /**
+     * Determinizes the epsilon free graph by the weighted subset construction. A state of the deterministic graph is a
+     * set of states of the epsilon free graph, each with the weight it falls behind the best one.
+     *
+     * @return false if the deterministic graph grows beyond the limit
+     */
+    private boolean determinize() {
+        Map<Subset, Integer> ids = new HashMap<Subset, Integer>();
+        Subset start = new Subset(new int[]{0}, new double[]{0.0});
+        ids.put(start, 0);
+        subsets.add(start);
+        dfaStateLabels.add(NO_LABEL);
+
+        for (int id = 0; id < subsets.size(); id++) {
+            Subset subset = subsets.get(id);
+            double finalWeight = LogMath.getLogZero();
+            // the best weight of every target, grouped by the label of the target
+            SortedMap<Integer, SortedMap<Integer, Double>> byLabel = new TreeMap<Integer, SortedMap<Integer, Double>>();
+            for (int i = 0; i < subset.states.length; i++) {
+                int state = subset.states[i];
+                double residual = subset.residuals[i];
+                finalWeight = Math.max(finalWeight, residual + finalWeights[state]);
+                for (int j = 0; j < targets[state].length; j++) {
+                    int target = targets[state][j];
+                    SortedMap<Integer, Double> group = byLabel.get(stateLabels[target]);
+                    if (group == null) {
+                        group = new TreeMap<Integer, Double>();
+                        byLabel.put(stateLabels[target], group);
+                    }
+                    Double best = group.get(target);
+                    double weight = residual + weights[state][j];
+                    if (best == null || weight > best) {
+                        group.put(target, weight);
+                    }
+                }
+            }
+
+            int[] arcLabels = new int[byLabel.size()];
+            int[] arcTargets = new int[byLabel.size()];
+            double[] arcWeights = new double[byLabel.size()];
+            int arc = 0;
+            for (Map.Entry<Integer, SortedMap<Integer, Double>> entry : byLabel.entrySet()) {
+                SortedMap<Integer, Double> group = entry.getValue();
+                double best = Collections.max(group.values());
+                int[] states = new int[group.size()];
+                double[] residuals = new double[group.size()];
+                int i = 0;
+                for (Map.Entry<Integer, Double> target : group.entrySet()) {
+                    states[i] = target.getKey();
+                    residuals[i] = target.getValue() - best;
+                    i++;
+                }
+                Subset next = new Subset(states, residuals);
+                Integer nextId = ids.get(next);
+                if (nextId == null) {
+                    if (subsets.size() >= maxStates) {
+                        return false;
+                    }
+                    nextId = subsets.size();
+                    ids.put(next, nextId);
+                    subsets.add(next);
+                    dfaStateLabels.add(entry.getKey());
+                }
+                arcLabels[arc] = entry.getKey();
+                arcTargets[arc] = nextId;
+                arcWeights[arc] = best;
+                arc++;
+            }
+            dfaLabels.add(arcLabels);
+            dfaTargets.add(arcTargets);
+            dfaWeights.add(arcWeights);
+            dfaFinalWeights.add(finalWeight);
+        }
+        return true;
+    }
+
+
+    /**
+     * Computes the best weight from every state of the deterministic graph to the end of the grammar. States that can
+     * not reach the end get the log zero.
+     *
+     * @return the weights, or <code>null</code> if a loop has a positive weight
+     */
+    private double[] pushWeights() {
+        int size = subsets.size();
+        List<List<Integer>> predecessors = new ArrayList<List<Integer>>(size);
+        for (int i = 0; i < size; i++) {
+            predecessors.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < size; i++) {
+            for (int target : dfaTargets.get(i)) {
+                predecessors.get(target).add(i);
+            }
+        }
+
+        double[] potentials = new double[size];
+        int[] updates = new int[size];
+        boolean[] queued = new boolean[size];
+        LinkedList<Integer> queue = new LinkedList<Integer>();
+        for (int i = 0; i < size; i++) {
+            potentials[i] = dfaFinalWeights.get(i);
+            if (potentials[i] != LogMath.getLogZero()) {
+                queue.add(i);
+                queued[i] = true;
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.removeFirst();
+            queued[state] = false;
+            for (int predecessor : predecessors.get(state)) {
+                int[] arcTargets = dfaTargets.get(predecessor);
+                for (int j = 0; j < arcTargets.length; j++) {
+                    double potential = dfaWeights.get(predecessor)[j] + potentials[state];
+                    if (arcTargets[j] == state && potential > potentials[predecessor]) {
+                        potentials[predecessor] = potential;
+                        if (++updates[predecessor] > size) {
+                            return null;
+                        }
+                        if (!queued[predecessor]) {
+                            queue.add(predecessor);
+                            queued[predecessor] = true;
+                        }
+                    }
+                }
+            }
+        }
+        return potentials;
+    }
+
+
+    /**
+     * Partitions the states of the deterministic graph that can reach the end into classes of equivalent states: they
+     * are reached by the same word, have the same pushed final weight and the same pushed transitions into the same
+     * classes. Since the words are on the nodes, states reached by different words are never merged.
+     *
+     * @param potentials the best weights to the end
+     * @return the class of every state, -1 for states that can not reach the end
+     */
+    private int[] minimize(double[] potentials) {
+        int size = subsets.size();
+        int[] classes = new int[size];
+        Map<Signature, Integer> ids = new HashMap<Signature, Integer>();
+        for (int i = 0; i < size; i++) {
+            if (potentials[i] == LogMath.getLogZero()) {
+                classes[i] = -1;
+                continue;
+            }
+            Signature signature = new Signature(new int[]{dfaStateLabels.get(i),
+                    pushedBits(dfaFinalWeights.get(i), 0.0, potentials[i])});
+            classes[i] = getId(ids, signature);
+        }
+
+        for (int numClasses = ids.size(), previous = -1; numClasses != previous; numClasses = ids.size()) {
+            previous = numClasses;
+            ids.clear();
+            int[] refined = new int[size];
+            for (int i = 0; i < size; i++) {
+                if (classes[i] < 0) {
+                    refined[i] = -1;
+                    continue;
+                }
+                int[] arcTargets = dfaTargets.get(i);
+                int[] key = new int[1 + 3 * arcTargets.length];
+                key[0] = classes[i];
+                int k = 1;
+                for (int j = 0; j < arcTargets.length; j++) {
+                    if (classes[arcTargets[j]] >= 0) {
+                        key[k++] = dfaLabels.get(i)[j];
+                        key[k++] = pushedBits(dfaWeights.get(i)[j], potentials[arcTargets[j]], potentials[i]);
+                        key[k++] = classes[arcTargets[j]];
+                    }
+                }
+                refined[i] = getId(ids, new Signature(Arrays.copyOf(key, k)));
+            }
+            classes = refined;
+        }
+        return classes;
+    }
+
+
+    private static int getId(Map<Signature, Integer> ids, Signature signature) {
+        Integer id = ids.get(signature);
+        if (id == null) {
+            id = ids.size();
+            ids.put(signature, id);
+        }
+        return id;
+    }
+
+
+    /** Returns the bits of the pushed weight as stored in an arc, or of the log zero. */
+    private static int pushedBits(double weight, double targetPotential, double sourcePotential) {
+        if (weight == LogMath.getLogZero()) {
+            return Float.floatToIntBits(LogMath.getLogZero());
+        }
+        return Float.floatToIntBits(pushed(weight, targetPotential, sourcePotential));
+    }
+
+
+    /** Returns a weight pushed towards the initial node. */
+    private static float pushed(double weight, double targetPotential, double sourcePotential) {
+        return (float) (weight + targetPotential - sourcePotential);
+    }
+
+
+    /**
+     * Builds the grammar nodes of the minimal graph. Every class becomes a node, final classes get a transition to a
+     * single empty final node. The best weight of the whole grammar is moved onto the transitions out of the initial
+     * node, which has no predecessors. Nodes with the same transitions get a transition to a shared empty node that
+     * holds them.
+     */
+    private List<GrammarNode> build(int[] classes, double[] potentials, int firstId) {
+        int numClasses = 0;
+        for (int c : classes) {
+            numClasses = Math.max(numClasses, c + 1);
+        }
+        GrammarNode[] nodes = new GrammarNode[numClasses + 1];
+        int[] representatives = new int[numClasses];
+        List<GrammarNode> result = new ArrayList<GrammarNode>();
+        int id = firstId;
+        for (int i = 0; i < classes.length; i++) {
+            int c = classes[i];
+            if (c >= 0 && nodes[c] == null) {
+                int label = dfaStateLabels.get(i);
+                nodes[c] = label == NO_LABEL ? new GrammarNode(id++, false) : new GrammarNode(id++, labels.get(label));
+                representatives[c] = i;
+                result.add(nodes[c]);
+            }
+        }
+
+        // the transitions of every class as pairs of target and weight bits, the final node is the last target
+        int finalClass = numClasses;
+        Map<Signature, List<Integer>> sharing = new LinkedHashMap<Signature, List<Integer>>();
+        Signature[] transitions = new Signature[numClasses];
+        for (int c = 0; c < numClasses; c++) {
+            int state = representatives[c];
+            // the initial node keeps the best weight of the grammar
+            double initialWeight = state == 0 ? potentials[0] : 0.0;
+            int[] arcTargets = dfaTargets.get(state);
+            int[] key = new int[2 * arcTargets.length + 2];
+            int k = 0;
+            for (int j = 0; j < arcTargets.length; j++) {
+                int target = arcTargets[j];
+                if (classes[target] >= 0) {
+                    key[k++] = classes[target];
+                    key[k++] = Float.floatToIntBits((float) initialWeight
+                            + pushed(dfaWeights.get(state)[j], potentials[target], potentials[state]));
+                }
+            }
+            double finalWeight = dfaFinalWeights.get(state);
+            if (finalWeight != LogMath.getLogZero()) {
+                key[k++] = finalClass;
+                key[k++] = Float.floatToIntBits((float) initialWeight + pushed(finalWeight, 0.0, potentials[state]));
+                if (nodes[finalClass] == null) {
+                    nodes[finalClass] = new GrammarNode(id++, true);
+                }
+            }
+            transitions[c] = new Signature(Arrays.copyOf(key, k));
+            List<Integer> sharers = sharing.get(transitions[c]);
+            if (sharers == null) {
+                sharers = new ArrayList<Integer>();
+                sharing.put(transitions[c], sharers);
+            }
+            sharers.add(c);
+        }
+        if (nodes[finalClass] != null) {
+            result.add(nodes[finalClass]);
+        }
+
+        numArcs = 0;
+        for (Map.Entry<Signature, List<Integer>> entry : sharing.entrySet()) {
+            int[] key = entry.getKey().key;
+            List<Integer> sharers = entry.getValue();
+            int arcs = key.length / 2;
+            if (sharers.size() * arcs > sharers.size() + arcs) {
+                GrammarNode shared = new GrammarNode(id++, false);
+                result.add(shared);
+                for (int c : sharers) {
+                    nodes[c].add(shared, LogMath.getLogOne());
+                }
+                numArcs += sharers.size();
+                addTransitions(shared, key, nodes);
+            } else {
+                for (int c : sharers) {
+                    addTransitions(nodes[c], key, nodes);
+                }
+            }
+        }
+        numNodes = result.size();
+        return result;
+    }
+
+
+    /** Adds the transitions given as pairs of target and weight bits to a node. */
+    private void addTransitions(GrammarNode node, int[] key, GrammarNode[] nodes) {
+        for (int k = 0; k < key.length; k += 2) {
+            node.add(nodes[key[k]], Float.intBitsToFloat(key[k + 1]));
+            numArcs++;
+        }
+    }
+
+
+    private static int[] toIntArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+
+    private static double[] toDoubleArray(List<Double> list) {
+        double[] array = new double[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+
+    /** A state of the deterministic graph: sorted states of the epsilon free graph with their residual weights. */
+    private static class Subset {
+
+        private final int[] states;
+        private final double[] residuals;
+        private final int[] residualBits;
+        private final int hashCode;
+
+
+        Subset(int[] states, double[] residuals) {
+            this.states = states;
+            this.residuals = residuals;
+            // residuals that are equal as stored in an arc make equal subsets
+            residualBits = new int[residuals.length];
+            for (int i = 0; i < residuals.length; i++) {
+                residualBits[i] = Float.floatToIntBits((float) residuals[i]);
+            }
+            hashCode = 31 * Arrays.hashCode(states) + Arrays.hashCode(residualBits);
+        }
+
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Subset)) {
+                return false;
+            }
+            Subset other = (Subset) obj;
+            return Arrays.equals(states, other.states) && Arrays.equals(residualBits, other.residualBits);
+        }
+    }
+
+
+    /** The key of a class of states during minimization. */
+    private static class Signature {
+
+        private final int[] key;
+        private final int hashCode;
+
+
+        Signature(int[] key) {
+            this.key = key;
+            this.hashCode = Arrays.hashCode(key);
+        }
+
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Signature && Arrays.equals(key, ((Signature) obj).key);
+        }
+    }
+}
@@ -14,6 +14,7 @@ package edu.cmu.sphinx.linguist.language.grammar;
 import edu.cmu.sphinx.linguist.WordSequence;
 import edu.cmu.sphinx.linguist.dictionary.Word;
 import edu.cmu.sphinx.linguist.dictionary.Dictionary;
+import edu.cmu.sphinx.linguist.language.ngram.BatchLanguageModel;
 import edu.cmu.sphinx.linguist.language.ngram.LanguageModel;
 import edu.cmu.sphinx.util.TimerPool;
 import edu.cmu.sphinx.util.props.PropertyException;
@@ -99,14 +100,22 @@ public class LMGrammar extends Grammar {
             if (prevNode.isFinalNode()) {
                 continue;
             }
+            List<WordSequence> sequences = new ArrayList<WordSequence>(nodes.size());
             for (GrammarNode nextNode : nodes) {
                 String prevWord = prevNode.getWord().getSpelling();
                 String nextWord = nextNode.getWord().getSpelling();
                 Word[] wordArray = {getDictionary().getWord(prevWord),
                         getDictionary().getWord(nextWord)};
+                sequences.add(new WordSequence(wordArray));
+            }
+            // a remote model fetches the bigrams of a node in one batch
+            if (languageModel instanceof BatchLanguageModel) {
+                ((BatchLanguageModel) languageModel).prefetch(sequences);
+            }
+            for (int i = 0; i < nodes.size(); i++) {
                 float logProbability = languageModel
-                        .getProbability((new WordSequence(wordArray)));
-                prevNode.add(nextNode, logProbability);
+                        .getProbability(sequences.get(i));
+                prevNode.add(nodes.get(i), logProbability);
             }
         }
         TimerPool.getTimer(this,"LMGrammar.create").stop();
@@ -0,0 +1,36 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.linguist.language.ngram;
+
+import edu.cmu.sphinx.linguist.WordSequence;
+
+import java.util.Collection;
+
+/**
+ * Represents a language model that answers many queries together faster
+ * than one by one, like a model on a server that is queried over the
+ * network. A client that knows the word sequences it is going to query
+ * announces them with {@link #prefetch}, the model then fetches them in
+ * one batch while the client goes on, and later calls of
+ * {@link #getProbability} find them in the cache of the model or wait
+ * for them to arrive.
+ */
+public interface BatchLanguageModel extends LanguageModel {
+
+    /**
+     * Starts fetching the probabilities of the given word sequences. The
+     * call does not wait for the probabilities.
+     *
+     * @param wordSequences the word sequences that are going to be queried
+     */
+    public void prefetch(Collection<WordSequence> wordSequences);
+}
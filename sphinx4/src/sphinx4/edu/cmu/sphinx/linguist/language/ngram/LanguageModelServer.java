@@ -0,0 +1,248 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.linguist.language.ngram;
+
+import edu.cmu.sphinx.linguist.WordSequence;
+import edu.cmu.sphinx.linguist.dictionary.Dictionary;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.props.*;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Serves a language model over the network with the protocol of the SRILM probserver, so that a {@link
+ * NetworkLanguageModel} can query any language model of sphinx4, for example a {@link
+ * edu.cmu.sphinx.linguist.language.ngram.large.LargeNGramModel} that is too big to be loaded by every decoder.
+ * <p/>
+ * The server greets a new connection with <code>probserver ready</code>, then reads one query per line, the words of
+ * the queried sequence separated by spaces, and answers every query with a line holding the log 10 probability of the
+ * sequence or <code>-inf</code>. The answers of a connection are written in the order of the queries, and they are
+ * flushed only when no further query is waiting, so a client can send many queries before it reads their answers.
+ */
+public class LanguageModelServer implements Configurable {
+
+    /** The property that defines the served language model. */
+    @S4Component(type = LanguageModel.class)
+    public final static String PROP_LANGUAGE_MODEL = "languageModel";
+
+    /** The property that defines the dictionary of the words of the queries. */
+    @S4Component(type = Dictionary.class)
+    public final static String PROP_DICTIONARY = "dictionary";
+
+    /** The property that defines the logMath component. */
+    @S4Component(type = LogMath.class)
+    public final static String PROP_LOG_MATH = "logMath";
+
+    /** The property specifying the port of the server, 0 lets the system choose a free port. */
+    @S4Integer(defaultValue = 2525)
+    public final static String PROP_PORT = "port";
+
+    private LanguageModel languageModel;
+    private Dictionary dictionary;
+    private LogMath logMath;
+    private int port;
+    private Logger logger;
+
+    private ServerSocket serverSocket;
+    private final List<Socket> connections = new ArrayList<Socket>();
+
+
+    /**
+     * Creates a language model server.
+     *
+     * @param languageModel the served language model
+     * @param dictionary    the dictionary of the words of the queries
+     * @param logMath       the logMath of the language model
+     * @param port          the port of the server, 0 lets the system choose a free port
+     */
+    public LanguageModelServer(LanguageModel languageModel, Dictionary dictionary, LogMath logMath, int port) {
+        this.logger = Logger.getLogger(getClass().getName());
+        this.languageModel = languageModel;
+        this.dictionary = dictionary;
+        this.logMath = logMath;
+        this.port = port;
+    }
+
+
+    public LanguageModelServer() {
+    }
+
+
+    /*
+    * (non-Javadoc)
+    *
+    * @see edu.cmu.sphinx.util.props.Configurable#newProperties(edu.cmu.sphinx.util.props.PropertySheet)
+    */
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        logger = ps.getLogger();
+        languageModel = (LanguageModel) ps.getComponent(PROP_LANGUAGE_MODEL);
+        dictionary = (Dictionary) ps.getComponent(PROP_DICTIONARY);
+        logMath = (LogMath) ps.getComponent(PROP_LOG_MATH);
+        port = ps.getInt(PROP_PORT);
+    }
+
+
+    /**
+     * Allocates the language model and starts to accept connections.
+     *
+     * @throws IOException if the model can not be allocated or the port can not be opened
+     */
+    public void start() throws IOException {
+        dictionary.allocate();
+        languageModel.allocate();
+        serverSocket = new ServerSocket(port);
+        logger.info("Language model server listening on port " + getPort());
+
+        Thread acceptor = new Thread("LanguageModelServer " + getPort()) {
+            @Override
+            public void run() {
+                accept();
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+
+    /** Closes the connections and deallocates the language model. */
+    public void stop() {
+        try {
+            serverSocket.close();
+            synchronized (connections) {
+                for (Socket socket : connections)
+                    socket.close();
+                connections.clear();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        languageModel.deallocate();
+        dictionary.deallocate();
+    }
+
+
+    /** @return the port that the server listens on */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                synchronized (connections) {
+                    connections.add(socket);
+                }
+                Thread handler = new Thread("LanguageModelServer " + socket.getRemoteSocketAddress()) {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                };
+                handler.setDaemon(true);
+                handler.start();
+            } catch (SocketException e) {
+                // the server was stopped
+            } catch (IOException e) {
+                logger.warning("Can't accept connection: " + e.getMessage());
+            }
+        }
+    }
+
+
+    private void serve(Socket socket) {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+            writer.write("probserver ready\n");
+            writer.flush();
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                writer.write(query(line));
+                writer.write('\n');
+                // answer a batch of queries at once
+                if (!reader.ready())
+                    writer.flush();
+            }
+        } catch (IOException e) {
+            // the client closed the connection
+        } finally {
+            synchronized (connections) {
+                connections.remove(socket);
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+
+    /**
+     * Answers a query.
+     *
+     * @param line the words of the query separated by spaces
+     * @return the log 10 probability of the words or <code>-inf</code>
+     */
+    private String query(String line) {
+        String[] spellings = line.trim().split("\\s+");
+        List<Word> words = new ArrayList<Word>(spellings.length);
+        for (String spelling : spellings) {
+            if (spelling.length() == 0)
+                continue;
+            Word word = dictionary.getWord(spelling);
+            if (word == null)
+                return "-inf";
+            words.add(word);
+        }
+        if (words.isEmpty())
+            return "0";
+
+        float probability;
+        synchronized (languageModel) {
+            probability = languageModel.getProbability(new WordSequence(words));
+        }
+        if (probability <= LogMath.getLogZero())
+            return "-inf";
+        return Float.toString(LogMath.logToLog(probability, logMath.getLogBase(), 10.0f));
+    }
+
+
+    /**
+     * Serves the language model of a configuration until the process is killed.
+     *
+     * @param args the configuration file and optionally the name of the server component
+     * @throws Exception if the server can not be started
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: LanguageModelServer config.xml [serverComponentName]");
+            System.exit(1);
+        }
+        ConfigurationManager cm = new ConfigurationManager(args[0]);
+        String name = args.length > 1 ? args[1] : "languageModelServer";
+        LanguageModelServer server = (LanguageModelServer) cm.lookup(name);
+        server.start();
+        Thread.currentThread().join();
+    }
+}
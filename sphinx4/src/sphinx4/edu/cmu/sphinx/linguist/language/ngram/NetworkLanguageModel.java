@@ -1,13 +1,27 @@
 package edu.cmu.sphinx.linguist.language.ngram;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.Socket;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 import edu.cmu.sphinx.linguist.WordSequence;
 import edu.cmu.sphinx.linguist.dictionary.Word;
@@ -23,8 +37,16 @@ import edu.cmu.sphinx.util.props.S4Component;
 /*
  * The client of the SRILM language model server. It needs to
  * read the vocabulary from a vocabulary file though.
+ *
+ * The server answers the queries of a connection in order, one line per
+ * query, so the client does not wait for an answer before it sends the
+ * next query. A receiving thread reads the answers and hands them to the
+ * callers that wait for them, and queries announced with prefetch are
+ * written in one batch. The answers are kept in a bounded cache that can
+ * be used from several threads. LanguageModelServer is a server of the
+ * same protocol for any language model of sphinx4.
  */
-public class NetworkLanguageModel implements LanguageModel {
+public class NetworkLanguageModel implements BatchLanguageModel {
 
     /** The property that defines the logMath component. */
     @S4Component(type = LogMath.class)
@@ -38,23 +60,36 @@ public class NetworkLanguageModel implements LanguageModel {
     @S4Integer(defaultValue = 2525)
     public final static String PROP_PORT = "port";
 
+    /** The property specifying the number of probabilities kept in the cache. */
+    @S4Integer(defaultValue = 100000)
+    public final static String PROP_CACHE_SIZE = "cacheSize";
+
     LogMath logMath;
 
     private String host;
     private int port;
     private URL location;
     int maxDepth;
+    private int cacheSize;
+    private Logger logger;
 
     Socket socket;
     private BufferedReader inReader;
-    private PrintWriter outWriter;
+    private Writer outWriter;
     LRUCache<WordSequence, Float> cache;
 
-    private boolean allocated;
+    // the queries sent to the server in the order of sending, and the
+    // queries that are not answered yet by word sequence
+    private final BlockingQueue<Query> pending = new LinkedBlockingQueue<Query>();
+    private final Map<WordSequence, Query> inFlight = new ConcurrentHashMap<WordSequence, Query>();
+    private Thread receiver;
+    private volatile IOException failure;
+
+    private volatile boolean allocated;
 
     /**
      * Creates network language model client
-     * 
+     *
      * @param host
      *            server host
      * @param port
@@ -68,10 +103,34 @@ public class NetworkLanguageModel implements LanguageModel {
      *            logMath
      */
     public NetworkLanguageModel(String host, int port, URL location, int maxDepth, LogMath logMath) {
+        this(host, port, location, maxDepth, 100000, logMath);
+    }
+
+    /**
+     * Creates network language model client
+     *
+     * @param host
+     *            server host
+     * @param port
+     *            server port
+     * @param location
+     *            URL of the file with vocabulary (only needed for 1-stage
+     *            model)
+     * @param maxDepth
+     *            depth of the model
+     * @param cacheSize
+     *            the number of probabilities kept in the cache
+     * @param logMath
+     *            logMath
+     */
+    public NetworkLanguageModel(String host, int port, URL location, int maxDepth, int cacheSize,
+                                LogMath logMath) {
+        this.logger = Logger.getLogger(getClass().getName());
         this.host = host;
         this.port = port;
         this.maxDepth = maxDepth;
         this.location = location;
+        this.cacheSize = cacheSize;
         this.logMath = logMath;
     }
 
@@ -80,7 +139,7 @@ public class NetworkLanguageModel implements LanguageModel {
 
     /*
      * (non-Javadoc)
-     * 
+     *
      * @see
      * edu.cmu.sphinx.util.props.Configurable#newProperties(edu.cmu.sphinx.util
      * .props.PropertySheet)
@@ -91,10 +150,12 @@ public class NetworkLanguageModel implements LanguageModel {
         if (allocated) {
             throw new RuntimeException("Can't change properties after allocation");
         }
+        logger = ps.getLogger();
         host = ps.getString(PROP_HOST);
         port = ps.getInt(PROP_PORT);
         location = ConfigurationManagerUtils.getResource(PROP_LOCATION, ps);
         logMath = (LogMath) ps.getComponent(PROP_LOG_MATH);
+        cacheSize = ps.getInt(PROP_CACHE_SIZE);
 
         maxDepth = ps.getInt(PROP_MAX_DEPTH);
         if (maxDepth == -1)
@@ -106,13 +167,26 @@ public class NetworkLanguageModel implements LanguageModel {
         allocated = true;
 
         socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
         inReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        outWriter = new PrintWriter(socket.getOutputStream(), true);
+        outWriter = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
         String greeting = inReader.readLine();
-        if (!greeting.equals("probserver ready")) {
+        if (greeting == null || !greeting.equals("probserver ready")) {
             throw new IOException("Incorrect input");
         }
-        cache = new LRUCache<WordSequence, Float>(1000);
+        cache = new LRUCache<WordSequence, Float>(cacheSize);
+        pending.clear();
+        inFlight.clear();
+        failure = null;
+
+        receiver = new Thread("NetworkLanguageModel " + host + ':' + port) {
+            @Override
+            public void run() {
+                receive();
+            }
+        };
+        receiver.setDaemon(true);
+        receiver.start();
     }
 
     @Override
@@ -120,8 +194,11 @@ public class NetworkLanguageModel implements LanguageModel {
         allocated = false;
         try {
             socket.close();
+            receiver.join();
         } catch (IOException e) {
             e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -132,37 +209,129 @@ public class NetworkLanguageModel implements LanguageModel {
 
     @Override
     public float getProbability(WordSequence wordSequence) {
+        if (wordSequence.size() == 0)
+            return 0.0f;
 
-        Float probability = cache.get(wordSequence);
-
+        Float probability = getCachedProbability(wordSequence);
         if (probability != null) {
             return probability.floatValue();
         }
 
-        StringBuilder builder = new StringBuilder();
-        if (wordSequence.size() == 0)
-            return 0.0f;
-        for (Word w : wordSequence.getWords()) {
-            builder.append(w.toString());
-            builder.append(' ');
+        Query query = inFlight.get(wordSequence);
+        if (query == null) {
+            query = send(Collections.singletonList(wordSequence)).get(0);
+        }
+        return query.getProbability();
+    }
+
+    /**
+     * Sends the queries for the word sequences that are neither cached
+     * nor already sent in one batch, and returns without waiting for the
+     * answers.
+     *
+     * @param wordSequences
+     *            the word sequences that are going to be queried
+     */
+    @Override
+    public void prefetch(Collection<WordSequence> wordSequences) {
+        List<WordSequence> missing = new ArrayList<WordSequence>();
+        for (WordSequence wordSequence : wordSequences) {
+            if (wordSequence.size() > 0 && getCachedProbability(wordSequence) == null
+                    && !inFlight.containsKey(wordSequence)) {
+                missing.add(wordSequence);
+            }
+        }
+        if (!missing.isEmpty()) {
+            send(missing);
         }
-        outWriter.println(builder.toString());
-        String result = "0";
+    }
+
+    private Float getCachedProbability(WordSequence wordSequence) {
+        synchronized (cache) {
+            return cache.get(wordSequence);
+        }
+    }
+
+    /**
+     * Writes the queries of the given word sequences that are not sent
+     * yet, and flushes them as one batch.
+     *
+     * @param wordSequences
+     *            the word sequences
+     * @return the queries of the word sequences
+     */
+    private List<Query> send(List<WordSequence> wordSequences) {
+        List<Query> queries = new ArrayList<Query>(wordSequences.size());
+        synchronized (outWriter) {
+            checkConnection();
+            StringBuilder builder = new StringBuilder();
+            try {
+                for (WordSequence wordSequence : wordSequences) {
+                    Query query = inFlight.get(wordSequence);
+                    if (query == null) {
+                        query = new Query(wordSequence);
+                        inFlight.put(wordSequence, query);
+                        pending.add(query);
+                        builder.setLength(0);
+                        for (Word w : wordSequence.getWords()) {
+                            builder.append(w.toString());
+                            builder.append(' ');
+                        }
+                        builder.append('\n');
+                        outWriter.write(builder.toString());
+                    }
+                    queries.add(query);
+                }
+                outWriter.flush();
+            } catch (IOException e) {
+                throw new Error("Can't send queries to the language model server " + host + ':' + port, e);
+            }
+        }
+        return queries;
+    }
+
+    /** Reads the answers of the server until the connection is closed. */
+    private void receive() {
         try {
-            result = inReader.readLine();
-            if (result.charAt(0) == 0)
-                result = result.substring(1);
+            String result;
+            while ((result = inReader.readLine()) != null) {
+                Query query = pending.poll();
+                if (query == null) {
+                    throw new IOException("Answer without a query: " + result);
+                }
+                if (result.length() > 0 && result.charAt(0) == 0)
+                    result = result.substring(1);
+
+                float probability;
+                if (!result.equals("-inf"))
+                    probability = logMath.log10ToLog(Float.parseFloat(result));
+                else
+                    probability = LogMath.getLogZero();
+
+                synchronized (cache) {
+                    cache.put(query.wordSequence, probability);
+                }
+                inFlight.remove(query.wordSequence);
+                query.complete(probability);
+            }
+            failure = new EOFException("The language model server closed the connection");
         } catch (IOException e) {
-            e.printStackTrace();
+            failure = e;
+        } finally {
+            if (allocated) {
+                logger.severe("Connection to the language model server " + host + ':' + port + " failed: "
+                        + failure.getMessage());
+            }
+            for (Query query; (query = pending.poll()) != null;) {
+                query.fail();
+            }
         }
+    }
 
-        if (!result.equals("-inf"))
-            probability = logMath.log10ToLog(Float.parseFloat(result));
-        else
-            probability = LogMath.getLogZero();
-
-        cache.put(wordSequence, probability);
-        return probability.floatValue();
+    private void checkConnection() {
+        if (failure != null) {
+            throw new Error("No connection to the language model server " + host + ':' + port, failure);
+        }
     }
 
     @Override
@@ -198,4 +367,50 @@ public class NetworkLanguageModel implements LanguageModel {
     @Override
     public void stop() {
     }
+
+    /** A query sent to the server, with its answer once it is received. */
+    private class Query {
+
+        final WordSequence wordSequence;
+        private final CountDownLatch answered = new CountDownLatch(1);
+        private float probability;
+        private boolean failed;
+
+        Query(WordSequence wordSequence) {
+            this.wordSequence = wordSequence;
+        }
+
+        void complete(float probability) {
+            this.probability = probability;
+            answered.countDown();
+        }
+
+        void fail() {
+            failed = true;
+            answered.countDown();
+        }
+
+        /**
+         * Waits for the answer of the server.
+         *
+         * @return the probability of the word sequence
+         */
+        float getProbability() {
+            try {
+                // the receiver may have stopped before this query was sent
+                while (!answered.await(100, TimeUnit.MILLISECONDS)) {
+                    if (!receiver.isAlive() && answered.getCount() > 0) {
+                        fail();
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw new Error("Interrupted while waiting for the language model server", e);
+            }
+            if (failed) {
+                inFlight.remove(wordSequence);
+                checkConnection();
+            }
+            return probability;
+        }
+    }
 }
@@ -645,9 +645,9 @@ public class BinaryLoader {
         float[] probTable = new float[numProbs];
 
         for (int i = 0; i < numProbs; i++) {
-        	//probTable[i] = readFloat(stream, bigEndian);
-            probTable[i] = logMath.log10ToLog(readFloat(stream, bigEndian));
+            probTable[i] = readFloat(stream, bigEndian);
         }
+        logMath.log10ToLog(probTable);
 
         return probTable;
     }
@@ -0,0 +1,239 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.linguist.util;
+
+import edu.cmu.sphinx.linguist.acoustic.Unit;
+import edu.cmu.sphinx.linguist.dictionary.Pronunciation;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.linguist.language.grammar.Grammar;
+import edu.cmu.sphinx.linguist.language.grammar.GrammarArc;
+import edu.cmu.sphinx.linguist.language.grammar.GrammarNode;
+import edu.cmu.sphinx.util.props.*;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the most recently compiled search graphs of grammar based linguists, so that switching back to a grammar that
+ * was compiled before does not compile it again. The graphs are addressed by the checksum of the content of their
+ * grammar, see {@link #getChecksum}, and by the acoustic model they were built with, so a grammar that is recreated
+ * from the same source finds its graph again. Linguists add their own configuration to the checksum.
+ * <p/>
+ * One cache may be shared by several linguists. A cached graph is then used by all linguists that compile the same
+ * grammar with the same acoustic model instance and configuration. A linguist whose graph can not be shared, or that
+ * depends on further objects, passes them as the context of the graph. The acoustic model and the context are
+ * compared by identity.
+ */
+public class SearchGraphCache implements Configurable {
+
+    /** The property for the maximum number of graphs kept in the cache. */
+    @S4Integer(defaultValue = 16)
+    public final static String PROP_MAX_GRAPHS = "maxGraphs";
+
+    private Logger logger;
+    private LRUCache<Key, Object> graphs;
+    private int hits;
+    private int misses;
+
+
+    public SearchGraphCache(int maxGraphs) {
+        this.logger = Logger.getLogger(getClass().getName());
+        this.graphs = new LRUCache<Key, Object>(maxGraphs);
+    }
+
+
+    public SearchGraphCache() {
+
+    }
+
+
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        logger = ps.getLogger();
+        graphs = new LRUCache<Key, Object>(ps.getInt(PROP_MAX_GRAPHS));
+    }
+
+
+    /**
+     * Returns a cached graph.
+     *
+     * @param checksum      the checksum of the grammar and the configuration of the linguist
+     * @param acousticModel the acoustic model the graph is built with
+     * @return the graph, or <code>null</code> if it is not cached
+     */
+    public Object get(String checksum, Object acousticModel) {
+        return get(checksum, acousticModel, null);
+    }
+
+
+    /**
+     * Returns a cached graph that also depends on another object, such as the linguist that owns it.
+     *
+     * @param checksum      the checksum of the grammar and the configuration of the linguist
+     * @param acousticModel the acoustic model the graph is built with
+     * @param context       the other object the graph depends on, or <code>null</code>
+     * @return the graph, or <code>null</code> if it is not cached
+     */
+    public synchronized Object get(String checksum, Object acousticModel, Object context) {
+        Key key = new Key(checksum, acousticModel, context);
+        Object graph = graphs.remove(key);
+        if (graph == null) {
+            misses++;
+            return null;
+        }
+        // put it back as the most recently used graph
+        graphs.put(key, graph);
+        hits++;
+        logger.fine("Reusing search graph " + checksum + ", " + hits + " hits, " + misses + " misses");
+        return graph;
+    }
+
+
+    /**
+     * Adds a graph to the cache, removing the least recently used graph if the cache is full.
+     *
+     * @param checksum      the checksum of the grammar and the configuration of the linguist
+     * @param acousticModel the acoustic model the graph is built with
+     * @param graph         the graph
+     */
+    public void put(String checksum, Object acousticModel, Object graph) {
+        put(checksum, acousticModel, null, graph);
+    }
+
+
+    /**
+     * Adds a graph that also depends on another object to the cache, removing the least recently used graph if the
+     * cache is full.
+     *
+     * @param checksum      the checksum of the grammar and the configuration of the linguist
+     * @param acousticModel the acoustic model the graph is built with
+     * @param context       the other object the graph depends on, or <code>null</code>
+     * @param graph         the graph
+     */
+    public synchronized void put(String checksum, Object acousticModel, Object context, Object graph) {
+        graphs.put(new Key(checksum, acousticModel, context), graph);
+    }
+
+
+    /** Removes all graphs from the cache. */
+    public synchronized void clear() {
+        graphs.clear();
+    }
+
+
+    /** @return the number of graphs in the cache */
+    public synchronized int size() {
+        return graphs.size();
+    }
+
+
+    /**
+     * Computes a checksum of the content of a grammar: the words and pronunciations of its nodes, the final nodes, and
+     * the arcs with their probabilities. The nodes are numbered in the order they are reached from the initial node, so
+     * grammars that are built from the same source get the same checksum. Nodes that can not be reached do not
+     * count.
+     *
+     * @param grammar the grammar
+     * @return the checksum as a hex string
+     */
+    public static String getChecksum(Grammar grammar) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error(e);
+        }
+
+        Map<GrammarNode, Integer> numbers = new HashMap<GrammarNode, Integer>();
+        List<GrammarNode> queue = new ArrayList<GrammarNode>();
+        queue.add(grammar.getInitialNode());
+        numbers.put(grammar.getInitialNode(), 0);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < queue.size(); i++) {
+            GrammarNode node = queue.get(i);
+            sb.setLength(0);
+            sb.append(node.isFinalNode() ? 'F' : 'N');
+            for (Word[] alternative : node.getAlternatives()) {
+                sb.append('|');
+                for (Word word : alternative) {
+                    sb.append(word.getSpelling()).append('(');
+                    for (Pronunciation pronunciation : word.getPronunciations()) {
+                        for (Unit unit : pronunciation.getUnits()) {
+                            sb.append(unit.getName()).append(' ');
+                        }
+                        sb.append(',');
+                    }
+                    sb.append(')');
+                }
+            }
+            for (GrammarArc arc : node.getSuccessors()) {
+                Integer number = numbers.get(arc.getGrammarNode());
+                if (number == null) {
+                    number = queue.size();
+                    numbers.put(arc.getGrammarNode(), number);
+                    queue.add(arc.getGrammarNode());
+                }
+                sb.append('>').append(number).append(':').append(Float.floatToIntBits(arc.getProbability()));
+            }
+            sb.append('\n');
+            try {
+                digest.update(sb.toString().getBytes("UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new Error(e);
+            }
+        }
+
+        StringBuilder checksum = new StringBuilder();
+        for (byte b : digest.digest()) {
+            checksum.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return checksum.toString();
+    }
+
+
+    /** The address of a cached graph. The acoustic model and the context are compared by identity. */
+    private static class Key {
+
+        private final String checksum;
+        private final Object acousticModel;
+        private final Object context;
+
+
+        Key(String checksum, Object acousticModel, Object context) {
+            this.checksum = checksum;
+            this.acousticModel = acousticModel;
+            this.context = context;
+        }
+
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return checksum.equals(other.checksum) && acousticModel == other.acousticModel
+                    && context == other.context;
+        }
+
+
+        @Override
+        public int hashCode() {
+            return (checksum.hashCode() * 31 + System.identityHashCode(acousticModel)) * 31
+                    + System.identityHashCode(context);
+        }
+    }
+}
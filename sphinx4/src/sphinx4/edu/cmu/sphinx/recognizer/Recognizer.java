@@ -13,6 +13,7 @@
 package edu.cmu.sphinx.recognizer;
 
 import edu.cmu.sphinx.decoder.Decoder;
+import edu.cmu.sphinx.decoder.DecodingBudget;
 import edu.cmu.sphinx.decoder.ResultProducer;
 import edu.cmu.sphinx.decoder.ResultListener;
 import edu.cmu.sphinx.instrumentation.Monitor;
@@ -115,6 +116,30 @@ public class Recognizer implements Configurable, ResultProducer {
     }
 
 
+    /**
+     * Performs recognition until a 'final' result is generated or the deadline of the budget is reached. The decoder
+     * trades accuracy for speed when it falls behind, the result is then flagged as degraded. This method should only
+     * be called when the recognizer is in the <code>allocated</code> state.
+     *
+     * @param referenceText what was actually spoken
+     * @param budget        the time budget of the utterance
+     * @return a recognition result
+     * @throws IllegalStateException if the recognizer is not in the <code>ALLOCATED</code> state
+     * @see Result#isDegraded()
+     */
+    public Result recognize(String referenceText, DecodingBudget budget) throws IllegalStateException {
+        Result result = null;
+        checkState(State.READY);
+        try {
+            setState(State.RECOGNIZING);
+            result = decoder.decode(referenceText, budget);
+        } finally {
+            setState(State.READY);
+        }
+        return result;
+    }
+
+
     /**
      * Performs recognition for the given number of input frames, or until a 'final' result is generated. This method
      * should only be called when the recognizer is in the <code>allocated</code> state.
@@ -0,0 +1,740 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.result;
+
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.util.LogMath;
+
+import java.util.*;
+
+/**
+ * <p/>
+ * A read-only, array based representation of a {@link Lattice}. Nodes are numbered in topological order and are
+ * stored in parallel arrays. Edges are numbered so that the leaving edges of every node are contiguous (compressed
+ * sparse row layout), and a second index lists the entering edges of every node. Scores are kept in
+ * <code>float</code> arrays in the LogMath log base. </p>
+ * <p/>
+ * This representation is meant for the score computations on large lattices, such as posterior computation for
+ * confidence scoring, Viterbi decoding and N-best extraction, which only traverse the graph and therefore do not
+ * need the object graph of {@link Node}s and {@link Edge}s. A compact lattice is created from a {@link Lattice} and
+ * can be converted back with {@link #toLattice()}. </p>
+ * <p/>
+ * Only nodes reachable from the initial node of the source lattice are kept. </p>
+ */
+public class CompactLattice {
+
+    private final LogMath logMath;
+
+    // node arrays, indexed by topological node number
+    private final String[] ids;
+    private final Word[] words;
+    private final int[] beginTimes;
+    private final int[] endTimes;
+    private final int initialNode;
+    private final int terminalNode;
+
+    // edge arrays, leaving edges of node n are edgeStart[n] .. edgeStart[n + 1] - 1
+    private final int[] edgeStart;
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+    private final float[] acousticScores;
+    private final float[] lmScores;
+
+    // entering edges of node n are enteringEdges[enteringStart[n]] .. enteringEdges[enteringStart[n + 1] - 1]
+    private final int[] enteringStart;
+    private final int[] enteringEdges;
+
+    // scores computed by computeNodePosteriors
+    private float[] edgeScores;
+    private float[] forwardScores;
+    private float[] backwardScores;
+    private float[] posteriors;
+    private float[] viterbiScores;
+    private float[] backwardViterbiScores;
+    private int[] bestPredecessorEdges;
+
+
+    /**
+     * Creates a compact lattice from the given lattice.
+     *
+     * @param lattice the lattice to convert
+     */
+    public CompactLattice(Lattice lattice) {
+        this.logMath = lattice.getLogMath();
+
+        List<Node> sorted = sortNodes(lattice.getInitialNode());
+        int numNodes = sorted.size();
+        Map<Node, Integer> index = new HashMap<Node, Integer>(numNodes * 2);
+
+        ids = new String[numNodes];
+        words = new Word[numNodes];
+        beginTimes = new int[numNodes];
+        endTimes = new int[numNodes];
+        int numEdges = 0;
+        for (int i = 0; i < numNodes; i++) {
+            Node node = sorted.get(i);
+            index.put(node, i);
+            ids[i] = node.getId();
+            words[i] = node.getWord();
+            beginTimes[i] = node.getBeginTime();
+            endTimes[i] = node.getEndTime();
+            numEdges += node.getLeavingEdges().size();
+        }
+        initialNode = numNodes == 0 ? -1 : 0;
+        Integer terminal = index.get(lattice.getTerminalNode());
+        terminalNode = terminal == null ? -1 : terminal;
+
+        edgeStart = new int[numNodes + 1];
+        edgeFrom = new int[numEdges];
+        edgeTo = new int[numEdges];
+        acousticScores = new float[numEdges];
+        lmScores = new float[numEdges];
+        enteringStart = new int[numNodes + 1];
+        enteringEdges = new int[numEdges];
+
+        int e = 0;
+        for (int i = 0; i < numNodes; i++) {
+            edgeStart[i] = e;
+            for (Edge edge : sorted.get(i).getLeavingEdges()) {
+                int to = index.get(edge.getToNode());
+                edgeFrom[e] = i;
+                edgeTo[e] = to;
+                acousticScores[e] = (float) edge.getAcousticScore();
+                lmScores[e] = (float) edge.getLMScore();
+                enteringStart[to + 1]++;
+                e++;
+            }
+        }
+        edgeStart[numNodes] = e;
+
+        for (int i = 0; i < numNodes; i++) {
+            enteringStart[i + 1] += enteringStart[i];
+        }
+        int[] fill = new int[numNodes];
+        for (int edge = 0; edge < numEdges; edge++) {
+            int to = edgeTo[edge];
+            enteringEdges[enteringStart[to] + fill[to]++] = edge;
+        }
+    }
+
+
+    /**
+     * Topologically sorts the nodes reachable from the given node. The sort is iterative so that long lattices do not
+     * exhaust the stack.
+     *
+     * @param initial the initial node
+     * @return the reachable nodes in topological order, starting with the initial node
+     */
+    private static List<Node> sortNodes(Node initial) {
+        List<Node> sorted = new ArrayList<Node>();
+        if (initial == null) {
+            return sorted;
+        }
+
+        // collect the reachable nodes and count their entering edges
+        Map<Node, Integer> inDegree = new HashMap<Node, Integer>();
+        Deque<Node> stack = new ArrayDeque<Node>();
+        inDegree.put(initial, 0);
+        stack.push(initial);
+        while (!stack.isEmpty()) {
+            for (Edge edge : stack.pop().getLeavingEdges()) {
+                Node to = edge.getToNode();
+                Integer count = inDegree.get(to);
+                if (count == null) {
+                    stack.push(to);
+                    count = 0;
+                }
+                inDegree.put(to, count + 1);
+            }
+        }
+
+        Deque<Node> ready = new ArrayDeque<Node>();
+        ready.add(initial);
+        while (!ready.isEmpty()) {
+            Node node = ready.poll();
+            sorted.add(node);
+            for (Edge edge : node.getLeavingEdges()) {
+                Node to = edge.getToNode();
+                int count = inDegree.get(to) - 1;
+                inDegree.put(to, count);
+                if (count == 0) {
+                    ready.add(to);
+                }
+            }
+        }
+
+        if (sorted.size() != inDegree.size()) {
+            throw new Error("Lattice contains a cycle");
+        }
+        return sorted;
+    }
+
+
+    /**
+     * Converts this compact lattice back into a {@link Lattice}. Node ids, words, times and edge scores are preserved.
+     * If posteriors have been computed, they are copied to the new nodes.
+     *
+     * @return a new lattice equivalent to this one
+     */
+    public Lattice toLattice() {
+        Lattice lattice = new Lattice(logMath);
+        Node[] nodes = new Node[ids.length];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = lattice.addNode(ids[i], words[i], beginTimes[i], endTimes[i]);
+            if (forwardScores != null) {
+                nodes[i].setForwardScore(forwardScores[i]);
+                nodes[i].setBackwardScore(backwardScores[i]);
+                nodes[i].setPosterior(posteriors[i]);
+                nodes[i].setViterbiScore(viterbiScores[i]);
+            }
+        }
+        for (int e = 0; e < edgeTo.length; e++) {
+            lattice.addEdge(nodes[edgeFrom[e]], nodes[edgeTo[e]], acousticScores[e], lmScores[e]);
+        }
+        if (bestPredecessorEdges != null) {
+            for (int i = 0; i < nodes.length; i++) {
+                if (bestPredecessorEdges[i] >= 0) {
+                    nodes[i].setBestPredecessor(nodes[edgeFrom[bestPredecessorEdges[i]]]);
+                }
+            }
+        }
+        if (initialNode >= 0) {
+            lattice.setInitialNode(nodes[initialNode]);
+        }
+        if (terminalNode >= 0) {
+            lattice.setTerminalNode(nodes[terminalNode]);
+        }
+        return lattice;
+    }
+
+
+    /**
+     * Compute the utterance-level posterior for every node in the lattice. This computes the same quantities as {@link
+     * Lattice#computeNodePosteriors(float, boolean)}, the forward and backward scores, the Viterbi scores and best
+     * predecessors, as well as the best completion score of every node, which is used for N-best search.
+     *
+     * @param languageModelWeightAdjustment the weight multiplier that will be applied to language score already
+     *                                      scaled by language weight
+     * @param useAcousticScoresOnly         use only the acoustic scores to compute the posteriors, ignore the
+     *                                      language weight and scores
+     */
+    public void computeNodePosteriors(float languageModelWeightAdjustment,
+                                      boolean useAcousticScoresOnly) {
+        int numNodes = ids.length;
+        edgeScores = computeEdgeScores(languageModelWeightAdjustment, useAcousticScoresOnly);
+
+        forwardScores = new float[numNodes];
+        backwardScores = new float[numNodes];
+        posteriors = new float[numNodes];
+        viterbiScores = new float[numNodes];
+        backwardViterbiScores = new float[numNodes];
+        bestPredecessorEdges = new int[numNodes];
+        Arrays.fill(forwardScores, LogMath.getLogZero());
+        Arrays.fill(backwardScores, LogMath.getLogZero());
+        Arrays.fill(posteriors, LogMath.getLogZero());
+        Arrays.fill(viterbiScores, LogMath.getLogZero());
+        Arrays.fill(backwardViterbiScores, LogMath.getLogZero());
+        Arrays.fill(bestPredecessorEdges, -1);
+        if (initialNode < 0 || terminalNode < 0) {
+            return;
+        }
+
+        // forward, pulling from the entering edges of each node in topological order
+        forwardScores[initialNode] = LogMath.getLogOne();
+        viterbiScores[initialNode] = LogMath.getLogOne();
+        for (int n = initialNode + 1; n < numNodes; n++) {
+            float forward = LogMath.getLogZero();
+            float viterbi = LogMath.getLogZero();
+            int bestEdge = -1;
+            for (int i = enteringStart[n]; i < enteringStart[n + 1]; i++) {
+                int e = enteringEdges[i];
+                int from = edgeFrom[e];
+                forward = logMath.addAsLinear(forwardScores[from] + edgeScores[e], forward);
+                float vs = viterbiScores[from] + edgeScores[e];
+                if (bestEdge < 0 || vs > viterbi) {
+                    viterbi = vs;
+                    bestEdge = e;
+                }
+            }
+            forwardScores[n] = forward;
+            viterbiScores[n] = viterbi;
+            bestPredecessorEdges[n] = bestEdge;
+        }
+
+        // backward, pulling from the leaving edges of each node in reverse topological order
+        backwardScores[terminalNode] = LogMath.getLogOne();
+        backwardViterbiScores[terminalNode] = LogMath.getLogOne();
+        for (int n = numNodes - 1; n >= 0; n--) {
+            if (n == terminalNode) {
+                continue;
+            }
+            float backward = LogMath.getLogZero();
+            float viterbi = LogMath.getLogZero();
+            for (int e = edgeStart[n]; e < edgeStart[n + 1]; e++) {
+                int to = edgeTo[e];
+                backward = logMath.addAsLinear(backwardScores[to] + edgeScores[e], backward);
+                viterbi = Math.max(viterbi, backwardViterbiScores[to] + edgeScores[e]);
+            }
+            backwardScores[n] = backward;
+            backwardViterbiScores[n] = viterbi;
+        }
+
+        // inner
+        float normalizationFactor = forwardScores[terminalNode];
+        for (int n = 0; n < numNodes; n++) {
+            posteriors[n] = forwardScores[n] + backwardScores[n] - normalizationFactor;
+        }
+    }
+
+
+    /**
+     * Computes the combined score of every edge.
+     *
+     * @param languageModelWeightAdjustment the weight multiplier that will be applied to language score
+     * @param useAcousticScoresOnly         if true, ignore language scores
+     * @return the edge scores, indexed by edge number
+     */
+    private float[] computeEdgeScores(float languageModelWeightAdjustment, boolean useAcousticScoresOnly) {
+        float[] edgeScores = new float[acousticScores.length];
+        if (useAcousticScoresOnly) {
+            System.arraycopy(acousticScores, 0, edgeScores, 0, edgeScores.length);
+        } else {
+            for (int e = 0; e < edgeScores.length; e++) {
+                edgeScores[e] = acousticScores[e] + lmScores[e] * languageModelWeightAdjustment;
+            }
+        }
+        return edgeScores;
+    }
+
+
+    /**
+     * Retrieves the MAP path from this lattice. Only works once computeNodePosteriors has been called.
+     *
+     * @return the node numbers of the MAP path, from the initial to the terminal node
+     */
+    public int[] getViterbiPath() {
+        checkScores();
+        int length = 1;
+        for (int n = terminalNode; n != initialNode; n = edgeFrom[bestPredecessorEdges[n]]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int n = terminalNode; length > 0; ) {
+            path[--length] = n;
+            if (n != initialNode) {
+                n = edgeFrom[bestPredecessorEdges[n]];
+            }
+        }
+        return path;
+    }
+
+
+    /**
+     * Returns the best <code>n</code> paths through this lattice, best first. Only works once computeNodePosteriors
+     * has been called, and uses the edge scores of that call.
+     *
+     * @param n the maximum number of paths to return
+     * @return up to <code>n</code> paths, best first
+     * @see #getPathIterator(int)
+     */
+    public List<ScoredPath> getNBestPaths(int n) {
+        List<ScoredPath> paths = new ArrayList<ScoredPath>(n);
+        for (Iterator<ScoredPath> i = getPathIterator(0); i.hasNext() && paths.size() < n;) {
+            paths.add(i.next());
+        }
+        return paths;
+    }
+
+
+    /**
+     * Returns an iterator over the paths through this lattice, best first. The paths are generated lazily by an A*
+     * search over partial paths from the initial node, using the best completion score of every node as an exact
+     * heuristic, so complete paths are found in score order. Only works once computeNodePosteriors has been called,
+     * and uses the edge scores of that call.
+     * <p/>
+     * The number of partial paths kept by the search can be bounded. When the bound is exceeded the worst partial
+     * paths are discarded, so paths far down the list may then be missed, but the paths returned are still in score
+     * order.
+     *
+     * @param maxPartialPaths the maximum number of partial paths to keep, or zero to keep all of them
+     * @return an iterator over the paths, best first
+     */
+    public Iterator<ScoredPath> getPathIterator(int maxPartialPaths) {
+        checkScores();
+        return new PathIterator(maxPartialPaths);
+    }
+
+
+    /** Ensures that the scores have been computed. */
+    private void checkScores() {
+        if (forwardScores == null) {
+            throw new IllegalStateException("computeNodePosteriors has not been called");
+        }
+    }
+
+
+    /**
+     * Returns the number of nodes in this lattice.
+     *
+     * @return the number of nodes
+     */
+    public int getNodeCount() {
+        return ids.length;
+    }
+
+
+    /**
+     * Returns the number of edges in this lattice.
+     *
+     * @return the number of edges
+     */
+    public int getEdgeCount() {
+        return edgeTo.length;
+    }
+
+
+    /**
+     * Returns the number of the initial node. Nodes are numbered in topological order, so this is always zero for a
+     * non empty lattice.
+     *
+     * @return the initial node, or -1 if the lattice is empty
+     */
+    public int getInitialNode() {
+        return initialNode;
+    }
+
+
+    /**
+     * Returns the number of the terminal node.
+     *
+     * @return the terminal node, or -1 if it is not reachable from the initial node
+     */
+    public int getTerminalNode() {
+        return terminalNode;
+    }
+
+
+    /**
+     * Returns the id of a node, as used by the source lattice.
+     *
+     * @param node the node number
+     * @return the id of the node
+     */
+    public String getId(int node) {
+        return ids[node];
+    }
+
+
+    /**
+     * Returns the word of a node.
+     *
+     * @param node the node number
+     * @return the word of the node
+     */
+    public Word getWord(int node) {
+        return words[node];
+    }
+
+
+    /**
+     * Returns the begin time of a node.
+     *
+     * @param node the node number
+     * @return the begin time of the node
+     */
+    public int getBeginTime(int node) {
+        return beginTimes[node];
+    }
+
+
+    /**
+     * Returns the end time of a node.
+     *
+     * @param node the node number
+     * @return the end time of the node
+     */
+    public int getEndTime(int node) {
+        return endTimes[node];
+    }
+
+
+    /**
+     * Returns the first leaving edge of a node. The leaving edges of node <code>n</code> are numbered
+     * <code>getEdgeStart(n)</code> to <code>getEdgeStart(n + 1) - 1</code>.
+     *
+     * @param node the node number, up to and including the number of nodes
+     * @return the first leaving edge of the node
+     */
+    public int getEdgeStart(int node) {
+        return edgeStart[node];
+    }
+
+
+    /**
+     * Returns the node an edge leaves.
+     *
+     * @param edge the edge number
+     * @return the from node of the edge
+     */
+    public int getEdgeFrom(int edge) {
+        return edgeFrom[edge];
+    }
+
+
+    /**
+     * Returns the node an edge enters.
+     *
+     * @param edge the edge number
+     * @return the to node of the edge
+     */
+    public int getEdgeTo(int edge) {
+        return edgeTo[edge];
+    }
+
+
+    /**
+     * Returns the acoustic score of an edge.
+     *
+     * @param edge the edge number
+     * @return the acoustic score (in LogMath log base)
+     */
+    public float getAcousticScore(int edge) {
+        return acousticScores[edge];
+    }
+
+
+    /**
+     * Returns the language score of an edge.
+     *
+     * @param edge the edge number
+     * @return the language score (in LogMath log base)
+     */
+    public float getLMScore(int edge) {
+        return lmScores[edge];
+    }
+
+
+    /**
+     * Returns the combined score of an edge, as used by the last call to computeNodePosteriors.
+     *
+     * @param edge the edge number
+     * @return the edge score (in LogMath log base)
+     */
+    public float getEdgeScore(int edge) {
+        checkScores();
+        return edgeScores[edge];
+    }
+
+
+    /**
+     * Returns the posterior of a node. Only valid once computeNodePosteriors has been called.
+     *
+     * @param node the node number
+     * @return the posterior (in LogMath log base)
+     */
+    public float getPosterior(int node) {
+        checkScores();
+        return posteriors[node];
+    }
+
+
+    /**
+     * Returns the forward score of a node. Only valid once computeNodePosteriors has been called.
+     *
+     * @param node the node number
+     * @return the forward score (in LogMath log base)
+     */
+    public float getForwardScore(int node) {
+        checkScores();
+        return forwardScores[node];
+    }
+
+
+    /**
+     * Returns the backward score of a node. Only valid once computeNodePosteriors has been called.
+     *
+     * @param node the node number
+     * @return the backward score (in LogMath log base)
+     */
+    public float getBackwardScore(int node) {
+        checkScores();
+        return backwardScores[node];
+    }
+
+
+    /**
+     * Returns the log math used by this lattice.
+     *
+     * @return the log math
+     */
+    public LogMath getLogMath() {
+        return logMath;
+    }
+
+
+    /** Generates the paths through this lattice in score order. */
+    class PathIterator implements Iterator<ScoredPath> {
+
+        private final int maxPartialPaths;
+        private PriorityQueue<PartialPath> queue = new PriorityQueue<PartialPath>();
+        private ScoredPath next;
+
+
+        PathIterator(int maxPartialPaths) {
+            this.maxPartialPaths = maxPartialPaths;
+            if (backwardViterbiScores[initialNode] > LogMath.getLogZero()) {
+                queue.add(new PartialPath(null, -1, initialNode, LogMath.getLogOne(),
+                        backwardViterbiScores[initialNode]));
+            }
+        }
+
+
+        public boolean hasNext() {
+            while (next == null && !queue.isEmpty()) {
+                PartialPath partial = queue.poll();
+                if (partial.node == terminalNode) {
+                    next = partial.toScoredPath();
+                    break;
+                }
+                for (int e = edgeStart[partial.node]; e < edgeStart[partial.node + 1]; e++) {
+                    int to = edgeTo[e];
+                    if (backwardViterbiScores[to] == LogMath.getLogZero()) {
+                        continue;
+                    }
+                    float score = partial.score + edgeScores[e];
+                    queue.add(new PartialPath(partial, e, to, score, score + backwardViterbiScores[to]));
+                }
+                if (maxPartialPaths > 0 && queue.size() > maxPartialPaths) {
+                    trim();
+                }
+            }
+            return next != null;
+        }
+
+
+        public ScoredPath next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ScoredPath path = next;
+            next = null;
+            return path;
+        }
+
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+
+        /** @return the number of partial paths currently kept by the search */
+        int getQueueSize() {
+            return queue.size();
+        }
+
+
+        /** Discards the worst partial paths, keeping three quarters of the allowed number. */
+        private void trim() {
+            PartialPath[] partials = queue.toArray(new PartialPath[queue.size()]);
+            Arrays.sort(partials);
+            int keep = Math.max(1, maxPartialPaths * 3 / 4);
+            queue = new PriorityQueue<PartialPath>(Arrays.asList(partials).subList(0, keep));
+        }
+    }
+
+
+    /** A complete path through a compact lattice. */
+    public static class ScoredPath {
+
+        private final int[] nodes;
+        private final int[] edges;
+        private final float score;
+
+
+        ScoredPath(int[] nodes, int[] edges, float score) {
+            this.nodes = nodes;
+            this.edges = edges;
+            this.score = score;
+        }
+
+
+        /**
+         * Returns the node numbers of this path, from the initial to the terminal node.
+         *
+         * @return the nodes of this path
+         */
+        public int[] getNodes() {
+            return nodes;
+        }
+
+
+        /**
+         * Returns the edge numbers of this path. The edge at position <code>i</code> enters the node at position
+         * <code>i</code>, so the first element, for the initial node, is -1.
+         *
+         * @return the edges of this path
+         */
+        public int[] getEdges() {
+            return edges;
+        }
+
+
+        /**
+         * Returns the score of this path.
+         *
+         * @return the score (in LogMath log base)
+         */
+        public float getScore() {
+            return score;
+        }
+    }
+
+
+    /** A partial path of the N-best search. Partial paths share their prefixes. */
+    private static class PartialPath implements Comparable<PartialPath> {
+
+        private final PartialPath previous;
+        private final int edge;
+        private final int node;
+        private final int length;
+        private final float score;
+        private final float estimate;
+
+
+        PartialPath(PartialPath previous, int edge, int node, float score, float estimate) {
+            this.previous = previous;
+            this.edge = edge;
+            this.node = node;
+            this.length = previous == null ? 1 : previous.length + 1;
+            this.score = score;
+            this.estimate = estimate;
+        }
+
+
+        ScoredPath toScoredPath() {
+            int[] nodes = new int[length];
+            int[] edges = new int[length];
+            int i = length;
+            for (PartialPath p = this; p != null; p = p.previous) {
+                i--;
+                nodes[i] = p.node;
+                edges[i] = p.edge;
+            }
+            return new ScoredPath(nodes, edges, score);
+        }
+
+
+        public int compareTo(PartialPath other) {
+            return Float.compare(other.estimate, estimate);
+        }
+    }
+}
@@ -11,11 +11,15 @@
  */
 package edu.cmu.sphinx.result;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import edu.cmu.sphinx.linguist.WordSequence;
 import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.linguist.language.ngram.BatchLanguageModel;
 import edu.cmu.sphinx.linguist.language.ngram.LanguageModel;
 import edu.cmu.sphinx.util.LogMath;
 
@@ -43,27 +47,40 @@ public class LatticeRescorer {
 
 
     private void rescoreEdges() {
+        Map<Edge, List<WordSequence>> edgeSequences = new LinkedHashMap<Edge, List<WordSequence>>();
         for (Edge edge : lattice.edges) {
 
             if (lattice.isFillerNode(edge.getToNode()))
                 continue;
 
-            List<String> paths = allPathsTo("", edge, depth);
-
-            float minProb = LogMath.getLogZero();
-            for (String path : paths) {
+            List<WordSequence> sequences = new ArrayList<WordSequence>();
+            for (String path : allPathsTo("", edge, depth)) {
                 List<Word> wordList = new LinkedList<Word>();
                 for (String pathWord : path.split(" ")) {
                     wordList.add(new Word(pathWord, null, false));
                 }
                 wordList.add(edge.getToNode().getWord());
+                sequences.add(new WordSequence(wordList));
+            }
+            edgeSequences.put(edge, sequences);
+        }
 
-                WordSequence seq = new WordSequence(wordList);
+        // let a remote model fetch the probabilities of the whole lattice at once
+        if (model instanceof BatchLanguageModel) {
+            List<WordSequence> all = new ArrayList<WordSequence>();
+            for (List<WordSequence> sequences : edgeSequences.values())
+                all.addAll(sequences);
+            ((BatchLanguageModel) model).prefetch(all);
+        }
+
+        for (Map.Entry<Edge, List<WordSequence>> entry : edgeSequences.entrySet()) {
+            float minProb = LogMath.getLogZero();
+            for (WordSequence seq : entry.getValue()) {
                 float prob = model.getProbability(seq) * languageWeigth;
                 if (minProb < prob)
                     minProb = prob;
             }
-            edge.setLMScore(minProb);
+            entry.getKey().setLMScore(minProb);
         }
     }
 
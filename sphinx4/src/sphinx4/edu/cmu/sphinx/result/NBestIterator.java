@@ -0,0 +1,134 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.result;
+
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.util.LogMath;
+
+import java.util.*;
+
+/**
+ * Generates the N-best list of a lattice. Paths are taken best first from the A* search of a {@link CompactLattice},
+ * and a path is only returned if its word sequence, ignoring filler words, differs from all the paths returned before.
+ * The list is generated lazily, so asking for the next hypothesis only costs as much search as is needed to find it.
+ * <p/>
+ * Every word of a returned {@link Path} carries the score of the lattice edge that enters it, so that the score of the
+ * path is the score of the lattice path, and the node posterior as its confidence. Scores are in the LogMath log
+ * base.
+ */
+public class NBestIterator implements Iterator<Path> {
+
+    private final CompactLattice lattice;
+    private final LogMath logMath;
+    private final Iterator<CompactLattice.ScoredPath> paths;
+    private final Set<List<String>> seenWordSequences = new HashSet<List<String>>();
+    private Path next;
+
+
+    /**
+     * Creates an N-best iterator over the given lattice.
+     *
+     * @param lattice         the lattice, on which computeNodePosteriors must have been called
+     * @param maxPartialPaths the maximum number of partial paths kept by the search, or zero for no limit
+     */
+    public NBestIterator(CompactLattice lattice, int maxPartialPaths) {
+        this.lattice = lattice;
+        this.logMath = lattice.getLogMath();
+        this.paths = lattice.getPathIterator(maxPartialPaths);
+    }
+
+
+    /**
+     * Creates an N-best iterator over the given lattice. The posteriors of the lattice are computed with the given
+     * language weight adjustment.
+     *
+     * @param lattice                       the lattice
+     * @param languageModelWeightAdjustment the weight multiplier that will be applied to language score already
+     *                                      scaled by language weight
+     * @param maxPartialPaths               the maximum number of partial paths kept by the search, or zero for no
+     *                                      limit
+     */
+    public NBestIterator(Lattice lattice, float languageModelWeightAdjustment, int maxPartialPaths) {
+        this(createCompactLattice(lattice, languageModelWeightAdjustment), maxPartialPaths);
+    }
+
+
+    private static CompactLattice createCompactLattice(Lattice lattice, float languageModelWeightAdjustment) {
+        CompactLattice compactLattice = new CompactLattice(lattice);
+        compactLattice.computeNodePosteriors(languageModelWeightAdjustment, false);
+        return compactLattice;
+    }
+
+
+    public boolean hasNext() {
+        while (next == null && paths.hasNext()) {
+            CompactLattice.ScoredPath path = paths.next();
+            if (seenWordSequences.add(getWordSequence(path))) {
+                next = createPath(path);
+            }
+        }
+        return next != null;
+    }
+
+
+    public Path next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Path path = next;
+        next = null;
+        return path;
+    }
+
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+
+    /**
+     * Returns the words of a path, without filler words.
+     *
+     * @param path the path
+     * @return the spellings of the non filler words of the path
+     */
+    private List<String> getWordSequence(CompactLattice.ScoredPath path) {
+        List<String> words = new ArrayList<String>(path.getNodes().length);
+        for (int node : path.getNodes()) {
+            Word word = lattice.getWord(node);
+            if (!word.isFiller()) {
+                words.add(word.getSpelling());
+            }
+        }
+        return words;
+    }
+
+
+    /**
+     * Converts a lattice path into a result path.
+     *
+     * @param path the lattice path
+     * @return the result path
+     */
+    private Path createPath(CompactLattice.ScoredPath path) {
+        int[] nodes = path.getNodes();
+        int[] edges = path.getEdges();
+        List<WordResult> words = new ArrayList<WordResult>(nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            int node = nodes[i];
+            double score = edges[i] < 0 ? LogMath.getLogOne() : lattice.getEdgeScore(edges[i]);
+            words.add(new SimpleWordResult(lattice.getWord(node), lattice.getBeginTime(node),
+                    lattice.getEndTime(node), score, lattice.getPosterior(node), logMath));
+        }
+        return new WordResultPath(words);
+    }
+}
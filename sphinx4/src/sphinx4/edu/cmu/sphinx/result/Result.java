@@ -21,6 +21,7 @@ import edu.cmu.sphinx.linguist.dictionary.Word;
 import edu.cmu.sphinx.util.LogMath;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -35,10 +36,14 @@ import java.util.List;
  */
 public class Result {
 
+    /** The number of partial paths that {@link #getNBest(int)} keeps in its search for every requested path. */
+    public final static int PARTIAL_PATHS_PER_NBEST_PATH = 100;
+
     private final ActiveList activeList;
     private final List<Token> resultList;
     private AlternateHypothesisManager alternateHypothesisManager;
     private boolean isFinal;
+    private boolean isDegraded;
     private final int currentFrameNumber;
     private String reference;
     private final LogMath logMath;
@@ -91,6 +96,27 @@ public class Result {
     }
 
 
+    /**
+     * Determines if the result is degraded. A degraded result was found by a search that traded accuracy for speed to
+     * meet its time budget, or that was stopped at its deadline before the end of the utterance.
+     *
+     * @return true if the result is degraded
+     */
+    public boolean isDegraded() {
+        return isDegraded;
+    }
+
+
+    /**
+     * Sets the result as a degraded result
+     *
+     * @param degraded if true, the result is degraded
+     */
+    public void setDegraded(boolean degraded) {
+        this.isDegraded = degraded;
+    }
+
+
     /**
      * Returns the log math used for this Result.
      *
@@ -258,6 +284,56 @@ public class Result {
     }
 
 
+    /**
+     * Returns an iterator over the N-best list of this result. A lattice is built from the token tree of this result
+     * and optimized, and the distinct word sequences through it are generated lazily, best first. This requires a
+     * search manager that builds word lattices.
+     *
+     * @param languageModelWeightAdjustment the weight multiplier that will be applied to language score already
+     *                                      scaled by language weight
+     * @param maxPartialPaths               the maximum number of partial paths kept by the search, or zero for no
+     *                                      limit
+     * @return an iterator over the paths of the N-best list, best first
+     * @see NBestIterator
+     */
+    public Iterator<Path> getNBestIterator(float languageModelWeightAdjustment, int maxPartialPaths) {
+        Lattice lattice = new Lattice(this);
+        new LatticeOptimizer(lattice).optimize();
+        return new NBestIterator(lattice, languageModelWeightAdjustment, maxPartialPaths);
+    }
+
+
+    /**
+     * Returns the N best distinct word sequences of this result, best first. The search keeps at most {@link
+     * #PARTIAL_PATHS_PER_NBEST_PATH} partial paths for every requested path.
+     *
+     * @param n the maximum number of paths to return
+     * @return a list of up to <code>n</code> paths
+     * @see #getNBest(int, int)
+     */
+    public List<Path> getNBest(int n) {
+        return getNBest(n, (int) Math.min(Integer.MAX_VALUE, Math.max(1L, (long) n * PARTIAL_PATHS_PER_NBEST_PATH)));
+    }
+
+
+    /**
+     * Returns the N best distinct word sequences of this result, best first. If the number of partial paths is
+     * bounded, paths far down the list may be missed when the lattice has many paths with the same words.
+     *
+     * @param n               the maximum number of paths to return
+     * @param maxPartialPaths the maximum number of partial paths kept by the search, or zero for no limit
+     * @return a list of up to <code>n</code> paths
+     * @see #getNBestIterator(float, int)
+     */
+    public List<Path> getNBest(int n, int maxPartialPaths) {
+        List<Path> paths = new ArrayList<Path>(n);
+        for (Iterator<Path> i = getNBestIterator(1.0f, maxPartialPaths); i.hasNext() && paths.size() < n;) {
+            paths.add(i.next());
+        }
+        return paths;
+    }
+
+
     /**
      * Returns detailed frame statistics for this result
      *
@@ -509,7 +585,7 @@ public class Result {
      *
      * @param finalResult if true, the result should be made final
      */
-    void setFinal(boolean finalResult) {
+    public void setFinal(boolean finalResult) {
         this.isFinal = finalResult;
     }
 
@@ -14,6 +14,7 @@
 package edu.cmu.sphinx.result;
 
 import edu.cmu.sphinx.linguist.dictionary.Pronunciation;
+import edu.cmu.sphinx.linguist.dictionary.Word;
 import edu.cmu.sphinx.util.LogMath;
 
 import java.util.*;
@@ -30,6 +31,8 @@ import java.util.*;
  */
 public class SausageMaker extends AbstractSausageMaker {
 
+    private Map<Word, Map<Word, Float>> phoneticSimilarities;
+
     /** Construct an empty sausage maker */
     public SausageMaker() {
     }
@@ -49,12 +52,16 @@ public class SausageMaker extends AbstractSausageMaker {
 
 
     /**
-     * Perform the inter word clustering stage of the algorithm
+     * Perform the inter word clustering stage of the algorithm. This produces the same merges as repeatedly calling
+     * {@link #interWordClusterStep(List)}, but only computes the similarity of clusters that overlap in time, and only
+     * recomputes the similarities involving a cluster after it has been merged.
      *
      * @param clusters the current cluster set
      */
     protected void interWordCluster(List<Cluster> clusters) {
-        while (interWordClusterStep(clusters)) ;
+        phoneticSimilarities = new HashMap<Word, Map<Word, Float>>();
+        mergeClusters(clusters, true);
+        phoneticSimilarities = null;
     }
 
 
@@ -282,12 +289,13 @@ public class SausageMaker extends AbstractSausageMaker {
 
 
     /**
-     * Perform the intra word clustering stage of the algorithm
+     * Perform the intra word clustering stage of the algorithm. This produces the same merges as repeatedly calling
+     * {@link #intraWordClusterStep(List)}, but only compares clusters of the same word that overlap in time.
      *
      * @param clusters the current list of clusters
      */
     protected void intraWordCluster(List<Cluster> clusters) {
-        while (intraWordClusterStep(clusters)) ;
+        mergeClusters(clusters, false);
     }
 
 
@@ -325,6 +333,225 @@ public class SausageMaker extends AbstractSausageMaker {
     }
 
 
+    /**
+     * Greedily merges the most similar pair of clusters until no pair can be merged. Candidate pairs are kept in a
+     * priority queue ordered by similarity and, for equal similarities, by the positions of the clusters in the list,
+     * so that the merges are the same as those of the exhaustive clustering steps. Queue entries that refer to a
+     * cluster that has changed since they were computed are skipped.
+     *
+     * @param clusters  the current cluster set, which is updated in place
+     * @param interWord if true, use the inter word similarity, otherwise the intra word similarity
+     */
+    private void mergeClusters(List<Cluster> clusters, boolean interWord) {
+        List<ClusterEntry> entries = new ArrayList<ClusterEntry>(clusters.size());
+        for (Cluster cluster : clusters) {
+            entries.add(new ClusterEntry(cluster, entries.size()));
+        }
+
+        PriorityQueue<ClusterPair> queue = new PriorityQueue<ClusterPair>();
+        List<ClusterEntry> byStartTime = new ArrayList<ClusterEntry>(entries);
+        Collections.sort(byStartTime, new Comparator<ClusterEntry>() {
+            public int compare(ClusterEntry e1, ClusterEntry e2) {
+                return e1.cluster.startTime - e2.cluster.startTime;
+            }
+        });
+        for (int i = 0; i < byStartTime.size(); i++) {
+            ClusterEntry e1 = byStartTime.get(i);
+            for (int j = i + 1; j < byStartTime.size(); j++) {
+                ClusterEntry e2 = byStartTime.get(j);
+                if (e2.cluster.startTime >= e1.cluster.endTime) {
+                    break;
+                }
+                addCandidate(queue, e1, e2, interWord);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            ClusterPair pair = queue.poll();
+            if (!pair.isCurrent()) {
+                continue;
+            }
+            ClusterEntry merged = pair.first;
+            pair.second.alive = false;
+            merged.cluster.add(pair.second.cluster);
+            merged.update();
+            for (ClusterEntry other : entries) {
+                if (other.alive && other != merged) {
+                    addCandidate(queue, merged, other, interWord);
+                }
+            }
+        }
+
+        clusters.clear();
+        for (ClusterEntry entry : entries) {
+            if (entry.alive) {
+                clusters.add(entry.cluster);
+            }
+        }
+    }
+
+
+    /**
+     * Adds a pair of clusters to the candidate queue if they can be merged.
+     *
+     * @param queue     the candidate queue
+     * @param e1        one of the clusters
+     * @param e2        the other cluster
+     * @param interWord if true, use the inter word similarity, otherwise the intra word similarity
+     */
+    private void addCandidate(PriorityQueue<ClusterPair> queue, ClusterEntry e1, ClusterEntry e2, boolean interWord) {
+        if (!hasOverlap(e1.cluster, e2.cluster)) {
+            return;
+        }
+        if (e2.rank < e1.rank) {
+            ClusterEntry e = e1;
+            e1 = e2;
+            e2 = e;
+        }
+        double sim;
+        if (interWord) {
+            sim = interClusterDistance(e1, e2);
+        } else {
+            if (!e1.wordProbabilities.keySet().equals(e2.wordProbabilities.keySet())) {
+                return;
+            }
+            sim = intraClusterDistance(e1.cluster, e2.cluster);
+        }
+        if (sim > Double.NEGATIVE_INFINITY) {
+            queue.add(new ClusterPair(e1, e2, sim));
+        }
+    }
+
+
+    /**
+     * Calculates the distance between two clusters like {@link #interClusterDistance(Cluster, Cluster)}, using the
+     * word probabilities cached for the clusters and memoized phonetic similarities.
+     *
+     * @param e1 the first cluster
+     * @param e2 the second cluster
+     * @return the inter cluster similarity, or Double.NEGATIVE_INFINITY if these clusters should never be clustered
+     *         together.
+     */
+    private double interClusterDistance(ClusterEntry e1, ClusterEntry e2) {
+        if (areClustersInRelation(e1.cluster, e2.cluster)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        LogMath logMath = lattice.getLogMath();
+        float totalSim = LogMath.getLogZero();
+        float wordPairCount = (float) 0.0;
+        for (Map.Entry<String, Node> word1 : e1.firstNodes.entrySet()) {
+            for (Map.Entry<String, Node> word2 : e2.firstNodes.entrySet()) {
+                float sim = getPhoneticSimilarity(word1.getValue(), word2.getValue());
+                sim += e1.wordProbabilities.get(word1.getKey());
+                sim += e2.wordProbabilities.get(word2.getKey());
+                totalSim = logMath.addAsLinear(totalSim, sim);
+                wordPairCount++;
+            }
+        }
+        return totalSim - logMath.logToLinear(wordPairCount);
+    }
+
+
+    /**
+     * Returns the log phonetic similarity of the words of two nodes, computing it only once for every pair of words.
+     *
+     * @param n1 the first node
+     * @param n2 the second node
+     * @return the phonetic similarity, in the LogMath log base
+     */
+    private float getPhoneticSimilarity(Node n1, Node n2) {
+        Map<Word, Float> similarities = phoneticSimilarities.get(n1.getWord());
+        if (similarities == null) {
+            similarities = new HashMap<Word, Float>();
+            phoneticSimilarities.put(n1.getWord(), similarities);
+        }
+        Float sim = similarities.get(n2.getWord());
+        if (sim == null) {
+            sim = lattice.getLogMath().linearToLog((float) computePhoneticSimilarity(n1, n2));
+            similarities.put(n2.getWord(), sim);
+        }
+        return sim;
+    }
+
+
+    /** A cluster together with its position in the cluster list and its cached word probabilities. */
+    private class ClusterEntry {
+
+        private final Cluster cluster;
+        private final int rank;
+        private int version;
+        private boolean alive = true;
+        private final Map<String, Node> firstNodes = new LinkedHashMap<String, Node>();
+        private final Map<String, Double> wordProbabilities = new HashMap<String, Double>();
+
+
+        ClusterEntry(Cluster cluster, int rank) {
+            this.cluster = cluster;
+            this.rank = rank;
+            update();
+        }
+
+
+        /**
+         * Recomputes the word probabilities of the cluster. The posteriors are accumulated in the order of the cluster
+         * elements, exactly as {@link #wordSubClusterProbability(Cluster, String)} does.
+         */
+        void update() {
+            version++;
+            firstNodes.clear();
+            wordProbabilities.clear();
+            LogMath logMath = lattice.getLogMath();
+            for (Node node : cluster.getElements()) {
+                String word = node.getWord().getSpelling();
+                Double p = wordProbabilities.get(word);
+                if (p == null) {
+                    firstNodes.put(word, node);
+                    p = (double) LogMath.getLogZero();
+                }
+                wordProbabilities.put(word, (double) logMath.addAsLinear(p.floatValue(), (float) node.getPosterior()));
+            }
+        }
+    }
+
+
+    /** A candidate merge of two clusters, ordered best first. */
+    private static class ClusterPair implements Comparable<ClusterPair> {
+
+        private final ClusterEntry first;
+        private final ClusterEntry second;
+        private final int firstVersion;
+        private final int secondVersion;
+        private final double similarity;
+
+
+        ClusterPair(ClusterEntry first, ClusterEntry second, double similarity) {
+            this.first = first;
+            this.second = second;
+            this.firstVersion = first.version;
+            this.secondVersion = second.version;
+            this.similarity = similarity;
+        }
+
+
+        /** @return true if neither cluster has changed since this pair was created */
+        boolean isCurrent() {
+            return first.alive && second.alive
+                    && first.version == firstVersion && second.version == secondVersion;
+        }
+
+
+        public int compareTo(ClusterPair other) {
+            if (similarity != other.similarity) {
+                return similarity > other.similarity ? -1 : 1;
+            }
+            if (first.rank != other.first.rank) {
+                return first.rank - other.first.rank;
+            }
+            return second.rank - other.second.rank;
+        }
+    }
+
+
     /**
      * Turn the lattice contained in this sausage maker into a sausage object.
      *
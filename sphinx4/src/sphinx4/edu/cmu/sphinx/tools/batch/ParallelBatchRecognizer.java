@@ -0,0 +1,378 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.tools.batch;
+
+import edu.cmu.sphinx.instrumentation.SpeedTracker;
+import edu.cmu.sphinx.recognizer.Recognizer;
+import edu.cmu.sphinx.result.Result;
+import edu.cmu.sphinx.util.BatchItem;
+import edu.cmu.sphinx.util.BatchManager;
+import edu.cmu.sphinx.util.CustomThreadFactory;
+import edu.cmu.sphinx.util.NISTAlign;
+import edu.cmu.sphinx.util.props.ConfigurationManager;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.text.DecimalFormat;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+/**
+ * Decodes a batch file with several recognizers in parallel, in one JVM. Every worker is a {@link BatchModeRecognizer}
+ * created by its own configuration manager from the same configuration file, so the workers share no decoder state.
+ * The workers take the items of the batch from a common queue, which is the batch manager of the first worker, so the
+ * <code>skip</code>, <code>count</code>, <code>whichBatch</code>, <code>totalBatches</code> and
+ * <code>usePooledBatchManager</code> properties of the batch component apply as in sequential decoding.
+ * <p/>
+ * The results are written and aligned against their transcripts in the order of the batch file, whatever the order in
+ * which the workers finish them, so the accuracy and the summed timings do not depend on the scheduling of the
+ * threads. The hypotheses are those of a sequential run as long as the front end carries no state from one utterance
+ * to the next, as the <code>LiveCMN</code> does. The timings of an utterance are taken from the {@link SpeedTracker}
+ * of its worker if one is configured, otherwise the processing time is measured around the recognition and the audio
+ * time is unknown.
+ * <p/>
+ * Without further configuration every worker loads its own models. To load an acoustic model once, wrap its loader
+ * into a {@link edu.cmu.sphinx.linguist.acoustic.tiedstate.SharedLoader SharedLoader} and set the
+ * <code>scoringContext</code> and <code>loader</code> properties of the scorer, so that the workers do not share the
+ * cached senone scores. The monitors of the workers still report on their own; their detailed output is best switched
+ * off.
+ * <p/>
+ * To run this ParallelBatchRecognizer:
+ * <pre>
+ * java ParallelBatchRecognizer &lt;xmlConfigFile&gt; &lt;batchFile&gt; [numWorkers [resultFile]]
+ * </pre>
+ * The result file gets one line per utterance, the name of the file followed by the hypothesis.
+ */
+public class ParallelBatchRecognizer {
+
+    private static final DecimalFormat timeFormat = new DecimalFormat("0.00");
+
+    private final URL configURL;
+    private final String batchName;
+    private final int numWorkers;
+    private final Logger logger;
+
+    // the batch being decoded
+    private BatchManager batchManager;
+    private int maxItems;
+    private int numItems;
+    private boolean failed;
+    private final Map<Integer, Outcome> outcomes = new HashMap<Integer, Outcome>();
+    private int nextOutcome;
+    private PrintWriter out;
+
+    // the totals of the batch, collected in the order of the batch file
+    private final NISTAlign aligner = new NISTAlign(false, false);
+    private float totalAudioTime;
+    private float totalProcessingTime;
+    private float wallTime;
+
+
+    /**
+     * Creates a parallel batch recognizer whose workers use the batch component named <code>batch</code>.
+     *
+     * @param configURL  the configuration of a worker
+     * @param numWorkers the number of workers
+     */
+    public ParallelBatchRecognizer(URL configURL, int numWorkers) {
+        this(configURL, "batch", numWorkers);
+    }
+
+
+    /**
+     * Creates a parallel batch recognizer.
+     *
+     * @param configURL  the configuration of a worker
+     * @param batchName  the name of the {@link BatchModeRecognizer} component in the configuration
+     * @param numWorkers the number of workers
+     */
+    public ParallelBatchRecognizer(URL configURL, String batchName, int numWorkers) {
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException("Illegal number of workers: " + numWorkers);
+        }
+        this.configURL = configURL;
+        this.batchName = batchName;
+        this.numWorkers = numWorkers;
+        this.logger = Logger.getLogger(getClass().getName());
+    }
+
+
+    /**
+     * Decodes the batch of audio files.
+     *
+     * @param batchFile the name of the batch file
+     * @param results   receives the results in the order of the batch file, or <code>null</code>
+     * @throws IOException if the batch file or an audio file can not be read
+     */
+    public void decode(String batchFile, Writer results) throws IOException {
+        List<BatchModeRecognizer> workers = new ArrayList<BatchModeRecognizer>();
+        for (int i = 0; i < numWorkers; i++) {
+            ConfigurationManager cm = new ConfigurationManager(configURL);
+            BatchModeRecognizer worker = (BatchModeRecognizer) cm.lookup(batchName);
+            if (worker == null) {
+                throw new IOException("Can't find " + batchName + " in " + configURL);
+            }
+            workers.add(worker);
+        }
+
+        BatchModeRecognizer first = workers.get(0);
+        first.setBatchFile(batchFile);
+        batchManager = first.batchManager;
+        maxItems = first.utteranceId;
+        numItems = 0;
+        failed = false;
+        outcomes.clear();
+        nextOutcome = 0;
+        out = results == null ? null : new PrintWriter(results);
+        aligner.resetTotals();
+        totalAudioTime = 0;
+        totalProcessingTime = 0;
+
+        long startTime = System.currentTimeMillis();
+        batchManager.start();
+        logger.info("ParallelBatchRecognizer: decoding files in " + batchManager.getFilename() + " with "
+                + numWorkers + " workers");
+        ExecutorService executor = Executors.newFixedThreadPool(numWorkers,
+                new CustomThreadFactory(getClass().getSimpleName(), true, Thread.NORM_PRIORITY));
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (BatchModeRecognizer worker : workers) {
+            futures.add(executor.submit(new Worker(worker)));
+        }
+
+        Throwable failure = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                throw new IOException("Interrupted while decoding " + batchFile);
+            }
+        }
+        executor.shutdown();
+        batchManager.stop();
+        if (out != null) {
+            out.flush();
+        }
+        wallTime = (System.currentTimeMillis() - startTime) / 1000.0f;
+
+        if (failure instanceof IOException) {
+            logger.severe("I/O error during decoding: " + failure.getMessage());
+            throw (IOException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        logger.info("ParallelBatchRecognizer: " + nextOutcome + " files decoded");
+    }
+
+
+    /**
+     * Hands out the next item of the batch.
+     *
+     * @return the next item with its index in the batch, or <code>null</code> if there are no more items
+     * @throws IOException if the batch can not be read
+     */
+    private synchronized Map.Entry<Integer, BatchItem> nextItem() throws IOException {
+        if (failed || numItems >= maxItems) {
+            return null;
+        }
+        BatchItem item = batchManager.getNextItem();
+        if (item == null) {
+            return null;
+        }
+        return new AbstractMap.SimpleImmutableEntry<Integer, BatchItem>(numItems++, item);
+    }
+
+
+    /** Stops handing out items after a worker failed. */
+    private synchronized void fail() {
+        failed = true;
+    }
+
+
+    /**
+     * Collects the outcome of an item and reports all outcomes that are complete in the order of the batch.
+     *
+     * @param index   the index of the item in the batch
+     * @param outcome the outcome of the item
+     */
+    private synchronized void completed(int index, Outcome outcome) {
+        outcomes.put(index, outcome);
+        for (Outcome next; (next = outcomes.remove(nextOutcome)) != null; nextOutcome++) {
+            logger.info("File  : " + next.item.getFilename());
+            logger.info("Result: " + next.hypothesis);
+            if (out != null) {
+                out.println(next.item.getFilename() + ' ' + next.hypothesis);
+            }
+            if (next.item.getTranscript() != null) {
+                aligner.align(next.item.getTranscript(), next.hypothesis);
+            }
+            totalAudioTime += next.audioTime;
+            totalProcessingTime += next.processingTime;
+        }
+    }
+
+
+    /**
+     * Returns the aligner with the accuracy of the last batch.
+     *
+     * @return the aligner
+     */
+    public NISTAlign getAligner() {
+        return aligner;
+    }
+
+
+    /** @return the total duration of the audio of the last batch in seconds, 0 if no worker tracks the speed */
+    public float getTotalAudioTime() {
+        return totalAudioTime;
+    }
+
+
+    /** @return the total processing time of all workers for the last batch in seconds */
+    public float getTotalProcessingTime() {
+        return totalProcessingTime;
+    }
+
+
+    /** @return the elapsed time of the last batch in seconds */
+    public float getWallTime() {
+        return wallTime;
+    }
+
+
+    /** Prints the accuracy and the speed of the last batch. */
+    public void printSummary() {
+        System.out.println("\n# --------------- Summary statistics ---------");
+        aligner.printTotalSummary();
+        System.out.print("   Total Time Audio: " + timeFormat.format(totalAudioTime) + 's');
+        System.out.print("  Proc: " + timeFormat.format(totalProcessingTime) + 's');
+        if (totalAudioTime > 0) {
+            System.out.print("  Speed: " + timeFormat.format(totalProcessingTime / totalAudioTime)
+                    + " X real time");
+        }
+        System.out.println();
+        System.out.print("   Workers: " + numWorkers + "  Elapsed: " + timeFormat.format(wallTime) + 's');
+        if (totalAudioTime > 0) {
+            System.out.print("  Throughput: " + timeFormat.format(wallTime / totalAudioTime) + " X real time");
+        }
+        System.out.println();
+    }
+
+
+    /** Decodes items of the batch with one recognizer until the batch is done. */
+    private class Worker implements Callable<Void> {
+
+        private final BatchModeRecognizer worker;
+
+
+        Worker(BatchModeRecognizer worker) {
+            this.worker = worker;
+        }
+
+
+        @Override
+        public Void call() throws IOException {
+            try {
+                worker.recognizer.allocate();
+                SpeedTracker speedTracker = null;
+                for (String name : worker.cm.getInstanceNames(SpeedTracker.class)) {
+                    speedTracker = (SpeedTracker) worker.cm.lookup(name);
+                }
+
+                Map.Entry<Integer, BatchItem> entry;
+                while ((entry = nextItem()) != null) {
+                    BatchItem item = entry.getValue();
+                    long startTime = System.currentTimeMillis();
+                    worker.setInputStream(item.getFilename());
+                    Result result = worker.recognizer.recognize(item.getTranscript());
+                    float processingTime = (System.currentTimeMillis() - startTime) / 1000.0f;
+                    float audioTime = 0;
+                    if (speedTracker != null) {
+                        processingTime = speedTracker.getProcessingTime();
+                        audioTime = speedTracker.getAudioTime();
+                    }
+                    String hypothesis = result == null ? "" : result.getBestResultNoFiller();
+                    completed(entry.getKey(), new Outcome(item, hypothesis, audioTime, processingTime));
+                }
+                return null;
+            } catch (IOException e) {
+                fail();
+                throw e;
+            } catch (RuntimeException e) {
+                fail();
+                throw e;
+            } finally {
+                // also after a failure, unless the recognizer could not even be allocated
+                if (worker.recognizer.getState() == Recognizer.State.READY) {
+                    worker.recognizer.deallocate();
+                }
+            }
+        }
+    }
+
+
+    /** The result of decoding an item of the batch. */
+    private static class Outcome {
+
+        private final BatchItem item;
+        private final String hypothesis;
+        private final float audioTime;
+        private final float processingTime;
+
+
+        Outcome(BatchItem item, String hypothesis, float audioTime, float processingTime) {
+            this.item = item;
+            this.hypothesis = hypothesis;
+            this.audioTime = audioTime;
+            this.processingTime = processingTime;
+        }
+    }
+
+
+    /**
+     * Main method of this ParallelBatchRecognizer.
+     *
+     * @param argv argv[0] : config.xml argv[1] : a file listing all the audio files to decode argv[2] : the number of
+     *             workers, defaults to the number of processors argv[3] : the file to write the results to
+     */
+    public static void main(String[] argv) {
+        if (argv.length < 2) {
+            System.out.println("Usage: ParallelBatchRecognizer propertiesFile batchFile [numWorkers [resultFile]]");
+            System.exit(1);
+        }
+        int numWorkers = argv.length > 2 ? Integer.parseInt(argv[2]) : Runtime.getRuntime().availableProcessors();
+        try {
+            ParallelBatchRecognizer recognizer =
+                    new ParallelBatchRecognizer(new File(argv[0]).toURI().toURL(), numWorkers);
+            Writer results = argv.length > 3 ? new FileWriter(argv[3]) : null;
+            recognizer.decode(argv[1], results);
+            if (results != null) {
+                results.close();
+            }
+            recognizer.printSummary();
+        } catch (Exception e) {
+            System.err.println("Error during decoding: \n  ");
+            e.printStackTrace();
+        }
+    }
+}
@@ -25,7 +25,8 @@ public final class LogMath implements Configurable, Serializable {
     /**
      * The property to get the Log base. According to forum discussions a value 
      * between 1.00001 and 1.0004 should be used for speech recognition. Going 
-     * above 1.0005 will probably hurt.
+     * above 1.0005 will probably hurt. The natural base 2.718281828459045 keeps
+     * the whole search in natural log, so the Gaussian scores are not converted.
      */
     @S4Double(defaultValue = 1.0001)
     public final static String PROP_LOG_BASE = "logBase";
@@ -37,29 +38,66 @@ public final class LogMath implements Configurable, Serializable {
     @S4Boolean(defaultValue = true)
     public final static String PROP_USE_ADD_TABLE = "useAddTable";
 
+    /**
+     * The property that makes the add table interpolate linearly between the ends of 4096 segments, instead of rounding
+     * the difference of the values to the nearest entry of a table with one entry per unit of the log base. The
+     * interpolated table is smaller and more accurate, but its results differ from those of the rounded table. It is
+     * needed for large log bases such as <code>Math.E</code>, for which the rounded table would be empty.
+     */
+    @S4Boolean(defaultValue = false)
+    public final static String PROP_INTERPOLATE_ADD_TABLE = "interpolateAddTable";
+
 
     private static final float logZero = -Float.MAX_VALUE;
     private static float logOne;
 
+    /** The smallest value of the interpolated add table in natural log, smaller values are taken to be 0. */
+    private static final double ADD_TABLE_PRECISION = 1e-6;
+
+    /** The number of segments of the interpolated add table, whose values are interpolated between the segment ends. */
+    private static final int ADD_TABLE_SEGMENTS = 4096;
+
+    /** The number of segments of the table of the linear values that the bulk addition sums up. */
+    private static final int EXP_TABLE_SEGMENTS = 4096;
+
+    /** The range of the table of linear values in natural log, smaller values are negligible in a float sum. */
+    private static final float EXP_TABLE_RANGE = 20.0f;
+
     // -------------------------------
     // Configuration data
     // ------------------------------
     private float logBase;
     private boolean useAddTable;
+    private boolean interpolateAddTable;
+    private transient boolean naturalBase;
 
     private transient Logger logger;
 
     private transient float naturalLogBase;
     private transient float inverseNaturalLogBase;
+    private transient float lnTen;
     private transient float theAddTable[];
+    private transient float addTableScale;
+    private transient float expTable[];
+    private transient float expTableScale;
     private transient float maxLogValue;
     private transient float minLogValue;
 
     public LogMath(float logBase, boolean useAddTable) {
+        this(logBase, useAddTable, false);
+    }
+
+    /**
+     * @param logBase             the log base
+     * @param useAddTable         if true, the additions use a table instead of the actual computation
+     * @param interpolateAddTable if true, the add table interpolates between the ends of its segments
+     */
+    public LogMath(float logBase, boolean useAddTable, boolean interpolateAddTable) {
         this.logger = Logger.getLogger(getClass().getName());
 
         this.logBase = logBase;
         this.useAddTable = useAddTable;
+        this.interpolateAddTable = interpolateAddTable;
 
         init();
     }
@@ -74,6 +112,7 @@ public final class LogMath implements Configurable, Serializable {
 
         logBase = ps.getFloat(PROP_LOG_BASE);
         useAddTable = ps.getBoolean(PROP_USE_ADD_TABLE);
+        interpolateAddTable = ps.getBoolean(PROP_INTERPOLATE_ADD_TABLE);
 
         init();
     }
@@ -89,8 +128,13 @@ public final class LogMath implements Configurable, Serializable {
                 logger.config("Performing actual computation when adding logs");
             }
         }
-        naturalLogBase = (float) Math.log(logBase);
+        // In the natural log base all conversions from and to natural
+        // log are exact identities, so that the scores of a decoder
+        // using this base are not converted at all.
+        naturalBase = logBase == (float) Math.E;
+        naturalLogBase = naturalBase ? 1.0f : (float) Math.log(logBase);
         inverseNaturalLogBase = 1.0f / naturalLogBase;
+        lnTen = (float) Math.log(10.0f);
         // When converting a number from/to linear, we need to make
         // sure it's within certain limits to prevent it from
         // underflowing/overflowing.
@@ -101,68 +145,125 @@ public final class LogMath implements Configurable, Serializable {
         // (absolute) value that a float can hold.
         minLogValue = linearToLog(Double.MIN_VALUE);
         if (useAddTable) {
-            // Now create the addTable table.
-            // summation needed in the loop
-            float innerSummation;
-            // First decide number of elements.
-            int entriesInTheAddTable;
-            final int veryLargeNumberOfEntries = 150000;
-            final int verySmallNumberOfEntries = 0;
-            // To decide size of table, take into account that a base
-            // of 1.0001 or 1.0003 converts probabilities, which are
-            // numbers less than 1, into integers. Therefore, a good
-            // approximation for the smallest number in the table,
-            // therefore the value with the highest index, is an
-            // index that maps into 0.5: indices higher than that, if
-            // they were present, would map to less values less than
-            // 0.5, therefore they would be mapped to 0 as
-            // integers. Since the table implements the expression:
-            //
-            // log(1.0 + base^(-index)))
-            //
-            // then the highest index would be:
-            //
-            // topIndex = - log(logBase^(0.5) - 1)
-            //
-            // where log is the log in the appropriate base.
-            //
-            // Added -Math.rint(...) to round to nearest
-            // integer. Added the negation to match the preceding
-            // documentation
-            entriesInTheAddTable = (int) -Math
-                    .rint(linearToLog(logToLinear(0.5f) - 1));
-            // We reach this max if the log base is 1.00007. The
-            // closer you get to 1, the higher the number of entries
-            // in the table.
-            if (entriesInTheAddTable > veryLargeNumberOfEntries) {
-                entriesInTheAddTable = veryLargeNumberOfEntries;
-            }
-            if (entriesInTheAddTable <= verySmallNumberOfEntries) {
-                throw new IllegalArgumentException("The log base " + logBase
-                        + " yields a very small addTable. "
-                        + "Either choose not to use the addTable, "
-                        + "or choose a logBase closer to 1.0");
+            if (interpolateAddTable) {
+                initInterpolatedAddTable();
+            } else {
+                initAddTable();
             }
-            // PBL added this just to see how many entries really are
-            // in the table
-            if (logger != null)
-                logger.config("LogAdd table has " + entriesInTheAddTable + " entries.");
-
-            theAddTable = new float[entriesInTheAddTable];
-            for (int index = 0; index < entriesInTheAddTable; index++) {
-                // This loop implements the expression:
-                //
-                // log( 1.0 + power(base, index))
-                //
-                // needed to add two numbers in the log domain.
-                innerSummation = (float) logToLinear(-index);
-                innerSummation += 1.0f;
-                theAddTable[index] = linearToLog(innerSummation);
+
+            // The linear values of the differences to the maximum,
+            // used to add many numbers at once.
+            expTableScale = EXP_TABLE_SEGMENTS / (EXP_TABLE_RANGE * inverseNaturalLogBase);
+            expTable = new float[EXP_TABLE_SEGMENTS + 1];
+            for (int index = 0; index < EXP_TABLE_SEGMENTS; index++) {
+                expTable[index] = (float) logToLinear(-index / expTableScale);
             }
         }
     }
 
 
+    /** Creates the add table with one entry per unit of the log base */
+    private void initAddTable() {
+        // summation needed in the loop
+        float innerSummation;
+        // First decide number of elements.
+        int entriesInTheAddTable;
+        final int veryLargeNumberOfEntries = 150000;
+        final int verySmallNumberOfEntries = 0;
+        // To decide size of table, take into account that a base
+        // of 1.0001 or 1.0003 converts probabilities, which are
+        // numbers less than 1, into integers. Therefore, a good
+        // approximation for the smallest number in the table,
+        // therefore the value with the highest index, is an
+        // index that maps into 0.5: indices higher than that, if
+        // they were present, would map to less values less than
+        // 0.5, therefore they would be mapped to 0 as
+        // integers. Since the table implements the expression:
+        //
+        // log(1.0 + base^(-index)))
+        //
+        // then the highest index would be:
+        //
+        // topIndex = - log(logBase^(0.5) - 1)
+        //
+        // where log is the log in the appropriate base.
+        //
+        // Added -Math.rint(...) to round to nearest
+        // integer. Added the negation to match the preceding
+        // documentation
+        entriesInTheAddTable = (int) -Math
+                .rint(linearToLog(logToLinear(0.5f) - 1));
+        // We reach this max if the log base is 1.00007. The
+        // closer you get to 1, the higher the number of entries
+        // in the table.
+        if (entriesInTheAddTable > veryLargeNumberOfEntries) {
+            entriesInTheAddTable = veryLargeNumberOfEntries;
+        }
+        if (entriesInTheAddTable <= verySmallNumberOfEntries) {
+            throw new IllegalArgumentException("The log base " + logBase
+                    + " yields a very small addTable. "
+                    + "Either choose not to use the addTable, "
+                    + "interpolate the addTable, "
+                    + "or choose a logBase closer to 1.0");
+        }
+        // PBL added this just to see how many entries really are
+        // in the table
+        if (logger != null)
+            logger.config("LogAdd table has " + entriesInTheAddTable + " entries.");
+
+        theAddTable = new float[entriesInTheAddTable];
+        for (int index = 0; index < entriesInTheAddTable; index++) {
+            // This loop implements the expression:
+            //
+            // log( 1.0 + power(base, index))
+            //
+            // needed to add two numbers in the log domain.
+            innerSummation = (float) logToLinear(-index);
+            innerSummation += 1.0f;
+            theAddTable[index] = linearToLog(innerSummation);
+        }
+    }
+
+
+    /** Creates the add table that interpolates between the ends of its segments */
+    private void initInterpolatedAddTable() {
+        // The table implements the expression:
+        //
+        // log(1.0 + base^(-index)))
+        //
+        // which decreases with the index. Beyond the highest
+        // index the value is taken to be 0, so the highest index
+        // is the one that maps into ADD_TABLE_PRECISION, a small
+        // number in natural log:
+        //
+        // topIndex = - log(exp(ADD_TABLE_PRECISION) - 1)
+        //
+        // where log is the log in the appropriate base.
+        int entriesInTheAddTable = (int) -Math
+                .rint(linearToLog(Math.expm1(ADD_TABLE_PRECISION)));
+        if (entriesInTheAddTable <= 0) {
+            throw new IllegalArgumentException("The log base " + logBase
+                    + " yields a very small addTable. "
+                    + "Either choose not to use the addTable, "
+                    + "or choose a logBase closer to 1.0");
+        }
+        if (logger != null)
+            logger.config("Interpolated LogAdd table covers " + entriesInTheAddTable + " entries.");
+
+        // The table holds the values at the ends of
+        // ADD_TABLE_SEGMENTS segments of the range of indices,
+        // and the values in between are interpolated linearly.
+        // The function is smooth, so this is more accurate than
+        // rounding the index to an entry of a full table, and
+        // the table fits in the cache.
+        addTableScale = (float) ADD_TABLE_SEGMENTS / entriesInTheAddTable;
+        theAddTable = new float[ADD_TABLE_SEGMENTS + 1];
+        for (int index = 0; index <= ADD_TABLE_SEGMENTS; index++) {
+            theAddTable[index] = addTableActualComputation(index / addTableScale);
+        }
+    }
+
+
     /**
      * Returns the summation of two numbers when the arguments and the result are in log. <p/> <p/> That is, it returns
      * log(a + b) given log(a) and log(b) </p> <p/> <p/> This method makes use of the equality: </p> <p/> <p/> <b>log(a
@@ -179,11 +280,6 @@ public final class LogMath implements Configurable, Serializable {
     public final float addAsLinear(float logVal1, float logVal2) {
         float logHighestValue = logVal1;
         float logDifference = logVal1 - logVal2;
-        /*
-         * [ EBG: maybe we should also have a function to add many numbers, *
-         * say, return the summation of all terms in a given vector, if *
-         * efficiency becomes an issue.
-         */
         // difference is always a positive number
         if (logDifference < 0) {
             logHighestValue = logVal2;
@@ -229,7 +325,7 @@ public final class LogMath implements Configurable, Serializable {
      * @throws IllegalArgumentException
      */
     private float addTable(float index) throws IllegalArgumentException {
-        if (useAddTable) {
+        if (useAddTable && !interpolateAddTable) {
             // int intIndex = (int) Math.rint(index);
             int intIndex = (int) (index + 0.5);
             // When adding two numbers, the highest one should be
@@ -245,12 +341,115 @@ public final class LogMath implements Configurable, Serializable {
                 throw new IllegalArgumentException("addTable index has "
                         + "to be negative");
             }
+        } else if (useAddTable) {
+            float position = index * addTableScale;
+            // When adding two numbers, the highest one should be
+            // preserved, and therefore the difference should always
+            // be positive.
+            if (position < theAddTable.length - 1) {
+                if (position >= 0) {
+                    int segment = (int) position;
+                    float value = theAddTable[segment];
+                    return value + (position - segment) * (theAddTable[segment + 1] - value);
+                } else {
+                    throw new IllegalArgumentException("addTable index has "
+                            + "to be negative");
+                }
+            } else {
+                return 0.0f;
+            }
         } else {
             return addTableActualComputation(index);
         }
     }
 
 
+    /**
+     * Returns the summation of many numbers when the arguments and the result are in log. That is, it returns log(a_0
+     * + a_1 + ... + a_n-1) given the log(a_i). The numbers are added in the linear domain relative to their maximum,
+     * so the result is as accurate as the addition of two numbers, while adding the numbers one by one with {@link
+     * #addAsLinear(float, float)} accumulates the error of every addition. The loops over the numbers have no branches
+     * that depend on the numbers.
+     *
+     * @param logValues the values in log domain to add
+     * @param length    the number of values to add, from the start of the array
+     * @return the sum of the values in the log domain, or log zero if there are no values
+     */
+    public final float addAsLinear(float[] logValues, int length) {
+        float logHighestValue = max(logValues, length);
+        if (logHighestValue == logZero) {
+            return logZero;
+        }
+        if (useAddTable) {
+            float sum = 0.0f;
+            float limit = EXP_TABLE_SEGMENTS;
+            for (int i = 0; i < length; i++) {
+                float position = Math.min((logHighestValue - logValues[i]) * expTableScale, limit);
+                int segment = Math.min((int) position, EXP_TABLE_SEGMENTS - 1);
+                float value = expTable[segment];
+                sum += value + (position - segment) * (expTable[segment + 1] - value);
+            }
+            // the sum is at least 1, the value of the maximum
+            return logHighestValue + (float) (Math.log(sum) * inverseNaturalLogBase);
+        } else {
+            double sum = 0.0;
+            for (int i = 0; i < length; i++) {
+                sum += Math.exp(((double) logValues[i] - logHighestValue) * naturalLogBase);
+            }
+            return logHighestValue + linearToLog(sum);
+        }
+    }
+
+
+    /**
+     * Returns the summation of all the numbers of an array when the arguments and the result are in log.
+     *
+     * @param logValues the values in log domain to add
+     * @return the sum of the values in the log domain
+     * @see #addAsLinear(float[], int)
+     */
+    public final float addAsLinear(float[] logValues) {
+        return addAsLinear(logValues, logValues.length);
+    }
+
+
+    /**
+     * Returns the maximum of the given values, which is the approximation of their summation in the log domain that
+     * the Viterbi search uses.
+     *
+     * @param logValues the values
+     * @param length    the number of values, from the start of the array
+     * @return the maximum of the values, or log zero if there are no values
+     */
+    public static float max(float[] logValues, int length) {
+        float max = logZero;
+        for (int i = 0; i < length; i++) {
+            float value = logValues[i];
+            max = value > max ? value : max;
+        }
+        return max;
+    }
+
+
+    /**
+     * Returns the maximum of the sums of the values and the weights with the same index, that is the max-plus product
+     * of the two vectors. In the log domain, this is the best of the weighted values.
+     *
+     * @param logValues  the values
+     * @param logWeights the weights of the values
+     * @param length     the number of values, from the start of the arrays
+     * @return the maximum weighted value, or log zero if there are no values
+     */
+    public static float maxPlus(float[] logValues, float[] logWeights, int length) {
+        float max = logZero;
+        for (int i = 0; i < length; i++) {
+            float value = logValues[i] + logWeights[i];
+            max = value > max ? value : max;
+        }
+        return max;
+    }
+
+
     /**
      * Returns the difference between two numbers when the arguments and the result are in log. <p/> <p/> That is, it
      * returns log(a - b) given log(a) and log(b) </p> <p/> <p/> Implementation is less efficient than add(), since
@@ -330,13 +529,13 @@ public final class LogMath implements Configurable, Serializable {
     /**
      * Converts the source, which is a number in base 10, to a log value which base is the LogBase of this LogMath.
      *
-     * @param logSource the number in base Math.E to convert
+     * @param logSource the number in base 10 to convert
      */
     public final float log10ToLog(float logSource) {
         if (logSource == logZero) {
             return logZero;
         }
-        return logToLog(logSource, 10.0f, logBase);
+        return logSource * lnTen / naturalLogBase;
     }
 
 
@@ -432,11 +631,29 @@ public final class LogMath implements Configurable, Serializable {
     }
 
 
+    /**
+     * Returns whether the log base is <code>Math.E</code>. Log values in the natural base need no conversion from the
+     * natural log that the Gaussians are computed in, so that scores of such a LogMath are never converted after the
+     * models are loaded.
+     *
+     * @return true if the log base is <code>Math.E</code>
+     */
+    public final boolean isNaturalBase() {
+        return naturalBase;
+    }
+
+
     public boolean isUseAddTable() {
         return useAddTable;
     }
 
 
+    /** @return true if the add table interpolates between the ends of its segments */
+    public boolean isInterpolateAddTable() {
+        return interpolateAddTable;
+    }
+
+
     /**
      * Returns the log (base 10) of value
      *
@@ -452,6 +669,52 @@ public final class LogMath implements Configurable, Serializable {
     }
 
 
+    /**
+     * Converts the values of a vector in place from base Math.E to the LogBase of this LogMath, like {@link
+     * #lnToLog(float)}.
+     *
+     * @param vector the values to convert
+     */
+    public void lnToLog(float[] vector) {
+        float factor = inverseNaturalLogBase;
+        for (int i = 0; i < vector.length; i++) {
+            float value = vector[i];
+            vector[i] = value == logZero ? logZero : value * factor;
+        }
+    }
+
+
+    /**
+     * Converts the values of a vector in place from base 10 to the LogBase of this LogMath, like {@link
+     * #log10ToLog(float)}.
+     *
+     * @param vector the values to convert
+     */
+    public void log10ToLog(float[] vector) {
+        float lnSourceBase = lnTen;
+        float lnResultBase = naturalLogBase;
+        for (int i = 0; i < vector.length; i++) {
+            float value = vector[i];
+            vector[i] = value == logZero ? logZero : value * lnSourceBase / lnResultBase;
+        }
+    }
+
+
+    /**
+     * Converts the values of a vector in place from the LogBase of this LogMath to base Math.E, like {@link
+     * #logToLn(float)}.
+     *
+     * @param vector the values to convert
+     */
+    public void logToLn(float[] vector) {
+        float factor = naturalLogBase;
+        for (int i = 0; i < vector.length; i++) {
+            float value = vector[i];
+            vector[i] = value == logZero ? logZero : value * factor;
+        }
+    }
+
+
     /** Converts a vector from linear domain to log domain using a given <code>LogMath</code>-instance for conversion. */
     public void linearToLog(float[] vector) {
         int nbGaussians = vector.length;
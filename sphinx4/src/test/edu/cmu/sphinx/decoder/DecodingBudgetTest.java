@@ -0,0 +1,126 @@
+package edu.cmu.sphinx.decoder;
+
+import edu.cmu.sphinx.decoder.scorer.SimpleAcousticScorer;
+import edu.cmu.sphinx.decoder.search.ActiveListFactory;
+import edu.cmu.sphinx.frontend.util.PacedInputStream;
+import edu.cmu.sphinx.frontend.util.StreamDataSource;
+import edu.cmu.sphinx.recognizer.Recognizer;
+import edu.cmu.sphinx.result.Result;
+import edu.cmu.sphinx.util.props.ConfigurationManager;
+import edu.cmu.sphinx.util.props.ConfigurationManagerUtils;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sound.sampled.AudioSystem;
+import java.io.File;
+
+/** Tests that decoding within a time budget degrades the search when it is behind and stops at the deadline. */
+public class DecodingBudgetTest {
+
+    private static final String CONFIG = "src/test/edu/cmu/sphinx/decoder/budget.config.xml";
+
+    private static final String FIRST_FILE = "src/apps/edu/cmu/sphinx/demo/lattice/10001-90210-01803.wav";
+    private static final String SECOND_FILE = "src/test/edu/cmu/sphinx/result/test/green.wav";
+
+    private ConfigurationManager cm;
+    private Recognizer recognizer;
+    private StreamDataSource source;
+
+
+    @Before
+    public void setUp() throws Exception {
+        cm = new ConfigurationManager(new File(CONFIG).toURI().toURL());
+    }
+
+
+    @After
+    public void tearDown() {
+        if (recognizer != null)
+            recognizer.deallocate();
+    }
+
+
+    @Test
+    public void testWithinBudget() throws Exception {
+        ConfigurationManagerUtils.setProperty(cm, "decoder", Decoder.PROP_TARGET_REAL_TIME_FACTOR, "1000");
+        allocate();
+        Result expected = recognize(FIRST_FILE, null);
+        Result result = recognize(FIRST_FILE, DecodingBudget.withTimeout(60000));
+
+        assertFalse(result.isDegraded());
+        assertTrue(result.isFinal());
+        assertEquals(expected.getFrameNumber(), result.getFrameNumber());
+        assertEquals(expected.getBestFinalToken().getScore(), result.getBestFinalToken().getScore(), 0);
+        assertEquals(expected.getBestResultNoFiller(), result.getBestResultNoFiller());
+    }
+
+
+    @Test
+    public void testBehindRealTime() throws Exception {
+        ConfigurationManagerUtils.setProperty(cm, "decoder", Decoder.PROP_TARGET_REAL_TIME_FACTOR, "1E-6");
+        allocate();
+        ActiveListFactory factory = (ActiveListFactory) cm.lookup("activeList");
+        SimpleAcousticScorer scorer = (SimpleAcousticScorer) cm.lookup("scorer");
+        float logRelativeBeamWidth = factory.getLogRelativeBeamWidth();
+
+        Result expected = recognize(FIRST_FILE, null);
+        Result result = recognize(FIRST_FILE, new DecodingBudget());
+
+        // the degraded search still decodes every frame, with narrower beams and skipped frames
+        assertTrue(result.isDegraded());
+        assertTrue(result.isFinal());
+        assertEquals(expected.getFrameNumber(), result.getFrameNumber());
+        assertEquals(logRelativeBeamWidth, factory.getLogRelativeBeamWidth(), 0);
+        assertEquals(1, scorer.getFrameSkip());
+    }
+
+
+    @Test
+    public void testLiveInput() throws Exception {
+        // the default target of real time, the waits for the audio are not counted as search time
+        allocate();
+        Result expected = recognize(SECOND_FILE, null);
+
+        source.setInputStream(new PacedInputStream(AudioSystem.getAudioInputStream(new File(SECOND_FILE))),
+                SECOND_FILE);
+        long startTime = System.currentTimeMillis();
+        Result result = recognizer.recognize(null, new DecodingBudget());
+
+        // the audio arrived in real time
+        assertTrue(System.currentTimeMillis() - startTime >= result.getFrameNumber() * 10 * 0.9);
+        assertFalse(result.isDegraded());
+        assertEquals(expected.getFrameNumber(), result.getFrameNumber());
+        assertEquals(expected.getBestResultNoFiller(), result.getBestResultNoFiller());
+    }
+
+
+    @Test
+    public void testDeadline() throws Exception {
+        allocate();
+        Result expected = recognize(SECOND_FILE, null);
+        Result result = recognize(FIRST_FILE, new DecodingBudget(0));
+
+        assertTrue(result.isDegraded());
+        assertTrue(result.isFinal());
+        assertEquals(10, result.getFrameNumber());
+
+        // the rest of the stopped utterance is discarded, the next one is decoded as usual
+        Result next = recognize(SECOND_FILE, DecodingBudget.withTimeout(60000));
+        assertEquals(expected.getFrameNumber(), next.getFrameNumber());
+    }
+
+
+    private void allocate() {
+        recognizer = (Recognizer) cm.lookup("recognizer");
+        source = (StreamDataSource) cm.lookup("streamDataSource");
+        recognizer.allocate();
+    }
+
+
+    private Result recognize(String file, DecodingBudget budget) throws Exception {
+        source.setInputStream(AudioSystem.getAudioInputStream(new File(file)), file);
+        return budget == null ? recognizer.recognize() : recognizer.recognize(null, budget);
+    }
+}
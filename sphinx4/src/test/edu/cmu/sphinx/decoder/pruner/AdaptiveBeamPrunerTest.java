@@ -0,0 +1,147 @@
+package edu.cmu.sphinx.decoder.pruner;
+
+import edu.cmu.sphinx.frontend.feature.LiveCMN;
+import edu.cmu.sphinx.frontend.util.PacedInputStream;
+import edu.cmu.sphinx.frontend.util.StreamDataSource;
+import edu.cmu.sphinx.recognizer.Recognizer;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.props.ConfigurationManager;
+import edu.cmu.sphinx.util.props.ConfigurationManagerUtils;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import javax.sound.sampled.AudioSystem;
+import java.io.File;
+import java.util.*;
+
+/** Tests that the adaptive beam pruner steers the number of active tokens towards its target. */
+public class AdaptiveBeamPrunerTest {
+
+    private static final String CONFIG = "src/test/edu/cmu/sphinx/tools/batch/test/parallel.config.xml";
+
+    private static final String[] AUDIO_FILES = {
+            "src/test/edu/cmu/sphinx/result/test/left.wav",
+            "src/test/edu/cmu/sphinx/result/test/green.wav",
+            "src/apps/edu/cmu/sphinx/demo/lattice/10001-90210-01803.wav"};
+
+
+    @Test
+    public void testNarrowsToTarget() throws Exception {
+        List<List<AdaptiveBeamPruner.BeamWidths>> fixed = decode(50, 1000);
+        List<List<AdaptiveBeamPruner.BeamWidths>> adapted = decode(50, 0.2);
+        for (int i = 0; i < AUDIO_FILES.length; i++) {
+            assertTrue(mean(fixed.get(i)) > 100);
+            assertEquals(50, mean(adapted.get(i)), 25);
+        }
+    }
+
+
+    @Test
+    public void testWidensToTarget() throws Exception {
+        List<List<AdaptiveBeamPruner.BeamWidths>> fixed = decode(5000, 1000);
+        List<List<AdaptiveBeamPruner.BeamWidths>> adapted = decode(5000, 0.2);
+        for (int i = 0; i < AUDIO_FILES.length; i++)
+            assertTrue(mean(adapted.get(i)) > 2 * mean(fixed.get(i)));
+    }
+
+
+    @Test
+    public void testBeamLimits() throws Exception {
+        LogMath logMath = new LogMath(1.0001f, true);
+        float narrowest = logMath.linearToLog(1E-30);
+        float widest = logMath.linearToLog(1E-200);
+        float initial = logMath.linearToLog(1E-80);
+        for (int target : new int[]{1, 100000}) {
+            for (List<AdaptiveBeamPruner.BeamWidths> trajectory : decode(target, 0.2)) {
+                // every utterance starts with the configured beam
+                assertEquals(initial, trajectory.get(0).getLogRelativeBeamWidth(0), Math.abs(initial) * 0.21);
+                for (AdaptiveBeamPruner.BeamWidths beams : trajectory) {
+                    assertEquals(-1, beams.getAbsoluteBeamWidth(0));
+                    assertTrue(beams.getLogRelativeBeamWidth(0) <= narrowest);
+                    assertTrue(beams.getLogRelativeBeamWidth(0) >= widest);
+                }
+                float last = trajectory.get(trajectory.size() - 1).getLogRelativeBeamWidth(0);
+                assertEquals(target == 1 ? narrowest : widest, last, 1);
+            }
+        }
+    }
+
+
+    @Test
+    public void testLiveInput() throws Exception {
+        // the search is faster than the target, the waits for the audio are not counted
+        LogMath logMath = new LogMath(1.0001f, true);
+        float initial = logMath.linearToLog(1E-80);
+        List<AdaptiveBeamPruner.BeamWidths> trajectory = decodeLive(0.5);
+        assertFalse(trajectory.isEmpty());
+        for (AdaptiveBeamPruner.BeamWidths beams : trajectory)
+            assertTrue(beams.getLogRelativeBeamWidth(0) <= initial * 0.999f);
+    }
+
+
+    private static double mean(List<AdaptiveBeamPruner.BeamWidths> trajectory) {
+        double sum = 0;
+        for (AdaptiveBeamPruner.BeamWidths beams : trajectory)
+            sum += beams.getActiveTokens();
+        return sum / trajectory.size();
+    }
+
+
+    /** Decodes the audio files with the adaptive pruner and returns the beam trajectories. */
+    private static List<List<AdaptiveBeamPruner.BeamWidths>> decode(int targetActiveTokens, double hysteresis)
+            throws Exception {
+        ConfigurationManager cm = new ConfigurationManager(new File(CONFIG).toURI().toURL());
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(AdaptiveBeamPruner.PROP_ACTIVE_LIST_FACTORIES, Arrays.asList("activeList"));
+        props.put(AdaptiveBeamPruner.PROP_TARGET_ACTIVE_TOKENS, targetActiveTokens);
+        props.put(AdaptiveBeamPruner.PROP_HYSTERESIS, hysteresis);
+        props.put(AdaptiveBeamPruner.PROP_LOG_MATH, "logMath");
+        cm.addConfigurable(AdaptiveBeamPruner.class, "adaptivePruner", props);
+        ConfigurationManagerUtils.setProperty(cm, "searchManager", "pruner", "adaptivePruner");
+
+        Recognizer recognizer = (Recognizer) cm.lookup("recognizer");
+        StreamDataSource source = (StreamDataSource) cm.lookup("streamDataSource");
+        AdaptiveBeamPruner pruner = (AdaptiveBeamPruner) cm.lookup("adaptivePruner");
+        recognizer.allocate();
+        List<List<AdaptiveBeamPruner.BeamWidths>> trajectories = new ArrayList<List<AdaptiveBeamPruner.BeamWidths>>();
+        for (String file : AUDIO_FILES) {
+            source.setInputStream(AudioSystem.getAudioInputStream(new File(file)), file);
+            recognizer.recognize();
+            trajectories.add(new ArrayList<AdaptiveBeamPruner.BeamWidths>(pruner.getTrajectory()));
+        }
+        recognizer.deallocate();
+        return trajectories;
+    }
+
+
+    /**
+     * Decodes audio that arrives in real time with the adaptive pruner aiming at a real time factor and returns the
+     * beam trajectory.
+     */
+    private static List<AdaptiveBeamPruner.BeamWidths> decodeLive(double targetRealTimeFactor) throws Exception {
+        ConfigurationManager cm = new ConfigurationManager(new File(CONFIG).toURI().toURL());
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(AdaptiveBeamPruner.PROP_ACTIVE_LIST_FACTORIES, Arrays.asList("activeList"));
+        props.put(AdaptiveBeamPruner.PROP_TARGET_REAL_TIME_FACTOR, targetRealTimeFactor);
+        props.put(AdaptiveBeamPruner.PROP_SCORER, "scorer");
+        props.put(AdaptiveBeamPruner.PROP_LOG_MATH, "logMath");
+        cm.addConfigurable(AdaptiveBeamPruner.class, "adaptivePruner", props);
+        ConfigurationManagerUtils.setProperty(cm, "searchManager", "pruner", "adaptivePruner");
+        // normalize the cepstra live, so features are produced while the audio arrives
+        cm.addConfigurable(LiveCMN.class, "liveCMN");
+        ConfigurationManagerUtils.setProperty(cm, "frontEnd", "pipeline",
+                "streamDataSource;preemphasizer;windower;fft;melFilterBank;dct;liveCMN;featureExtraction");
+
+        Recognizer recognizer = (Recognizer) cm.lookup("recognizer");
+        StreamDataSource source = (StreamDataSource) cm.lookup("streamDataSource");
+        AdaptiveBeamPruner pruner = (AdaptiveBeamPruner) cm.lookup("adaptivePruner");
+        recognizer.allocate();
+        source.setInputStream(new PacedInputStream(AudioSystem.getAudioInputStream(new File(AUDIO_FILES[1]))),
+                AUDIO_FILES[1]);
+        recognizer.recognize();
+        List<AdaptiveBeamPruner.BeamWidths> trajectory =
+                new ArrayList<AdaptiveBeamPruner.BeamWidths>(pruner.getTrajectory());
+        recognizer.deallocate();
+        return trajectory;
+    }
+}
@@ -0,0 +1,84 @@
+package edu.cmu.sphinx.decoder.scorer;
+
+import edu.cmu.sphinx.frontend.util.StreamDataSource;
+import edu.cmu.sphinx.recognizer.Recognizer;
+import edu.cmu.sphinx.result.Result;
+import edu.cmu.sphinx.util.props.ConfigurationManager;
+import edu.cmu.sphinx.util.props.ConfigurationManagerUtils;
+import edu.cmu.sphinx.util.props.PropertyException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import javax.sound.sampled.AudioSystem;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Tests that a decoder that skips the scoring of frames keeps the time base and about the path scores. */
+public class FrameSkipTest {
+
+    private static final String CONFIG = "src/test/edu/cmu/sphinx/tools/batch/test/parallel.config.xml";
+
+    private static final String[] AUDIO_FILES = {
+            "src/test/edu/cmu/sphinx/result/test/left.wav",
+            "src/test/edu/cmu/sphinx/result/test/green.wav",
+            "src/apps/edu/cmu/sphinx/demo/lattice/10001-90210-01803.wav"};
+
+
+    @Test
+    public void testSkippedFrames() throws Exception {
+        List<Result> results = decode(1, false);
+        for (boolean interpolate : new boolean[]{false, true}) {
+            List<Result> skippedResults = decode(2, interpolate);
+            for (int i = 0; i < AUDIO_FILES.length; i++) {
+                Result result = results.get(i);
+                Result skippedResult = skippedResults.get(i);
+                // every frame is still decoded, with scores close to those of the scored frames
+                assertEquals(result.getFrameNumber(), skippedResult.getFrameNumber());
+                float score = result.getBestFinalToken().getScore();
+                assertEquals(score, skippedResult.getBestFinalToken().getScore(), Math.abs(score) * 0.03);
+            }
+        }
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroFrameSkip() {
+        new SimpleAcousticScorer(null, null, null, false, 0, false);
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetZeroFrameSkip() {
+        new SimpleAcousticScorer().setFrameSkip(0);
+    }
+
+
+    @Test(expected = PropertyException.class)
+    public void testConfiguredZeroFrameSkip() throws Exception {
+        ConfigurationManager cm = new ConfigurationManager(new File(CONFIG).toURI().toURL());
+        ConfigurationManagerUtils.setProperty(cm, "scorer", SimpleAcousticScorer.PROP_FRAME_SKIP, "0");
+        cm.lookup("scorer");
+    }
+
+
+    /** Decodes the audio files, scoring every frameSkip-th frame. */
+    private static List<Result> decode(int frameSkip, boolean interpolate) throws Exception {
+        ConfigurationManager cm = new ConfigurationManager(new File(CONFIG).toURI().toURL());
+        ConfigurationManagerUtils.setProperty(cm, "scorer", SimpleAcousticScorer.PROP_FRAME_SKIP,
+                String.valueOf(frameSkip));
+        ConfigurationManagerUtils.setProperty(cm, "scorer", SimpleAcousticScorer.PROP_INTERPOLATE_SKIPPED_FRAMES,
+                String.valueOf(interpolate));
+
+        Recognizer recognizer = (Recognizer) cm.lookup("recognizer");
+        StreamDataSource source = (StreamDataSource) cm.lookup("streamDataSource");
+        recognizer.allocate();
+        List<Result> results = new ArrayList<Result>();
+        for (String file : AUDIO_FILES) {
+            source.setInputStream(AudioSystem.getAudioInputStream(new File(file)), file);
+            results.add(recognizer.recognize());
+        }
+        recognizer.deallocate();
+        return results;
+    }
+}
@@ -0,0 +1,107 @@
+package edu.cmu.sphinx.decoder.search;
+
+import edu.cmu.sphinx.decoder.ResultListener;
+import edu.cmu.sphinx.frontend.util.StreamDataSource;
+import edu.cmu.sphinx.recognizer.Recognizer;
+import edu.cmu.sphinx.result.Result;
+import edu.cmu.sphinx.util.props.ConfigurationManager;
+import edu.cmu.sphinx.util.props.ConfigurationManagerUtils;
+import edu.cmu.sphinx.util.props.PropertySheet;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import javax.sound.sampled.AudioSystem;
+import java.io.File;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests that committing the shared history while decoding a long stream gives the same hypotheses as decoding it
+ * with the full history.
+ */
+public class CommitHistoryTest {
+
+    private static final String CONFIG = "src/test/edu/cmu/sphinx/decoder/search/commit.config.xml";
+    private static final String FILE = "src/apps/edu/cmu/sphinx/demo/lattice/10001-90210-01803.wav";
+    private static final int REPEATS = 4;
+    private static final int COMMIT_INTERVAL = 20;
+
+
+    @Test
+    public void testCommitHistory() throws Exception {
+        List<String> expected = decode(0, -1);
+        List<String> actual = decode(COMMIT_INTERVAL, -1);
+
+        assertTrue(words(expected.get(expected.size() - 1)).size() > 10);
+        assertEquals(expected, actual);
+    }
+
+
+    @Test
+    public void testMaxCommittedWords() throws Exception {
+        List<String> expected = decode(0, -1);
+        List<String> actual = decode(COMMIT_INTERVAL, 3);
+
+        // the dropped words are the oldest ones, the recent words of every hypothesis are kept
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            List<String> expectedWords = words(expected.get(i));
+            List<String> actualWords = words(actual.get(i));
+            assertTrue(actualWords.size() <= expectedWords.size());
+            assertEquals(expectedWords.subList(expectedWords.size() - actualWords.size(), expectedWords.size()),
+                    actualWords);
+        }
+        String last = actual.get(actual.size() - 1);
+        assertTrue(words(last).size() < words(expected.get(expected.size() - 1)).size());
+    }
+
+
+    /**
+     * Decodes the repeated test file as a single utterance.
+     *
+     * @return the hypotheses of all partial results followed by that of the final result
+     */
+    private static List<String> decode(int commitInterval, int maxCommittedWords) throws Exception {
+        ConfigurationManager cm = new ConfigurationManager(new File(CONFIG).toURI().toURL());
+        ConfigurationManagerUtils.setProperty(cm, "searchManager",
+                WordPruningBreadthFirstSearchManager.PROP_COMMIT_INTERVAL, String.valueOf(commitInterval));
+        ConfigurationManagerUtils.setProperty(cm, "searchManager",
+                WordPruningBreadthFirstSearchManager.PROP_MAX_COMMITTED_WORDS, String.valueOf(maxCommittedWords));
+        Recognizer recognizer = (Recognizer) cm.lookup("recognizer");
+        StreamDataSource source = (StreamDataSource) cm.lookup("streamDataSource");
+        recognizer.allocate();
+
+        final List<String> hypotheses = new ArrayList<String>();
+        recognizer.addResultListener(new ResultListener() {
+            public void newResult(Result result) {
+                hypotheses.add(result.getBestResultNoFiller());
+            }
+
+            public void newProperties(PropertySheet ps) {
+            }
+        });
+
+        List<InputStream> streams = new ArrayList<InputStream>();
+        for (int i = 0; i < REPEATS; i++)
+            streams.add(AudioSystem.getAudioInputStream(new File(FILE)));
+        source.setInputStream(new SequenceInputStream(Collections.enumeration(streams)), FILE);
+        try {
+            assertTrue(recognizer.recognize().isFinal());
+        } finally {
+            recognizer.deallocate();
+        }
+        return hypotheses;
+    }
+
+
+    private static List<String> words(String hypothesis) {
+        List<String> words = new ArrayList<String>();
+        for (String word : hypothesis.split(" "))
+            if (word.length() > 0)
+                words.add(word);
+        return words;
+    }
+}
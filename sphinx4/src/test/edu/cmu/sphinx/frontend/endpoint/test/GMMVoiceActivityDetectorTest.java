@@ -0,0 +1,138 @@
+package edu.cmu.sphinx.frontend.endpoint.test;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.frontend.endpoint.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.net.URL;
+import java.util.*;
+
+/** Tests that the model based voice activity detector rejects loud noise but keeps speech. */
+public class GMMVoiceActivityDetectorTest {
+
+    private static final String[] TRAIN_FILES = {
+            "src/test/edu/cmu/sphinx/result/test/left.wav",
+            "src/test/edu/cmu/sphinx/result/test/green.wav"};
+
+    private static final String TEST_FILE = "src/apps/edu/cmu/sphinx/demo/lattice/10001-90210-01803.wav";
+
+
+    @Test
+    public void testRejectsNoise() throws Exception {
+        VoiceActivityModel model = train();
+        List<DoubleData> noise = createNoise(new Random(7));
+
+        boolean[] energy = classify(new SpeechClassifier(10, 0.003, 10, 0), noise);
+        boolean[] gmm = classify(new GMMVoiceActivityDetector(model, 0, 10), noise);
+        assertTrue(count(energy) > noise.size() / 3);
+        assertTrue(count(gmm) < count(energy) / 10);
+    }
+
+
+    @Test
+    public void testKeepsSpeech() throws Exception {
+        VoiceActivityModel model = train();
+        List<DoubleData> speech = VoiceActivityModel.readBlocks(new File(TEST_FILE));
+
+        boolean[] energy = classify(new SpeechClassifier(10, 0.003, 10, 0), speech);
+        boolean[] gmm = classify(new GMMVoiceActivityDetector(model, 0, 10), speech);
+        int kept = 0;
+        for (int i = 0; i < energy.length; i++) {
+            if (energy[i] && gmm[i])
+                kept++;
+        }
+        assertTrue(count(energy) > 0);
+        assertTrue(kept > count(energy) * 0.8);
+    }
+
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        VoiceActivityModel model = train();
+        StringWriter writer = new StringWriter();
+        model.save(writer);
+        File file = File.createTempFile("vad", ".txt");
+        file.deleteOnExit();
+        java.io.FileWriter out = new java.io.FileWriter(file);
+        out.write(writer.toString());
+        out.close();
+        VoiceActivityModel loaded = VoiceActivityModel.load(file.toURI().toURL());
+
+        assertArrayEquals(model.getClassNames(), loaded.getClassNames());
+        VoiceActivityModel.FeatureExtractor extractor = new VoiceActivityModel.FeatureExtractor();
+        double[] feature = new double[VoiceActivityModel.FEATURES];
+        for (DoubleData block : VoiceActivityModel.readBlocks(new File(TEST_FILE))) {
+            extractor.compute(block.getValues(), feature);
+            assertEquals(model.getSpeechLogLikelihoodRatio(feature), loaded.getSpeechLogLikelihoodRatio(feature),
+                    1e-6);
+        }
+    }
+
+
+    @Test(expected = java.io.IOException.class)
+    public void testBadModel() throws Exception {
+        File file = File.createTempFile("vad", ".txt");
+        file.deleteOnExit();
+        java.io.FileWriter out = new java.io.FileWriter(file);
+        out.write("class speech speech 2\n1 0 0 0 1 1 1\n");
+        out.close();
+        VoiceActivityModel.load(new URL(file.toURI().toString()));
+    }
+
+
+    private static VoiceActivityModel train() throws Exception {
+        VoiceActivityModel.Trainer trainer = new VoiceActivityModel.Trainer(4, 20);
+        for (String file : TRAIN_FILES)
+            trainer.addSpeech(VoiceActivityModel.readBlocks(new File(file)));
+        trainer.addNoise(createNoise(new Random(42)));
+        return trainer.train();
+    }
+
+
+    /** @return blocks of 10 ms of a quiet background with bursts of loud white noise */
+    private static List<DoubleData> createNoise(Random random) {
+        List<DoubleData> blocks = new ArrayList<DoubleData>();
+        long sampleNumber = 0;
+        for (int burst = 0; burst < 10; burst++) {
+            double amplitude = 500 + random.nextInt(5000);
+            for (int block = 0; block < 80; block++) {
+                double[] samples = new double[160];
+                boolean loud = block >= 30 && block < 30 + 20 + burst * 3;
+                for (int i = 0; i < samples.length; i++)
+                    samples[i] = random.nextGaussian() * (loud ? amplitude : 10);
+                blocks.add(new DoubleData(samples, 16000, sampleNumber / 16, sampleNumber));
+                sampleNumber += samples.length;
+            }
+        }
+        return blocks;
+    }
+
+
+    private static boolean[] classify(AbstractVoiceActivityDetector detector, final List<DoubleData> blocks) {
+        detector.setPredecessor(new BaseDataProcessor() {
+            Iterator<DoubleData> iterator = blocks.iterator();
+
+            @Override
+            public Data getData() {
+                return iterator.hasNext() ? iterator.next() : null;
+            }
+        });
+        boolean[] speech = new boolean[blocks.size()];
+        for (int i = 0; i < speech.length; i++)
+            speech[i] = ((SpeechClassifiedData) detector.getData()).isSpeech();
+        return speech;
+    }
+
+
+    private static int count(boolean[] speech) {
+        int count = 0;
+        for (boolean isSpeech : speech) {
+            if (isSpeech)
+                count++;
+        }
+        return count;
+    }
+}
@@ -4,15 +4,20 @@ import edu.cmu.sphinx.frontend.Data;
 import edu.cmu.sphinx.frontend.DataEndSignal;
 import edu.cmu.sphinx.frontend.DataProcessingException;
 import edu.cmu.sphinx.frontend.DataStartSignal;
+import edu.cmu.sphinx.frontend.DoubleData;
 import edu.cmu.sphinx.frontend.endpoint.NonSpeechDataFilter;
 import edu.cmu.sphinx.frontend.endpoint.SpeechEndSignal;
 import edu.cmu.sphinx.frontend.endpoint.SpeechStartSignal;
 import edu.cmu.sphinx.frontend.test.AbstractTestProcessor;
+import edu.cmu.sphinx.frontend.window.RaisedCosineWindower;
 import edu.cmu.sphinx.util.props.ConfigurationManager;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Some tests to ensure that the NonSpeechDataFilter filters non-speech in the specified manner.
@@ -84,6 +89,98 @@ public class NonSpeechDataFilterTest extends AbstractTestProcessor {
     }
 
 
+    @Test
+    public void testMultipleSpeechRegionWithMerging() throws DataProcessingException {
+        int sampleRate = 1000;
+
+        input.add(new DataStartSignal(sampleRate, true));
+
+        input.addAll(createFeatVectors(0.1, sampleRate, 0, 10, 10));
+
+        input.add(new SpeechStartSignal(-1));
+        input.addAll(createFeatVectors(0.1, sampleRate, 100, 10, 10));
+        input.add(new SpeechEndSignal(-1));
+
+        input.addAll(createFeatVectors(0.1, sampleRate, 200, 10, 10));
+
+        input.add(new SpeechStartSignal(-1));
+        input.addAll(createFeatVectors(0.1, sampleRate, 300, 10, 10));
+        input.add(new SpeechEndSignal(-1));
+
+        input.addAll(createFeatVectors(0.1, sampleRate, 400, 10, 10));
+
+        input.add(new DataEndSignal(0));
+
+        List<Data> result = collectOutput(createMergingFilter());
+
+        // the speech of both regions forms one utterance of a stream without speech signals
+        assertTrue(result.size() == 22);
+        assertTrue(result.get(0) instanceof DataStartSignal);
+        assertFalse(((DataStartSignal) result.get(0)).getProps().containsKey(
+                DataStartSignal.SPEECH_TAGGED_FEATURE_STREAM));
+        for (int i = 1; i <= 20; i++) {
+            assertTrue(result.get(i) instanceof DoubleData);
+        }
+        assertTrue(((DoubleData) result.get(10)).getFirstSampleNumber() == 190);
+        assertTrue(((DoubleData) result.get(11)).getFirstSampleNumber() == 300);
+        assertTrue(result.get(21) instanceof DataEndSignal);
+    }
+
+
+    @Test
+    public void testWindowsDoNotSpanMergedGaps() throws DataProcessingException {
+        int sampleRate = 16000;
+
+        // blocks of 10 ms, speech from 0.5 s to 1 s and from 2 s to 2.5 s
+        input.add(new DataStartSignal(sampleRate, true));
+        input.addAll(createFeatVectors(0.5, sampleRate, 0, 160, 10));
+        input.add(new SpeechStartSignal(-1));
+        input.addAll(createFeatVectors(0.5, sampleRate, 8000, 160, 10));
+        input.add(new SpeechEndSignal(-1));
+        input.addAll(createFeatVectors(1, sampleRate, 16000, 160, 10));
+        input.add(new SpeechStartSignal(-1));
+        input.addAll(createFeatVectors(0.5, sampleRate, 32000, 160, 10));
+        input.add(new SpeechEndSignal(-1));
+        input.add(new DataEndSignal(0));
+
+        NonSpeechDataFilter filter = createMergingFilter();
+        filter.setPredecessor(this);
+        RaisedCosineWindower windower = new RaisedCosineWindower(0.46, 25.625f, 10f);
+        windower.initialize();
+        List<Data> windows = collectOutput(windower, filter);
+
+        int count = 0;
+        for (Data data : windows) {
+            if (data instanceof DoubleData) {
+                long first = ((DoubleData) data).getFirstSampleNumber();
+                // the windows start within the speech and restart at the second region
+                assertTrue(String.valueOf(first), (first >= 8000 && first < 16000) || (first >= 32000 && first < 40000));
+                count++;
+            }
+        }
+        // 48 full windows of the 8000 samples of each region, and a padded window of the samples at its end
+        assertTrue(String.valueOf(count), count == 2 * 49);
+    }
+
+
+    private static NonSpeechDataFilter createMergingFilter() {
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(NonSpeechDataFilter.PROP_MERGE_SPEECH_SEGMENTS, true);
+        return ConfigurationManager.getInstance(NonSpeechDataFilter.class, props);
+    }
+
+
+    private static List<Data> collectOutput(RaisedCosineWindower windower, NonSpeechDataFilter filter) {
+        windower.setPredecessor(filter);
+        List<Data> output = new java.util.ArrayList<Data>();
+        Data d;
+        while ((d = windower.getData()) != null) {
+            output.add(d);
+        }
+        return output;
+    }
+
+
     @Test
     public void testMultipleEmptyAndNonemptySegments() throws DataProcessingException {
         int sampleRate = 1000;
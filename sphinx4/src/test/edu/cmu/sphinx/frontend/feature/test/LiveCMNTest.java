@@ -0,0 +1,53 @@
+package edu.cmu.sphinx.frontend.feature.test;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.frontend.endpoint.SpeechEndSignal;
+import edu.cmu.sphinx.frontend.endpoint.SpeechStartSignal;
+import edu.cmu.sphinx.frontend.feature.LiveCMN;
+import edu.cmu.sphinx.frontend.test.AbstractTestProcessor;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+import java.util.List;
+
+/** Tests when the LiveCMN recalculates its mean within a stream of several speech segments. */
+public class LiveCMNTest extends AbstractTestProcessor {
+
+    private static final int SAMPLE_RATE = 16000;
+
+
+    @Test
+    public void testKeepMeanAtSpeechEnd() throws DataProcessingException {
+        // the shifting window is not full, so the second segment is still normalized with the initial mean
+        assertEquals(-12.0, normalizeSecondSegment(new LiveCMN(12.0, 100, 160)), 1e-9);
+    }
+
+
+    @Test
+    public void testUpdateMeanAtSpeechEnd() throws DataProcessingException {
+        // the second segment is normalized with the mean of the first one
+        assertEquals(-20.0, normalizeSecondSegment(new LiveCMN(12.0, 100, 160, true)), 1e-9);
+    }
+
+
+    /**
+     * Normalizes a segment of ten frames with a first cepstral coefficient of 20, followed by a segment with one frame
+     * of zeros.
+     *
+     * @return the first normalized coefficient of the second segment
+     */
+    private double normalizeSecondSegment(LiveCMN cmn) throws DataProcessingException {
+        input.add(new DataStartSignal(SAMPLE_RATE));
+        input.add(new SpeechStartSignal());
+        for (int i = 0; i < 10; i++)
+            input.add(new DoubleData(new double[]{20, 1, 2}, SAMPLE_RATE, 0, i * 160));
+        input.add(new SpeechEndSignal());
+        input.add(new SpeechStartSignal());
+        input.add(new DoubleData(new double[]{0, 0, 0}, SAMPLE_RATE, 0, 4000));
+        input.add(new SpeechEndSignal());
+        input.add(new DataEndSignal(0));
+
+        List<Data> output = collectOutput(cmn);
+        return ((DoubleData) output.get(output.size() - 3)).getValues()[0];
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 1999-2004 Carnegie Mellon University.
+ * Portions Copyright 2004 Sun Microsystems, Inc.
+ * Portions Copyright 2004 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.frontend.test;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.frontend.feature.LiveCMN;
+import edu.cmu.sphinx.frontend.filter.Preemphasizer;
+import edu.cmu.sphinx.frontend.frequencywarp.MelFrequencyFilterBank;
+import edu.cmu.sphinx.frontend.transform.DiscreteCosineTransform;
+import edu.cmu.sphinx.frontend.transform.DiscreteFourierTransform;
+import edu.cmu.sphinx.frontend.util.StreamDataSource;
+import edu.cmu.sphinx.frontend.window.RaisedCosineWindower;
+import edu.cmu.sphinx.util.props.ConfigurationManager;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import javax.sound.sampled.AudioSystem;
+import java.io.File;
+import java.util.*;
+
+/** Tests that every channel of a multi-channel front end gives the cepstra of a front end of its own. */
+public class MultiChannelFrontEndTest {
+
+    private static final String[] AUDIO_FILES = {
+            "src/test/edu/cmu/sphinx/result/test/left.wav",
+            "src/test/edu/cmu/sphinx/result/test/green.wav"};
+
+
+    @Test
+    public void testSameCepstraAsFrontEnd() throws Exception {
+        List<List<DataProcessor>> transformChains = new ArrayList<List<DataProcessor>>();
+        for (int i = 0; i < 2; i++) {
+            transformChains.add(Arrays.<DataProcessor>asList(new DiscreteFourierTransform(-1, false),
+                    new MelFrequencyFilterBank(130, 6800, 40), new DiscreteCosineTransform(40, 13)));
+        }
+        MultiChannelFrontEnd frontEnd = new MultiChannelFrontEnd(5, transformChains, 3, 0.97, 0.46, 25.625f, 10f,
+                12.0, 100, 160);
+        checkChannels(frontEnd);
+        frontEnd.shutdown();
+    }
+
+
+    @Test
+    public void testConfiguredTransforms() throws Exception {
+        ConfigurationManager cm = new ConfigurationManager();
+        cm.addConfigurable(DiscreteFourierTransform.class, "fft");
+        cm.addConfigurable(MelFrequencyFilterBank.class, "melFilterBank");
+        cm.addConfigurable(DiscreteCosineTransform.class, "dct");
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(MultiChannelFrontEnd.PROP_CHANNELS, 5);
+        props.put(MultiChannelFrontEnd.PROP_THREADS, 3);
+        props.put(MultiChannelFrontEnd.PROP_BATCH_SIZE, 2);
+        props.put(MultiChannelFrontEnd.PROP_TRANSFORMS, Arrays.asList("fft", "melFilterBank", "dct"));
+        cm.addConfigurable(MultiChannelFrontEnd.class, "multiChannelFrontEnd", props);
+
+        MultiChannelFrontEnd frontEnd = (MultiChannelFrontEnd) cm.lookup("multiChannelFrontEnd");
+        assertEquals(5, frontEnd.getChannelCount());
+        checkChannels(frontEnd);
+        frontEnd.shutdown();
+    }
+
+
+    /** Feeds the audio files into all channels at once, and compares the cepstra with those of a front end. */
+    private static void checkChannels(MultiChannelFrontEnd frontEnd) throws Exception {
+        List<List<Data>> audio = new ArrayList<List<Data>>();
+        List<List<Data>> expected = new ArrayList<List<Data>>();
+        for (String file : AUDIO_FILES) {
+            audio.add(read(file));
+            expected.add(process(read(file)));
+        }
+
+        // interleave the blocks of the channels, as they arrive from many calls
+        int channels = frontEnd.getChannelCount();
+        for (int block = 0; ; block++) {
+            boolean written = false;
+            for (int i = 0; i < channels; i++) {
+                List<Data> blocks = audio.get(i % audio.size());
+                if (block < blocks.size()) {
+                    frontEnd.getChannel(i).write(copy(blocks.get(block)));
+                    written = true;
+                }
+            }
+            if (!written)
+                break;
+        }
+
+        for (int i = 0; i < channels; i++) {
+            List<Data> cepstra = expected.get(i % expected.size());
+            DataProcessor channel = frontEnd.getChannel(i);
+            for (Data cepstrum : cepstra) {
+                Data data = channel.getData();
+                assertEquals(cepstrum.getClass(), data.getClass());
+                if (cepstrum instanceof DoubleData) {
+                    DoubleData expectedData = (DoubleData) cepstrum;
+                    DoubleData actualData = (DoubleData) data;
+                    assertEquals(expectedData.getFirstSampleNumber(), actualData.getFirstSampleNumber());
+                    assertArrayEquals(expectedData.getValues(), actualData.getValues(), 1e-9);
+                }
+            }
+        }
+    }
+
+
+    /** @return the audio blocks of a file */
+    private static List<Data> read(String file) throws Exception {
+        StreamDataSource source = new StreamDataSource(16000, 3200, 16, true, true);
+        source.initialize();
+        source.setInputStream(AudioSystem.getAudioInputStream(new File(file)), file);
+        List<Data> blocks = new ArrayList<Data>();
+        Data data;
+        do {
+            data = source.getData();
+            blocks.add(data);
+        } while (!(data instanceof DataEndSignal));
+        return blocks;
+    }
+
+
+    /** @return the cepstra of a front end of its own */
+    private static List<Data> process(final List<Data> blocks) {
+        DataProcessor source = new BaseDataProcessor() {
+            @Override
+            public Data getData() {
+                return blocks.isEmpty() ? null : blocks.remove(0);
+            }
+        };
+        FrontEnd frontEnd = new FrontEnd(Arrays.<DataProcessor>asList(source, new Preemphasizer(0.97),
+                new RaisedCosineWindower(0.46, 25.625f, 10f), new DiscreteFourierTransform(-1, false),
+                new MelFrequencyFilterBank(130, 6800, 40), new DiscreteCosineTransform(40, 13),
+                new LiveCMN(12.0, 100, 160)));
+        List<Data> cepstra = new ArrayList<Data>();
+        Data data;
+        while ((data = frontEnd.getData()) != null)
+            cepstra.add(data);
+        return cepstra;
+    }
+
+
+    private static Data copy(Data data) {
+        if (data instanceof DoubleData) {
+            DoubleData values = (DoubleData) data;
+            return new DoubleData(values.getValues().clone(), values.getSampleRate(), values.getCollectTime(),
+                    values.getFirstSampleNumber());
+        }
+        return data;
+    }
+}
@@ -0,0 +1,65 @@
+package edu.cmu.sphinx.frontend.util;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that delivers the bytes of another stream no faster than live audio would arrive. A read blocks
+ * until the requested bytes would have been recorded since the first read, so a decoder that reads from it waits for
+ * its input like one that listens to a microphone.
+ */
+public class PacedInputStream extends FilterInputStream {
+
+    private final float bytesPerSecond;
+    private long startTime;
+    private long position;
+
+
+    /**
+     * @param in             the stream to deliver
+     * @param bytesPerSecond the rate at which the bytes arrive
+     */
+    public PacedInputStream(InputStream in, float bytesPerSecond) {
+        super(in);
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+
+    /** @param audio the audio to deliver in real time */
+    public PacedInputStream(AudioInputStream audio) {
+        this(audio, bytesPerSecond(audio.getFormat()));
+    }
+
+
+    private static float bytesPerSecond(AudioFormat format) {
+        return format.getFrameRate() * format.getFrameSize();
+    }
+
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (startTime == 0)
+            startTime = System.currentTimeMillis();
+        long due = startTime + (long) ((position + len) * 1000 / bytesPerSecond);
+        try {
+            for (long wait; (wait = due - System.currentTimeMillis()) > 0;)
+                Thread.sleep(wait);
+        } catch (InterruptedException e) {
+            throw new IOException(e.toString());
+        }
+        int n = super.read(b, off, len);
+        if (n > 0)
+            position += n;
+        return n;
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 1999-2004 Carnegie Mellon University.
+ * Portions Copyright 2004 Sun Microsystems, Inc.
+ * Portions Copyright 2004 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.jsgf.test;
+
+import edu.cmu.sphinx.jsgf.JSGFGrammar;
+import edu.cmu.sphinx.jsgf.parser.JSGFParser;
+import edu.cmu.sphinx.linguist.Linguist;
+import edu.cmu.sphinx.linguist.SearchState;
+import edu.cmu.sphinx.linguist.SearchStateArc;
+import edu.cmu.sphinx.linguist.acoustic.AcousticModel;
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Sphinx3Loader;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.TiedStateAcousticModel;
+import edu.cmu.sphinx.linguist.dflat.DynamicFlatLinguist;
+import edu.cmu.sphinx.linguist.dictionary.Dictionary;
+import edu.cmu.sphinx.linguist.dictionary.FastDictionary;
+import edu.cmu.sphinx.linguist.flat.FlatLinguist;
+import edu.cmu.sphinx.linguist.language.grammar.GrammarNode;
+import edu.cmu.sphinx.linguist.util.SearchGraphCache;
+import edu.cmu.sphinx.util.LogMath;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.util.*;
+
+/**
+ * Tests that an incremental commit of a changed rule gives the same grammar and search graphs as loading the changed
+ * grammar from scratch.
+ */
+public class IncrementalCommitTest {
+
+    private static final String CHANGED_DIGIT = "one | two | three | two one";
+
+    private LogMath logMath;
+    private UnitManager unitManager;
+    private Dictionary dictionary;
+    private AcousticModel acousticModel;
+
+
+    @Before
+    public void setUp() throws Exception {
+        logMath = new LogMath(1.0001f, true);
+        unitManager = new UnitManager();
+        dictionary = new FastDictionary(new URL("file:models/acoustic/tidigits/dictionary"),
+                new URL("file:models/acoustic/tidigits/fillerdict"), null, false, null, false, false, unitManager);
+        acousticModel = new TiedStateAcousticModel(new Sphinx3Loader(
+                new File("models/acoustic/tidigits").toURI().toURL(), "wd_dependent_phone.500.mdef",
+                "wd_dependent_phone.cd_continuous_8gau/", logMath, unitManager, 0.0f, 1e-7f, 0.0001f, true),
+                unitManager, true);
+    }
+
+
+    @Test
+    public void testIncrementalCommit() throws Exception {
+        JSGFGrammar grammar = createGrammar(new File("src/test/edu/cmu/sphinx/jsgf/test"));
+        grammar.allocate();
+        Set<GrammarNode> nodesBefore = new HashSet<GrammarNode>(grammar.getGrammarNodes());
+
+        changeDigitRule(grammar);
+        assertEquals(1, grammar.getChangeCount());
+        assertFalse(grammar.getAddedNodes().isEmpty());
+        assertFalse(grammar.getRemovedNodes().isEmpty());
+        assertTrue(nodesBefore.containsAll(grammar.getChangedNodes()));
+        assertEquals(SearchGraphCache.getChecksum(createChangedGrammar()), SearchGraphCache.getChecksum(grammar));
+
+        // committing without changes keeps the grammar
+        grammar.commitChanges();
+        assertEquals(1, grammar.getChangeCount());
+    }
+
+
+    @Test
+    public void testFlatLinguist() throws Exception {
+        JSGFGrammar grammar = createGrammar(new File("src/test/edu/cmu/sphinx/jsgf/test"));
+        RecordingFlatLinguist linguist = new RecordingFlatLinguist(acousticModel, logMath, grammar, unitManager);
+        linguist.allocate();
+        linguist.startRecognition();
+
+        changeDigitRule(grammar);
+        linguist.startRecognition();
+        assertTrue(linguist.recompiled);
+
+        FlatLinguist expected = new RecordingFlatLinguist(acousticModel, logMath, createChangedGrammar(),
+                unitManager);
+        expected.allocate();
+        assertEquals(countStates(expected), countStates(linguist));
+    }
+
+
+    @Test
+    public void testDynamicFlatLinguist() throws Exception {
+        JSGFGrammar grammar = createGrammar(new File("src/test/edu/cmu/sphinx/jsgf/test"));
+        DynamicFlatLinguist linguist = createDynamicFlatLinguist(grammar);
+        linguist.allocate();
+        linguist.startRecognition();
+        int statesBefore = countStates(linguist);
+
+        changeDigitRule(grammar);
+        linguist.startRecognition();
+
+        DynamicFlatLinguist expected = createDynamicFlatLinguist(createChangedGrammar());
+        expected.allocate();
+        assertEquals(countStates(expected), countStates(linguist));
+        assertTrue(countStates(linguist) > statesBefore);
+    }
+
+
+    private JSGFGrammar createGrammar(File location) throws IOException {
+        return new JSGFGrammar(location.toURI().toURL(), logMath, "digits", false, true, false, false, dictionary,
+                true);
+    }
+
+
+    /** Creates the grammar with the changed rule from a file */
+    private JSGFGrammar createChangedGrammar() throws IOException {
+        File directory = File.createTempFile("jsgf", "");
+        directory.delete();
+        directory.mkdir();
+        directory.deleteOnExit();
+        File file = new File(directory, "digits.gram");
+        file.deleteOnExit();
+        FileWriter writer = new FileWriter(file);
+        writer.write("#JSGF V1.0;\ngrammar digits;\npublic <number> = <digit> [<digit>] <end>;\n"
+                + "<digit> = " + CHANGED_DIGIT + ";\n<end> = oh | <digit>;\n");
+        writer.close();
+        JSGFGrammar grammar = createGrammar(directory);
+        grammar.allocate();
+        file.delete();
+        directory.delete();
+        return grammar;
+    }
+
+
+    private static void changeDigitRule(JSGFGrammar grammar) throws Exception {
+        grammar.getRuleGrammar().setRule("digit", JSGFParser.ruleForJSGF(CHANGED_DIGIT), false);
+        grammar.commitChanges();
+    }
+
+
+    private DynamicFlatLinguist createDynamicFlatLinguist(JSGFGrammar grammar) {
+        return new DynamicFlatLinguist(acousticModel, grammar, unitManager, logMath, 1.0, 1.0, 1.0, 1.0, 1.0f,
+                false, 1.0, null);
+    }
+
+
+    /** Counts the distinct states of the search graph of a linguist */
+    private static int countStates(Linguist linguist) {
+        Set<String> signatures = new HashSet<String>();
+        List<SearchState> queue = new ArrayList<SearchState>();
+        queue.add(linguist.getSearchGraph().getInitialState());
+        signatures.add(queue.get(0).getSignature());
+        for (int i = 0; i < queue.size(); i++) {
+            for (SearchStateArc arc : queue.get(i).getSuccessors()) {
+                if (signatures.add(arc.getState().getSignature())) {
+                    queue.add(arc.getState());
+                }
+            }
+        }
+        return signatures.size();
+    }
+
+
+    /** A flat linguist that keeps its grammar node states and records whether they were recompiled */
+    private static class RecordingFlatLinguist extends FlatLinguist {
+
+        private boolean recompiled;
+
+
+        RecordingFlatLinguist(AcousticModel acousticModel, LogMath logMath, JSGFGrammar grammar,
+                              UnitManager unitManager) {
+            super(acousticModel, logMath, grammar, unitManager, 1.0, 1.0, 1.0, 1.0, 1.0f, false, false, false,
+                    false, 1.0, 1.0, null, null, true);
+        }
+
+
+        @Override
+        protected boolean recompileChangedNodes() {
+            recompiled = super.recompileChangedNodes();
+            return recompiled;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+* Copyright 1999-2002 Carnegie Mellon University.
+* Portions Copyright 2002 Sun Microsystems, Inc.
+* Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+* All Rights Reserved.  Use is subject to license terms.
+*
+* See the file "license.terms" for information on usage and
+* redistribution of this file, and for a DISCLAIMER OF ALL
+* WARRANTIES.
+*
+*/
+
+package edu.cmu.sphinx.linguist.acoustic.tiedstate.test;
+
+import edu.cmu.sphinx.frontend.Data;
+import edu.cmu.sphinx.frontend.FloatData;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.CompositeSenone;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.ScoreCachingSenone;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Senone;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.SenoneScoringContext;
+import static org.junit.Assert.assertEquals;
+import org.junit.After;
+import org.junit.Test;
+
+/** Tests that scoring contexts keep the senone scores of interleaved decoders apart. */
+public class SenoneScoringContextTest {
+
+    private static class CountingSenone extends ScoreCachingSenone {
+
+        private final long id;
+        private int count;
+
+
+        CountingSenone(long id) {
+            this.id = id;
+        }
+
+
+        @Override
+        protected float calculateScore(Data feature) {
+            count++;
+            return ((FloatData) feature).getValues()[0] + id;
+        }
+
+
+        public float[] calculateComponentScore(Data feature) {
+            return null;
+        }
+
+
+        public long getID() {
+            return id;
+        }
+
+
+        public void dump(String msg) {
+        }
+    }
+
+
+    private static FloatData feature(float value) {
+        return new FloatData(new float[]{value}, 16000, 0, 0);
+    }
+
+
+    @After
+    public void clearContext() {
+        SenoneScoringContext.setCurrent(null);
+    }
+
+
+    @Test
+    public void testInterleavedDecoders() {
+        CountingSenone senone = new CountingSenone(3);
+        CountingSenone large = new CountingSenone(10000);
+        SenoneScoringContext first = new SenoneScoringContext(4);
+        SenoneScoringContext second = new SenoneScoringContext(4);
+
+        for (int frame = 0; frame < 5; frame++) {
+            FloatData a = feature(frame);
+            FloatData b = feature(-frame);
+            for (int token = 0; token < 3; token++) {
+                SenoneScoringContext.setCurrent(first);
+                assertEquals(frame + 3, senone.getScore(a), 0.0f);
+                assertEquals(frame + 10000, large.getScore(a), 0.0f);
+                SenoneScoringContext.setCurrent(second);
+                assertEquals(-frame + 3, senone.getScore(b), 0.0f);
+            }
+        }
+        assertEquals(10, senone.count);
+        // a senone beyond the pool is not cached
+        assertEquals(15, large.count);
+    }
+
+
+    @Test
+    public void testCompositeWithSenoneId() {
+        CountingSenone first = new CountingSenone(1);
+        CountingSenone second = new CountingSenone(2);
+        // the id of the composite is the id of the first senone
+        CompositeSenone composite = new CompositeSenone(new Senone[]{second}, 0) {
+            @Override
+            public long getID() {
+                return 1;
+            }
+        };
+        SenoneScoringContext context = new SenoneScoringContext(4);
+        SenoneScoringContext.setCurrent(context);
+
+        FloatData a = feature(10);
+        context.beginFrame(a);
+        context.addActive(first);
+        context.addActive(composite);
+        assertEquals(2, context.getActiveCount());
+        context.scoreActive(0, 2);
+        for (int token = 0; token < 3; token++) {
+            assertEquals(11, first.getScore(a), 0.0f);
+            assertEquals(12, composite.getScore(a), 0.0f);
+        }
+        assertEquals(1, first.count);
+        assertEquals(1, second.count);
+    }
+
+
+    @Test
+    public void testActiveSenoneTable() {
+        CountingSenone first = new CountingSenone(1);
+        CountingSenone second = new CountingSenone(7);
+        CompositeSenone composite = new CompositeSenone(new Senone[]{first, second}, 0);
+        SenoneScoringContext context = new SenoneScoringContext(8);
+
+        for (int frame = 0; frame < 3; frame++) {
+            FloatData a = feature(frame);
+            context.beginFrame(a);
+            for (int token = 0; token < 4; token++) {
+                context.addActive(first);
+                context.addActive(composite);
+            }
+            assertEquals(2, context.getActiveCount());
+            context.scoreActive(0, 1);
+            context.scoreActive(1, 2);
+            assertEquals(frame + 1, first.count);
+            assertEquals(frame + 1, second.count);
+
+            SenoneScoringContext.setCurrent(context);
+            assertEquals(frame + 1, first.getScore(a), 0.0f);
+            assertEquals(frame + 7, second.getScore(a), 0.0f);
+            SenoneScoringContext.setCurrent(null);
+        }
+        assertEquals(3, first.count);
+        assertEquals(3, second.count);
+    }
+
+
+    @Test
+    public void testSkippedFrames() {
+        CountingSenone senone = new CountingSenone(2);
+        CountingSenone composed = new CountingSenone(5);
+        CompositeSenone composite = new CompositeSenone(new Senone[]{composed}, 0);
+        SenoneScoringContext context = new SenoneScoringContext(8);
+        SenoneScoringContext.setCurrent(context);
+        FloatData[] features = {feature(0), feature(10), feature(20), feature(30), feature(40)};
+
+        // reuse the scores of the scored frame
+        context.beginFrame(features[0]);
+        assertEquals(2, senone.getScore(features[0]), 0.0f);
+        context.beginSkippedFrame(features[1], null, 0.5f);
+        assertEquals(2, senone.getScore(features[1]), 0.0f);
+        assertEquals(5, composite.getScore(features[1]), 0.0f);
+        assertEquals(1, senone.count);
+        assertEquals(1, composed.count);
+
+        // interpolate to the next scored frame, which is scored once
+        context.beginFrame(features[2]);
+        context.beginSkippedFrame(features[3], features[4], 0.5f);
+        assertEquals(32, senone.getScore(features[3]), 0.0f);
+        assertEquals(35, composite.getScore(features[3]), 0.0f);
+        context.beginFrame(features[4]);
+        assertEquals(42, senone.getScore(features[4]), 0.0f);
+        assertEquals(45, composite.getScore(features[4]), 0.0f);
+        assertEquals(3, senone.count);
+        assertEquals(3, composed.count);
+    }
+
+
+    @Test
+    public void testWithoutContext() {
+        CountingSenone senone = new CountingSenone(3);
+        FloatData a = feature(1);
+        FloatData b = feature(2);
+        for (int token = 0; token < 3; token++) {
+            assertEquals(4, senone.getScore(a), 0.0f);
+            assertEquals(5, senone.getScore(b), 0.0f);
+        }
+        assertEquals(6, senone.count);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+* Copyright 1999-2002 Carnegie Mellon University.
+* Portions Copyright 2002 Sun Microsystems, Inc.
+* Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+* All Rights Reserved.  Use is subject to license terms.
+*
+* See the file "license.terms" for information on usage and
+* redistribution of this file, and for a DISCLAIMER OF ALL
+* WARRANTIES.
+*
+*/
+
+package edu.cmu.sphinx.linguist.acoustic.tiedstate.test;
+
+import edu.cmu.sphinx.linguist.acoustic.Unit;
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Loader;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.SharedLoader;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Sphinx3Loader;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.props.ConfigurationManager;
+import edu.cmu.sphinx.util.props.PropertyException;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Tests that recognizers with separate loaders and unit managers share one acoustic model. */
+public class SharedLoaderTest {
+
+    private Loader createLoader(LogMath logMath, UnitManager unitManager) throws IOException {
+        return new Sphinx3Loader(new File("models/acoustic/tidigits").toURI().toURL(),
+                "wd_dependent_phone.500.mdef", "wd_dependent_phone.cd_continuous_8gau/", logMath, unitManager,
+                0.0f, 1e-7f, 0.0001f, true);
+    }
+
+
+    @After
+    public void clear() {
+        SharedLoader.clear();
+    }
+
+
+    @Test
+    public void testSharedModel() throws IOException {
+        LogMath logMath = new LogMath(1.0001f, true);
+        UnitManager firstUnits = new UnitManager();
+        UnitManager secondUnits = new UnitManager();
+
+        Loader first = new SharedLoader(createLoader(logMath, firstUnits), "tidigits", logMath, firstUnits);
+        Loader secondSource = createLoader(logMath, secondUnits);
+        Loader second = new SharedLoader(secondSource, "tidigits", logMath, secondUnits);
+        first.load();
+        second.load();
+
+        assertSame(first.getHMMManager(), second.getHMMManager());
+        assertSame(first.getSenonePool(), second.getSenonePool());
+        assertNull(secondSource.getSenonePool());
+
+        for (Unit unit : first.getContextIndependentUnits().values()) {
+            assertSame(unit, secondUnits.getUnit(unit.getName(), unit.isFiller()));
+        }
+        int newID = secondUnits.getUnit("AX").getBaseID();
+        for (Unit unit : first.getContextIndependentUnits().values()) {
+            assertTrue(newID > unit.getBaseID());
+        }
+    }
+
+
+    @Test
+    public void testKeyIsMandatory() throws IOException {
+        ConfigurationManager cm = new ConfigurationManager();
+        LogMath logMath = new LogMath(1.0001f, true);
+        UnitManager units = new UnitManager();
+        cm.addConfigurable(logMath, "logMath");
+        cm.addConfigurable(units, "unitManager");
+        cm.addConfigurable(createLoader(logMath, units), "sphinx3Loader");
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(SharedLoader.PROP_LOADER, "sphinx3Loader");
+        props.put(SharedLoader.PROP_LOG_MATH, "logMath");
+        props.put(SharedLoader.PROP_UNIT_MANAGER, "unitManager");
+        cm.addConfigurable(SharedLoader.class, "sharedLoader", props);
+        try {
+            cm.lookup("sharedLoader");
+            fail("a shared loader without a key was created");
+        } catch (PropertyException e) {
+            assertTrue(e.getProperty().contains(SharedLoader.PROP_KEY));
+        }
+    }
+
+
+    @Test(expected = IOException.class)
+    public void testLogBaseMismatch() throws IOException {
+        LogMath logMath = new LogMath(1.0001f, true);
+        UnitManager units = new UnitManager();
+        new SharedLoader(createLoader(logMath, units), "tidigits", logMath, units).load();
+        LogMath otherLogMath = new LogMath(1.001f, true);
+        new SharedLoader(createLoader(otherLogMath, units), "tidigits", otherLogMath, units).load();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+* Copyright 1999-2002 Carnegie Mellon University.
+* Portions Copyright 2002 Sun Microsystems, Inc.
+* Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+* All Rights Reserved.  Use is subject to license terms.
+*
+* See the file "license.terms" for information on usage and
+* redistribution of this file, and for a DISCLAIMER OF ALL
+* WARRANTIES.
+*
+*/
+
+package edu.cmu.sphinx.linguist.acoustic.tiedstate.test;
+
+import edu.cmu.sphinx.frontend.FloatData;
+import edu.cmu.sphinx.linguist.acoustic.HMM;
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.*;
+import edu.cmu.sphinx.util.LogMath;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/** Tests that a restored snapshot of an acoustic model scores like the model it was written from. */
+public class SnapshotLoaderTest {
+
+    @Test
+    public void testSnapshotRoundTrip() throws Exception {
+        LogMath logMath = new LogMath(1.0001f, true);
+        Loader source = new Sphinx3Loader(new File("models/acoustic/tidigits").toURI().toURL(),
+                "wd_dependent_phone.500.mdef", "wd_dependent_phone.cd_continuous_8gau/", logMath, new UnitManager(),
+                0.0f, 1e-7f, 0.0001f, true);
+
+        File file = File.createTempFile("tidigits", ".snapshot");
+        file.delete();
+        file.deleteOnExit();
+
+        Loader writer = new SnapshotLoader(file, source, logMath, new UnitManager());
+        writer.load();
+        assertTrue(file.exists());
+
+        Loader restored = new SnapshotLoader(file, null, logMath, new UnitManager());
+        restored.load();
+
+        assertEquals(source.getSenonePool().size(), restored.getSenonePool().size());
+        assertEquals(source.getContextIndependentUnits().keySet(), restored.getContextIndependentUnits().keySet());
+
+        Random random = new Random(1);
+        float[] values = new float[39];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) random.nextGaussian();
+        }
+        FloatData feature = new FloatData(values, 16000, 0, 0);
+
+        Iterator<HMM> restoredHMMs = restored.getHMMManager().iterator();
+        for (HMM hmm : source.getHMMManager()) {
+            SenoneHMM expected = (SenoneHMM) hmm;
+            SenoneHMM actual = (SenoneHMM) restoredHMMs.next();
+            assertEquals(expected.getUnit(), actual.getUnit());
+            assertEquals(expected.getPosition(), actual.getPosition());
+            assertSame(actual, restored.getHMMManager().get(actual.getPosition(), actual.getUnit()));
+            float[][] expectedMatrix = expected.getTransitionMatrix();
+            for (int i = 0; i < expectedMatrix.length; i++) {
+                assertArrayEquals(expectedMatrix[i], actual.getTransitionMatrix()[i], 0.0f);
+            }
+            Senone[] expectedSenones = expected.getSenoneSequence().getSenones();
+            Senone[] actualSenones = actual.getSenoneSequence().getSenones();
+            assertEquals(expectedSenones.length, actualSenones.length);
+            for (int i = 0; i < expectedSenones.length; i++) {
+                assertEquals(expectedSenones[i].getID(), actualSenones[i].getID());
+                assertEquals(expectedSenones[i].getScore(feature), actualSenones[i].getScore(feature), 0.0f);
+            }
+        }
+        assertFalse(restoredHMMs.hasNext());
+    }
+
+
+    @Test
+    public void testQuantizedSnapshot() throws Exception {
+        LogMath logMath = new LogMath(1.0001f, true);
+        Loader source = new Sphinx3Loader(new File("models/acoustic/tidigits").toURI().toURL(),
+                "wd_dependent_phone.500.mdef", "wd_dependent_phone.cd_continuous_8gau/", logMath, new UnitManager(),
+                0.0f, 1e-7f, 0.0001f, true);
+        source.load();
+
+        // features drawn around the means of the model, where the scores matter for decoding
+        Random random = new Random(1);
+        Pool<float[]> means = source.getMeansPool();
+        FloatData[] features = new FloatData[200];
+        for (int i = 0; i < features.length; i++) {
+            float[] values = means.get(random.nextInt(means.size())).clone();
+            for (int j = 0; j < values.length; j++) {
+                values[j] += 0.2f * random.nextGaussian();
+            }
+            features[i] = new FloatData(values, 16000, i, i);
+        }
+
+        for (int bits : new int[]{8, 16}) {
+            File file = File.createTempFile("tidigits", ".snapshot");
+            file.deleteOnExit();
+            SnapshotLoader.save(source, logMath, file, bits);
+            Loader restored = new SnapshotLoader(file, null, logMath, new UnitManager());
+            restored.load();
+            assertEquals(0, restored.getMeansPool().size());
+
+            Pool<Senone> expected = source.getSenonePool();
+            Pool<Senone> actual = restored.getSenonePool();
+            assertEquals(expected.size(), actual.size());
+            double error = 0;
+            int sameBest = 0;
+            for (FloatData feature : features) {
+                int expectedBest = 0;
+                int actualBest = 0;
+                for (int i = 0; i < expected.size(); i++) {
+                    float expectedScore = expected.get(i).getScore(feature);
+                    float actualScore = actual.get(i).getScore(feature);
+                    error += Math.abs(logMath.logToLn(expectedScore) - logMath.logToLn(actualScore));
+                    if (expectedScore > expected.get(expectedBest).getScore(feature)) {
+                        expectedBest = i;
+                    }
+                    if (actualScore > actual.get(actualBest).getScore(feature)) {
+                        actualBest = i;
+                    }
+                }
+                if (expectedBest == actualBest) {
+                    sameBest++;
+                }
+            }
+            error /= features.length * expected.size();
+            assertTrue(error < (bits == 8 ? 0.5 : 0.02));
+            assertTrue(sameBest >= (bits == 8 ? 0.9 : 0.95) * features.length);
+            assertTrue(file.delete());
+        }
+    }
+
+
+    @Test
+    public void testTinyVariance() throws Exception {
+        LogMath logMath = new LogMath(1.0001f, true);
+        // the precision of the first dimension, -5E8, is beyond the half precision range
+        MixtureComponent component = new MixtureComponent(logMath, new float[]{0.5f, 1.0f}, null, null,
+                new float[]{1e-9f, 0.5f}, null, null, 0.0f, 1e-10f);
+        List<MixtureComponent> components = new ArrayList<MixtureComponent>();
+        components.add(component);
+        QuantizedMixtureComponent quantized = GaussianCodebook.create(components, 16).quantize(component, logMath);
+
+        float variance = quantized.getVariance()[0];
+        assertFalse(Float.isInfinite(quantized.precomputeDistance()));
+        assertTrue(variance > 7e-6f && variance < 8e-6f);
+        float score = quantized.getScore(new float[]{0.5f, 1.0f});
+        assertFalse(Float.isInfinite(score) || Float.isNaN(score));
+    }
+}
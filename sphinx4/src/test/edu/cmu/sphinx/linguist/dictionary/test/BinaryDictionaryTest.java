@@ -0,0 +1,69 @@
+package edu.cmu.sphinx.linguist.dictionary.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.dictionary.BinaryDictionary;
+import edu.cmu.sphinx.linguist.dictionary.Dictionary;
+import edu.cmu.sphinx.linguist.dictionary.FastDictionary;
+import edu.cmu.sphinx.linguist.dictionary.Pronunciation;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+
+public class BinaryDictionaryTest {
+
+    private static final String[] WORDS = {"one", "zero", "oh", "nine", "a", "z", "<sil>", "++noise++", "eleven"};
+
+
+    @Test
+    public void testSameAsFastDictionary() throws IOException {
+        URL text = new URL("file:models/acoustic/wsj/dict/digits.dict");
+        URL filler = new URL("file:models/acoustic/wsj/dict/fillerdict");
+        List<URL> addenda = Collections.singletonList(new URL("file:models/acoustic/wsj/dict/alpha.dict"));
+
+        File addendum = File.createTempFile("addendum", ".dict");
+        addendum.deleteOnExit();
+        FileWriter writer = new FileWriter(addendum);
+        writer.write("ELEVEN EH L EH V AH N\nZERO(3) Z IY R AH\n");
+        writer.close();
+        List<URL> runtimeAddenda = Collections.singletonList(addendum.toURI().toURL());
+
+        File compiled = File.createTempFile("digits", ".bin");
+        compiled.deleteOnExit();
+        BinaryDictionary.compile(text, addenda, compiled);
+
+        Dictionary fast = new FastDictionary(text, filler, Arrays.asList(addenda.get(0), runtimeAddenda.get(0)),
+                true, null, false, false, new UnitManager());
+        Dictionary binary = new BinaryDictionary(compiled.toURI().toURL(), filler, runtimeAddenda, true, null, false,
+                false, new UnitManager());
+        fast.allocate();
+        binary.allocate();
+
+        for (String spelling : WORDS) {
+            Word expected = fast.getWord(spelling);
+            Word actual = binary.getWord(spelling);
+            assertNotNull(spelling, actual);
+            assertEquals(expected.getSpelling(), actual.getSpelling());
+            assertEquals(expected.isFiller(), actual.isFiller());
+            Pronunciation[] expectedProns = expected.getPronunciations();
+            Pronunciation[] actualProns = actual.getPronunciations();
+            assertEquals(spelling, expectedProns.length, actualProns.length);
+            for (int i = 0; i < expectedProns.length; i++) {
+                assertArrayEquals(expectedProns[i].getUnits(), actualProns[i].getUnits());
+            }
+            assertSame(actual, binary.getWord(spelling));
+        }
+        assertEquals(3, binary.getWord("zero").getPronunciations().length);
+        assertNull(binary.getWord("missing"));
+        assertEquals(fast.getFillerWords().length, binary.getFillerWords().length);
+    }
+}
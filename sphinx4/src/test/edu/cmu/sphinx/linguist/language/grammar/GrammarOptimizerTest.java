@@ -0,0 +1,205 @@
+/*
+ * Copyright 1999-2004 Carnegie Mellon University.
+ * Portions Copyright 2004 Sun Microsystems, Inc.
+ * Portions Copyright 2004 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.linguist.language.grammar;
+
+import edu.cmu.sphinx.jsgf.JSGFGrammar;
+import edu.cmu.sphinx.linguist.SearchState;
+import edu.cmu.sphinx.linguist.SearchStateArc;
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Sphinx3Loader;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.TiedStateAcousticModel;
+import edu.cmu.sphinx.linguist.dictionary.Dictionary;
+import edu.cmu.sphinx.linguist.dictionary.FastDictionary;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.linguist.flat.FlatLinguist;
+import edu.cmu.sphinx.util.LogMath;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.util.*;
+
+/** Tests that a determinized and minimized grammar accepts the same word sequences with the same scores. */
+public class GrammarOptimizerTest {
+
+    private LogMath logMath;
+    private UnitManager unitManager;
+    private Dictionary dictionary;
+
+
+    @Before
+    public void setUp() throws Exception {
+        logMath = new LogMath(1.0001f, true);
+        unitManager = new UnitManager();
+        dictionary = new FastDictionary(new URL("file:models/acoustic/tidigits/dictionary"),
+                new URL("file:models/acoustic/tidigits/fillerdict"), null, false, null, false, false, unitManager);
+    }
+
+
+    @Test
+    public void testSharedPrefixesAndSuffixes() throws Exception {
+        String rules = "public <number> = one two three | one two four | one five three | six two three "
+                + "| one two three;";
+        JSGFGrammar original = createGrammar(rules, false);
+        JSGFGrammar optimized = createGrammar(rules, true);
+        assertEquals(getSentences(original, 6), getSentences(optimized, 6));
+        assertDeterministic(optimized);
+        assertTrue(optimized.getNumNodes() < original.getNumNodes());
+    }
+
+
+    @Test
+    public void testWeights() throws Exception {
+        String rules = "public <number> = /3/ one two | /1/ one three | /2/ (one | oh) two four;";
+        JSGFGrammar original = createGrammar(rules, false);
+        JSGFGrammar optimized = createGrammar(rules, true);
+        assertSameScores(getSentences(original, 6), getSentences(optimized, 6));
+        assertDeterministic(optimized);
+    }
+
+
+    @Test
+    public void testLoops() throws Exception {
+        String rules = "public <number> = <digit>* (oh | zero); <digit> = one | two | two | three;";
+        JSGFGrammar original = createGrammar(rules, false);
+        JSGFGrammar optimized = createGrammar(rules, true);
+        assertSameScores(getSentences(original, 5), getSentences(optimized, 5));
+        assertDeterministic(optimized);
+        assertTrue(optimized.getNumNodes() < original.getNumNodes());
+    }
+
+
+    @Test
+    public void testFewerSearchStates() throws Exception {
+        StringBuilder rules = new StringBuilder("public <number> = ");
+        String[] digits = {"one", "two", "three", "four", "five"};
+        for (int i = 0; i < 25; i++) {
+            rules.append(i > 0 ? " | " : "").append(digits[i / 5]).append(" oh ").append(digits[i % 5]);
+        }
+        rules.append(';');
+        TiedStateAcousticModel acousticModel = new TiedStateAcousticModel(new Sphinx3Loader(
+                new File("models/acoustic/tidigits").toURI().toURL(), "wd_dependent_phone.500.mdef",
+                "wd_dependent_phone.cd_continuous_8gau/", logMath, unitManager, 0.0f, 1e-7f, 0.0001f, true),
+                unitManager, true);
+        int[] numStates = new int[2];
+        for (int i = 0; i < 2; i++) {
+            JSGFGrammar grammar = createGrammar(rules.toString(), i == 1);
+            FlatLinguist linguist = new FlatLinguist(acousticModel, logMath, grammar, unitManager, 1.0, 1.0, 1.0,
+                    1.0, 1.0f, false, false, false, false, 1.0, 1.0, null);
+            linguist.allocate();
+            numStates[i] = countStates(linguist.getSearchGraph().getInitialState());
+            linguist.deallocate();
+        }
+        assertTrue(numStates[1] < numStates[0]);
+    }
+
+
+    private JSGFGrammar createGrammar(String rules, boolean determinize) throws IOException {
+        File directory = File.createTempFile("jsgf", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+        File file = new File(directory, "numbers.gram");
+        FileWriter writer = new FileWriter(file);
+        writer.write("#JSGF V1.0;\ngrammar numbers;\n" + rules + '\n');
+        writer.close();
+        JSGFGrammar grammar = new JSGFGrammar(directory.toURI().toURL(), logMath, "numbers", false, true,
+                determinize, false, false, dictionary, false);
+        grammar.allocate();
+        assertTrue(file.delete());
+        assertTrue(directory.delete());
+        return grammar;
+    }
+
+
+    /** Collects the best score of every word sequence of the grammar up to the given length. */
+    private static Map<String, Float> getSentences(Grammar grammar, int maxWords) {
+        Map<String, Float> sentences = new TreeMap<String, Float>();
+        collect(grammar.getInitialNode(), "", 0, 0.0f, maxWords, 0, sentences);
+        return sentences;
+    }
+
+
+    private static void collect(GrammarNode node, String words, int numWords, float score, int maxWords, int depth,
+                                Map<String, Float> sentences) {
+        if (!node.isEmpty()) {
+            if (numWords == maxWords) {
+                return;
+            }
+            words += node.getWord().getSpelling() + ' ';
+            numWords++;
+        } else if (depth > 20) {
+            return;
+        }
+        if (node.isFinalNode()) {
+            Float best = sentences.get(words);
+            if (best == null || score > best) {
+                sentences.put(words, score);
+            }
+        }
+        for (GrammarArc arc : node.getSuccessors()) {
+            collect(arc.getGrammarNode(), words, numWords, score + arc.getProbability(), maxWords,
+                    node.isEmpty() ? depth + 1 : 0, sentences);
+        }
+    }
+
+
+    private static void assertSameScores(Map<String, Float> expected, Map<String, Float> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, Float> entry : expected.entrySet()) {
+            assertEquals(entry.getKey(), entry.getValue(), actual.get(entry.getKey()), 0.1f);
+        }
+    }
+
+
+    /** Asserts that the words reached from every node through empty nodes are all different. */
+    private static void assertDeterministic(Grammar grammar) {
+        for (GrammarNode node : grammar.getGrammarNodes()) {
+            List<Word> words = new ArrayList<Word>();
+            List<GrammarNode> queue = new ArrayList<GrammarNode>();
+            queue.add(node);
+            for (int i = 0; i < queue.size(); i++) {
+                for (GrammarArc arc : queue.get(i).getSuccessors()) {
+                    GrammarNode next = arc.getGrammarNode();
+                    if (next.isEmpty()) {
+                        if (!queue.contains(next)) {
+                            queue.add(next);
+                        }
+                    } else {
+                        words.add(next.getWord());
+                    }
+                }
+            }
+            assertEquals(node.toString(), new HashSet<Word>(words).size(), words.size());
+        }
+    }
+
+
+    private static int countStates(SearchState initialState) {
+        Set<SearchState> states = new HashSet<SearchState>();
+        List<SearchState> queue = new ArrayList<SearchState>();
+        states.add(initialState);
+        queue.add(initialState);
+        for (int i = 0; i < queue.size(); i++) {
+            for (SearchStateArc arc : queue.get(i).getSuccessors()) {
+                if (states.add(arc.getState())) {
+                    queue.add(arc.getState());
+                }
+            }
+        }
+        return states.size();
+    }
+}
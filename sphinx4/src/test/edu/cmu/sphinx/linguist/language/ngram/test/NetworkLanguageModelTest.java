@@ -0,0 +1,146 @@
+/*
+ * Copyright 1999-2004 Carnegie Mellon University.
+ * Portions Copyright 2004 Sun Microsystems, Inc.
+ * Portions Copyright 2004 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.linguist.language.ngram.test;
+
+import edu.cmu.sphinx.linguist.WordSequence;
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.dictionary.Dictionary;
+import edu.cmu.sphinx.linguist.dictionary.FastDictionary;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.linguist.language.ngram.LanguageModel;
+import edu.cmu.sphinx.linguist.language.ngram.LanguageModelServer;
+import edu.cmu.sphinx.linguist.language.ngram.NetworkLanguageModel;
+import edu.cmu.sphinx.linguist.language.ngram.SimpleNGramModel;
+import edu.cmu.sphinx.util.LogMath;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.*;
+
+/** Tests that the pipelined network language model returns the probabilities of the served model. */
+public class NetworkLanguageModelTest {
+
+    private LogMath logMath;
+    private LanguageModel model;
+    private LanguageModelServer server;
+    private NetworkLanguageModel client;
+    private List<WordSequence> sequences;
+
+
+    @Before
+    public void setUp() throws Exception {
+        logMath = new LogMath(1.0001f, true);
+        Dictionary dictionary = new FastDictionary(new URL("file:models/acoustic/tidigits/dictionary"),
+                new URL("file:models/acoustic/tidigits/fillerdict"), null, false, null, true, true, new UnitManager());
+        model = new SimpleNGramModel(new URL("file:src/test/edu/cmu/sphinx/result/test/hellongram.trigram.lm"),
+                dictionary, 0.7f, logMath, 3);
+        server = new LanguageModelServer(model, dictionary, logMath, 0);
+        server.start();
+
+        // a small cache, so that some probabilities are queried again
+        client = new NetworkLanguageModel("localhost", server.getPort(), null, 3, 50, logMath);
+        client.allocate();
+
+        List<String> vocabulary = new ArrayList<String>(model.getVocabulary());
+        Collections.sort(vocabulary);
+        Random random = new Random(42);
+        sequences = new ArrayList<WordSequence>();
+        for (int i = 0; i < 300; i++) {
+            Word[] words = new Word[1 + random.nextInt(3)];
+            for (int j = 0; j < words.length; j++)
+                words[j] = dictionary.getWord(vocabulary.get(random.nextInt(vocabulary.size())));
+            sequences.add(new WordSequence(words));
+        }
+    }
+
+
+    @After
+    public void tearDown() {
+        client.deallocate();
+        server.stop();
+    }
+
+
+    @Test
+    public void testProbabilities() {
+        for (WordSequence sequence : sequences)
+            assertProbability(sequence, client.getProbability(sequence));
+        // again, partly from the cache
+        for (WordSequence sequence : sequences)
+            assertProbability(sequence, client.getProbability(sequence));
+        assertEquals(0.0f, client.getProbability(WordSequence.EMPTY), 0.0f);
+    }
+
+
+    @Test
+    public void testPrefetch() {
+        client.prefetch(sequences);
+        client.prefetch(sequences.subList(0, 100));
+        for (WordSequence sequence : sequences)
+            assertProbability(sequence, client.getProbability(sequence));
+    }
+
+
+    @Test
+    public void testConcurrentQueries() throws Exception {
+        final Map<WordSequence, Float> results = Collections.synchronizedMap(new HashMap<WordSequence, Float>());
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final List<WordSequence> shuffled = new ArrayList<WordSequence>(sequences);
+            Collections.shuffle(shuffled, new Random(i));
+            final boolean prefetch = i % 2 == 0;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        if (prefetch)
+                            client.prefetch(shuffled);
+                        for (WordSequence sequence : shuffled)
+                            results.put(sequence, client.getProbability(sequence));
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        for (WordSequence sequence : sequences)
+            assertProbability(sequence, results.get(sequence));
+    }
+
+
+    @Test(expected = Error.class)
+    public void testServerStopped() {
+        server.stop();
+        for (WordSequence sequence : sequences)
+            client.getProbability(sequence);
+    }
+
+
+    private void assertProbability(WordSequence sequence, float probability) {
+        float expected;
+        synchronized (model) {
+            expected = model.getProbability(sequence);
+        }
+        // the server sends the probability in log 10
+        assertEquals(sequence.toString(), expected, probability, Math.abs(expected) * 1e-5f);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 1999-2004 Carnegie Mellon University.
+ * Portions Copyright 2004 Sun Microsystems, Inc.
+ * Portions Copyright 2004 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.linguist.test;
+
+import edu.cmu.sphinx.linguist.WordSequence;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/** Tests that the packed and derived word sequences behave like sequences of their words. */
+public class WordSequenceTest {
+
+    private final Word a = new Word("a", null, false);
+    private final Word b = new Word("b", null, false);
+    private final Word c = new Word("c", null, false);
+    private final Word d = new Word("d", null, false);
+
+
+    @Test
+    public void testDerivedSequences() {
+        WordSequence abc = new WordSequence(new Word[]{a, b, c});
+
+        assertSequence(new Word[]{b, c, d}, abc.addWord(d, 3));
+        assertSequence(new Word[]{c, d}, abc.addWord(d, 2));
+        assertSequence(new Word[]{a, b, c, d}, abc.addWord(d, 4));
+        assertSequence(new Word[]{a, b}, abc.getOldest());
+        assertSequence(new Word[]{b, c}, abc.getNewest());
+        assertSequence(new Word[]{c}, abc.trim(1));
+        assertSame(abc, abc.trim(3));
+        assertSame(WordSequence.EMPTY, abc.trim(0));
+        assertSequence(new Word[]{a}, WordSequence.EMPTY.addWord(a, 3));
+    }
+
+
+    @Test
+    public void testLongSequences() {
+        WordSequence abcd = new WordSequence(new Word[]{a, b, c, d});
+        WordSequence other = new WordSequence(Arrays.asList(a, b, c, d));
+        assertEquals(abcd, other);
+        assertEquals(abcd.hashCode(), other.hashCode());
+        assertFalse(abcd.equals(new WordSequence(new Word[]{a, b, d, c})));
+
+        assertSequence(new Word[]{b, c, d, a}, abcd.addWord(a, 4));
+        assertSequence(new Word[]{a, b, c}, abcd.getOldest());
+        assertSequence(new Word[]{b, c, d}, abcd.getNewest());
+    }
+
+
+    @Test
+    public void testEqualWords() {
+        // a word of the same spelling from another dictionary
+        Word otherB = new Word("b", null, true);
+        WordSequence ab = new WordSequence(new Word[]{a, b});
+        WordSequence otherAb = new WordSequence(new Word[]{a, otherB});
+        assertEquals(ab, otherAb);
+        assertEquals(ab.hashCode(), otherAb.hashCode());
+        assertFalse(ab.equals(new WordSequence(new Word[]{b, a})));
+        assertFalse(ab.equals(new WordSequence(new Word[]{a})));
+
+        // derived sequences keep their own word instances
+        assertSame(otherB, WordSequence.EMPTY.addWord(a, 2).addWord(otherB, 2).getWord(1));
+        assertSame(b, WordSequence.EMPTY.addWord(a, 2).addWord(b, 2).getWord(1));
+    }
+
+
+    @Test
+    public void testReusedHistories() {
+        WordSequence history = new WordSequence(new Word[]{a, b});
+        assertSame(history.addWord(c, 2), history.addWord(c, 2));
+        assertSame(history.addWord(c, 3).getOldest(), history.addWord(d, 3).getOldest());
+    }
+
+
+    private void assertSequence(Word[] expected, WordSequence sequence) {
+        assertArrayEquals(expected, sequence.getWords());
+        WordSequence constructed = new WordSequence(expected);
+        assertEquals(constructed, sequence);
+        assertEquals(sequence, constructed);
+        assertEquals(constructed.hashCode(), sequence.hashCode());
+    }
+}
@@ -0,0 +1,95 @@
+/*
+* Copyright 1999-2002 Carnegie Mellon University.
+* Portions Copyright 2002 Sun Microsystems, Inc.
+* Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+* All Rights Reserved.  Use is subject to license terms.
+*
+* See the file "license.terms" for information on usage and
+* redistribution of this file, and for a DISCLAIMER OF ALL
+* WARRANTIES.
+*
+*/
+
+package edu.cmu.sphinx.linguist.util.test;
+
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.dictionary.Dictionary;
+import edu.cmu.sphinx.linguist.dictionary.FastDictionary;
+import edu.cmu.sphinx.linguist.language.grammar.Grammar;
+import edu.cmu.sphinx.linguist.language.grammar.SimpleWordListGrammar;
+import edu.cmu.sphinx.linguist.util.SearchGraphCache;
+import edu.cmu.sphinx.util.LogMath;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+
+/** Tests the checksums and the eviction of the search graph cache. */
+public class SearchGraphCacheTest {
+
+    @Test
+    public void testChecksum() throws IOException {
+        Dictionary dictionary = new FastDictionary(new URL("file:models/acoustic/wsj/dict/digits.dict"),
+                new URL("file:models/acoustic/wsj/dict/fillerdict"), null, false, null, false, false,
+                new UnitManager());
+        dictionary.allocate();
+
+        String checksum = SearchGraphCache.getChecksum(createGrammar(dictionary, "one two three"));
+        assertEquals(checksum, SearchGraphCache.getChecksum(createGrammar(dictionary, "one two three")));
+        assertFalse(checksum.equals(SearchGraphCache.getChecksum(createGrammar(dictionary, "one two four"))));
+        assertFalse(checksum.equals(SearchGraphCache.getChecksum(createGrammar(dictionary, "one two"))));
+    }
+
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        Object acousticModel = new Object();
+        SearchGraphCache cache = new SearchGraphCache(2);
+        cache.put("a", acousticModel, "graph a");
+        cache.put("b", acousticModel, "graph b");
+        assertEquals("graph a", cache.get("a", acousticModel));
+        cache.put("c", acousticModel, "graph c");
+
+        assertEquals(2, cache.size());
+        assertEquals("graph a", cache.get("a", acousticModel));
+        assertNull(cache.get("b", acousticModel));
+        assertEquals("graph c", cache.get("c", acousticModel));
+        assertNull(cache.get("a", new Object()));
+    }
+
+
+    @Test
+    public void testAcousticModelAndContext() {
+        Object acousticModel = new Object();
+        Object otherAcousticModel = new Object();
+        Object context = new Object();
+        SearchGraphCache cache = new SearchGraphCache(16);
+        cache.put("a", acousticModel, "graph a");
+        cache.put("a", otherAcousticModel, "other graph a");
+        cache.put("a", acousticModel, context, "context graph a");
+
+        assertEquals(3, cache.size());
+        assertEquals("graph a", cache.get("a", acousticModel));
+        assertEquals("other graph a", cache.get("a", otherAcousticModel));
+        assertEquals("context graph a", cache.get("a", acousticModel, context));
+        assertNull(cache.get("a", acousticModel, new Object()));
+        assertNull(cache.get("a", otherAcousticModel, context));
+    }
+
+
+    private static Grammar createGrammar(Dictionary dictionary, String words) throws IOException {
+        File file = File.createTempFile("words", ".txt");
+        file.deleteOnExit();
+        FileWriter writer = new FileWriter(file);
+        writer.write(words);
+        writer.close();
+        Grammar grammar = new SimpleWordListGrammar(file.getPath(), true, new LogMath(1.0001f, true), false, false,
+                false, false, dictionary);
+        grammar.allocate();
+        file.delete();
+        return grammar;
+    }
+}
@@ -0,0 +1,96 @@
+package edu.cmu.sphinx.result;
+
+import edu.cmu.sphinx.util.LogMath;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests that the search for the paths of a lattice keeps no more partial paths than allowed, on a lattice with many
+ * paths that all have the same words.
+ */
+public class PathIteratorTest {
+
+    private static final int SLOTS = 8;
+    private static final int ALTERNATIVES = 4;
+    private static final int MAX_PARTIAL_PATHS = 50;
+
+
+    @Test
+    public void testBoundedQueue() {
+        CompactLattice lattice = createLattice();
+        CompactLattice.PathIterator paths = (CompactLattice.PathIterator) lattice.getPathIterator(MAX_PARTIAL_PATHS);
+        Iterator<CompactLattice.ScoredPath> expected = lattice.getPathIterator(0);
+        float previousScore = Float.MAX_VALUE;
+        int count = 0;
+        while (paths.hasNext()) {
+            assertTrue(paths.getQueueSize() <= MAX_PARTIAL_PATHS);
+            float score = paths.next().getScore();
+            assertTrue(score <= previousScore);
+            // discarding partial paths loses paths far down the list, but not the best ones
+            if (count < MAX_PARTIAL_PATHS * 3 / 4)
+                assertEquals(expected.next().getScore(), score, 0);
+            previousScore = score;
+            count++;
+        }
+        assertTrue(count > MAX_PARTIAL_PATHS);
+    }
+
+
+    @Test
+    public void testUnboundedQueue() {
+        CompactLattice lattice = createLattice();
+        CompactLattice.PathIterator paths = (CompactLattice.PathIterator) lattice.getPathIterator(0);
+        int maxQueueSize = 0;
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(paths.hasNext());
+            maxQueueSize = Math.max(maxQueueSize, paths.getQueueSize());
+            paths.next();
+        }
+        assertTrue(maxQueueSize > MAX_PARTIAL_PATHS);
+    }
+
+
+    @Test
+    public void testSameWords() {
+        // all paths have the same words, so there is a single hypothesis however many paths are searched
+        NBestIterator nbest = new NBestIterator(createLattice(), MAX_PARTIAL_PATHS);
+        assertTrue(nbest.hasNext());
+        assertEquals(SLOTS + 2, nbest.next().getWords().length);
+        assertFalse(nbest.hasNext());
+    }
+
+
+    /** Creates a lattice of consecutive slots with alternative nodes of the same word, all linked to each other. */
+    private static CompactLattice createLattice() {
+        LogMath logMath = new LogMath(1.0001f, true);
+        Random random = new Random(7);
+        Lattice lattice = new Lattice(logMath);
+        Node initial = lattice.addNode("start", "<s>", 0, 1);
+        lattice.setInitialNode(initial);
+        List<Node> previous = new ArrayList<Node>();
+        previous.add(initial);
+        for (int slot = 0; slot < SLOTS; slot++) {
+            List<Node> nodes = new ArrayList<Node>();
+            for (int i = 0; i < ALTERNATIVES; i++) {
+                Node node = lattice.addNode(slot + "-" + i, "one", slot * 10 + 1, slot * 10 + 10 + i);
+                for (Node from : previous)
+                    lattice.addEdge(from, node, -random.nextInt(10000), 0);
+                nodes.add(node);
+            }
+            previous = nodes;
+        }
+        Node terminal = lattice.addNode("end", "</s>", SLOTS * 10 + 14, SLOTS * 10 + 15);
+        lattice.setTerminalNode(terminal);
+        for (Node from : previous)
+            lattice.addEdge(from, terminal, 0, 0);
+
+        CompactLattice compactLattice = new CompactLattice(lattice);
+        compactLattice.computeNodePosteriors(1.0f, false);
+        return compactLattice;
+    }
+}
@@ -0,0 +1,137 @@
+package edu.cmu.sphinx.result;
+
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.dictionary.Dictionary;
+import edu.cmu.sphinx.linguist.dictionary.FastDictionary;
+import edu.cmu.sphinx.util.LogMath;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.util.*;
+
+/** Tests that the queue based clustering of the sausage maker builds the same sausages as the exhaustive steps. */
+public class SausageMakerTest {
+
+    private static final String LATTICE = "src/test/edu/cmu/sphinx/result/test/testLattice.gdl";
+    private static final String DICTIONARY = "src/test/edu/cmu/sphinx/result/test/testLattice.dict";
+
+    private static final String[] WORDS = {"a", "are", "corner", "little", "middle", "of", "on", "one", "purple",
+            "right", "the", "top", "up", "upper", "<sil>"};
+
+    private Dictionary dictionary;
+    private LogMath logMath;
+
+
+    /** Clusters by repeating the exhaustive clustering steps until no clusters are merged. */
+    private static class StepwiseSausageMaker extends SausageMaker {
+
+        StepwiseSausageMaker(Lattice lattice) {
+            super(lattice);
+        }
+
+
+        @Override
+        protected void interWordCluster(List<Cluster> clusters) {
+            while (interWordClusterStep(clusters)) ;
+        }
+
+
+        @Override
+        protected void intraWordCluster(List<Cluster> clusters) {
+            while (intraWordClusterStep(clusters)) ;
+        }
+    }
+
+
+    @Before
+    public void setUp() throws Exception {
+        dictionary = new FastDictionary(new File(DICTIONARY).toURI().toURL(),
+                new URL("file:models/acoustic/tidigits/fillerdict"), null, false, null, false, false,
+                new UnitManager());
+        dictionary.allocate();
+        logMath = new LogMath(1.0001f, true);
+    }
+
+
+    @Test
+    public void testBundledLattice() throws Exception {
+        Lattice lattice = GDLLatticeFactory.getLattice(LATTICE, dictionary);
+        lattice.setLogMath(logMath);
+        assertSameSausages(lattice);
+    }
+
+
+    @Test
+    public void testRandomLattices() {
+        Random random = new Random(42);
+        for (int i = 0; i < 20; i++)
+            assertSameSausages(createLattice(random, 5 + random.nextInt(20)));
+    }
+
+
+    /** Asserts that both clusterings build sausages with the same words and posteriors in every slot. */
+    private static void assertSameSausages(Lattice lattice) {
+        Sausage expected = new StepwiseSausageMaker(lattice).makeSausage();
+        Sausage actual = new SausageMaker(lattice).makeSausage();
+        assertTrue(expected.size() > 1);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            ConfusionSet expectedSet = expected.getConfusionSet(i);
+            ConfusionSet actualSet = actual.getConfusionSet(i);
+            assertEquals(expectedSet.keySet(), actualSet.keySet());
+            for (Double posterior : expectedSet.keySet())
+                assertEquals(words(expectedSet.get(posterior)), words(actualSet.get(posterior)));
+        }
+    }
+
+
+    private static Set<String> words(Set<WordResult> wordResults) {
+        Set<String> words = new TreeSet<String>();
+        for (WordResult wordResult : wordResults)
+            words.add(wordResult.getPronunciation().getWord().getSpelling() + '@' + wordResult.getStartFrame());
+        return words;
+    }
+
+
+    /**
+     * Creates a lattice of alternative words in consecutive, slightly overlapping time slots, with every word linked
+     * to some of the words of the next slot.
+     */
+    private Lattice createLattice(Random random, int numSlots) {
+        Lattice lattice = new Lattice(logMath);
+        Node initial = lattice.addNode(dictionary.getSentenceStartWord(), 0, 0);
+        lattice.setInitialNode(initial);
+        List<Node> previous = Collections.singletonList(initial);
+        for (int slot = 0; slot < numSlots; slot++) {
+            List<Node> nodes = new ArrayList<Node>();
+            for (int n = 1 + random.nextInt(4); n > 0; n--) {
+                int begin = slot * 20 + 1 + random.nextInt(6);
+                Node node = lattice.addNode(dictionary.getWord(WORDS[random.nextInt(WORDS.length)]), begin,
+                        begin + 15 + random.nextInt(10));
+                nodes.add(node);
+                addEdge(lattice, random, previous.get(random.nextInt(previous.size())), node);
+            }
+            for (Node from : previous) {
+                for (Node to : nodes) {
+                    if (!from.hasEdgeToNode(to) && random.nextBoolean())
+                        addEdge(lattice, random, from, to);
+                }
+            }
+            previous = nodes;
+        }
+        Node terminal = lattice.addNode(dictionary.getSentenceEndWord(), numSlots * 20 + 1, numSlots * 20 + 1);
+        lattice.setTerminalNode(terminal);
+        for (Node from : previous)
+            addEdge(lattice, random, from, terminal);
+        lattice.computeNodePosteriors(1.0f);
+        return lattice;
+    }
+
+
+    private void addEdge(Lattice lattice, Random random, Node from, Node to) {
+        lattice.addEdge(from, to, -random.nextInt(100000), -random.nextInt(10000));
+    }
+}
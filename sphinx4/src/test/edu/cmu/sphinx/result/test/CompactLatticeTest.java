@@ -0,0 +1,115 @@
+/*
+ * Copyright 1999-2004 Carnegie Mellon University.
+ * Portions Copyright 2004 Sun Microsystems, Inc.
+ * Portions Copyright 2004 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.result.test;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.cmu.sphinx.result.CompactLattice;
+import edu.cmu.sphinx.result.Lattice;
+import edu.cmu.sphinx.result.Node;
+import edu.cmu.sphinx.util.LogMath;
+
+/**
+ * Tests the array based lattice against the posterior, Viterbi and N-best computations on the same simple lattice
+ * used by the posterior test.
+ */
+public class CompactLatticeTest {
+
+    private final LogMath logMath = new LogMath(1.0001f, true);
+
+
+    private Lattice createLattice() {
+        Lattice lattice = new Lattice(logMath);
+
+        Node a = lattice.addNode("A", "A", 0, 0);
+        Node b = lattice.addNode("B", "B", 0, 0);
+        Node c = lattice.addNode("C", "C", 0, 0);
+        Node d = lattice.addNode("D", "D", 0, 0);
+
+        lattice.setInitialNode(a);
+        lattice.setTerminalNode(d);
+
+        lattice.addEdge(a, b, logMath.linearToLog(4), 0);
+        lattice.addEdge(a, c, logMath.linearToLog(6), 0);
+        lattice.addEdge(c, b, logMath.linearToLog(1), 0);
+        lattice.addEdge(b, d, logMath.linearToLog(5), 0);
+        lattice.addEdge(c, d, logMath.linearToLog(2), 0);
+        return lattice;
+    }
+
+
+    private String words(CompactLattice lattice, int[] path) {
+        StringBuilder sb = new StringBuilder();
+        for (int node : path) {
+            sb.append(lattice.getWord(node).getSpelling());
+        }
+        return sb.toString();
+    }
+
+
+    @Test
+    public void testPosteriors() {
+        Lattice lattice = createLattice();
+        lattice.computeNodePosteriors(1.0f);
+
+        CompactLattice compact = new CompactLattice(lattice);
+        assertEquals(4, compact.getNodeCount());
+        assertEquals(5, compact.getEdgeCount());
+        compact.computeNodePosteriors(1.0f, false);
+
+        for (int n = 0; n < compact.getNodeCount(); n++) {
+            Node node = null;
+            for (Node candidate : lattice.getNodes()) {
+                if (candidate.getId().equals(compact.getId(n))) {
+                    node = candidate;
+                }
+            }
+            assertNotNull(node);
+            assertEquals(logMath.logToLinear((float) node.getPosterior()),
+                    logMath.logToLinear(compact.getPosterior(n)), 1e-4);
+        }
+    }
+
+
+    @Test
+    public void testViterbiAndNBest() {
+        CompactLattice compact = new CompactLattice(createLattice());
+        compact.computeNodePosteriors(1.0f, false);
+
+        // A-B-D = 20, A-C-B-D = 30, A-C-D = 12
+        assertEquals("ACBD", words(compact, compact.getViterbiPath()));
+
+        List<CompactLattice.ScoredPath> nbest = compact.getNBestPaths(5);
+        assertEquals(3, nbest.size());
+        assertEquals("ACBD", words(compact, nbest.get(0).getNodes()));
+        assertEquals("ABD", words(compact, nbest.get(1).getNodes()));
+        assertEquals("ACD", words(compact, nbest.get(2).getNodes()));
+        assertEquals(30.0, logMath.logToLinear(nbest.get(0).getScore()), 1e-2);
+        assertEquals(12.0, logMath.logToLinear(nbest.get(2).getScore()), 1e-2);
+    }
+
+
+    @Test
+    public void testRoundTrip() {
+        Lattice lattice = createLattice();
+        Lattice copy = new CompactLattice(lattice).toLattice();
+        assertEquals(lattice.getNodes().size(), copy.getNodes().size());
+        assertEquals(lattice.getEdges().size(), copy.getEdges().size());
+        assertEquals("A", copy.getInitialNode().getId());
+        assertEquals("D", copy.getTerminalNode().getId());
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 1999-2004 Carnegie Mellon University.
+ * Portions Copyright 2004 Sun Microsystems, Inc.
+ * Portions Copyright 2004 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.result.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import edu.cmu.sphinx.result.Lattice;
+import edu.cmu.sphinx.result.NBestIterator;
+import edu.cmu.sphinx.result.Node;
+import edu.cmu.sphinx.result.Path;
+import edu.cmu.sphinx.util.LogMath;
+
+/**
+ * Tests the N-best list generation. The lattice contains two nodes for the word "B" with different timings, so two
+ * of its paths have the same word sequence.
+ */
+public class NBestIteratorTest {
+
+    @Test
+    public void testDistinctPaths() {
+        LogMath logMath = new LogMath(1.0001f, true);
+        Lattice lattice = new Lattice(logMath);
+
+        Node a = lattice.addNode("A", "A", 0, 1);
+        Node b1 = lattice.addNode("B1", "B", 1, 3);
+        Node b2 = lattice.addNode("B2", "B", 1, 4);
+        Node c = lattice.addNode("C", "C", 1, 4);
+        Node d = lattice.addNode("D", "D", 4, 5);
+
+        lattice.setInitialNode(a);
+        lattice.setTerminalNode(d);
+
+        lattice.addEdge(a, b1, logMath.linearToLog(0.5), 0);
+        lattice.addEdge(a, b2, logMath.linearToLog(0.3), 0);
+        lattice.addEdge(a, c, logMath.linearToLog(0.2), 0);
+        lattice.addEdge(b1, d, logMath.linearToLog(1.0), 0);
+        lattice.addEdge(b2, d, logMath.linearToLog(1.0), 0);
+        lattice.addEdge(c, d, logMath.linearToLog(1.0), 0);
+
+        Iterator<Path> nbest = new NBestIterator(lattice, 1.0f, 0);
+        assertTrue(nbest.hasNext());
+        Path first = nbest.next();
+        assertEquals("A B D", first.getTranscription());
+        assertEquals(0.5, logMath.logToLinear((float) first.getScore()), 1e-3);
+        assertEquals(1, first.getWords()[1].getStartFrame());
+        assertEquals(3, first.getWords()[1].getEndFrame());
+
+        assertTrue(nbest.hasNext());
+        Path second = nbest.next();
+        assertEquals("A C D", second.getTranscription());
+        assertEquals(0.2, logMath.logToLinear((float) second.getScore()), 1e-3);
+
+        assertFalse(nbest.hasNext());
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 1999-2004 Carnegie Mellon University.
+ * Portions Copyright 2004 Sun Microsystems, Inc.
+ * Portions Copyright 2004 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.tools.batch.test;
+
+import edu.cmu.sphinx.instrumentation.Monitor;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.SharedLoader;
+import edu.cmu.sphinx.recognizer.Recognizer;
+import edu.cmu.sphinx.recognizer.StateListener;
+import edu.cmu.sphinx.tools.batch.ParallelBatchRecognizer;
+import edu.cmu.sphinx.util.NISTAlign;
+import edu.cmu.sphinx.util.props.PropertyException;
+import edu.cmu.sphinx.util.props.PropertySheet;
+import edu.cmu.sphinx.util.props.S4Component;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Tests that decoding a batch with several workers gives the results of decoding it with one worker. */
+public class ParallelBatchRecognizerTest {
+
+    private static final String AUDIO_DIR = "src/test/edu/cmu/sphinx/result/test/";
+    private static final String CONFIG = "src/test/edu/cmu/sphinx/tools/batch/test/parallel.config.xml";
+
+    private URL configURL;
+    private File batchFile;
+
+
+    @Before
+    public void setUp() throws IOException {
+        SharedLoader.clear();
+        configURL = new File(CONFIG).toURI().toURL();
+        batchFile = File.createTempFile("parallel", ".batch");
+        FileWriter writer = new FileWriter(batchFile);
+        for (int i = 0; i < 8; i++) {
+            writer.write(AUDIO_DIR + (i % 2 == 0 ? "left.wav one two" : "green.wav three") + '\n');
+        }
+        writer.close();
+    }
+
+
+    @After
+    public void tearDown() {
+        assertTrue(batchFile.delete());
+        SharedLoader.clear();
+    }
+
+
+    @Test
+    public void testSameResultsAsOneWorker() throws IOException {
+        StringWriter sequential = new StringWriter();
+        ParallelBatchRecognizer one = new ParallelBatchRecognizer(configURL, 1);
+        one.decode(batchFile.getPath(), sequential);
+
+        StringWriter parallel = new StringWriter();
+        ParallelBatchRecognizer three = new ParallelBatchRecognizer(configURL, 3);
+        three.decode(batchFile.getPath(), parallel);
+
+        assertEquals(sequential.toString(), parallel.toString());
+        String[] lines = parallel.toString().split("\n");
+        assertEquals(8, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            assertTrue(lines[i], lines[i].startsWith(AUDIO_DIR + (i % 2 == 0 ? "left.wav" : "green.wav")));
+        }
+
+        NISTAlign expected = one.getAligner();
+        NISTAlign actual = three.getAligner();
+        assertEquals(expected.getTotalWords(), actual.getTotalWords());
+        assertEquals(expected.getTotalSubstitutions(), actual.getTotalSubstitutions());
+        assertEquals(expected.getTotalInsertions(), actual.getTotalInsertions());
+        assertEquals(expected.getTotalDeletions(), actual.getTotalDeletions());
+        assertEquals(one.getTotalAudioTime(), three.getTotalAudioTime(), 0.01f);
+        assertTrue(three.getTotalAudioTime() > 0);
+    }
+
+
+    @Test
+    public void testDeallocateAfterFailure() throws IOException {
+        // the recognizers report their deallocation to a monitor added to the configuration
+        File config = File.createTempFile("parallel", ".config.xml");
+        String xml = read(CONFIG).replace("<item>speedTracker</item>",
+                "<item>speedTracker</item><item>deallocationCounter</item>").replace("</config>",
+                "<component name=\"deallocationCounter\" type=\"" + DeallocationCounter.class.getName() + "\">"
+                        + "<property name=\"recognizer\" value=\"recognizer\"/></component></config>");
+        FileWriter writer = new FileWriter(config);
+        writer.write(xml);
+        writer.close();
+
+        writer = new FileWriter(batchFile, true);
+        writer.write(AUDIO_DIR + "missing.wav one\n");
+        writer.close();
+
+        DeallocationCounter.count.set(0);
+        try {
+            new ParallelBatchRecognizer(config.toURI().toURL(), 3).decode(batchFile.getPath(), null);
+            fail("the missing file was decoded");
+        } catch (IOException e) {
+            // the worker that failed is deallocated like the others
+            assertEquals(3, DeallocationCounter.count.get());
+        } finally {
+            assertTrue(config.delete());
+        }
+    }
+
+
+    private static String read(String fileName) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        BufferedReader reader = new BufferedReader(new FileReader(fileName));
+        for (String line; (line = reader.readLine()) != null;) {
+            sb.append(line).append('\n');
+        }
+        reader.close();
+        return sb.toString();
+    }
+
+
+    /** Counts the recognizers that are deallocated. */
+    public static class DeallocationCounter implements Monitor, StateListener {
+
+        @S4Component(type = Recognizer.class)
+        public final static String PROP_RECOGNIZER = "recognizer";
+
+        static final AtomicInteger count = new AtomicInteger();
+
+
+        public void newProperties(PropertySheet ps) throws PropertyException {
+            ((Recognizer) ps.getComponent(PROP_RECOGNIZER)).addStateListener(this);
+        }
+
+
+        public void statusChanged(Recognizer.State status) {
+            if (status == Recognizer.State.DEALLOCATED) {
+                count.incrementAndGet();
+            }
+        }
+    }
+}
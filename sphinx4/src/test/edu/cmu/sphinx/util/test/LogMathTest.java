@@ -0,0 +1,189 @@
+/*
+ * Copyright 1999-2004 Carnegie Mellon University.
+ * Portions Copyright 2004 Sun Microsystems, Inc.
+ * Portions Copyright 2004 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.util.test;
+
+import edu.cmu.sphinx.util.LogMath;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Compares the additions and conversions of the log math with the exact computation in double precision, and the
+ * default add table with the table of one entry per unit of the log base that it has always been.
+ */
+public class LogMathTest {
+
+    private static final float[] LOG_BASES = {1.0001f, 1.0003f, 1.001f, 1.1f, (float) Math.E};
+
+
+    @Test
+    public void testDefaultAddTable() {
+        for (float logBase : LOG_BASES) {
+            if (logBase == (float) Math.E)
+                continue;
+            LogMath logMath = new LogMath(logBase, true);
+            float[] table = roundedAddTable(logMath);
+            Random random = new Random(42);
+            for (int i = 0; i < 100000; i++) {
+                float a = (random.nextFloat() - 0.5f) * 200000;
+                float b = a - random.nextFloat() * 2 * table.length;
+                // the same numbers as the rounded table, within about half a unit of the log base of the exact sum
+                int index = (int) (a - b + 0.5f);
+                float expected = a + (index < table.length ? table[index] : 0.0f);
+                assertEquals(expected, logMath.addAsLinear(a, b), 0);
+                assertEquals(expected, logMath.addAsLinear(b, a), 0);
+                assertEquals(exactSum(logBase, a, b), logMath.addAsLinear(a, b), 0.75f);
+            }
+        }
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNaturalBaseNeedsInterpolation() {
+        new LogMath((float) Math.E, true);
+    }
+
+
+    @Test
+    public void testAddAsLinear() {
+        for (float logBase : LOG_BASES) {
+            LogMath logMath = new LogMath(logBase, true, true);
+            Random random = new Random(42);
+            for (int i = 0; i < 100000; i++) {
+                float a = (random.nextFloat() - 0.5f) * 200000;
+                float b = a - random.nextFloat() * 20 / (float) Math.log(logBase);
+                float expected = exactSum(logBase, a, b);
+                assertEquals(expected, logMath.addAsLinear(a, b), tolerance(logBase, expected));
+                assertEquals(expected, logMath.addAsLinear(b, a), tolerance(logBase, expected));
+            }
+            assertEquals(LogMath.getLogZero(), logMath.addAsLinear(LogMath.getLogZero(), LogMath.getLogZero()), 0);
+            assertEquals(-5.0f, logMath.addAsLinear(-5.0f, LogMath.getLogZero()), 0);
+        }
+    }
+
+
+    @Test
+    public void testBulkAddAsLinear() {
+        for (float logBase : LOG_BASES) {
+            for (boolean useAddTable : new boolean[]{true, false}) {
+                LogMath logMath = new LogMath(logBase, useAddTable, true);
+                Random random = new Random(42);
+                for (int i = 0; i < 1000; i++) {
+                    float[] values = new float[1 + random.nextInt(300)];
+                    float offset = (random.nextFloat() - 0.5f) * 200000;
+                    for (int j = 0; j < values.length; j++)
+                        values[j] = offset - random.nextFloat() * 30 / (float) Math.log(logBase);
+                    if (i % 10 == 0)
+                        values[random.nextInt(values.length)] = LogMath.getLogZero();
+
+                    float expected = exactSum(logBase, values);
+                    assertEquals(expected, logMath.addAsLinear(values), tolerance(logBase, expected));
+
+                    // the bulk sum is as least as accurate as the sum of pairs
+                    float pairs = LogMath.getLogZero();
+                    for (float value : values)
+                        pairs = logMath.addAsLinear(pairs, value);
+                    assertTrue(Math.abs(logMath.addAsLinear(values) - expected)
+                            <= Math.abs(pairs - expected) + tolerance(logBase, expected));
+                }
+                assertEquals(LogMath.getLogZero(), logMath.addAsLinear(new float[0]), 0);
+                assertEquals(LogMath.getLogZero(), logMath.addAsLinear(new float[]{LogMath.getLogZero()}), 0);
+                assertEquals(-7.0f, logMath.addAsLinear(new float[]{-7.0f, LogMath.getLogZero()}), 0);
+            }
+        }
+    }
+
+
+    @Test
+    public void testMax() {
+        float[] values = {-3, 5, LogMath.getLogZero(), 2};
+        float[] weights = {4, -1, 0, 1};
+        assertEquals(5.0f, LogMath.max(values, values.length), 0);
+        assertEquals(-3.0f, LogMath.max(values, 1), 0);
+        assertEquals(LogMath.getLogZero(), LogMath.max(values, 0), 0);
+        assertEquals(4.0f, LogMath.maxPlus(values, weights, values.length), 0);
+    }
+
+
+    @Test
+    public void testConversions() {
+        LogMath logMath = new LogMath(1.0001f, true);
+        Random random = new Random(42);
+        float[] values = new float[1000];
+        for (int i = 0; i < values.length; i++)
+            values[i] = (random.nextFloat() - 0.9f) * 100;
+        values[7] = LogMath.getLogZero();
+
+        float[] ln = values.clone();
+        logMath.lnToLog(ln);
+        float[] log10 = values.clone();
+        logMath.log10ToLog(log10);
+        float[] back = ln.clone();
+        logMath.logToLn(back);
+        for (int i = 0; i < values.length; i++) {
+            // the bulk conversions give the same results as the single ones
+            assertEquals(logMath.lnToLog(values[i]), ln[i], 0);
+            assertEquals(logMath.log10ToLog(values[i]), log10[i], 0);
+            assertEquals(logMath.logToLn(ln[i]), back[i], 0);
+        }
+        assertEquals(LogMath.getLogZero(), back[7], 0);
+    }
+
+
+    @Test
+    public void testNaturalBase() {
+        LogMath logMath = new LogMath((float) Math.E, true, true);
+        assertTrue(logMath.isNaturalBase());
+        assertFalse(new LogMath(1.0001f, true).isNaturalBase());
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            // the conversions from and to natural log are exact
+            float value = (random.nextFloat() - 0.9f) * 100;
+            assertEquals(value, logMath.lnToLog(value), 0);
+            assertEquals(value, logMath.logToLn(value), 0);
+            assertEquals(value * (float) Math.log(10), logMath.log10ToLog(value), 0);
+        }
+    }
+
+
+    /** @return the add table with one entry per unit of the log base, as computed by the log math before */
+    private static float[] roundedAddTable(LogMath logMath) {
+        int entries = Math.min((int) -Math.rint(logMath.linearToLog(logMath.logToLinear(0.5f) - 1)), 150000);
+        float[] table = new float[entries];
+        for (int index = 0; index < entries; index++)
+            table[index] = logMath.linearToLog((float) logMath.logToLinear(-index) + 1.0f);
+        return table;
+    }
+
+
+    /** @return log(b^a_0 + b^a_1 + ...) computed in double precision */
+    private static float exactSum(float logBase, float... logValues) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (float value : logValues)
+            max = Math.max(max, value);
+        if (max == LogMath.getLogZero())
+            return LogMath.getLogZero();
+        double lnBase = Math.log(logBase);
+        double sum = 0;
+        for (float value : logValues)
+            sum += Math.exp((value - max) * lnBase);
+        return (float) (max + Math.log(sum) / lnBase);
+    }
+
+
+    /** @return the tolerance for a result, a small fraction in natural log and the precision of a float */
+    private static float tolerance(float logBase, float expected) {
+        return (float) (5e-6 / Math.log(logBase)) + 2 * Math.ulp(expected);
+    }
+}
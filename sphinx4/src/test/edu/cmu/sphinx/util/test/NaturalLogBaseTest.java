@@ -0,0 +1,115 @@
+/*
+ * Copyright 1999-2004 Carnegie Mellon University.
+ * Portions Copyright 2004 Sun Microsystems, Inc.
+ * Portions Copyright 2004 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.util.test;
+
+import edu.cmu.sphinx.decoder.scorer.SimpleAcousticScorer;
+import edu.cmu.sphinx.frontend.util.StreamDataSource;
+import edu.cmu.sphinx.linguist.WordSequence;
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.dictionary.Dictionary;
+import edu.cmu.sphinx.linguist.dictionary.FastDictionary;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.linguist.language.ngram.SimpleNGramModel;
+import edu.cmu.sphinx.recognizer.Recognizer;
+import edu.cmu.sphinx.result.Result;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.props.ConfigurationManager;
+import edu.cmu.sphinx.util.props.ConfigurationManagerUtils;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import javax.sound.sampled.AudioSystem;
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Tests that a decoder in the natural log base gives the hypotheses of a decoder in the default log base. */
+public class NaturalLogBaseTest {
+
+    private static final String CONFIG = "src/test/edu/cmu/sphinx/tools/batch/test/parallel.config.xml";
+
+    private static final String[] AUDIO_FILES = {
+            "src/test/edu/cmu/sphinx/result/test/left.wav",
+            "src/test/edu/cmu/sphinx/result/test/green.wav",
+            "src/apps/edu/cmu/sphinx/demo/lattice/10001-90210-01803.wav"};
+
+    private static final String LANGUAGE_MODEL = "src/test/edu/cmu/sphinx/result/test/hellongram.trigram.lm";
+
+
+    @Test
+    public void testSameHypotheses() throws Exception {
+        List<Result> results = decode(1.0001f);
+        List<Result> naturalResults = decode((float) Math.E);
+        double lnBase = Math.log(1.0001f);
+        for (int i = 0; i < AUDIO_FILES.length; i++) {
+            Result result = results.get(i);
+            Result naturalResult = naturalResults.get(i);
+            assertTrue(result.getBestFinalResultNoFiller().length() > 0);
+            assertEquals(result.getBestFinalResultNoFiller(), naturalResult.getBestFinalResultNoFiller());
+            // the scores are the same in natural log
+            double score = result.getBestFinalToken().getScore() * lnBase;
+            double naturalScore = naturalResult.getBestFinalToken().getScore();
+            assertEquals(score, naturalScore, Math.abs(score) * 1e-4);
+        }
+    }
+
+
+    @Test
+    public void testLanguageModelProbabilities() throws Exception {
+        Dictionary dictionary = new FastDictionary(new URL("file:models/acoustic/tidigits/dictionary"),
+                new URL("file:models/acoustic/tidigits/fillerdict"), null, false, null, true, true, new UnitManager());
+        dictionary.allocate();
+        LogMath logMath = new LogMath(1.0001f, true);
+        LogMath naturalLogMath = new LogMath((float) Math.E, true, true);
+        SimpleNGramModel model = new SimpleNGramModel(LANGUAGE_MODEL, dictionary, 0.7f, logMath, 3);
+        SimpleNGramModel naturalModel = new SimpleNGramModel(LANGUAGE_MODEL, dictionary, 0.7f, naturalLogMath, 3);
+        model.allocate();
+        naturalModel.allocate();
+
+        double lnBase = Math.log(1.0001f);
+        for (String spelling : model.getVocabulary()) {
+            WordSequence sequence = new WordSequence(new Word[]{dictionary.getWord(spelling)});
+            double probability = model.getProbability(sequence) * lnBase;
+            double naturalProbability = naturalModel.getProbability(sequence);
+            assertEquals(probability, naturalProbability, Math.abs(probability) * 1e-4 + 1e-4);
+        }
+        model.deallocate();
+        naturalModel.deallocate();
+        dictionary.deallocate();
+    }
+
+
+    /** Decodes the audio files with a decoder in the given log base. */
+    private static List<Result> decode(float logBase) throws Exception {
+        ConfigurationManager cm = new ConfigurationManager(new File(CONFIG).toURI().toURL());
+        ConfigurationManagerUtils.setProperty(cm, "logMath", "logBase", String.valueOf(logBase));
+        // the rounded add table would be empty in the natural base
+        ConfigurationManagerUtils.setProperty(cm, "logMath", LogMath.PROP_INTERPOLATE_ADD_TABLE,
+                String.valueOf(logBase == (float) Math.E));
+        // the models of the two decoders must not be shared
+        ConfigurationManagerUtils.setProperty(cm, "acousticModel", "loader", "sphinx3Loader");
+        ConfigurationManagerUtils.setProperty(cm, "scorer", SimpleAcousticScorer.PROP_LOADER, "sphinx3Loader");
+
+        Recognizer recognizer = (Recognizer) cm.lookup("recognizer");
+        StreamDataSource source = (StreamDataSource) cm.lookup("streamDataSource");
+        recognizer.allocate();
+        List<Result> results = new ArrayList<Result>();
+        for (String file : AUDIO_FILES) {
+            source.setInputStream(AudioSystem.getAudioInputStream(new File(file)), file);
+            results.add(recognizer.recognize());
+        }
+        recognizer.deallocate();
+        return results;
+    }
+}
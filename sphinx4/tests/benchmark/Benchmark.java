@@ -0,0 +1,149 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package benchmark;
+
+import edu.cmu.sphinx.frontend.Data;
+import edu.cmu.sphinx.frontend.DataEndSignal;
+import edu.cmu.sphinx.frontend.DataProcessor;
+import edu.cmu.sphinx.frontend.util.StreamDataSource;
+import edu.cmu.sphinx.util.props.ConfigurationManager;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * A benchmark run by the {@link BenchmarkRunner}. The runner calls {@link #setUp} with a configuration manager of its
+ * own, then calls {@link #run} repeatedly and divides the elapsed time by the number of operations that the calls
+ * report. The input of every benchmark is derived from the bundled models and audio files or from random numbers with
+ * a fixed seed, so that two runs measure the same work.
+ */
+public abstract class Benchmark {
+
+    /** The audio files that the benchmarks process, relative to the sphinx4 directory. */
+    static final String[] AUDIO_FILES = {
+            "src/test/edu/cmu/sphinx/result/test/left.wav",
+            "src/test/edu/cmu/sphinx/result/test/green.wav"
+    };
+
+    /** The seed of all random input. */
+    static final long SEED = 42;
+
+    private static volatile long sink;
+
+    private final String name;
+
+
+    /**
+     * Creates a benchmark.
+     *
+     * @param name the name of the benchmark, the group and the measured operation separated by a dot
+     */
+    protected Benchmark(String name) {
+        this.name = name;
+    }
+
+
+    /** @return the name of this benchmark */
+    public String getName() {
+        return name;
+    }
+
+
+    /**
+     * Prepares the input of this benchmark.
+     *
+     * @param cm a configuration manager that is used by this benchmark only
+     * @throws Exception if the input can not be prepared
+     */
+    public void setUp(ConfigurationManager cm) throws Exception {
+    }
+
+
+    /**
+     * Runs a batch of operations.
+     *
+     * @return the number of operations that were run
+     * @throws Exception if an operation fails
+     */
+    public abstract int run() throws Exception;
+
+
+    /**
+     * Returns the metrics of the measured runs other than the time per operation, like the real time factor of a
+     * decoder.
+     *
+     * @param seconds    the time spent in the measured runs
+     * @param operations the number of operations of the measured runs
+     * @return the metrics by name
+     */
+    public Map<String, Double> getMetrics(double seconds, long operations) {
+        return Collections.emptyMap();
+    }
+
+
+    /** Releases the resources of this benchmark. */
+    public void tearDown() {
+    }
+
+
+    /**
+     * Keeps a result of a batch of operations, so that the compiler can not drop the operations.
+     *
+     * @param value the result
+     */
+    protected static void consume(long value) {
+        sink += value;
+    }
+
+
+    /**
+     * Keeps a result of a batch of operations, so that the compiler can not drop the operations.
+     *
+     * @param value the result
+     */
+    protected static void consume(float value) {
+        sink += Float.floatToIntBits(value);
+    }
+
+
+    /**
+     * Reads an audio file through a front end.
+     *
+     * @param source the data source of the front end
+     * @param output the last processor of the front end
+     * @param file   the audio file
+     * @return the output of the front end, up to and including the {@link DataEndSignal}
+     * @throws Exception if the file can not be read
+     */
+    static List<Data> process(StreamDataSource source, DataProcessor output, String file) throws Exception {
+        source.setInputStream(AudioSystem.getAudioInputStream(new File(file)), file);
+        List<Data> data = new ArrayList<Data>();
+        Data item;
+        do {
+            item = output.getData();
+            if (item != null) {
+                data.add(item);
+            }
+        } while (item != null && !(item instanceof DataEndSignal));
+        return data;
+    }
+
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package benchmark;
+
+import edu.cmu.sphinx.decoder.scorer.SimpleAcousticScorer;
+import edu.cmu.sphinx.util.props.ConfigurationManager;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the benchmarks and writes their results as JSON, so that the results of two releases can be compared.
+ * <p/>
+ * Every benchmark is set up with a configuration manager of its own, run for a number of warmup iterations that are
+ * not measured and then for a number of measured iterations of a fixed duration. The result of a benchmark is the mean
+ * time per operation over the measured iterations, with its standard deviation. With <code>-fork</code> every benchmark
+ * runs in a JVM of its own, with the arguments of this JVM, so that the code compiled for one benchmark does not
+ * slow down the next.
+ * <p/>
+ * Usage:
+ * <pre>
+ * BenchmarkRunner [-config file] [-include regex] [-warmup n] [-iterations n] [-time ms] [-fork] [-json file]
+ * BenchmarkRunner -list
+ * BenchmarkRunner -compare baseline.json current.json [thresholdPercent]
+ * </pre>
+ * The defaults are the configuration <code>tests/benchmark/benchmark.config.xml</code>, all benchmarks, 5 warmup and
+ * 10 measured iterations of 1000 ms each, no forks and no JSON file. A comparison flags every benchmark whose mean
+ * changed by more than the threshold, 5% by default, and by more than twice the standard deviation of both runs.
+ */
+public class BenchmarkRunner {
+
+    private static final DecimalFormat FORMAT = new DecimalFormat("0.000");
+
+    private String config = "tests/benchmark/benchmark.config.xml";
+    private String include = ".*";
+    private int warmup = 5;
+    private int iterations = 10;
+    private int time = 1000;
+    private boolean fork;
+    private String json;
+
+
+    /**
+     * Creates all benchmarks.
+     *
+     * @param cm the configuration manager used to look up the front end processors
+     * @return the benchmarks
+     */
+    static List<Benchmark> createBenchmarks(ConfigurationManager cm) {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.addAll(ScoringBenchmarks.create());
+        benchmarks.addAll(SearchBenchmarks.create());
+        benchmarks.addAll(FrontEndBenchmarks.create(cm));
+        benchmarks.addAll(VadBenchmarks.create());
+        benchmarks.add(new DecodingBenchmark());
+        for (int frameSkip = 2; frameSkip <= 3; frameSkip++) {
+            Map<String, String> scorerProperties = new HashMap<String, String>();
+            scorerProperties.put(SimpleAcousticScorer.PROP_FRAME_SKIP, String.valueOf(frameSkip));
+            benchmarks.add(new DecodingBenchmark("decoder.recognize.frameSkip" + frameSkip, scorerProperties));
+            scorerProperties = new HashMap<String, String>(scorerProperties);
+            scorerProperties.put(SimpleAcousticScorer.PROP_INTERPOLATE_SKIPPED_FRAMES, "true");
+            benchmarks.add(new DecodingBenchmark("decoder.recognize.frameSkip" + frameSkip + "Interpolated",
+                    scorerProperties));
+        }
+        return benchmarks;
+    }
+
+
+    /**
+     * Runs the selected benchmarks.
+     *
+     * @return the results of the benchmarks
+     * @throws Exception if a benchmark fails
+     */
+    List<Result> run() throws Exception {
+        URL url = new File(config).toURI().toURL();
+        Pattern pattern = Pattern.compile(include);
+        List<Result> results = new ArrayList<Result>();
+        for (Benchmark benchmark : createBenchmarks(new ConfigurationManager(url))) {
+            if (!pattern.matcher(benchmark.getName()).find()) {
+                continue;
+            }
+            Result result = fork ? runForked(benchmark) : run(benchmark, new ConfigurationManager(url));
+            System.out.println(result.format());
+            results.add(result);
+        }
+        return results;
+    }
+
+
+    /**
+     * Runs a benchmark in this JVM.
+     *
+     * @param benchmark the benchmark
+     * @param cm        the configuration manager of the benchmark
+     * @return the result of the benchmark
+     * @throws Exception if the benchmark fails
+     */
+    Result run(Benchmark benchmark, ConfigurationManager cm) throws Exception {
+        benchmark.setUp(cm);
+        System.gc();
+        long nanos = time * 1000000L;
+        for (int i = 0; i < warmup; i++) {
+            measure(benchmark, nanos);
+        }
+        double[] nanosPerOperation = new double[iterations];
+        long totalNanos = 0;
+        long totalOperations = 0;
+        for (int i = 0; i < iterations; i++) {
+            long[] measurement = measure(benchmark, nanos);
+            nanosPerOperation[i] = (double) measurement[0] / measurement[1];
+            totalNanos += measurement[0];
+            totalOperations += measurement[1];
+        }
+        Map<String, Double> metrics = benchmark.getMetrics(totalNanos / 1e9, totalOperations);
+        benchmark.tearDown();
+        return new Result(benchmark.getName(), nanosPerOperation, totalOperations, metrics);
+    }
+
+
+    /**
+     * Runs a benchmark for at least the given time.
+     *
+     * @return the elapsed nanoseconds and the number of operations
+     */
+    private static long[] measure(Benchmark benchmark, long nanos) throws Exception {
+        long operations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            operations += benchmark.run();
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < nanos);
+        return new long[]{elapsed, operations};
+    }
+
+
+    /**
+     * Runs a benchmark in a new JVM with the arguments of this JVM.
+     *
+     * @param benchmark the benchmark
+     * @return the result of the benchmark
+     * @throws Exception if the benchmark fails
+     */
+    private Result runForked(Benchmark benchmark) throws Exception {
+        File file = File.createTempFile("benchmark", ".json");
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), getClass().getName(),
+                "-config", config, "-include", '^' + Pattern.quote(benchmark.getName()) + '$',
+                "-warmup", String.valueOf(warmup), "-iterations", String.valueOf(iterations),
+                "-time", String.valueOf(time), "-json", file.getPath()));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        // the result is printed by this JVM, the output of the fork is only shown if it fails
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        InputStream in = process.getInputStream();
+        byte[] buffer = new byte[4096];
+        for (int n; (n = in.read(buffer)) != -1;) {
+            output.write(buffer, 0, n);
+        }
+        int status = process.waitFor();
+        List<Result> results = status == 0 ? readResults(file.getPath()) : Collections.<Result>emptyList();
+        file.delete();
+        if (results.size() != 1) {
+            System.out.print(output);
+            throw new IOException("Fork of " + benchmark.getName() + " failed with status " + status);
+        }
+        return results.get(0);
+    }
+
+
+    /**
+     * Writes results as JSON, one benchmark per line.
+     *
+     * @param results the results
+     * @param writer  the writer to write to
+     */
+    void writeResults(List<Result> results, PrintWriter writer) {
+        writer.println('{');
+        writer.println("  \"date\": \"" + new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date()) + "\",");
+        writer.println("  \"java\": \"" + System.getProperty("java.version") + "\",");
+        writer.println("  \"vm\": \"" + System.getProperty("java.vm.name") + "\",");
+        writer.println("  \"os\": \"" + System.getProperty("os.name") + ' ' + System.getProperty("os.arch") + "\",");
+        writer.println("  \"processors\": " + Runtime.getRuntime().availableProcessors() + ',');
+        writer.println("  \"warmup\": " + warmup + ", \"iterations\": " + iterations + ", \"time\": " + time
+                + ", \"fork\": " + fork + ',');
+        writer.println("  \"benchmarks\": [");
+        for (int i = 0; i < results.size(); i++) {
+            writer.println("    " + results.get(i).toJson() + (i < results.size() - 1 ? "," : ""));
+        }
+        writer.println("  ]");
+        writer.println('}');
+    }
+
+
+    /**
+     * Reads the results of a JSON file written by {@link #writeResults}.
+     *
+     * @param file the name of the file
+     * @return the results in the order of the file
+     * @throws IOException if the file can not be read
+     */
+    static List<Result> readResults(String file) throws IOException {
+        List<Result> results = new ArrayList<Result>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().startsWith("{\"name\"")) {
+                results.add(Result.parse(line));
+            }
+        }
+        reader.close();
+        return results;
+    }
+
+
+    /**
+     * Prints the change of every benchmark between two result files.
+     *
+     * @param baseline  the results of the baseline
+     * @param current   the current results
+     * @param threshold the change in percent above which a benchmark is flagged
+     */
+    static void compare(List<Result> baseline, List<Result> current, double threshold) {
+        Map<String, Result> base = new HashMap<String, Result>();
+        for (Result result : baseline) {
+            base.put(result.name, result);
+        }
+        System.out.println(pad("Benchmark", 44) + pad("Baseline ns/op", 16) + pad("Current ns/op", 16) + "Change");
+        for (Result result : current) {
+            Result old = base.get(result.name);
+            if (old == null) {
+                System.out.println(pad(result.name, 44) + pad("-", 16) + pad(FORMAT.format(result.mean), 16) + "new");
+                continue;
+            }
+            double change = 100 * (result.mean - old.mean) / old.mean;
+            String flag = "";
+            if (Math.abs(change) > threshold
+                    && Math.abs(result.mean - old.mean) > 2 * (result.stddev + old.stddev)) {
+                flag = change > 0 ? "  SLOWER" : "  FASTER";
+            }
+            System.out.println(pad(result.name, 44) + pad(FORMAT.format(old.mean), 16)
+                    + pad(FORMAT.format(result.mean), 16) + (change > 0 ? "+" : "") + FORMAT.format(change) + '%'
+                    + flag);
+        }
+    }
+
+
+    private static String pad(String text, int width) {
+        StringBuilder sb = new StringBuilder(text);
+        do {
+            sb.append(' ');
+        } while (sb.length() < width);
+        return sb.toString();
+    }
+
+
+    /** The result of a benchmark. */
+    static class Result {
+
+        private static final Pattern FIELD = Pattern.compile("\"(\\w+)\": (\"[^\"]*\"|\\{[^}]*\\}|[-+0-9.eEInfinityNa]+)");
+
+        final String name;
+        final double mean;
+        final double stddev;
+        final double min;
+        final double max;
+        final int iterations;
+        final long operations;
+        final Map<String, Double> metrics;
+
+
+        Result(String name, double[] nanosPerOperation, long operations, Map<String, Double> metrics) {
+            double sum = 0;
+            double min = Double.MAX_VALUE;
+            double max = 0;
+            for (double value : nanosPerOperation) {
+                sum += value;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            double mean = sum / nanosPerOperation.length;
+            double squares = 0;
+            for (double value : nanosPerOperation) {
+                squares += (value - mean) * (value - mean);
+            }
+            this.name = name;
+            this.mean = mean;
+            this.stddev = nanosPerOperation.length > 1 ? Math.sqrt(squares / (nanosPerOperation.length - 1)) : 0;
+            this.min = min;
+            this.max = max;
+            this.iterations = nanosPerOperation.length;
+            this.operations = operations;
+            this.metrics = metrics;
+        }
+
+
+        private Result(String name, double mean, double stddev, double min, double max, int iterations,
+                       long operations, Map<String, Double> metrics) {
+            this.name = name;
+            this.mean = mean;
+            this.stddev = stddev;
+            this.min = min;
+            this.max = max;
+            this.iterations = iterations;
+            this.operations = operations;
+            this.metrics = metrics;
+        }
+
+
+        /** @return this result as a JSON object on one line */
+        String toJson() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{\"name\": \"").append(name).append("\", \"unit\": \"ns/op\"");
+            sb.append(", \"mean\": ").append(mean).append(", \"stddev\": ").append(stddev);
+            sb.append(", \"min\": ").append(min).append(", \"max\": ").append(max);
+            sb.append(", \"iterations\": ").append(iterations).append(", \"operations\": ").append(operations);
+            sb.append(", \"metrics\": {");
+            String separator = "";
+            for (Map.Entry<String, Double> metric : new TreeMap<String, Double>(metrics).entrySet()) {
+                sb.append(separator).append('"').append(metric.getKey()).append("\": ").append(metric.getValue());
+                separator = ", ";
+            }
+            return sb.append("}}").toString();
+        }
+
+
+        /** @return this result for the console */
+        String format() {
+            StringBuilder sb = new StringBuilder(pad(name, 44));
+            sb.append(pad(FORMAT.format(mean), 14)).append("+- ").append(pad(FORMAT.format(stddev), 12));
+            sb.append("ns/op");
+            for (Map.Entry<String, Double> metric : new TreeMap<String, Double>(metrics).entrySet()) {
+                sb.append("  ").append(metric.getKey()).append(": ").append(FORMAT.format(metric.getValue()));
+            }
+            return sb.toString();
+        }
+
+
+        /**
+         * Parses a result written by {@link #toJson}.
+         *
+         * @param line the JSON object
+         * @return the result
+         */
+        static Result parse(String line) {
+            Map<String, String> fields = new HashMap<String, String>();
+            Matcher matcher = FIELD.matcher(line);
+            while (matcher.find()) {
+                fields.put(matcher.group(1), matcher.group(2));
+            }
+            Map<String, Double> metrics = new TreeMap<String, Double>();
+            String nested = fields.get("metrics");
+            if (nested != null) {
+                Matcher metric = FIELD.matcher(nested);
+                while (metric.find()) {
+                    metrics.put(metric.group(1), Double.valueOf(metric.group(2)));
+                }
+            }
+            String name = fields.get("name");
+            return new Result(name.substring(1, name.length() - 1), Double.parseDouble(fields.get("mean")),
+                    Double.parseDouble(fields.get("stddev")), Double.parseDouble(fields.get("min")),
+                    Double.parseDouble(fields.get("max")), Integer.parseInt(fields.get("iterations")),
+                    Long.parseLong(fields.get("operations")), metrics);
+        }
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        boolean list = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-compare")) {
+                if (args.length < i + 3) {
+                    System.out.println("Usage: BenchmarkRunner -compare baseline.json current.json [threshold]");
+                    System.exit(1);
+                }
+                double threshold = args.length > i + 3 ? Double.parseDouble(args[i + 3]) : 5;
+                compare(readResults(args[i + 1]), readResults(args[i + 2]), threshold);
+                return;
+            } else if (args[i].equals("-config")) {
+                runner.config = args[++i];
+            } else if (args[i].equals("-include")) {
+                runner.include = args[++i];
+            } else if (args[i].equals("-warmup")) {
+                runner.warmup = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-iterations")) {
+                runner.iterations = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-time")) {
+                runner.time = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-fork")) {
+                runner.fork = true;
+            } else if (args[i].equals("-json")) {
+                runner.json = args[++i];
+            } else if (args[i].equals("-list")) {
+                list = true;
+            } else {
+                System.out.println("Usage: BenchmarkRunner [-config file] [-include regex] [-warmup n] "
+                        + "[-iterations n] [-time ms] [-fork] [-json file] | -list | -compare baseline current");
+                System.exit(1);
+            }
+        }
+
+        if (list) {
+            URL url = new File(runner.config).toURI().toURL();
+            for (Benchmark benchmark : createBenchmarks(new ConfigurationManager(url))) {
+                System.out.println(benchmark.getName());
+            }
+            return;
+        }
+
+        List<Result> results = runner.run();
+        if (runner.json != null) {
+            PrintWriter writer = new PrintWriter(new FileWriter(runner.json));
+            runner.writeResults(results, writer);
+            writer.close();
+        }
+    }
+}
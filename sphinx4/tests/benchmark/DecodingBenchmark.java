@@ -0,0 +1,100 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package benchmark;
+
+import edu.cmu.sphinx.frontend.util.StreamDataSource;
+import edu.cmu.sphinx.recognizer.Recognizer;
+import edu.cmu.sphinx.result.Result;
+import edu.cmu.sphinx.util.props.ConfigurationManager;
+import edu.cmu.sphinx.util.props.ConfigurationManagerUtils;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * Decodes the bundled audio files with the recognizer of the configuration, one operation is one utterance. Besides
+ * the time per utterance it reports the real time factor, the processing time divided by the duration of the audio.
+ * Variants of the decoder are benchmarked by overriding properties of the scorer.
+ */
+public class DecodingBenchmark extends Benchmark {
+
+    private final Map<String, String> scorerProperties;
+    private Recognizer recognizer;
+    private StreamDataSource source;
+    private double audioSeconds;
+
+
+    public DecodingBenchmark() {
+        this("decoder.recognize", new HashMap<String, String>());
+    }
+
+
+    /**
+     * Creates a benchmark of a variant of the decoder.
+     *
+     * @param name             the name of the benchmark
+     * @param scorerProperties the properties of the scorer to override
+     */
+    public DecodingBenchmark(String name, Map<String, String> scorerProperties) {
+        super(name);
+        this.scorerProperties = scorerProperties;
+    }
+
+
+    @Override
+    public void setUp(ConfigurationManager cm) throws Exception {
+        for (Map.Entry<String, String> property : scorerProperties.entrySet()) {
+            ConfigurationManagerUtils.setProperty(cm, "scorer", property.getKey(), property.getValue());
+        }
+        recognizer = (Recognizer) cm.lookup("recognizer");
+        source = (StreamDataSource) cm.lookup("streamDataSource");
+        recognizer.allocate();
+        audioSeconds = 0;
+        for (String file : AUDIO_FILES) {
+            AudioInputStream stream = AudioSystem.getAudioInputStream(new File(file));
+            audioSeconds += stream.getFrameLength() / stream.getFormat().getFrameRate();
+            stream.close();
+        }
+    }
+
+
+    @Override
+    public int run() throws Exception {
+        long sum = 0;
+        for (String file : AUDIO_FILES) {
+            source.setInputStream(AudioSystem.getAudioInputStream(new File(file)), file);
+            Result result = recognizer.recognize();
+            if (result != null) {
+                sum += result.getBestResultNoFiller().length();
+            }
+        }
+        consume(sum);
+        return AUDIO_FILES.length;
+    }
+
+
+    @Override
+    public Map<String, Double> getMetrics(double seconds, long operations) {
+        double runs = (double) operations / AUDIO_FILES.length;
+        return Collections.singletonMap("realTimeFactor", seconds / (runs * audioSeconds));
+    }
+
+
+    @Override
+    public void tearDown() {
+        recognizer.deallocate();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package benchmark;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.frontend.endpoint.SpeechClassifiedData;
+import edu.cmu.sphinx.frontend.util.StreamDataSource;
+import edu.cmu.sphinx.util.props.ConfigurationManager;
+
+import java.util.*;
+
+/**
+ * Benchmarks of the processors of the front ends of the configuration, each processor on its own. A processor reads the
+ * output that its predecessor produced for the bundled audio files from a replaying source, so a benchmark measures
+ * only the work of its processor. The replayed data is copied for every run, because some processors change their
+ * input in place; the copies are part of the measured time of every processor alike.
+ */
+public class FrontEndBenchmarks {
+
+    /** The front ends whose processors are benchmarked. A processor that is in an earlier front end is skipped. */
+    private static final String[] FRONT_ENDS = {"frontEnd", "liveFrontEnd"};
+
+
+    private FrontEndBenchmarks() {
+    }
+
+
+    /**
+     * Creates a benchmark for every processor of the front ends.
+     *
+     * @param cm the configuration manager
+     * @return the benchmarks of this group
+     */
+    static List<Benchmark> create(ConfigurationManager cm) {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        Set<String> processors = new HashSet<String>();
+        for (String frontEndName : FRONT_ENDS) {
+            List<DataProcessor> elements = ((FrontEnd) cm.lookup(frontEndName)).getElements();
+            for (int i = 1; i < elements.size(); i++) {
+                String processor = elements.get(i).getClass().getSimpleName();
+                if (processors.add(processor)) {
+                    benchmarks.add(new ProcessorBenchmark("frontend." + processor, frontEndName, i));
+                }
+            }
+        }
+        return benchmarks;
+    }
+
+
+    /** Runs the bundled audio through a single processor, one operation is one data object that it outputs. */
+    static class ProcessorBenchmark extends Benchmark {
+
+        private final String frontEndName;
+        private final int position;
+        private DataProcessor processor;
+        private Replay replay;
+
+
+        ProcessorBenchmark(String name, String frontEndName, int position) {
+            super(name);
+            this.frontEndName = frontEndName;
+            this.position = position;
+        }
+
+
+        @Override
+        public void setUp(ConfigurationManager cm) throws Exception {
+            FrontEnd frontEnd = (FrontEnd) cm.lookup(frontEndName);
+            List<DataProcessor> elements = frontEnd.getElements();
+            StreamDataSource source = (StreamDataSource) elements.get(0);
+            // the input of the processor is the output of its predecessor in the front end
+            List<Data> input = new ArrayList<Data>();
+            for (String file : AUDIO_FILES) {
+                input.addAll(process(source, elements.get(position - 1), file));
+            }
+            processor = elements.get(position);
+            replay = new Replay(input);
+            processor.setPredecessor(replay);
+        }
+
+
+        @Override
+        public int run() {
+            replay.rewind();
+            processor.initialize();
+            int count = 0;
+            while (processor.getData() != null) {
+                count++;
+            }
+            consume(count);
+            return count;
+        }
+    }
+
+
+    /** A source that returns copies of recorded data. */
+    static class Replay extends BaseDataProcessor {
+
+        private final List<Data> data;
+        private int next;
+
+
+        Replay(List<Data> data) {
+            this.data = data;
+        }
+
+
+        /** Starts the replay from the first data object again. */
+        void rewind() {
+            next = 0;
+        }
+
+
+        @Override
+        public Data getData() throws DataProcessingException {
+            if (next == data.size()) {
+                return null;
+            }
+            return copy(data.get(next++));
+        }
+
+
+        private static Data copy(Data item) {
+            if (item instanceof DoubleData) {
+                DoubleData values = (DoubleData) item;
+                return new DoubleData(values.getValues().clone(), values.getSampleRate(), values.getCollectTime(),
+                        values.getFirstSampleNumber());
+            } else if (item instanceof SpeechClassifiedData) {
+                SpeechClassifiedData classified = (SpeechClassifiedData) item;
+                return new SpeechClassifiedData((DoubleData) copy(classified.getDoubleData()), classified.isSpeech());
+            } else if (item instanceof FloatData) {
+                FloatData values = (FloatData) item;
+                return new FloatData(values.getValues().clone(), values.getSampleRate(), values.getCollectTime(),
+                        values.getFirstSampleNumber());
+            }
+            return item;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package benchmark;
+
+import edu.cmu.sphinx.frontend.Data;
+import edu.cmu.sphinx.frontend.FloatData;
+import edu.cmu.sphinx.frontend.FrontEnd;
+import edu.cmu.sphinx.frontend.util.StreamDataSource;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.GaussianMixture;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Loader;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.MixtureComponent;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Pool;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Senone;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.props.ConfigurationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks of the acoustic scoring and of the log math it is built on. The Gaussians are those of the acoustic model
+ * of the configuration, scored against the features of the bundled audio files.
+ */
+public class ScoringBenchmarks {
+
+    /** The number of frames scored in one run. */
+    private static final int FRAMES = 20;
+
+    /** The number of additions in one run of the log math benchmarks. */
+    private static final int ADDITIONS = 10000;
+
+    /** The number of values summed up at once, that of the components of a senone. */
+    private static final int SUM_LENGTH = 8;
+
+
+    private ScoringBenchmarks() {
+    }
+
+
+    /** @return the benchmarks of this group */
+    static List<Benchmark> create() {
+        return Arrays.asList(
+                new MixtureComponentBenchmark(),
+                new GaussianMixtureBenchmark(),
+                new AddAsLinearBenchmark("logmath.addAsLinear.table", true),
+                new AddAsLinearBenchmark("logmath.addAsLinear.exact", false),
+                new SumBenchmark("logmath.sum.pairs", true, false),
+                new SumBenchmark("logmath.sum.bulk", true, true),
+                new SumBenchmark("logmath.sum.bulkExact", false, true));
+    }
+
+
+    /**
+     * Computes the features of the bundled audio files.
+     *
+     * @param cm the configuration manager
+     * @return the features
+     * @throws Exception if the audio can not be read
+     */
+    static List<FloatData> getFeatures(ConfigurationManager cm) throws Exception {
+        FrontEnd frontEnd = (FrontEnd) cm.lookup("frontEnd");
+        StreamDataSource source = (StreamDataSource) cm.lookup("streamDataSource");
+        List<FloatData> features = new ArrayList<FloatData>();
+        for (String file : Benchmark.AUDIO_FILES) {
+            for (Data data : Benchmark.process(source, frontEnd, file)) {
+                if (data instanceof FloatData) {
+                    features.add((FloatData) data);
+                }
+            }
+        }
+        return features;
+    }
+
+
+    /**
+     * Loads the senones of the acoustic model.
+     *
+     * @param cm the configuration manager
+     * @return the senones
+     * @throws Exception if the model can not be loaded
+     */
+    static List<GaussianMixture> getSenones(ConfigurationManager cm) throws Exception {
+        Loader loader = (Loader) cm.lookup("sphinx3Loader");
+        loader.load();
+        Pool<Senone> pool = loader.getSenonePool();
+        List<GaussianMixture> senones = new ArrayList<GaussianMixture>();
+        for (int i = 0; i < pool.size(); i++) {
+            senones.add((GaussianMixture) pool.get(i));
+        }
+        return senones;
+    }
+
+
+    /** Scores single Gaussians, one operation is one Gaussian scored against one frame. */
+    static class MixtureComponentBenchmark extends Benchmark {
+
+        private float[][] features;
+        private MixtureComponent[] components;
+        private int frame;
+
+
+        MixtureComponentBenchmark() {
+            super("scoring.mixtureComponent.getScore");
+        }
+
+
+        @Override
+        public void setUp(ConfigurationManager cm) throws Exception {
+            List<FloatData> data = getFeatures(cm);
+            features = new float[data.size()][];
+            for (int i = 0; i < features.length; i++) {
+                features[i] = data.get(i).getValues();
+            }
+            List<MixtureComponent> list = new ArrayList<MixtureComponent>();
+            for (GaussianMixture senone : getSenones(cm)) {
+                list.addAll(Arrays.asList(senone.getMixtureComponents()));
+            }
+            components = list.toArray(new MixtureComponent[list.size()]);
+        }
+
+
+        @Override
+        public int run() {
+            float sum = 0;
+            for (int i = 0; i < FRAMES; i++) {
+                float[] feature = features[frame];
+                frame = (frame + 1) % features.length;
+                for (MixtureComponent component : components) {
+                    sum += component.getScore(feature);
+                }
+            }
+            consume(sum);
+            return FRAMES * components.length;
+        }
+    }
+
+
+    /** Scores senones, one operation is one senone scored against one frame. */
+    static class GaussianMixtureBenchmark extends Benchmark {
+
+        private FloatData[] features;
+        private GaussianMixture[] senones;
+        private int frame;
+
+
+        GaussianMixtureBenchmark() {
+            super("scoring.gaussianMixture.calculateScore");
+        }
+
+
+        @Override
+        public void setUp(ConfigurationManager cm) throws Exception {
+            List<FloatData> data = getFeatures(cm);
+            features = data.toArray(new FloatData[data.size()]);
+            List<GaussianMixture> list = getSenones(cm);
+            senones = list.toArray(new GaussianMixture[list.size()]);
+        }
+
+
+        @Override
+        public int run() {
+            float sum = 0;
+            for (int i = 0; i < FRAMES; i++) {
+                FloatData feature = features[frame];
+                frame = (frame + 1) % features.length;
+                for (GaussianMixture senone : senones) {
+                    sum += senone.calculateScore(feature);
+                }
+            }
+            consume(sum);
+            return FRAMES * senones.length;
+        }
+    }
+
+
+    /** Adds log values, one operation is one addition. */
+    static class AddAsLinearBenchmark extends Benchmark {
+
+        private final boolean useAddTable;
+        private LogMath logMath;
+        private float[] values;
+
+
+        AddAsLinearBenchmark(String name, boolean useAddTable) {
+            super(name);
+            this.useAddTable = useAddTable;
+        }
+
+
+        @Override
+        public void setUp(ConfigurationManager cm) {
+            logMath = new LogMath(1.0001f, useAddTable);
+            // scores within the range that a decoder adds, some of them far enough apart to hit the table end
+            Random random = new Random(SEED);
+            values = new float[ADDITIONS + 1];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = -random.nextInt(200000);
+            }
+        }
+
+
+        @Override
+        public int run() {
+            float sum = 0;
+            for (int i = 0; i < ADDITIONS; i++) {
+                sum += logMath.addAsLinear(values[i], values[i + 1]);
+            }
+            consume(sum);
+            return ADDITIONS;
+        }
+    }
+
+
+    /**
+     * Sums up the log values of arrays as large as a senone, either one by one or with the bulk addition. One
+     * operation is one value added.
+     */
+    static class SumBenchmark extends Benchmark {
+
+        private final boolean useAddTable;
+        private final boolean bulk;
+        private LogMath logMath;
+        private float[][] values;
+
+
+        SumBenchmark(String name, boolean useAddTable, boolean bulk) {
+            super(name);
+            this.useAddTable = useAddTable;
+            this.bulk = bulk;
+        }
+
+
+        @Override
+        public void setUp(ConfigurationManager cm) {
+            logMath = new LogMath(1.0001f, useAddTable);
+            // component scores of a senone lie close together
+            Random random = new Random(SEED);
+            values = new float[ADDITIONS / SUM_LENGTH][SUM_LENGTH];
+            for (float[] sum : values) {
+                float offset = -random.nextInt(200000);
+                for (int i = 0; i < SUM_LENGTH; i++) {
+                    sum[i] = offset - random.nextInt(50000);
+                }
+            }
+        }
+
+
+        @Override
+        public int run() {
+            float total = 0;
+            for (float[] sum : values) {
+                if (bulk) {
+                    total += logMath.addAsLinear(sum);
+                } else {
+                    float logTotal = LogMath.getLogZero();
+                    for (float value : sum) {
+                        logTotal = logMath.addAsLinear(logTotal, value);
+                    }
+                    total += logTotal;
+                }
+            }
+            consume(total);
+            return values.length * SUM_LENGTH;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package benchmark;
+
+import edu.cmu.sphinx.decoder.search.ActiveList;
+import edu.cmu.sphinx.decoder.search.ActiveListFactory;
+import edu.cmu.sphinx.decoder.search.Token;
+import edu.cmu.sphinx.linguist.SearchState;
+import edu.cmu.sphinx.linguist.SearchStateArc;
+import edu.cmu.sphinx.linguist.WordSequence;
+import edu.cmu.sphinx.linguist.dictionary.Dictionary;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.linguist.language.ngram.large.LargeNGramModel;
+import edu.cmu.sphinx.linguist.lextree.LexTreeLinguist;
+import edu.cmu.sphinx.util.props.ConfigurationManager;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/** Benchmarks of the parts of the search that do not score: the active lists and the linguist with its language model. */
+public class SearchBenchmarks {
+
+    /** The number of tokens added to an active list in one run. */
+    private static final int TOKENS = 5000;
+
+    /** The number of language model queries in one run, as many as in a short utterance. */
+    private static final int QUERIES = 500;
+
+    /** The number of lines of the transcript that the language model queries are taken from. */
+    private static final int TRANSCRIPT_LINES = 1000;
+
+    /** The number of search states expanded in one run. */
+    private static final int EXPANSIONS = 2000;
+
+
+    private SearchBenchmarks() {
+    }
+
+
+    /** @return the benchmarks of this group */
+    static List<Benchmark> create() {
+        return Arrays.asList(
+                new ActiveListBenchmark("activelist.simple", "simpleActiveList"),
+                new ActiveListBenchmark("activelist.sorting", "sortingActiveList"),
+                new ActiveListBenchmark("activelist.partition", "partitionActiveList"),
+                new NGramBenchmark(),
+                new LexTreeBenchmark());
+    }
+
+
+    /**
+     * Fills, updates and prunes an active list as a search manager does in a frame, one operation is one token. A
+     * quarter of the tokens are replaced by better tokens of the same state.
+     */
+    static class ActiveListBenchmark extends Benchmark {
+
+        private final String factoryName;
+        private ActiveListFactory factory;
+        private Token[] tokens;
+        private Token[] replacements;
+
+
+        ActiveListBenchmark(String name, String factoryName) {
+            super(name);
+            this.factoryName = factoryName;
+        }
+
+
+        @Override
+        public void setUp(ConfigurationManager cm) {
+            factory = (ActiveListFactory) cm.lookup(factoryName);
+            Random random = new Random(SEED);
+            tokens = new Token[TOKENS];
+            replacements = new Token[TOKENS / 4];
+            for (int i = 0; i < tokens.length; i++) {
+                tokens[i] = new Token(null, null, -random.nextInt(1000000), 0, 0, 0);
+            }
+            for (int i = 0; i < replacements.length; i++) {
+                replacements[i] = new Token(null, null, tokens[4 * i].getScore() + random.nextInt(10000), 0, 0, 0);
+            }
+        }
+
+
+        @Override
+        public int run() {
+            ActiveList list = factory.newInstance();
+            for (Token token : tokens) {
+                list.add(token);
+            }
+            for (int i = 0; i < replacements.length; i++) {
+                list.replace(tokens[4 * i], replacements[i]);
+            }
+            list = list.purge();
+            float sum = list.getBestScore() + list.getBeamThreshold();
+            for (Token token : list) {
+                sum += token.getScore();
+            }
+            consume(sum);
+            return TOKENS;
+        }
+    }
+
+
+    /**
+     * Queries a trigram model with the trigrams of a transcript, one operation is one query. The caches of the model
+     * are cleared after every run, as after an utterance.
+     */
+    static class NGramBenchmark extends Benchmark {
+
+        private LargeNGramModel model;
+        private WordSequence[] sequences;
+        private int next;
+
+
+        NGramBenchmark() {
+            super("ngram.large.getProbDepth");
+        }
+
+
+        @Override
+        public void setUp(ConfigurationManager cm) throws Exception {
+            Dictionary dictionary = (Dictionary) cm.lookup("lmDictionary");
+            dictionary.allocate();
+            model = (LargeNGramModel) cm.lookup("largeTrigramModel");
+            model.allocate();
+
+            List<WordSequence> list = new ArrayList<WordSequence>();
+            BufferedReader reader = new BufferedReader(new FileReader("tests/live/weather/weather.transcript"));
+            String line;
+            for (int i = 0; i < TRANSCRIPT_LINES && (line = reader.readLine()) != null; i++) {
+                List<Word> words = new ArrayList<Word>();
+                words.add(dictionary.getSentenceStartWord());
+                for (String spelling : line.trim().split("\\s+")) {
+                    words.add(dictionary.getWord(spelling));
+                }
+                words.add(dictionary.getSentenceEndWord());
+                for (int j = 1; j < words.size(); j++) {
+                    list.add(new WordSequence(words.subList(Math.max(0, j - 2), j + 1)));
+                }
+            }
+            reader.close();
+            sequences = list.toArray(new WordSequence[list.size()]);
+        }
+
+
+        @Override
+        public int run() {
+            model.start();
+            float sum = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                sum += model.getProbDepth(sequences[next]).probability;
+                next = (next + 1) % sequences.length;
+            }
+            model.stop();
+            consume(sum);
+            return QUERIES;
+        }
+
+
+        @Override
+        public void tearDown() {
+            model.deallocate();
+        }
+    }
+
+
+    /**
+     * Expands the search graph of a lex tree linguist breadth first from the initial state, without the arc cache of the
+     * linguist, one operation is one expanded state.
+     */
+    static class LexTreeBenchmark extends Benchmark {
+
+        private LexTreeLinguist linguist;
+
+
+        LexTreeBenchmark() {
+            super("lextree.getSuccessors");
+        }
+
+
+        @Override
+        public void setUp(ConfigurationManager cm) throws Exception {
+            linguist = (LexTreeLinguist) cm.lookup("lexTreeLinguist");
+            linguist.allocate();
+        }
+
+
+        @Override
+        public int run() {
+            linguist.startRecognition();
+            List<SearchState> queue = new ArrayList<SearchState>();
+            queue.add(linguist.getSearchGraph().getInitialState());
+            int arcs = 0;
+            for (int i = 0; i < EXPANSIONS; i++) {
+                for (SearchStateArc arc : queue.get(i).getSuccessors()) {
+                    queue.add(arc.getState());
+                    arcs++;
+                }
+            }
+            linguist.stopRecognition();
+            consume(arcs);
+            return EXPANSIONS;
+        }
+
+
+        @Override
+        public void tearDown() {
+            linguist.deallocate();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package benchmark;
+
+import edu.cmu.sphinx.frontend.Data;
+import edu.cmu.sphinx.frontend.DoubleData;
+import edu.cmu.sphinx.frontend.endpoint.*;
+import edu.cmu.sphinx.util.props.ConfigurationManager;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Benchmarks of the voice activity detectors on the bundled audio files followed by bursts of loud white noise, one
+ * operation is one classified block of 10 ms. Besides the time per block they report the fraction of the blocks that
+ * is classified as speech. Only speech reaches the decoder behind an endpointer, so the fraction is the share of the
+ * decoding time that is left.
+ */
+public class VadBenchmarks {
+
+    private VadBenchmarks() {
+    }
+
+
+    /** @return the benchmarks of this group */
+    static List<Benchmark> create() {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.add(new DetectorBenchmark("vad.energy") {
+            @Override
+            AbstractVoiceActivityDetector createDetector(List<DoubleData> speech, List<DoubleData> noise) {
+                return new SpeechClassifier(10, 0.003, 10, 0);
+            }
+        });
+        benchmarks.add(new DetectorBenchmark("vad.gmm") {
+            @Override
+            AbstractVoiceActivityDetector createDetector(List<DoubleData> speech, List<DoubleData> noise) {
+                VoiceActivityModel.Trainer trainer = new VoiceActivityModel.Trainer(4, 20);
+                trainer.addSpeech(speech);
+                trainer.addNoise(noise);
+                return new GMMVoiceActivityDetector(trainer.train(), 0, 10);
+            }
+        });
+        return benchmarks;
+    }
+
+
+    /** Classifies the blocks of the audio files and of the noise with a detector. */
+    abstract static class DetectorBenchmark extends Benchmark {
+
+        private AbstractVoiceActivityDetector detector;
+        private FrontEndBenchmarks.Replay replay;
+        private int blocks;
+        private int speechBlocks;
+
+
+        DetectorBenchmark(String name) {
+            super(name);
+        }
+
+
+        /**
+         * Creates the detector.
+         *
+         * @param speech the blocks of the audio files
+         * @param noise  blocks of noise other than those that are classified
+         * @return the detector
+         */
+        abstract AbstractVoiceActivityDetector createDetector(List<DoubleData> speech, List<DoubleData> noise);
+
+
+        @Override
+        public void setUp(ConfigurationManager cm) throws Exception {
+            List<DoubleData> speech = new ArrayList<DoubleData>();
+            for (String file : AUDIO_FILES) {
+                speech.addAll(VoiceActivityModel.readBlocks(new File(file)));
+            }
+            detector = createDetector(speech, createNoise(new Random(SEED + 1)));
+            List<Data> input = new ArrayList<Data>(speech);
+            input.addAll(createNoise(new Random(SEED)));
+            replay = new FrontEndBenchmarks.Replay(input);
+            detector.setPredecessor(replay);
+        }
+
+
+        @Override
+        public int run() {
+            replay.rewind();
+            detector.initialize();
+            blocks = 0;
+            speechBlocks = 0;
+            Data data;
+            while ((data = detector.getData()) != null) {
+                blocks++;
+                if (((SpeechClassifiedData) data).isSpeech()) {
+                    speechBlocks++;
+                }
+            }
+            consume(speechBlocks);
+            return blocks;
+        }
+
+
+        @Override
+        public Map<String, Double> getMetrics(double seconds, long operations) {
+            return Collections.singletonMap("speechFraction", (double) speechBlocks / blocks);
+        }
+
+
+        /** @return blocks of 10 ms of a quiet background with bursts of loud white noise */
+        private static List<DoubleData> createNoise(Random random) {
+            List<DoubleData> blocks = new ArrayList<DoubleData>();
+            long sampleNumber = 0;
+            for (int burst = 0; burst < 10; burst++) {
+                double amplitude = 500 + random.nextInt(5000);
+                for (int block = 0; block < 100; block++) {
+                    double[] samples = new double[160];
+                    boolean loud = block >= 30 && block < 80;
+                    for (int i = 0; i < samples.length; i++) {
+                        samples[i] = random.nextGaussian() * (loud ? amplitude : 10);
+                    }
+                    blocks.add(new DoubleData(samples, 16000, sampleNumber / 16, sampleNumber));
+                    sampleNumber += samples.length;
+                }
+            }
+            return blocks;
+        }
+    }
+}
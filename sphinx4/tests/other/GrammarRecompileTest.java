@@ -0,0 +1,129 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package other;
+
+import edu.cmu.sphinx.jsgf.JSGFGrammar;
+import edu.cmu.sphinx.jsgf.parser.JSGFParser;
+import edu.cmu.sphinx.linguist.Linguist;
+import edu.cmu.sphinx.linguist.acoustic.AcousticModel;
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Sphinx3Loader;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.TiedStateAcousticModel;
+import edu.cmu.sphinx.linguist.dflat.DynamicFlatLinguist;
+import edu.cmu.sphinx.linguist.dictionary.Dictionary;
+import edu.cmu.sphinx.linguist.dictionary.FastDictionary;
+import edu.cmu.sphinx.linguist.flat.FlatLinguist;
+import edu.cmu.sphinx.util.LogMath;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.net.URL;
+import java.util.Random;
+
+/**
+ * Times the recompilation of a JSGF grammar with a large static rule when a small dynamic rule changes, as with a
+ * contact list that is fixed and a list of recent calls that changes per call. Every configuration commits the same
+ * changes of the dynamic rule: once expanding the whole grammar and compiling the whole search graph again, once with
+ * an incremental commit that only expands the dynamic rule and a linguist that only recompiles the changed nodes.
+ * <p/>
+ * Usage: GrammarRecompileTest [staticAlternatives [dynamicAlternatives [changes]]]
+ */
+public class GrammarRecompileTest {
+
+    private static final String[] DIGITS = {"oh", "zero", "one", "two", "three", "four", "five", "six", "seven",
+            "eight", "nine"};
+
+    private static LogMath logMath;
+    private static UnitManager unitManager;
+    private static Dictionary dictionary;
+    private static AcousticModel acousticModel;
+
+
+    public static void main(String[] args) throws Exception {
+        int staticAlternatives = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int dynamicAlternatives = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int changes = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        logMath = new LogMath(1.0001f, true);
+        unitManager = new UnitManager();
+        dictionary = new FastDictionary(new URL("file:models/acoustic/tidigits/dictionary"),
+                new URL("file:models/acoustic/tidigits/fillerdict"), null, false, null, false, false, unitManager);
+        acousticModel = new TiedStateAcousticModel(new Sphinx3Loader(
+                new File("models/acoustic/tidigits").toURI().toURL(), "wd_dependent_phone.500.mdef",
+                "wd_dependent_phone.cd_continuous_8gau/", logMath, unitManager, 0.0f, 1e-7f, 0.0001f, true),
+                unitManager, true);
+
+        File directory = File.createTempFile("jsgf", "");
+        directory.delete();
+        directory.mkdir();
+        File file = new File(directory, "calls.gram");
+        FileWriter writer = new FileWriter(file);
+        writer.write("#JSGF V1.0;\ngrammar calls;\npublic <call> = <contact> | oh <recent>;\n");
+        writer.write("<contact> = " + alternatives(new Random(1), staticAlternatives) + ";\n");
+        writer.write("<recent> = " + alternatives(new Random(2), dynamicAlternatives) + ";\n");
+        writer.close();
+
+        System.out.println(staticAlternatives + " static and " + dynamicAlternatives + " dynamic alternatives, "
+                + changes + " changes");
+        for (boolean dynamic : new boolean[]{false, true}) {
+            for (boolean incremental : new boolean[]{false, true}) {
+                JSGFGrammar grammar = new JSGFGrammar(directory.toURI().toURL(), logMath, "calls", false, true,
+                        false, false, dictionary, incremental);
+                Linguist linguist = dynamic
+                        ? new DynamicFlatLinguist(acousticModel, grammar, unitManager, logMath, 1.0, 1.0, 1.0, 1.0,
+                        1.0f, false, 1.0, null)
+                        : new FlatLinguist(acousticModel, logMath, grammar, unitManager, 1.0, 1.0, 1.0, 1.0, 1.0f,
+                        false, false, false, false, 1.0, 1.0, null, null, incremental);
+                long start = System.currentTimeMillis();
+                linguist.allocate();
+                linguist.startRecognition();
+                long allocateTime = System.currentTimeMillis() - start;
+
+                Random random = new Random(3);
+                long commitTime = 0;
+                long compileTime = 0;
+                for (int i = 0; i < changes; i++) {
+                    grammar.getRuleGrammar().setRule("recent",
+                            JSGFParser.ruleForJSGF(alternatives(random, dynamicAlternatives)), false);
+                    start = System.currentTimeMillis();
+                    grammar.commitChanges();
+                    long committed = System.currentTimeMillis();
+                    linguist.startRecognition();
+                    commitTime += committed - start;
+                    compileTime += System.currentTimeMillis() - committed;
+                }
+                System.out.println((dynamic ? "dflat" : "flat ") + (incremental ? " incremental" : " full       ")
+                        + ": allocate " + allocateTime + " ms, per change: commit " + commitTime / changes
+                        + " ms, compile " + compileTime / changes + " ms, " + grammar.getNumNodes() + " nodes");
+                linguist.deallocate();
+            }
+        }
+        file.delete();
+        directory.delete();
+    }
+
+
+    /** Creates alternatives of one to three random digits */
+    private static String alternatives(Random random, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(" | ");
+            }
+            int length = 1 + random.nextInt(3);
+            for (int j = 0; j < length; j++) {
+                sb.append(j > 0 ? " " : "").append(DIGITS[random.nextInt(DIGITS.length)]);
+            }
+        }
+        return sb.toString();
+    }
+}
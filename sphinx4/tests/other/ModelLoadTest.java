@@ -0,0 +1,97 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.  
+ * Portions Copyright 2002 Sun Microsystems, Inc.  
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ * 
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL 
+ * WARRANTIES.
+ *
+ */
+package other;
+
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Pool;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Sphinx3Loader;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.Timer;
+import edu.cmu.sphinx.util.TimerPool;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Times the loading of the binary pools of a Sphinx-3 acoustic model with the bulk reads of the Sphinx3Loader against
+ * reading every value on its own, as the loader used to do. Both ways must produce the same pools.
+ * <p/>
+ * Usage: ModelLoadTest [modelDirectory [repetitions]]
+ */
+public class ModelLoadTest extends Sphinx3Loader {
+
+    private final boolean perValue;
+
+
+    public ModelLoadTest(File directory, boolean perValue) throws IOException {
+        super(directory.toURI().toURL(), "mdef", "", new LogMath(1.0001f, true), new UnitManager(), 0.0f, 1e-7f,
+                0.0001f, true);
+        this.perValue = perValue;
+    }
+
+
+    @Override
+    protected float[] readFloatArray(DataInputStream dis, int size) throws IOException {
+        if (!perValue) {
+            return super.readFloatArray(dis, size);
+        }
+        float[] data = new float[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = readFloat(dis);
+        }
+        return data;
+    }
+
+
+    private Pool<float[]>[] loadPools() throws Exception {
+        @SuppressWarnings("unchecked")
+        Pool<float[]>[] pools = new Pool[3];
+        pools[0] = loadDensityFile("means", -Float.MAX_VALUE);
+        pools[1] = loadDensityFile("variances", 0.0001f);
+        pools[2] = loadMixtureWeights("mixture_weights", 1e-7f);
+        loadTransitionMatrices("transition_matrices");
+        return pools;
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        File directory = new File(args.length > 0 ? args[0] : "models/acoustic/rm1/cd_continuous_8gau");
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        ModelLoadTest bulk = new ModelLoadTest(directory, false);
+        ModelLoadTest perValue = new ModelLoadTest(directory, true);
+
+        Pool<float[]>[] expected = perValue.loadPools();
+        Pool<float[]>[] actual = bulk.loadPools();
+        for (int p = 0; p < expected.length; p++) {
+            for (int i = 0; i < expected[p].size(); i++) {
+                if (!Arrays.equals(expected[p].get(i), actual[p].get(i))) {
+                    throw new IllegalStateException("Pools differ: " + expected[p].getName() + " " + i);
+                }
+            }
+        }
+
+        Timer perValueTimer = TimerPool.getTimer(perValue, "Per value");
+        Timer bulkTimer = TimerPool.getTimer(bulk, "Bulk");
+        for (int i = 0; i < repetitions; i++) {
+            perValueTimer.start();
+            perValue.loadPools();
+            perValueTimer.stop();
+            bulkTimer.start();
+            bulk.loadPools();
+            bulkTimer.stop();
+        }
+        TimerPool.dumpAll();
+    }
+}
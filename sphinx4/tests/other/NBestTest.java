@@ -0,0 +1,109 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.  
+ * Portions Copyright 2002 Sun Microsystems, Inc.  
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ * 
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL 
+ * WARRANTIES.
+ *
+ */
+package other;
+
+import edu.cmu.sphinx.result.Lattice;
+import edu.cmu.sphinx.result.NBestIterator;
+import edu.cmu.sphinx.result.Node;
+import edu.cmu.sphinx.result.Path;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.Timer;
+import edu.cmu.sphinx.util.TimerPool;
+
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Times the N-best list generation on random lattices with thousands of nodes. Every node of the lattice spans a few
+ * frames and is connected to several nodes ending where it begins, which gives an exponential number of paths, far
+ * too many for Lattice.allPaths.
+ * <p/>
+ * Usage: NBestTest [numNodes [n [maxPartialPaths]]]
+ */
+public class NBestTest {
+
+    private static final String[] VOCABULARY = {
+        "one", "two", "three", "four", "five", "six", "seven", "eight", "nine", "oh", "zero"
+    };
+
+
+    /**
+     * Creates a random lattice with the given number of nodes.
+     *
+     * @param logMath  the log math
+     * @param numNodes the number of nodes
+     * @param random   the random generator
+     * @return the lattice
+     */
+    static Lattice createLattice(LogMath logMath, int numNodes, Random random) {
+        Lattice lattice = new Lattice(logMath);
+        int numFrames = numNodes / 4;
+        Node[] nodes = new Node[numNodes];
+        nodes[0] = lattice.addNode("start", "<s>", 0, 0);
+        for (int i = 1; i < numNodes - 1; i++) {
+            int begin = 1 + random.nextInt(numFrames);
+            String word = VOCABULARY[random.nextInt(VOCABULARY.length)];
+            nodes[i] = lattice.addNode("n" + i, word, begin, begin + 5 + random.nextInt(20));
+        }
+        nodes[numNodes - 1] = lattice.addNode("end", "</s>", numFrames + 30, numFrames + 30);
+        lattice.setInitialNode(nodes[0]);
+        lattice.setTerminalNode(nodes[numNodes - 1]);
+
+        for (int i = 1; i < numNodes - 1; i++) {
+            Node to = nodes[i];
+            int connected = 0;
+            for (int j = 0; j < numNodes - 1 && connected < 4; j++) {
+                Node from = nodes[random.nextInt(numNodes - 1)];
+                if (from.getEndTime() <= to.getBeginTime() && from.getEndTime() > to.getBeginTime() - 10
+                        && from != to && from.getEdgeToNode(to) == null) {
+                    lattice.addEdge(from, to, -random.nextInt(100000), -random.nextInt(20000));
+                    connected++;
+                }
+            }
+            if (connected == 0 && to.getBeginTime() < 10) {
+                lattice.addEdge(nodes[0], to, -random.nextInt(100000), -random.nextInt(20000));
+            }
+            if (to.getEndTime() > numFrames) {
+                lattice.addEdge(to, nodes[numNodes - 1], -random.nextInt(100000), 0);
+            }
+        }
+        return lattice;
+    }
+
+
+    public static void main(String[] args) {
+        int numNodes = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int n = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int maxPartialPaths = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+
+        LogMath logMath = new LogMath(1.0001f, true);
+        Timer nbestTimer = TimerPool.getTimer(NBestTest.class, "NBest");
+
+        for (int i = 0; i < 10; i++) {
+            Lattice lattice = createLattice(logMath, numNodes, new Random(i));
+            nbestTimer.start();
+            Iterator<Path> nbest = new NBestIterator(lattice, 1.0f, maxPartialPaths);
+            int count = 0;
+            double lastScore = Double.MAX_VALUE;
+            while (count < n && nbest.hasNext()) {
+                Path path = nbest.next();
+                assert path.getScore() <= lastScore;
+                lastScore = path.getScore();
+                count++;
+            }
+            nbestTimer.stop();
+            System.out.println("Lattice " + i + ": " + lattice.getNodes().size() + " nodes, "
+                    + lattice.getEdges().size() + " edges, " + count + " paths");
+        }
+        TimerPool.dumpAll();
+    }
+}
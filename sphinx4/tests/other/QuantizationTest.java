@@ -0,0 +1,133 @@
+/*
+ * Copyright 1999-2002 Carnegie Mellon University.
+ * Portions Copyright 2002 Sun Microsystems, Inc.
+ * Portions Copyright 2002 Mitsubishi Electric Research Laboratories.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package other;
+
+import edu.cmu.sphinx.frontend.FloatData;
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.*;
+import edu.cmu.sphinx.util.LogMath;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Reports the memory, the scoring speed and the score error of quantized acoustic models against the float model
+ * they are made from. The features are drawn around the means of the model. The word error rates of quantized models
+ * are measured by the <code>tidigits_quantized_8bit</code> and <code>tidigits_quantized_16bit</code> targets of the
+ * TIDIGITS performance tests.
+ * <p/>
+ * Usage: QuantizationTest [location modelDefinition dataLocation [frames]]
+ */
+public class QuantizationTest {
+
+    public static void main(String[] args) throws Exception {
+        String location = args.length > 0 ? args[0] : "models/acoustic/rm1";
+        String model = args.length > 1 ? args[1] : "etc/RM1_clean_13dCep_16k_40mel_130Hz_6800Hz.1800.mdef";
+        String dataLocation = args.length > 2 ? args[2] : "cd_continuous_8gau/";
+        int frames = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+        LogMath logMath = new LogMath(1.0001f, true);
+        long before = usedMemory();
+        Loader source = new Sphinx3Loader(new File(location).toURI().toURL(), model, dataLocation, logMath,
+                new UnitManager(), 0.0f, 1e-7f, 0.0001f, true);
+        source.load();
+        long floatMemory = usedMemory() - before;
+
+        Random random = new Random(1);
+        Pool<float[]> means = source.getMeansPool();
+        FloatData[] features = new FloatData[frames];
+        for (int i = 0; i < features.length; i++) {
+            float[] values = means.get(random.nextInt(means.size())).clone();
+            for (int j = 0; j < values.length; j++) {
+                values[j] += 0.2f * random.nextGaussian();
+            }
+            features[i] = new FloatData(values, 16000, i, i);
+        }
+
+        Pool<Senone> expected = source.getSenonePool();
+        float[][] expectedScores = score(expected, features);
+        System.out.println("float  : " + floatMemory / 1024 + "k, " + time(expected, features) + " ms");
+
+        for (int bits : new int[]{16, 8}) {
+            File file = File.createTempFile("quantized", ".snapshot");
+            file.deleteOnExit();
+            SnapshotLoader.save(source, logMath, file, bits);
+
+            before = usedMemory();
+            Loader quantized = new SnapshotLoader(file, null, logMath, new UnitManager());
+            quantized.load();
+            long memory = usedMemory() - before;
+
+            Pool<Senone> actual = quantized.getSenonePool();
+            float[][] actualScores = score(actual, features);
+            double error = 0;
+            int sameBest = 0;
+            for (int f = 0; f < features.length; f++) {
+                int expectedBest = 0;
+                int actualBest = 0;
+                for (int i = 0; i < expectedScores[f].length; i++) {
+                    error += Math.abs(logMath.logToLn(expectedScores[f][i]) - logMath.logToLn(actualScores[f][i]));
+                    if (expectedScores[f][i] > expectedScores[f][expectedBest]) {
+                        expectedBest = i;
+                    }
+                    if (actualScores[f][i] > actualScores[f][actualBest]) {
+                        actualBest = i;
+                    }
+                }
+                if (expectedBest == actualBest) {
+                    sameBest++;
+                }
+            }
+            error /= features.length * expected.size();
+            System.out.println(bits + " bit : " + memory / 1024 + "k, " + time(actual, features) + " ms, "
+                    + "snapshot " + file.length() / 1024 + "k, mean score error " + (float) error + " nats, "
+                    + "same best senone " + sameBest + "/" + features.length);
+            file.delete();
+        }
+    }
+
+
+    private static float[][] score(Pool<Senone> senones, FloatData[] features) {
+        float[][] scores = new float[features.length][senones.size()];
+        for (int f = 0; f < features.length; f++) {
+            for (int i = 0; i < senones.size(); i++) {
+                scores[f][i] = senones.get(i).getScore(features[f]);
+            }
+        }
+        return scores;
+    }
+
+
+    /** Times scoring all senones against fresh copies of the features, so that no cached score is used. */
+    private static long time(Pool<Senone> senones, FloatData[] features) {
+        long best = Long.MAX_VALUE;
+        for (int repetition = 0; repetition < 5; repetition++) {
+            FloatData[] copies = new FloatData[features.length];
+            for (int f = 0; f < features.length; f++) {
+                copies[f] = new FloatData(features[f].getValues(), 16000, f, f);
+            }
+            long start = System.currentTimeMillis();
+            score(senones, copies);
+            best = Math.min(best, System.currentTimeMillis() - start);
+        }
+        return best;
+    }
+
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}